@@ -41,12 +41,17 @@ public abstract class CrailBufferedInputStream extends InputStream {
 	private RingBuffer<CrailBuffer> pendingSlices;
 	private RingBuffer<Future<CrailResult>> pendingFutures;	
 	private RingBuffer<CrailBuffer> freeSlices;
-	private RingBuffer<CrailBuffer> tmpSlices;
+	private RingBuffer<CrailBuffer> discardedSlices;
+	private RingBuffer<Future<CrailResult>> discardedFutures;
 	private long position;
 	private boolean open;
 	private CrailBufferedStatistics statistics;
 	private int actualSliceSize;
 	private long capacity;
+	private int maxDepth;
+	private int slices;
+	private int readAhead;
+	private int sequentialSlices;
 	
 	public abstract CrailInputStream getStream() throws Exception;
 	public abstract void putStream() throws Exception;
@@ -60,32 +65,21 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		this.statistics = new CrailBufferedStatistics("buffered/in");
 		
 		this.actualSliceSize = Math.min(CrailConstants.BUFFER_SIZE, CrailConstants.SLICE_SIZE);
-		int allocationSize = queueDepth*actualSliceSize;
+		//sequential runs may grow the window beyond the initial queue depth, up to crail.readahead slices
+		this.maxDepth = Math.max(queueDepth, CrailConstants.READ_AHEAD);
 		this.originalBuffers = new LinkedList<CrailBuffer>();
-		this.readySlices = new RingBuffer<CrailBuffer>(queueDepth);
-		this.pendingSlices = new RingBuffer<CrailBuffer>(queueDepth);
-		this.freeSlices = new RingBuffer<CrailBuffer>(queueDepth);
-		this.pendingFutures = new RingBuffer<Future<CrailResult>>(queueDepth);
-		this.tmpSlices = new RingBuffer<CrailBuffer>(queueDepth);
+		this.readySlices = new RingBuffer<CrailBuffer>(maxDepth);
+		this.pendingSlices = new RingBuffer<CrailBuffer>(maxDepth);
+		this.freeSlices = new RingBuffer<CrailBuffer>(maxDepth);
+		this.pendingFutures = new RingBuffer<Future<CrailResult>>(maxDepth);
+		this.discardedSlices = new RingBuffer<CrailBuffer>(maxDepth);
+		this.discardedFutures = new RingBuffer<Future<CrailResult>>(maxDepth);
+		this.slices = 0;
+		this.readAhead = queueDepth;
+		this.sequentialSlices = 0;
 		
-		for (int currentSize = 0; currentSize < allocationSize; currentSize += CrailConstants.BUFFER_SIZE){
-			CrailBuffer buffer = fs.allocateBuffer();
-			originalBuffers.add(buffer);
-		}
-		for (CrailBuffer buffer : originalBuffers){
-			while(buffer.hasRemaining()){
-				buffer.limit(buffer.position() + actualSliceSize);
-				CrailBuffer slice = buffer.slice();
-				slice.clear();
-				freeSlices.add(slice);
-				if (freeSlices.size() >= queueDepth){
-					break;
-				}
-				
-				int newpos = buffer.position() + actualSliceSize;
-				buffer.clear();
-				buffer.position(newpos);
-			}			
+		while(slices < queueDepth){
+			allocateSlices(queueDepth);
 		}
 		this.open = true;
 	}
@@ -297,6 +291,9 @@ public abstract class CrailBufferedInputStream extends InputStream {
 				Future<CrailResult> future = pendingFutures.poll();
 				future.get();
 			}
+			while(!discardedFutures.isEmpty()){
+				reclaimSlices(true);
+			}
 			
 			while(!originalBuffers.isEmpty()){
 				CrailBuffer buffer = originalBuffers.remove();
@@ -340,45 +337,44 @@ public abstract class CrailBufferedInputStream extends InputStream {
 			long endPosition = startPosition + (readySlices.size() + pendingSlices.size())*actualSliceSize;
 			if (pos >= startPosition && pos < endPosition){
 				long currentPosition = startPosition;
-				tmpSlices.clear();
-				while(!freeSlices.isEmpty()){
-					tmpSlices.add(freeSlices.poll());
-				}
 				while(!readySlices.isEmpty() && pos >= currentPosition + actualSliceSize){
 					currentPosition += actualSliceSize;
-					tmpSlices.add(readySlices.poll());
+					CrailBuffer slice = readySlices.poll();
+					statistics.incWastedBytes(slice.remaining());
+					freeSlices.add(slice);
 				}
+				//skipped reads still in flight are not waited for
 				while(!pendingFutures.isEmpty() && pos >= currentPosition + actualSliceSize){
-					Future<CrailResult> future = pendingFutures.poll();
-					future.get();
 					currentPosition += actualSliceSize;
-					tmpSlices.add(pendingSlices.poll());
-				}
-				while(!tmpSlices.isEmpty()){
-					triggerRead(tmpSlices.poll());
+					statistics.incDiscardedOps();
+					discardedFutures.add(pendingFutures.poll());
+					discardedSlices.add(pendingSlices.poll());
 				}
+				reclaimSlices(false);
+				fillWindow();
 				this.position = pos;				
 				CrailBuffer slice = getSlice(true);
 				long bufPosition = pos - currentPosition;
 				slice.position((int) bufPosition);
 			} else {
+				//random access, shrink the window and leave reads in flight to complete in the background
+				statistics.incRandomSeeks();
+				readAhead = 1;
+				sequentialSlices = 0;
 				long sliceStart = CrailUtils.bufferStartAddress(pos, actualSliceSize);
 				getStream().seek(sliceStart);
-				tmpSlices.clear();
-				while(!freeSlices.isEmpty()){
-					tmpSlices.add(freeSlices.poll());
-				}				
 				while(!readySlices.isEmpty()){
-					tmpSlices.add(readySlices.poll());
+					CrailBuffer slice = readySlices.poll();
+					statistics.incWastedBytes(slice.remaining());
+					freeSlices.add(slice);
 				}
 				while(!pendingFutures.isEmpty()){
-					Future<CrailResult> future = pendingFutures.poll();
-					future.get();
-					tmpSlices.add(pendingSlices.poll());
+					statistics.incDiscardedOps();
+					discardedFutures.add(pendingFutures.poll());
+					discardedSlices.add(pendingSlices.poll());
 				}
-				while(!tmpSlices.isEmpty()){
-					triggerRead(tmpSlices.poll());
-				}				
+				reclaimSlices(freeSlices.isEmpty());
+				fillWindow();
 				this.position = pos;				
 				CrailBuffer slice = getSlice(true);
 				long bufPosition = pos - sliceStart;
@@ -415,13 +411,8 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		if (slice == null){
 			Future<CrailResult> future = pendingFutures.peek();
 			if (future == null){
-				tmpSlices.clear();
-				while(!freeSlices.isEmpty()){
-					tmpSlices.add(freeSlices.poll());
-				}
-				while(!tmpSlices.isEmpty()){
-					triggerRead(tmpSlices.poll());
-				}
+				reclaimSlices(freeSlices.isEmpty());
+				fillWindow();
 				future = pendingFutures.peek();
 			}
 			if (future != null){
@@ -445,27 +436,78 @@ public abstract class CrailBufferedInputStream extends InputStream {
 		return slice;		
 	}
 
+	//a fully consumed slice counts towards the sequential run, the window doubles with every run of its own size
 	private void syncSlice() throws Exception {
 		CrailBuffer slice = readySlices.peek();
 		if (slice != null && slice.remaining() == 0){
 			slice = readySlices.poll();
-			triggerRead(slice);
+			freeSlices.add(slice);
+			sequentialSlices++;
+			if (sequentialSlices >= readAhead && readAhead < maxDepth){
+				readAhead = Math.min(2*readAhead, maxDepth);
+				sequentialSlices = 0;
+				while(slices < readAhead){
+					allocateSlices(readAhead);
+				}
+			}
+			reclaimSlices(false);
+			fillWindow();
 		}		
 	}
 	
-	private void triggerRead(CrailBuffer slice) throws Exception {
+	//keeps up to readAhead slices ready or in flight
+	private void fillWindow() throws Exception {
+		while(!freeSlices.isEmpty() && readySlices.size() + pendingSlices.size() < readAhead){
+			if (!triggerRead(freeSlices.poll())){
+				break;
+			}
+		}
+	}
+	
+	//returns slices of discarded reads once they completed, blocking waits for at least one
+	private void reclaimSlices(boolean blocking) throws Exception {
+		while(!discardedFutures.isEmpty() && (blocking || discardedFutures.peek().isDone())){
+			CrailResult result = discardedFutures.poll().get();
+			statistics.incWastedBytes(result.getLen());
+			freeSlices.add(discardedSlices.poll());
+			blocking = false;
+		}
+	}
+	
+	//slices the rest of the last buffer before allocating a new one
+	private void allocateSlices(int limit) throws Exception {
+		CrailBuffer buffer = originalBuffers.peekLast();
+		if (buffer == null || buffer.remaining() < actualSliceSize){
+			buffer = fs.allocateBuffer();
+			originalBuffers.add(buffer);
+		}
+		while(buffer.remaining() >= actualSliceSize && slices < limit){
+			buffer.limit(buffer.position() + actualSliceSize);
+			CrailBuffer slice = buffer.slice();
+			slice.clear();
+			freeSlices.add(slice);
+			slices++;
+			
+			int newpos = buffer.position() + actualSliceSize;
+			buffer.clear();
+			buffer.position(newpos);
+		}
+	}
+	
+	private boolean triggerRead(CrailBuffer slice) throws Exception {
 		slice.clear();
 		CrailInputStream inputStream = getStream();
 		if (inputStream != null){
 			Future<CrailResult> future = inputStream.read(slice);
+			putStream();
 			if (future != null){
 				pendingSlices.add(slice);
 				pendingFutures.add(future);
-			} else {
-				freeSlices.add(slice);
+				return true;
 			}
-			putStream();
 		}
+		freeSlices.add(slice);
+		return false;
 	}
 	
 }
@@ -27,12 +27,18 @@ class CrailBufferedStatistics implements StatisticsProvider {
 	private AtomicLong totalOps;
 	private AtomicLong blockingOps;
 	private AtomicLong nonBlockingOps;
+	private AtomicLong randomSeeks;
+	private AtomicLong discardedOps;
+	private AtomicLong wastedBytes;
 	
 	public CrailBufferedStatistics(String type){
 		this.type = type;
 		this.totalOps = new AtomicLong(0);
 		this.blockingOps = new AtomicLong(0);
 		this.nonBlockingOps = new AtomicLong(0);
+		this.randomSeeks = new AtomicLong(0);
+		this.discardedOps = new AtomicLong(0);
+		this.wastedBytes = new AtomicLong(0);
 	}
 	
 	public void mergeStatistics(StatisticsProvider provider){
@@ -41,6 +47,9 @@ class CrailBufferedStatistics implements StatisticsProvider {
 			this.totalOps.addAndGet(newProvider.getTotalOps());
 			this.blockingOps.addAndGet(newProvider.getBlockingOps());
 			this.nonBlockingOps.addAndGet(newProvider.getNonBlockingOps());
+			this.randomSeeks.addAndGet(newProvider.getRandomSeeks());
+			this.discardedOps.addAndGet(newProvider.getDiscardedOps());
+			this.wastedBytes.addAndGet(newProvider.getWastedBytes());
 		}
 	}
 	
@@ -51,7 +60,7 @@ class CrailBufferedStatistics implements StatisticsProvider {
 
 	@Override
 	public String printStatistics() {
-		return "totalOps " + getTotalOps() + ", blockingOps " + getBlockingOps() + ", nonBlockingOps " + getNonBlockingOps();
+		return "totalOps " + getTotalOps() + ", blockingOps " + getBlockingOps() + ", nonBlockingOps " + getNonBlockingOps() + ", randomSeeks " + getRandomSeeks() + ", discardedOps " + getDiscardedOps() + ", wastedBytes " + getWastedBytes();
 	}
 
 	@Override
@@ -59,6 +68,9 @@ class CrailBufferedStatistics implements StatisticsProvider {
 		this.totalOps.set(0);
 		this.blockingOps.set(0);
 		this.nonBlockingOps.set(0);
+		this.randomSeeks.set(0);
+		this.discardedOps.set(0);
+		this.wastedBytes.set(0);
 	}
 	
 	public void incTotalOps(){
@@ -73,6 +85,18 @@ class CrailBufferedStatistics implements StatisticsProvider {
 		this.nonBlockingOps.incrementAndGet();
 	}
 	
+	public void incRandomSeeks(){
+		this.randomSeeks.incrementAndGet();
+	}
+	
+	public void incDiscardedOps(){
+		this.discardedOps.incrementAndGet();
+	}
+	
+	public void incWastedBytes(long bytes){
+		this.wastedBytes.addAndGet(bytes);
+	}
+	
 	public long getTotalOps(){
 		return totalOps.get();
 	}
@@ -84,4 +108,16 @@ class CrailBufferedStatistics implements StatisticsProvider {
 	public long getNonBlockingOps(){
 		return nonBlockingOps.get();
 	}
+	
+	public long getRandomSeeks(){
+		return randomSeeks.get();
+	}
+	
+	public long getDiscardedOps(){
+		return discardedOps.get();
+	}
+	
+	public long getWastedBytes(){
+		return wastedBytes.get();
+	}
 }
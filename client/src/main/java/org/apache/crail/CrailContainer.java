@@ -23,4 +23,6 @@ import java.util.Iterator;
 public interface CrailContainer extends CrailNode {
 	public abstract int files();
 	public abstract Iterator<String> listEntries() throws Exception;
+	//entries together with their type, capacity and modification time, packed directory records avoid a lookup per entry
+	public abstract Iterator<CrailNode> listNodes() throws Exception;
 }
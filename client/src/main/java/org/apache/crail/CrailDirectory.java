@@ -23,4 +23,9 @@ import java.util.Iterator;
 public interface CrailDirectory extends CrailContainer {
 	public abstract int files();
 	public abstract Iterator<String> listEntries() throws Exception;
+	
+	//operations on a name relative to this directory, resolved from the directory itself rather than the root
+	public abstract Upcoming<CrailNode> create(String name, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception;
+	public abstract Upcoming<CrailNode> lookup(String name) throws Exception;
+	public abstract Upcoming<CrailNode> delete(String name, boolean recursive) throws Exception;
 }
\ No newline at end of file
@@ -0,0 +1,46 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail;
+
+/*
+ * Block placement of a node. PARENT inherits the policy of the parent directory, DEFAULT uses the
+ * policy configured for the storage class of the node.
+ */
+public enum CrailPlacementPolicy {
+	PARENT(-1), DEFAULT(0), ROUNDROBIN(1), RANDOM(2), SEQUENTIAL(3), LOADAWARE(4), STRIPE(5), PACK(6);
+	
+	private int label;
+	
+	CrailPlacementPolicy(int label){
+		this.label = label;
+	}
+	
+	public int getLabel(){
+		return this.label;
+	}
+	
+	public static CrailPlacementPolicy parse(int label) {
+		for (CrailPlacementPolicy val : CrailPlacementPolicy.values()) {
+			if (val.getLabel() == label) {
+				return val;
+			}
+		}
+		throw new IllegalArgumentException();
+	}
+}
@@ -33,9 +33,11 @@ public abstract class CrailStore {
 	private static CrailStore instance = null;
 
 	public abstract Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception;
+	public abstract Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, CrailPlacementPolicy placement, boolean enumerable) throws Exception;
 	public abstract Upcoming<CrailNode> lookup(String path) throws Exception;
 	public abstract Upcoming<CrailNode> rename(String srcPath, String dstPath) throws Exception;
 	public abstract Upcoming<CrailNode> delete(String path, boolean recursive) throws Exception;
+	public abstract CrailBlockLocation[][] getBlockLocations(String[] paths, long[] start, long[] len) throws Exception;
 	public abstract CrailBuffer allocateBuffer() throws Exception;
 	public abstract void freeBuffer(CrailBuffer buffer) throws Exception;
 	public abstract CrailStatistics getStatistics();
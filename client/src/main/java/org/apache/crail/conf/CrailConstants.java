@@ -19,7 +19,12 @@
 package org.apache.crail.conf;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.crail.core.DirectoryRecord;
+import org.apache.crail.core.DirectoryWriteBack;
+import org.apache.crail.rpc.RpcEncoding;
+import org.apache.crail.rpc.RpcListDirectory;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
@@ -38,12 +43,30 @@ public class CrailConstants {
 	public static final String BLOCK_SIZE_KEY = "crail.blocksize";
 	public static long BLOCK_SIZE = 1048576;
 
+	public static final String LEASE_BLOCKS_KEY = "crail.leaseblocks";
+	public static int LEASE_BLOCKS = 1;
+
+	public static final String BLOCK_MAP_KEY = "crail.blockmap";
+	public static int BLOCK_MAP = 1024;
+
 	public static final String CACHE_LIMIT_KEY = "crail.cachelimit";
 	public static long CACHE_LIMIT = 1073741824;
 
 	public static final String CACHE_PATH_KEY = "crail.cachepath";
 	public static String CACHE_PATH = "/dev/hugepages/cache";
 
+	public static final String BLOCK_CACHE_LIMIT_KEY = "crail.blockcachelimit";
+	public static long BLOCK_CACHE_LIMIT = 1048576;
+
+	public static final String BLOCK_CACHE_TTL_KEY = "crail.blockcachettl";
+	public static long BLOCK_CACHE_TTL = 0;
+
+	public static final String LOOKUP_CACHE_KEY = "crail.lookupcache";
+	public static long LOOKUP_CACHE = 0;
+
+	public static final String LOOKUP_CACHE_TTL_KEY = "crail.lookupcachettl";
+	public static long LOOKUP_CACHE_TTL = 1000;
+
 	public static final String USER_KEY = "crail.user";
 	public static String USER = "crail";
 
@@ -59,6 +82,12 @@ public class CrailConstants {
 	public static final String RPC_TIMEOUT_KEY = "crail.rpctimeout";
 	public static int RPC_TIMEOUT = 1000;
 
+	public static final String BATCH_WINDOW_KEY = "crail.batchwindow";
+	public static int BATCH_WINDOW = 0;
+
+	public static final String RPC_VERSION_KEY = "crail.rpcversion";
+	public static int RPC_VERSION = 0;
+
 	public static final String DATA_TIMEOUT_KEY = "crail.datatimeout";
 	public static int DATA_TIMEOUT = 1000;
 
@@ -68,6 +97,9 @@ public class CrailConstants {
 	public static final String SLICE_SIZE_KEY = "crail.slicesize";
 	public static int SLICE_SIZE = 524288;
 
+	public static final String READ_AHEAD_KEY = "crail.readahead";
+	public static int READ_AHEAD = 8;
+
 	public static final String SINGLETON_KEY = "crail.singleton";
 	public static boolean SINGLETON = true;
 
@@ -79,6 +111,15 @@ public class CrailConstants {
 
 	public static final String DIRECTORY_RANDOMIZE_KEY = "crail.directoryrandomize";
 	public static boolean DIRECTORY_RANDOMIZE = true;
+	
+	public static final String DIRECTORY_VERSION_KEY = "crail.directoryversion";
+	public static int DIRECTORY_VERSION = 0;
+	
+	public static final String DIRECTORY_CONSISTENCY_KEY = "crail.directoryconsistency";
+	public static String DIRECTORY_CONSISTENCY = "immediate";
+	
+	public static final String DIRECTORY_FLUSH_KEY = "crail.directoryflush";
+	public static long DIRECTORY_FLUSH = 1000;
 
 	public static final String CACHE_IMPL_KEY = "crail.cacheimpl";
 	public static String CACHE_IMPL = "org.apache.crail.memory.MappedBufferCache";
@@ -96,6 +137,9 @@ public class CrailConstants {
 	public static final String NAMENODE_BLOCKSELECTION_KEY = "crail.namenode.blockselection";
 	public static String NAMENODE_BLOCKSELECTION = "roundrobin";
 
+	public static final String NAMENODE_PLACEMENT_KEY = "crail.namenode.placement";
+	public static String NAMENODE_PLACEMENT = "";
+
 	public static final String NAMENODE_RPC_TYPE_KEY = "crail.namenode.rpctype";
 	public static String NAMENODE_RPC_TYPE = "org.apache.crail.namenode.rpc.tcp.TcpNameNode";
 
@@ -104,6 +148,27 @@ public class CrailConstants {
 
 	public static final String NAMENODE_LOG_KEY = "crail.namenode.log";
 	public static String NAMENODE_LOG = "";
+	
+	public static final String NAMENODE_LOG_SYNC_KEY = "crail.namenode.log.sync";
+	public static String NAMENODE_LOG_SYNC = "batch";
+	
+	public static final String NAMENODE_LOG_BUFFER_KEY = "crail.namenode.log.buffer";
+	public static int NAMENODE_LOG_BUFFER = 1048576;
+	
+	public static final String NAMENODE_CHECKPOINT_INTERVAL_KEY = "crail.namenode.checkpoint.interval";
+	public static long NAMENODE_CHECKPOINT_INTERVAL = 0;
+
+	public static final String NAMENODE_GC_THREADS_KEY = "crail.namenode.gc.threads";
+	public static int NAMENODE_GC_THREADS = 1;
+
+	public static final String NAMENODE_GC_RATE_KEY = "crail.namenode.gc.rate";
+	public static long NAMENODE_GC_RATE = 0;
+
+	public static final String NAMENODE_GC_BATCH_KEY = "crail.namenode.gc.batch";
+	public static int NAMENODE_GC_BATCH = 1024;
+
+	public static final String NAMENODE_LISTING_KEY = "crail.namenode.listing";
+	public static int NAMENODE_LISTING = 0;
 
 	//storage interface
 	public static final String STORAGE_TYPES_KEY = "crail.storage.types";
@@ -148,12 +213,30 @@ public class CrailConstants {
 		if (conf.get(BLOCK_SIZE_KEY) != null) {
 			BLOCK_SIZE = Long.parseLong(conf.get(BLOCK_SIZE_KEY));
 		}
+		if (conf.get(LEASE_BLOCKS_KEY) != null) {
+			LEASE_BLOCKS = Integer.parseInt(conf.get(LEASE_BLOCKS_KEY));
+		}
+		if (conf.get(BLOCK_MAP_KEY) != null) {
+			BLOCK_MAP = Integer.parseInt(conf.get(BLOCK_MAP_KEY));
+		}
 		if (conf.get(CACHE_LIMIT_KEY) != null) {
 			CACHE_LIMIT = Long.parseLong(conf.get(CACHE_LIMIT_KEY));
 		}
 		if (conf.get(CACHE_PATH_KEY) != null) {
 			CACHE_PATH = conf.get(CACHE_PATH_KEY);
 		}
+		if (conf.get(BLOCK_CACHE_LIMIT_KEY) != null) {
+			BLOCK_CACHE_LIMIT = Long.parseLong(conf.get(BLOCK_CACHE_LIMIT_KEY));
+		}
+		if (conf.get(BLOCK_CACHE_TTL_KEY) != null) {
+			BLOCK_CACHE_TTL = Long.parseLong(conf.get(BLOCK_CACHE_TTL_KEY));
+		}
+		if (conf.get(LOOKUP_CACHE_KEY) != null) {
+			LOOKUP_CACHE = Long.parseLong(conf.get(LOOKUP_CACHE_KEY));
+		}
+		if (conf.get(LOOKUP_CACHE_TTL_KEY) != null) {
+			LOOKUP_CACHE_TTL = Long.parseLong(conf.get(LOOKUP_CACHE_TTL_KEY));
+		}
 		if (conf.get(USER_KEY) != null) {
 			USER = conf.get(CrailConstants.USER_KEY);
 		}
@@ -169,6 +252,12 @@ public class CrailConstants {
 		if (conf.get(RPC_TIMEOUT_KEY) != null) {
 			RPC_TIMEOUT = Integer.parseInt(conf.get(RPC_TIMEOUT_KEY));
 		}
+		if (conf.get(BATCH_WINDOW_KEY) != null) {
+			BATCH_WINDOW = Integer.parseInt(conf.get(BATCH_WINDOW_KEY));
+		}
+		if (conf.get(RPC_VERSION_KEY) != null) {
+			RPC_VERSION = Integer.parseInt(conf.get(RPC_VERSION_KEY));
+		}
 		if (conf.get(DATA_TIMEOUT_KEY) != null) {
 			DATA_TIMEOUT = Integer.parseInt(conf.get(DATA_TIMEOUT_KEY));
 		}
@@ -178,6 +267,9 @@ public class CrailConstants {
 		if (conf.get(SLICE_SIZE_KEY) != null) {
 			SLICE_SIZE = Integer.parseInt(conf.get(SLICE_SIZE_KEY));
 		}
+		if (conf.get(READ_AHEAD_KEY) != null) {
+			READ_AHEAD = Integer.parseInt(conf.get(READ_AHEAD_KEY));
+		}
 		if (conf.get(CrailConstants.SINGLETON_KEY) != null) {
 			SINGLETON = conf.getBoolean(CrailConstants.SINGLETON_KEY, false);
 		}
@@ -190,6 +282,15 @@ public class CrailConstants {
 		if (conf.get(CrailConstants.DIRECTORY_RANDOMIZE_KEY) != null) {
 			DIRECTORY_RANDOMIZE = conf.getBoolean(CrailConstants.DIRECTORY_RANDOMIZE_KEY, false);
 		}
+		if (conf.get(DIRECTORY_VERSION_KEY) != null) {
+			DIRECTORY_VERSION = Integer.parseInt(conf.get(DIRECTORY_VERSION_KEY));
+		}
+		if (conf.get(DIRECTORY_CONSISTENCY_KEY) != null) {
+			DIRECTORY_CONSISTENCY = conf.get(DIRECTORY_CONSISTENCY_KEY);
+		}
+		if (conf.get(DIRECTORY_FLUSH_KEY) != null) {
+			DIRECTORY_FLUSH = Long.parseLong(conf.get(DIRECTORY_FLUSH_KEY));
+		}
 		if (conf.get(CACHE_IMPL_KEY) != null) {
 			CACHE_IMPL = conf.get(CACHE_IMPL_KEY);
 		}
@@ -204,6 +305,9 @@ public class CrailConstants {
 		if (conf.get(NAMENODE_BLOCKSELECTION_KEY) != null) {
 			NAMENODE_BLOCKSELECTION = conf.get(NAMENODE_BLOCKSELECTION_KEY);
 		}
+		if (conf.get(NAMENODE_PLACEMENT_KEY) != null) {
+			NAMENODE_PLACEMENT = conf.get(NAMENODE_PLACEMENT_KEY);
+		}
 		if (conf.get(NAMENODE_FILEBLOCKS_KEY) != null) {
 			NAMENODE_FILEBLOCKS = Integer.parseInt(conf.get(NAMENODE_FILEBLOCKS_KEY));
 		}
@@ -216,6 +320,27 @@ public class CrailConstants {
 		if (conf.get(NAMENODE_LOG_KEY) != null) {
 			NAMENODE_LOG = conf.get(NAMENODE_LOG_KEY);
 		}
+		if (conf.get(NAMENODE_LOG_SYNC_KEY) != null) {
+			NAMENODE_LOG_SYNC = conf.get(NAMENODE_LOG_SYNC_KEY);
+		}
+		if (conf.get(NAMENODE_LOG_BUFFER_KEY) != null) {
+			NAMENODE_LOG_BUFFER = Integer.parseInt(conf.get(NAMENODE_LOG_BUFFER_KEY));
+		}
+		if (conf.get(NAMENODE_CHECKPOINT_INTERVAL_KEY) != null) {
+			NAMENODE_CHECKPOINT_INTERVAL = Long.parseLong(conf.get(NAMENODE_CHECKPOINT_INTERVAL_KEY));
+		}
+		if (conf.get(NAMENODE_GC_THREADS_KEY) != null) {
+			NAMENODE_GC_THREADS = Integer.parseInt(conf.get(NAMENODE_GC_THREADS_KEY));
+		}
+		if (conf.get(NAMENODE_GC_RATE_KEY) != null) {
+			NAMENODE_GC_RATE = Long.parseLong(conf.get(NAMENODE_GC_RATE_KEY));
+		}
+		if (conf.get(NAMENODE_GC_BATCH_KEY) != null) {
+			NAMENODE_GC_BATCH = Integer.parseInt(conf.get(NAMENODE_GC_BATCH_KEY));
+		}
+		if (conf.get(NAMENODE_LISTING_KEY) != null) {
+			NAMENODE_LISTING = Integer.parseInt(conf.get(NAMENODE_LISTING_KEY));
+		}
 
 		//storage interface
 		if (conf.get(STORAGE_TYPES_KEY) != null) {
@@ -262,28 +387,48 @@ public class CrailConstants {
 		LOG.info(DIRECTORY_DEPTH_KEY + " " + DIRECTORY_DEPTH);
 		LOG.info(TOKEN_EXPIRATION_KEY + " " + TOKEN_EXPIRATION);
 		LOG.info(BLOCK_SIZE_KEY + " " + BLOCK_SIZE);
+		LOG.info(LEASE_BLOCKS_KEY + " " + LEASE_BLOCKS);
+		LOG.info(BLOCK_MAP_KEY + " " + BLOCK_MAP);
 		LOG.info(CACHE_LIMIT_KEY + " " + CACHE_LIMIT);
 		LOG.info(CACHE_PATH_KEY + " " + CACHE_PATH);
+		LOG.info(BLOCK_CACHE_LIMIT_KEY + " " + BLOCK_CACHE_LIMIT);
+		LOG.info(BLOCK_CACHE_TTL_KEY + " " + BLOCK_CACHE_TTL);
+		LOG.info(LOOKUP_CACHE_KEY + " " + LOOKUP_CACHE);
+		LOG.info(LOOKUP_CACHE_TTL_KEY + " " + LOOKUP_CACHE_TTL);
 		LOG.info(USER_KEY + " " + USER);
 		LOG.info(SHADOW_REPLICATION_KEY + " " + SHADOW_REPLICATION);
 		LOG.info(DEBUG_KEY + " " + DEBUG);
 		LOG.info(STATISTICS_KEY + " " + STATISTICS);
 		LOG.info(RPC_TIMEOUT_KEY + " " + RPC_TIMEOUT);
+		LOG.info(BATCH_WINDOW_KEY + " " + BATCH_WINDOW);
+		LOG.info(RPC_VERSION_KEY + " " + RPC_VERSION);
 		LOG.info(DATA_TIMEOUT_KEY + " " + DATA_TIMEOUT);
 		LOG.info(BUFFER_SIZE_KEY + " " + BUFFER_SIZE);
 		LOG.info(SLICE_SIZE_KEY + " " + SLICE_SIZE);
+		LOG.info(READ_AHEAD_KEY + " " + READ_AHEAD);
 		LOG.info(SINGLETON_KEY + " " + SINGLETON);
 		LOG.info(REGION_SIZE_KEY + " " + REGION_SIZE);
 		LOG.info(DIRECTORY_RECORD_KEY + " " + DIRECTORY_RECORD);
 		LOG.info(DIRECTORY_RANDOMIZE_KEY + " " + DIRECTORY_RANDOMIZE);
+		LOG.info(DIRECTORY_VERSION_KEY + " " + DIRECTORY_VERSION);
+		LOG.info(DIRECTORY_CONSISTENCY_KEY + " " + DIRECTORY_CONSISTENCY);
+		LOG.info(DIRECTORY_FLUSH_KEY + " " + DIRECTORY_FLUSH);
 		LOG.info(CACHE_IMPL_KEY + " " + CACHE_IMPL);
 		LOG.info(LOCATION_MAP_KEY + " " + LOCATION_MAP);
 		LOG.info(NAMENODE_ADDRESS_KEY + " " + NAMENODE_ADDRESS);
 		LOG.info(NAMENODE_BLOCKSELECTION_KEY + " " + NAMENODE_BLOCKSELECTION);
+		LOG.info(NAMENODE_PLACEMENT_KEY + " " + NAMENODE_PLACEMENT);
 		LOG.info(NAMENODE_FILEBLOCKS_KEY + " " + NAMENODE_FILEBLOCKS);
 		LOG.info(NAMENODE_RPC_TYPE_KEY + " " + NAMENODE_RPC_TYPE);
 		LOG.info(NAMENODE_RPC_SERVICE_KEY + " " + NAMENODE_RPC_SERVICE);
 		LOG.info(NAMENODE_LOG_KEY + " " + NAMENODE_LOG);
+		LOG.info(NAMENODE_LOG_SYNC_KEY + " " + NAMENODE_LOG_SYNC);
+		LOG.info(NAMENODE_LOG_BUFFER_KEY + " " + NAMENODE_LOG_BUFFER);
+		LOG.info(NAMENODE_CHECKPOINT_INTERVAL_KEY + " " + NAMENODE_CHECKPOINT_INTERVAL);
+		LOG.info(NAMENODE_GC_THREADS_KEY + " " + NAMENODE_GC_THREADS);
+		LOG.info(NAMENODE_GC_RATE_KEY + " " + NAMENODE_GC_RATE);
+		LOG.info(NAMENODE_GC_BATCH_KEY + " " + NAMENODE_GC_BATCH);
+		LOG.info(NAMENODE_LISTING_KEY + " " + NAMENODE_LISTING);
 		LOG.info(STORAGE_TYPES_KEY + " " + STORAGE_TYPES);
 		LOG.info(STORAGE_CLASSES_KEY + " " + STORAGE_CLASSES);
 		LOG.info(STORAGE_ROOTCLASS_KEY + " " + STORAGE_ROOTCLASS);
@@ -306,6 +451,58 @@ public class CrailConstants {
 		if (CrailConstants.STORAGE_CLASSES < CrailUtils.getStorageClasses(STORAGE_TYPES)){
 			throw new IOException("crail.storage.classes cannot be smaller than the number of storage types " + CrailUtils.getStorageClasses(STORAGE_TYPES));
 		}
+		if (CrailConstants.LEASE_BLOCKS < 0){
+			throw new IOException("crail.leaseblocks must not be negative");
+		}
+		if (CrailConstants.BLOCK_MAP < 0){
+			throw new IOException("crail.blockmap must not be negative");
+		}
+		if (CrailConstants.BATCH_WINDOW < 0){
+			throw new IOException("crail.batchwindow must not be negative");
+		}
+		if (CrailConstants.RPC_VERSION != RpcEncoding.VERSION_FIXED && CrailConstants.RPC_VERSION != RpcEncoding.VERSION_COMPACT){
+			throw new IOException("crail.rpcversion must be " + RpcEncoding.VERSION_FIXED + " (fixed) or " + RpcEncoding.VERSION_COMPACT + " (compact)");
+		}
+		if (CrailConstants.DIRECTORY_VERSION != DirectoryRecord.VERSION_FIXED && CrailConstants.DIRECTORY_VERSION != DirectoryRecord.VERSION_PACKED){
+			throw new IOException("crail.directoryversion must be " + DirectoryRecord.VERSION_FIXED + " (fixed) or " + DirectoryRecord.VERSION_PACKED + " (packed)");
+		}
+		if (CrailConstants.DIRECTORY_VERSION == DirectoryRecord.VERSION_PACKED && CrailConstants.DIRECTORY_RECORD <= DirectoryRecord.PACKED_HEADER){
+			throw new IOException("crail.directoryrecord must be larger than " + DirectoryRecord.PACKED_HEADER + " for packed directory records");
+		}
+		if (!CrailConstants.DIRECTORY_CONSISTENCY.equals(DirectoryWriteBack.IMMEDIATE) && !CrailConstants.DIRECTORY_CONSISTENCY.equals(DirectoryWriteBack.LAZY)){
+			throw new IOException("crail.directoryconsistency must be " + DirectoryWriteBack.IMMEDIATE + " or " + DirectoryWriteBack.LAZY);
+		}
+		//the slot of a deleted entry may be reused or trimmed once the token has expired, pending records must be written before
+		if (CrailConstants.DIRECTORY_CONSISTENCY.equals(DirectoryWriteBack.LAZY) && (CrailConstants.DIRECTORY_FLUSH <= 0 || CrailConstants.DIRECTORY_FLUSH >= TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION))){
+			throw new IOException("crail.directoryflush must be positive and less than crail.tokenexpiration");
+		}
+		if (CrailConstants.BLOCK_CACHE_LIMIT < 0){
+			throw new IOException("crail.blockcachelimit must not be negative");
+		}
+		if (CrailConstants.BLOCK_CACHE_TTL < 0){
+			throw new IOException("crail.blockcachettl must not be negative");
+		}
+		if (CrailConstants.READ_AHEAD < 1){
+			throw new IOException("crail.readahead must be at least 1");
+		}
+		if (CrailConstants.LOOKUP_CACHE < 0){
+			throw new IOException("crail.lookupcache must not be negative");
+		}
+		if (CrailConstants.LOOKUP_CACHE > 0 && CrailConstants.LOOKUP_CACHE_TTL <= 0){
+			throw new IOException("crail.lookupcachettl must be positive");
+		}
+		if (CrailConstants.NAMENODE_GC_THREADS < 1){
+			throw new IOException("crail.namenode.gc.threads must be at least 1");
+		}
+		if (CrailConstants.NAMENODE_GC_RATE < 0){
+			throw new IOException("crail.namenode.gc.rate must not be negative");
+		}
+		if (CrailConstants.NAMENODE_GC_BATCH < 1){
+			throw new IOException("crail.namenode.gc.batch must be at least 1");
+		}
+		if (CrailConstants.NAMENODE_LISTING < 0 || CrailConstants.NAMENODE_LISTING > RpcListDirectory.MAX_NAME){
+			throw new IOException("crail.namenode.listing must be between 0 and " + RpcListDirectory.MAX_NAME);
+		}
 
 	}
 }
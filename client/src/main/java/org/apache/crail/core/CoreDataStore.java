@@ -24,6 +24,7 @@ import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.StringTokenizer;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -38,6 +39,7 @@ import org.apache.crail.CrailStore;
 import org.apache.crail.CrailLocationClass;
 import org.apache.crail.CrailNode;
 import org.apache.crail.CrailNodeType;
+import org.apache.crail.CrailPlacementPolicy;
 import org.apache.crail.CrailResult;
 import org.apache.crail.CrailStatistics;
 import org.apache.crail.CrailStorageClass;
@@ -49,6 +51,7 @@ import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.metadata.FileInfo;
 import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcBatcher;
 import org.apache.crail.rpc.RpcClient;
 import org.apache.crail.rpc.RpcConnection;
 import org.apache.crail.rpc.RpcCreateFile;
@@ -57,7 +60,7 @@ import org.apache.crail.rpc.RpcDispatcher;
 import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcFuture;
 import org.apache.crail.rpc.RpcGetFile;
-import org.apache.crail.rpc.RpcGetLocation;
+import org.apache.crail.rpc.RpcGetLocations;
 import org.apache.crail.rpc.RpcPing;
 import org.apache.crail.rpc.RpcRenameFile;
 import org.apache.crail.storage.StorageClient;
@@ -99,6 +102,8 @@ public class CoreDataStore extends CrailStore {
 	private CoreIOStatistics ioStatsOut;
 	private CoreStreamStatistics streamStats;
 	private CrailStatistics statistics;
+	private DirectoryWriteBack writeBack;
+	private LookupCache lookupCache;
 
 	public CoreDataStore(CrailConfiguration conf) throws Exception {
 		CrailConstants.updateConstants(conf);
@@ -130,6 +135,9 @@ public class CoreDataStore extends CrailStore {
 		while(!namenodeList.isEmpty()){
 			InetSocketAddress address = namenodeList.poll();
 			RpcConnection connection = rpcClient.connect(address);
+			if (CrailConstants.BATCH_WINDOW > 0){
+				connection = new RpcBatcher(connection, CrailConstants.BATCH_WINDOW);
+			}
 			connectionList.add(connection);
 		}
 		if (connectionList.size() == 1){
@@ -160,16 +168,33 @@ public class CoreDataStore extends CrailStore {
 		statistics.addProvider(streamStats);
 		statistics.addProvider(bufferCache);
 		statistics.addProvider(datanodeEndpointCache);
+		statistics.addProvider(blockCache);
+		statistics.addProvider(nextBlockCache);
+		if (CrailConstants.DIRECTORY_CONSISTENCY.equals(DirectoryWriteBack.LAZY)){
+			this.writeBack = new DirectoryWriteBack(this);
+			statistics.addProvider(writeBack);
+		}
+		if (CrailConstants.LOOKUP_CACHE > 0){
+			this.lookupCache = new LookupCache(CrailConstants.LOOKUP_CACHE, CrailConstants.LOOKUP_CACHE_TTL);
+			statistics.addProvider(lookupCache);
+		}
 	}
 
 	public Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception {
+		return create(path, type, storageClass, locationClass, CrailPlacementPolicy.PARENT, enumerable);
+	}
+
+	public Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, CrailPlacementPolicy placement, boolean enumerable) throws Exception {
 		FileName name = new FileName(path);
+		if (enumerable){
+			DirectoryRecord.checkName(path);
+		}
 
 		if (CrailConstants.DEBUG){
-			LOG.info("createNode: name " + path + ", type " + type + ", storageAffinity " + storageClass + ", locationAffinity " + locationClass);
+			LOG.info("createNode: name " + path + ", type " + type + ", storageAffinity " + storageClass + ", locationAffinity " + locationClass + ", placement " + placement);
 		}
 
-		RpcFuture<RpcCreateFile> fileRes = rpcConnection.createFile(name, type, storageClass.value(), locationClass.value(), enumerable);
+		RpcFuture<RpcCreateFile> fileRes = rpcConnection.createFile(name, type, storageClass.value(), locationClass.value(), placement.getLabel(), enumerable);
 		return new CreateNodeFuture(this, path, type, fileRes);
 	}
 
@@ -194,6 +219,9 @@ public class CoreDataStore extends CrailStore {
 
 		blockCache.remove(fileInfo.getFd());
 		nextBlockCache.remove(fileInfo.getFd());
+		if (lookupCache != null){
+			lookupCache.invalidate(path, false);
+		}
 		CoreNode node = CoreNode.create(this, fileInfo, path);
 
 		BlockInfo fileBlock = fileRes.getFileBlock();
@@ -205,6 +233,12 @@ public class CoreDataStore extends CrailStore {
 			getBlockCache(dirInfo.getFd()).put(CoreSubOperation.createKey(dirInfo.getFd(), fileInfo.getDirOffset()), dirBlock);
 			CoreSyncOperation syncOperation = getSyncOperation(dirInfo, fileInfo, path, true);
 			node.addSyncOperation(syncOperation);
+			//packed records carry the capacity, which the writer refreshes on close
+			if (CrailConstants.DIRECTORY_VERSION == DirectoryRecord.VERSION_PACKED && !type.isContainer()){
+				FileInfo parentInfo = new FileInfo();
+				parentInfo.setFileInfo(dirInfo);
+				((CoreFile) node).setParentInfo(parentInfo);
+			}
 		}
 
 		if (CrailConstants.DEBUG){
@@ -221,12 +255,39 @@ public class CoreDataStore extends CrailStore {
 			LOG.info("lookupDirectory: path " + path);
 		}
 
+		return lookupNode(name, path);
+	}
+
+	private Upcoming<CrailNode> lookupNode(FileName name, String path) throws Exception {
+		long generation = 0;
+		if (lookupCache != null){
+			LookupCache.CachedLookup entry = lookupCache.get(path);
+			if (entry != null){
+				return new CachedNodeFuture(_cachedNode(entry, path));
+			}
+			generation = lookupCache.generation();
+		}
 		RpcFuture<RpcGetFile> fileRes = rpcConnection.getFile(name, false);
-		return new LookupNodeFuture(this, path, fileRes);
+		return new LookupNodeFuture(this, path, fileRes, generation);
 	}
 
-	CoreNode _lookupNode(RpcGetFile fileRes, String path) throws Exception {
+	private CoreNode _cachedNode(LookupCache.CachedLookup entry, String path) throws Exception {
+		FileInfo fileInfo = entry.getFileInfo();
+		if (fileInfo == null){
+			return null;
+		}
+		if (CrailConstants.DEBUG){
+			LOG.info("lookup: name " + path + ", cached, fd " + fileInfo.getFd());
+		}
+		getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), entry.getFileBlock());
+		return CoreNode.create(this, fileInfo, path);
+	}
+
+	CoreNode _lookupNode(RpcGetFile fileRes, String path, long generation) throws Exception {
 		if (fileRes.getError() == RpcErrors.ERR_GET_FILE_FAILED){
+			if (lookupCache != null){
+				lookupCache.put(path, null, null, generation);
+			}
 			return null;
 		}
 		else if (fileRes.getError() != RpcErrors.ERR_OK){
@@ -243,6 +304,9 @@ public class CoreDataStore extends CrailStore {
 			}
 			BlockInfo fileBlock = fileRes.getFileBlock();
 			getBlockCache(fileInfo.getFd()).put(CoreSubOperation.createKey(fileInfo.getFd(), 0), fileBlock);
+			if (lookupCache != null){
+				lookupCache.put(path, fileInfo, fileBlock, generation);
+			}
 
 			node = CoreNode.create(this, fileInfo, path);
 		}
@@ -253,6 +317,7 @@ public class CoreDataStore extends CrailStore {
 	public Upcoming<CrailNode> rename(String src, String dst) throws Exception {
 		FileName srcPath = new FileName(src);
 		FileName dstPath = new FileName(dst);
+		DirectoryRecord.checkName(dst);
 
 		if (CrailConstants.DEBUG){
 			LOG.info("rename: srcname " + src + ", dstname " + dst);
@@ -297,6 +362,10 @@ public class CoreDataStore extends CrailStore {
 		CoreSyncOperation syncOperationDst = getSyncOperation(dstDir, dstFile, dst, true);
 
 		blockCache.remove(srcFile.getFd());
+		if (lookupCache != null){
+			lookupCache.invalidate(src, srcFile.getType().isContainer());
+			lookupCache.invalidate(dst, dstFile.getType().isContainer());
+		}
 
 		if (CrailConstants.DEBUG){
 			LOG.info("rename: srcname " + src + ", dstname " + dst + ", success");
@@ -335,6 +404,9 @@ public class CoreDataStore extends CrailStore {
 		CoreSyncOperation syncOperation = getSyncOperation(dirInfo, fileInfo, path, false);
 
 		blockCache.remove(fileInfo.getFd());
+		if (lookupCache != null){
+			lookupCache.invalidate(path, fileInfo.getType().isContainer());
+		}
 
 		if (CrailConstants.DEBUG){
 			LOG.info("delete: name " + path + ", recursive " + recursive + ", success");
@@ -345,6 +417,53 @@ public class CoreDataStore extends CrailStore {
 		return node;
 	}
 
+	//directory relative variants, the namenode resolves the name starting at the directory fd instead of the root
+	Upcoming<CrailNode> create(CoreDirectory directory, String name, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception {
+		FileName fileName = relativeName(directory, name);
+		String path = directory.getChildPath(name);
+		if (enumerable){
+			DirectoryRecord.checkName(path);
+		}
+
+		if (CrailConstants.DEBUG){
+			LOG.info("createNode: name " + path + ", dir fd " + directory.getFd() + ", type " + type + ", storageAffinity " + storageClass + ", locationAffinity " + locationClass);
+		}
+
+		RpcFuture<RpcCreateFile> fileRes = rpcConnection.createFile(fileName, type, storageClass.value(), locationClass.value(), CrailPlacementPolicy.PARENT.getLabel(), enumerable);
+		return new CreateNodeFuture(this, path, type, fileRes);
+	}
+
+	Upcoming<CrailNode> lookup(CoreDirectory directory, String name) throws Exception {
+		FileName fileName = relativeName(directory, name);
+		String path = directory.getChildPath(name);
+
+		if (CrailConstants.DEBUG){
+			LOG.info("lookupDirectory: path " + path + ", dir fd " + directory.getFd());
+		}
+
+		return lookupNode(fileName, path);
+	}
+
+	Upcoming<CrailNode> delete(CoreDirectory directory, String name, boolean recursive) throws Exception {
+		FileName fileName = relativeName(directory, name);
+		String path = directory.getChildPath(name);
+
+		if (CrailConstants.DEBUG){
+			LOG.info("delete: name " + path + ", dir fd " + directory.getFd() + ", recursive " + recursive);
+		}
+
+		RpcFuture<RpcDeleteFile> fileRes = rpcConnection.removeFile(fileName, recursive);
+		return new DeleteNodeFuture(this, path, recursive, fileRes);
+	}
+
+	private FileName relativeName(CoreDirectory directory, String name) throws IOException {
+		FileName fileName = new FileName(directory.getFd(), name);
+		if (fileName.getLength() == 0 || directory.getDepth() + fileName.getLength() > CrailConstants.DIRECTORY_DEPTH){
+			throw new IOException("invalid relative filename " + name + ", directory " + directory.getPath() + ", tokens " + fileName.getLength());
+		}
+		return fileName;
+	}
+
 	public DirectoryInputStream listEntries(String name) throws Exception {
 		return _listEntries(name, CrailConstants.DIRECTORY_RANDOMIZE);
 	}
@@ -368,52 +487,122 @@ public class CoreDataStore extends CrailStore {
 			throw new FileNotFoundException(RpcErrors.messages[RpcErrors.ERR_FILE_IS_NOT_DIR]);
 		}
 
+		//the client reads its own buffered records
+		if (writeBack != null){
+			writeBack.flush(dirInfo.getFd());
+		}
 		CoreDirectory dirFile = new CoreDirectory(this, dirInfo, name);
 		DirectoryInputStream inputStream = dirFile.getDirectoryInputStream(randomize);
 		return inputStream;
 	}
 
 	public CrailBlockLocation[] getBlockLocations(String path, long start, long len) throws Exception {
-		if (CrailConstants.DEBUG){
-			LOG.info("location: path " + path + ", start " + start + ", len " + len);
-		}
-
 		if (path == null) {
 			LOG.info("Path null");
 			return null;
 		}
-		if (start < 0 || len < 0) {
-			LOG.info("Start or len invalid");
-			throw new IOException("Invalid start or len parameter");
+		return getBlockLocations(new String[]{ path }, new long[]{ start }, new long[]{ len })[0];
+	}
+
+	public CrailBlockLocation[][] getBlockLocations(String[] paths, long[] start, long[] len) throws Exception {
+		//issue the location requests for all files before waiting for any of them
+		FileName[] names = new FileName[paths.length];
+		ArrayList<LinkedList<RpcFuture<RpcGetLocations>>> pages = new ArrayList<LinkedList<RpcFuture<RpcGetLocations>>>(paths.length);
+		for (int i = 0; i < paths.length; i++){
+			if (CrailConstants.DEBUG){
+				LOG.info("location: path " + paths[i] + ", start " + start[i] + ", len " + len[i]);
+			}
+			if (start[i] < 0 || len[i] < 0) {
+				LOG.info("Start or len invalid");
+				throw new IOException("Invalid start or len parameter");
+			}
+			LinkedList<RpcFuture<RpcGetLocations>> filePages = new LinkedList<RpcFuture<RpcGetLocations>>();
+			if (paths[i] != null){
+				names[i] = new FileName(paths[i]);
+				int blockCount = locationCount(start[i], len[i]);
+				long rangeStart = CrailUtils.blockStartAddress(start[i]);
+				for (int index = 0; index < blockCount; index += RpcGetLocations.MAX_BLOCKS){
+					filePages.add(rpcConnection.getLocations(names[i], rangeStart + index*CrailConstants.BLOCK_SIZE, Math.min(RpcGetLocations.MAX_BLOCKS, blockCount - index)));
+				}
+			} else {
+				LOG.info("Path null");
+			}
+			pages.add(filePages);
 		}
 
+		CrailBlockLocation[][] locations = new CrailBlockLocation[paths.length][];
+		for (int i = 0; i < paths.length; i++){
+			if (names[i] != null){
+				DataNodeInfo[] dataNodes = collectLocations(names[i], start[i], len[i], pages.get(i));
+				locations[i] = getBlockLocations(start[i], len[i], dataNodes);
+			}
+		}
+		return locations;
+	}
 
-		FileName name = new FileName(path);
-		long rangeStart = CrailUtils.blockStartAddress(start);
+	private int locationCount(long start, long len){
 		long range = start + len - CrailUtils.blockStartAddress(start);
 		long blockCount = range / CrailConstants.BLOCK_SIZE;
 		if (range % CrailConstants.BLOCK_SIZE > 0){
 			blockCount++;
 		}
-		CoreBlockLocation[] blockLocations = new CoreBlockLocation[(int) blockCount];
-		HashMap<Long, DataNodeInfo> dataNodeSet = new HashMap<Long, DataNodeInfo>();
-		HashMap<Long, DataNodeInfo> offset2DataNode = new HashMap<Long, DataNodeInfo>();
+		return (int) blockCount;
+	}
 
-		for (long current = CrailUtils.blockStartAddress(start); current < start + len; current += CrailConstants.BLOCK_SIZE){
-			RpcGetLocation getLocationRes = rpcConnection.getLocation(name, current).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
-			if (getLocationRes.getError() != RpcErrors.ERR_OK) {
-				LOG.info("location: " + RpcErrors.messages[getLocationRes.getError()]);
-				throw new IOException(RpcErrors.messages[getLocationRes.getError()]);
-			}
+	private DataNodeInfo[] collectLocations(FileName name, long start, long len, LinkedList<RpcFuture<RpcGetLocations>> pages) throws Exception {
+		long rangeStart = CrailUtils.blockStartAddress(start);
+		int blockCount = locationCount(start, len);
+		DataNodeInfo[] dataNodes = new DataNodeInfo[blockCount];
+		int index = 0;
+		for (RpcFuture<RpcGetLocations> future = pages.poll(); future != null; future = pages.poll()){
+			int count = Math.min(RpcGetLocations.MAX_BLOCKS, blockCount - index);
+			resolveLocations(name, rangeStart, dataNodes, index, count, future.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS));
+			index += count;
+		}
+		return dataNodes;
+	}
+
+	//a response ends early if its blocks are spread over too many datanodes, the rest is requested
+	//in pieces of the size that did fit, all issued before waiting
+	private void resolveLocations(FileName name, long rangeStart, DataNodeInfo[] dataNodes, int index, int count, RpcGetLocations getLocationsRes) throws Exception {
+		if (getLocationsRes.getError() != RpcErrors.ERR_OK) {
+			LOG.info("location: " + RpcErrors.messages[getLocationsRes.getError()]);
+			throw new IOException(RpcErrors.messages[getLocationsRes.getError()]);
+		}
+		int resolved = Math.min(count, getLocationsRes.getBlockCount());
+		if (resolved <= 0){
+			throw new IOException(RpcErrors.messages[RpcErrors.ERR_OFFSET_TOO_LARGE]);
+		}
+		for (int i = 0; i < resolved; i++){
+			dataNodes[index + i] = getLocationsRes.getDataNode(i);
+		}
+		if (resolved == count){
+			return;
+		}
+		
+		LinkedList<RpcFuture<RpcGetLocations>> pieces = new LinkedList<RpcFuture<RpcGetLocations>>();
+		for (int i = index + resolved; i < index + count; i += resolved){
+			pieces.add(rpcConnection.getLocations(name, rangeStart + i*CrailConstants.BLOCK_SIZE, Math.min(resolved, index + count - i)));
+		}
+		int next = index + resolved;
+		for (RpcFuture<RpcGetLocations> future = pieces.poll(); future != null; future = pieces.poll()){
+			int pieceCount = Math.min(resolved, index + count - next);
+			resolveLocations(name, rangeStart, dataNodes, next, pieceCount, future.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS));
+			next += pieceCount;
+		}
+	}
 
-			DataNodeInfo dataNodeInfo = getLocationRes.getBlockInfo().getDnInfo();
-			dataNodeSet.put(dataNodeInfo.key(), dataNodeInfo);
+	private CrailBlockLocation[] getBlockLocations(long start, long len, DataNodeInfo[] dataNodes) throws Exception {
+		long rangeStart = CrailUtils.blockStartAddress(start);
+		CoreBlockLocation[] blockLocations = new CoreBlockLocation[dataNodes.length];
+		HashMap<Long, DataNodeInfo> dataNodeSet = new HashMap<Long, DataNodeInfo>();
+		for (int i = 0; i < dataNodes.length; i++){
+			long current = rangeStart + i*CrailConstants.BLOCK_SIZE;
+			dataNodeSet.put(dataNodes[i].key(), dataNodes[i]);
 			CoreBlockLocation location = new CoreBlockLocation();
 			location.setOffset(current);
 			location.setLength(Math.min(start + len - current, CrailConstants.BLOCK_SIZE));
-			long index = (current - rangeStart) / CrailConstants.BLOCK_SIZE;
-			blockLocations[(int) index] = location;
-			offset2DataNode.put(current, dataNodeInfo);
+			blockLocations[i] = location;
 		}
 
 		//asign an identifier to each data node
@@ -435,8 +624,7 @@ public class CoreDataStore extends CrailStore {
 			int[] storageClass = new int[locationSize];
 			int[] locationTiers = new int[locationSize];
 
-			DataNodeInfo dnInfo = offset2DataNode.get(location.getOffset());
-			DataNodeInfo mainDataNode = dataNodeSet.get(dnInfo.key());
+			DataNodeInfo mainDataNode = dataNodeSet.get(dataNodes[i].key());
 			InetSocketAddress address = CrailUtils.datanodeInfo2SocketAddr(mainDataNode);
 			names[0] = getMappedLocation(address.getAddress().getCanonicalHostName()) + ":" + address.getPort();
 			hosts[0] = getMappedLocation(address.getAddress().getCanonicalHostName());
@@ -530,6 +718,9 @@ public class CoreDataStore extends CrailStore {
 		for (CoreOutputStream stream : tmpOutDir) {
 			stream.close();
 		}
+		if (writeBack != null){
+			writeBack.close();
+		}
 
 		bufferCache.close();
 		datanodeEndpointCache.close();
@@ -613,6 +804,10 @@ public class CoreDataStore extends CrailStore {
 				streamStats.incCloseOutputDir();
 			}
 		}
+		//the capacity has been synced with the namenode
+		if (stream != null && lookupCache != null){
+			lookupCache.invalidate(stream.getFile().getPath(), false);
+		}
 
 		return stream;
 	}
@@ -639,13 +834,41 @@ public class CoreDataStore extends CrailStore {
 	}
 
 	CoreSyncOperation getSyncOperation(FileInfo dirInfo, FileInfo fileInfo, String path, boolean valid) throws Exception{
-		long adjustedCapacity = fileInfo.getDirOffset()*CrailConstants.DIRECTORY_RECORD + CrailConstants.DIRECTORY_RECORD;
-		dirInfo.setCapacity(Math.max(dirInfo.getCapacity(), adjustedCapacity));
-		CoreDirectory dirFile = new CoreDirectory(this, dirInfo, CrailUtils.getParent(path));
-		DirectoryOutputStream stream = dirFile.getDirectoryOutputStream();
-		DirectoryRecord record = new DirectoryRecord(valid, path);
+		DirectoryRecord record = new DirectoryRecord(valid, path, valid ? fileInfo : null);
+		if (writeBack != null && fileInfo.getDirOffset() >= 0){
+			return writeBack.addRecord(dirInfo, fileInfo.getDirOffset(), record);
+		}
+		DirectoryOutputStream stream = getDirectoryOutputStream(dirInfo, fileInfo.getDirOffset(), CrailUtils.getParent(path));
 		Future<CrailResult> future = stream.writeRecord(record, fileInfo.getDirOffset());
 		CoreSyncOperation syncOperation = new CoreSyncOperation(stream, future);
 		return syncOperation;
 	}
+	
+	//writes the buffered records of adjacent slots from first to last
+	CoreSyncOperation getSyncOperation(FileInfo dirInfo, String parent, long first, long last, List<DirectoryRecord> records) throws Exception{
+		DirectoryOutputStream stream = getDirectoryOutputStream(dirInfo, last, parent);
+		Future<CrailResult> future = stream.writeRecords(records, first);
+		CoreSyncOperation syncOperation = new CoreSyncOperation(stream, future);
+		return syncOperation;
+	}
+	
+	void updateDirectoryRecord(FileInfo dirInfo, FileInfo fileInfo, String path) throws Exception{
+		DirectoryRecord record = new DirectoryRecord(true, path, fileInfo);
+		//a buffered record is replaced as a whole, it may not have been written yet
+		if (writeBack != null){
+			writeBack.addRecord(dirInfo, fileInfo.getDirOffset(), record);
+			return;
+		}
+		DirectoryOutputStream stream = getDirectoryOutputStream(dirInfo, fileInfo.getDirOffset(), CrailUtils.getParent(path));
+		Future<CrailResult> future = stream.writeAttributes(record, fileInfo.getDirOffset());
+		CoreSyncOperation syncOperation = new CoreSyncOperation(stream, future);
+		syncOperation.close();
+	}
+	
+	private DirectoryOutputStream getDirectoryOutputStream(FileInfo dirInfo, long dirOffset, String parent) throws Exception{
+		long adjustedCapacity = dirOffset*CrailConstants.DIRECTORY_RECORD + CrailConstants.DIRECTORY_RECORD;
+		dirInfo.setCapacity(Math.max(dirInfo.getCapacity(), adjustedCapacity));
+		CoreDirectory dirFile = new CoreDirectory(this, dirInfo, parent);
+		return dirFile.getDirectoryOutputStream();
+	}
 }
@@ -19,15 +19,22 @@
 package org.apache.crail.core;
 
 import java.util.Iterator;
+import java.util.StringTokenizer;
 
 import org.apache.crail.CrailContainer;
 import org.apache.crail.CrailDirectory;
+import org.apache.crail.CrailLocationClass;
 import org.apache.crail.CrailMultiFile;
+import org.apache.crail.CrailNode;
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.CrailStorageClass;
 import org.apache.crail.CrailTable;
+import org.apache.crail.Upcoming;
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.FileInfo;
 
 class CoreDirectory extends CoreNode implements CrailContainer, CrailDirectory, CrailMultiFile, CrailTable {
+	private int depth = -1;
 	
 	public CoreDirectory(CoreDataStore fs, FileInfo fileInfo, String path){
 		super(fs, fileInfo, path);
@@ -43,8 +50,36 @@ class CoreDirectory extends CoreNode implements CrailContainer, CrailDirectory,
 
 	@Override
 	public Iterator<String> listEntries() throws Exception {
+		DirectoryListing listing = openListing();
+		if (listing != null){
+			return listing.entries();
+		}
 		return fs.listEntries(path);
 	}
+	
+	@Override
+	public Iterator<CrailNode> listNodes() throws Exception {
+		DirectoryListing listing = openListing();
+		if (listing != null){
+			return listing.nodes();
+		}
+		return new DirectoryNodeIterator(fs, fs.listEntries(path));
+	}
+	
+	@Override
+	public Upcoming<CrailNode> create(String name, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception {
+		return fs.create(this, name, type, storageClass, locationClass, enumerable);
+	}
+	
+	@Override
+	public Upcoming<CrailNode> lookup(String name) throws Exception {
+		return fs.lookup(this, name);
+	}
+	
+	@Override
+	public Upcoming<CrailNode> delete(String name, boolean recursive) throws Exception {
+		return fs.delete(this, name, recursive);
+	}
 
 	@Override
 	public CoreDirectory asDirectory() throws Exception {
@@ -78,6 +113,25 @@ class CoreDirectory extends CoreNode implements CrailContainer, CrailDirectory,
 		return this;
 	}
 	
+	//multifile streams read their parts in the order of the directory records
+	private DirectoryListing openListing() throws Exception {
+		if (CrailConstants.NAMENODE_LISTING == 0 || getType().isMultiFile()){
+			return null;
+		}
+		return DirectoryListing.open(fs, getFd(), path);
+	}
+	
+	String getChildPath(String name) {
+		return path.endsWith("/") ? path + name : path + "/" + name;
+	}
+	
+	int getDepth() {
+		if (depth < 0){
+			depth = new StringTokenizer(path, "/").countTokens();
+		}
+		return depth;
+	}
+	
 	DirectoryOutputStream getDirectoryOutputStream() throws Exception {
 		CoreOutputStream outputStream = super.getOutputStream(0);
 		return new DirectoryOutputStream(outputStream);
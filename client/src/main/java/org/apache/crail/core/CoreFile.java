@@ -36,10 +36,13 @@ import org.apache.crail.metadata.FileInfo;
 
 public class CoreFile extends CoreNode implements CrailFile, CrailKeyValue {
 	private Semaphore outputStreams;
+	//parent at create time, set if the directory record of the file needs to be refreshed on close
+	private FileInfo parentInfo;
 	
 	public CoreFile(CoreDataStore fs, FileInfo fileInfo, String path){
 		super(fs, fileInfo, path);
 		this.outputStreams = new Semaphore(1);
+		this.parentInfo = null;
 	}
 	
 	public CrailInputStream getDirectInputStream(long readHint) throws Exception{
@@ -86,8 +89,18 @@ public class CoreFile extends CoreNode implements CrailFile, CrailKeyValue {
 	}	
 
 	void closeOutputStream(CoreOutputStream stream) throws Exception {
-		super.closeOutputStream(stream);
-		outputStreams.release();
+		try {
+			super.closeOutputStream(stream);
+			if (parentInfo != null){
+				fs.updateDirectoryRecord(parentInfo, fileInfo, path);
+			}
+		} finally {
+			outputStreams.release();
+		}
+	}
+	
+	void setParentInfo(FileInfo parentInfo){
+		this.parentInfo = parentInfo;
 	}
 }
 
@@ -46,6 +46,10 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 		this.readHint = Math.max(0, Math.min(file.getCapacity(), readHint));
 		this.noOp = new CrailImmediateOperation(0);
 		this.open = true;
+		//the block map is requested on open, the first read waits for it
+		if (CrailConstants.BLOCK_MAP > 0){
+			fetchBlockMap(CrailConstants.BLOCK_MAP);
+		}
 		if (CrailConstants.DEBUG){
 			LOG.info("CoreInputStream: open, path  " + file.getPath() + ", fd " + file.getFd() + ", streamId " + streamId + ", isDir " + file.getType().isDirectory() + ", readHint " + this.readHint);
 		}
@@ -69,6 +73,9 @@ public class CoreInputStream extends CoreStream implements CrailInputStream {
 			dataBuf.limit(dataBuf.position() + _fileAvailable);
 		}
 		
+		if (CrailConstants.BLOCK_MAP > 0){
+			fetchBlockMap(CrailConstants.BLOCK_MAP);
+		}
 		inFlight.incrementAndGet();
 		CoreDataOperation future = dataOperation(dataBuf);
 		if (position() < readHint){
@@ -179,16 +179,18 @@ class CreateNodeFuture extends CoreMetaDataOperation<RpcCreateFile, CrailNode> {
 class LookupNodeFuture extends CoreMetaDataOperation<RpcGetFile, CrailNode> {
 	private String path;
 	private CoreDataStore fs;	
+	private long generation;
 
-	public LookupNodeFuture(CoreDataStore fs, String path, Future<RpcGetFile> fileRes) {
+	public LookupNodeFuture(CoreDataStore fs, String path, Future<RpcGetFile> fileRes, long generation) {
 		super(fileRes);
 		this.fs = fs;
 		this.path = path;
+		this.generation = generation;
 	}
 
 	@Override
 	CrailNode process(RpcGetFile tmp) throws Exception {
-		return fs._lookupNode(tmp, path);
+		return fs._lookupNode(tmp, path, generation);
 	}
 
 }
@@ -273,4 +275,42 @@ class NoOperation implements Future<Void> {
 	}
 }
 
+//lookup served from the client lookup cache
+class CachedNodeFuture implements Upcoming<CrailNode> {
+	private CrailNode node;
 
+	public CachedNodeFuture(CrailNode node){
+		this.node = node;
+	}
+
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return false;
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return false;
+	}
+
+	@Override
+	public boolean isDone() {
+		return true;
+	}
+
+	@Override
+	public CrailNode get() throws InterruptedException, ExecutionException {
+		return node;
+	}
+
+	@Override
+	public CrailNode get(long timeout, TimeUnit unit) throws InterruptedException,
+			ExecutionException, TimeoutException {
+		return node;
+	}
+
+	@Override
+	public CrailNode early() throws Exception {
+		return node;
+	}
+}
@@ -39,6 +39,7 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 	private long writeHint;
 	private CrailImmediateOperation noOp;
 	private boolean open;
+	private int leaseSize;
 	
 	public CoreOutputStream(CoreNode file, long streamId, long writeHint) throws Exception {
 		super(file, streamId, file.getCapacity());
@@ -46,6 +47,7 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		this.inFlight = new AtomicLong(0);
 		this.noOp = new CrailImmediateOperation(0);
 		this.open = true;
+		this.leaseSize = 1;
 		if (CrailConstants.DEBUG){
 			LOG.info("CoreOutputStream, open, path " + file.getPath() + ", fd " + file.getFd() + ", streamId " + streamId + ", isDir " + file.getType().isDirectory() + ", writeHint " + this.writeHint);
 		}
@@ -92,6 +94,7 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		}
 		
 		sync().get();
+		releaseBlocks();
 		updateIOStats();
 		node.closeOutputStream(this);
 		open = false;
@@ -107,6 +110,21 @@ public class CoreOutputStream extends CoreStream implements CrailOutputStream {
 		return dataFuture;		
 	}	
 	
+	//leases cover the remaining write hint, without a hint the lease doubles with every request
+	int leaseSize(long position){
+		if (CrailConstants.LEASE_BLOCKS <= 1 || getFile().getType().isContainer()){
+			return 1;
+		}
+		if (writeHint > position){
+			long remaining = writeHint - CrailUtils.blockStartAddress(position);
+			long blocks = (remaining + CrailConstants.BLOCK_SIZE - 1) / CrailConstants.BLOCK_SIZE;
+			return (int) Math.max(1, Math.min(blocks, CrailConstants.LEASE_BLOCKS));
+		}
+		int size = leaseSize;
+		leaseSize = Math.min(leaseSize*2, CrailConstants.LEASE_BLOCKS);
+		return size;
+	}
+	
 	synchronized void update(long newCapacity) {
 		inFlight.decrementAndGet();
 		setCapacity(newCapacity);
@@ -32,6 +32,8 @@ import org.apache.crail.rpc.RpcConnection;
 import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcFuture;
 import org.apache.crail.rpc.RpcGetBlock;
+import org.apache.crail.rpc.RpcGetBlocks;
+import org.apache.crail.rpc.RpcLeaseBlocks;
 import org.apache.crail.storage.StorageEndpoint;
 import org.apache.crail.storage.StorageFuture;
 import org.apache.crail.utils.BufferCheckpoint;
@@ -58,7 +60,11 @@ public abstract class CoreStream {
 	private long streamId;
 	private CoreIOStatistics ioStats;
 	private HashMap<Integer, CoreSubOperation> blockMap;
-	private LinkedList<RpcFuture<RpcGetBlock>> pendingBlocks;
+	private LinkedList<RpcFuture<? extends RpcGetBlock>> pendingBlocks;
+	//pages of the block map requested last, waited for by the first data operation missing the block cache
+	private LinkedList<RpcFuture<RpcGetBlocks>> blockMapPages;
+	private long blockMapStart;
+	private boolean leased;
 
 	abstract StorageFuture trigger(StorageEndpoint endpoint, CoreSubOperation opDesc, CrailBuffer buffer, BlockInfo block) throws Exception;
 	abstract void update(long newCapacity);
@@ -79,7 +85,10 @@ public abstract class CoreStream {
 		this.ioStats = new CoreIOStatistics("core");
 
 		this.blockMap = new HashMap<Integer, CoreSubOperation>();
-		this.pendingBlocks = new LinkedList<RpcFuture<RpcGetBlock>>();
+		this.pendingBlocks = new LinkedList<RpcFuture<? extends RpcGetBlock>>();
+		this.blockMapPages = new LinkedList<RpcFuture<RpcGetBlocks>>();
+		this.blockMapStart = 0;
+		this.leased = false;
 	}
 
 	final CoreDataOperation dataOperation(CrailBuffer dataBuf) throws Exception {
@@ -95,18 +104,21 @@ public abstract class CoreStream {
 //			LOG.info("OpDesc: " + opDesc.toString());
 			ioStats.incTotalOps((long) opLen);
 
-			if (blockCache.containsKey(subOperation.key())){
-				BlockInfo block = blockCache.get(subOperation.key());
+			//the caches may be evicted concurrently, entries are looked up once
+			BlockInfo block = blockCache.get(subOperation.key());
+			if (block == null && !blockMapPages.isEmpty()){
+				awaitBlockMap();
+				block = blockCache.recheck(subOperation.key());
+			}
+			if (block != null){
 				StorageFuture subFuture = this.prepareAndTrigger(subOperation, dataBuf, block);
 				multiOperation.add(subFuture);
 				this.ioStats.incCachedOps();
-			} else if (nextBlockCache.containsKey(subOperation.key())){
-				RpcFuture<RpcGetBlock> rpcFuture = nextBlockCache.get(subOperation.key());
-				blockMap.put(rpcFuture.getTicket(), subOperation);
-				pendingBlocks.add(rpcFuture);
 			} else {
-				this.syncedCapacity = fileInfo.getCapacity();
-				RpcFuture<RpcGetBlock> rpcFuture = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), position, syncedCapacity);
+				RpcFuture<? extends RpcGetBlock> rpcFuture = nextBlockCache.get(subOperation.key());
+				if (rpcFuture == null){
+					rpcFuture = requestBlocks(position);
+				}
 				blockMap.put(rpcFuture.getTicket(), subOperation);
 				pendingBlocks.add(rpcFuture);
 			}
@@ -116,7 +128,7 @@ public abstract class CoreStream {
 		}
 
 		//wait for RPC results and start reads for those blocks as well
-		for (RpcFuture<RpcGetBlock> rpcFuture = pendingBlocks.poll(); rpcFuture != null; rpcFuture = pendingBlocks.poll()){
+		for (RpcFuture<? extends RpcGetBlock> rpcFuture = pendingBlocks.poll(); rpcFuture != null; rpcFuture = pendingBlocks.poll()){
 			if (!rpcFuture.isDone()){
 				this.ioStats.incBlockingOps();
 				if (rpcFuture.isPrefetched()){
@@ -142,6 +154,9 @@ public abstract class CoreStream {
 			StorageFuture subFuture = prepareAndTrigger(subOperation, dataBuf, block);
 			multiOperation.add(subFuture);
 			blockCache.put(subOperation.key(), block);
+			if (getBlockRes instanceof RpcLeaseBlocks){
+				cacheLease(subOperation.key(), (RpcLeaseBlocks) getBlockRes);
+			}
 		}
 
 		if (!multiOperation.isProcessed()){
@@ -161,8 +176,7 @@ public abstract class CoreStream {
 		if (nextBlockCache.containsKey(key)){
 			return;
 		}
-		this.syncedCapacity = fileInfo.getCapacity();
-		RpcFuture<RpcGetBlock> nextBlock = namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), position, syncedCapacity);
+		RpcFuture<? extends RpcGetBlock> nextBlock = requestBlocks(position);
 		nextBlock.setPrefetched(true);
 		nextBlockCache.put(key, nextBlock);
 		this.ioStats.incPrefetchedOps();
@@ -189,6 +203,70 @@ public abstract class CoreStream {
 		return future;
 	}
 
+	//requests the block map for up to count blocks starting at the current position without waiting for it, 
+	//all pages are requested at once and only one block map is pending at a time
+	final void fetchBlockMap(int count) throws Exception {
+		if (!blockMapPages.isEmpty()){
+			return;
+		}
+		long start = CrailUtils.blockStartAddress(position);
+		if (blockCache.containsKey(start) || nextBlockCache.containsKey(start)){
+			return;
+		}
+		long end = Math.min(CrailUtils.nextBlockAddress(fileInfo.getCapacity()), start + count*CrailConstants.BLOCK_SIZE);
+		int blocks = CrailUtils.computeIndex(end - start);
+		if (blocks <= 1){
+			return;
+		}
+		for (int i = 0; i < blocks; i += RpcGetBlocks.MAX_BLOCKS){
+			blockMapPages.add(namenodeClientRpc.getBlocks(fileInfo.getFd(), start + i*CrailConstants.BLOCK_SIZE, Math.min(RpcGetBlocks.MAX_BLOCKS, blocks - i)));
+			this.ioStats.incPrefetchedOps();
+		}
+		blockMapStart = start;
+	}
+	
+	private void awaitBlockMap() throws Exception {
+		long offset = blockMapStart;
+		for (RpcFuture<RpcGetBlocks> page = blockMapPages.poll(); page != null; page = blockMapPages.poll()){
+			RpcGetBlocks res = page.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+			if (!page.isDone()){
+				blockMapPages.clear();
+				throw new IOException("rpc timeout ");
+			}
+			//missing blocks are looked up individually by the data operation
+			if (res.getError() == RpcErrors.ERR_OK){
+				for (int i = 0; i < res.getBlockCount(); i++){
+					long key = offset + i*CrailConstants.BLOCK_SIZE;
+					if (!blockCache.containsKey(key)){
+						blockCache.put(key, res.getBlockInfo(i));
+					}
+				}
+			}
+			offset += RpcGetBlocks.MAX_BLOCKS*CrailConstants.BLOCK_SIZE;
+		}
+	}
+	
+	//returns the blocks leased but not written to the namenode
+	void releaseBlocks() throws Exception {
+		if (!leased){
+			return;
+		}
+		leased = false;
+		long capacity = fileInfo.getCapacity();
+		long limit = Math.max(CrailConstants.BLOCK_SIZE, CrailUtils.nextBlockAddress(capacity));
+		blockCache.trim(limit);
+		nextBlockCache.trim(limit);
+		RpcLeaseBlocks res = namenodeClientRpc.leaseBlocks(fileInfo.getFd(), fileInfo.getToken(), capacity, capacity, 0).get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		if (res.getError() != RpcErrors.ERR_OK){
+			LOG.info("releaseBlocks: " + RpcErrors.messages[res.getError()]);
+		}
+	}
+	
+	//number of blocks to request from the namenode for the given position, more than one leases a batch of blocks
+	int leaseSize(long position){
+		return 1;
+	}
+
 	void updateIOStats() {
 		ioStats.setCapacity(fileInfo.getCapacity());
 	}
@@ -219,6 +297,25 @@ public abstract class CoreStream {
 		fileInfo.setCapacity(currentCapacity);
 	}
 
+	private RpcFuture<? extends RpcGetBlock> requestBlocks(long position) throws IOException {
+		this.syncedCapacity = fileInfo.getCapacity();
+		int count = leaseSize(position);
+		if (count > 1){
+			leased = true;
+			return namenodeClientRpc.leaseBlocks(fileInfo.getFd(), fileInfo.getToken(), position, syncedCapacity, count);
+		}
+		return namenodeClientRpc.getBlock(fileInfo.getFd(), fileInfo.getToken(), position, syncedCapacity);
+	}
+	
+	private void cacheLease(long key, RpcLeaseBlocks lease){
+		for (int i = 1; i < lease.getBlockCount(); i++){
+			long blockKey = key + i*CrailConstants.BLOCK_SIZE;
+			if (!blockCache.containsKey(blockKey)){
+				blockCache.put(blockKey, lease.getBlockInfo(i));
+			}
+		}
+	}
+
 	private long blockRemaining(){
 		long blockOffset = position % CrailConstants.BLOCK_SIZE;
 		long blockRemaining = CrailConstants.BLOCK_SIZE - blockOffset;
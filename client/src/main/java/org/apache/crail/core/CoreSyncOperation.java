@@ -25,13 +25,25 @@ import org.apache.crail.CrailResult;
 public class CoreSyncOperation {
 	private DirectoryOutputStream stream;
 	private Future<CrailResult> future;	
+	private DirectoryWriteBack writeBack;
+	private DirectoryWriteBack.PendingDirectory directory;
 	
 	public CoreSyncOperation(DirectoryOutputStream stream, Future<CrailResult> future) {
 		this.stream = stream;
 		this.future = future;
 	}
+	
+	//the record is buffered, syncing flushes all the buffered records of the directory
+	CoreSyncOperation(DirectoryWriteBack writeBack, DirectoryWriteBack.PendingDirectory directory) {
+		this.writeBack = writeBack;
+		this.directory = directory;
+	}
 
 	public void close() throws Exception {
+		if (writeBack != null){
+			writeBack.flush(directory);
+			return;
+		}
 		future.get();
 		stream.close();
 	}
@@ -39,6 +39,7 @@ public class DirectoryInputStream implements Iterator<String> {
 	private CoreDataStore fs;
 	private String parent;
 	private String currentFile;
+	private DirectoryRecord currentRecord;
 	private int consumedRecords;
 	private int availableRecords;
 	private int[] blockTickets;
@@ -55,6 +56,7 @@ public class DirectoryInputStream implements Iterator<String> {
 		this.internalBuf.clear();
 		this.internalBuf.position(this.internalBuf.capacity());
 		this.currentFile = null;
+		this.currentRecord = null;
 		this.availableRecords = 0;
 		this.consumedRecords = 0;
 		this.random = new Random();
@@ -76,6 +78,7 @@ public class DirectoryInputStream implements Iterator<String> {
 			DirectoryRecord record = nextRecord();
 			if (record.isValid()){
 				currentFile = CrailUtils.combinePath(record.getParent(), record.getFile());
+				currentRecord = record;
 				break;
 			}
 		}
@@ -89,6 +92,19 @@ public class DirectoryInputStream implements Iterator<String> {
 		
 		String ret = currentFile;
 		currentFile = null;
+		currentRecord = null;
+		return ret;
+	}
+	
+	//like next() but returns the record of the entry, packed records carry the attributes of the entry
+	public DirectoryRecord nextEntry(){
+		if (!open) { 
+			return null;
+		} 		
+		
+		DirectoryRecord ret = currentRecord;
+		currentFile = null;
+		currentRecord = null;
 		return ret;
 	}
 	
@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crail.CrailNode;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcFuture;
+import org.apache.crail.rpc.RpcListDirectory;
+import org.apache.crail.utils.CrailUtils;
+
+/*
+ * Lists a directory page by page from the namenode instead of reading its directory records.
+ * The next page is requested as soon as a page arrives. Entries the namenode has no name for,
+ * i.e., entries created while listing was disabled, are skipped.
+ */
+class DirectoryListing {
+	private CoreDataStore fs;
+	private long fd;
+	private String path;
+	private RpcListDirectory page;
+	private RpcFuture<RpcListDirectory> pending;
+	private int index;
+
+	private DirectoryListing(CoreDataStore fs, long fd, String path) throws Exception {
+		this.fs = fs;
+		this.fd = fd;
+		this.path = path;
+		this.page = null;
+		this.pending = fs.getNamenodeClientRpc().listDirectory(fd, RpcListDirectory.FIRST, RpcListDirectory.MAX_ENTRIES);
+		this.index = 0;
+	}
+
+	//returns null if the namenode does not serve listings, the directory records have to be read instead
+	static DirectoryListing open(CoreDataStore fs, long fd, String path) throws Exception {
+		DirectoryListing listing = new DirectoryListing(fs, fd, path);
+		if (!listing.nextPage()){
+			return null;
+		}
+		return listing;
+	}
+
+	Iterator<String> entries() {
+		return new Iterator<String>() {
+			@Override
+			public boolean hasNext() {
+				return advance();
+			}
+
+			@Override
+			public String next() {
+				return CrailUtils.combinePath(path, page.getName(index++));
+			}
+		};
+	}
+
+	Iterator<CrailNode> nodes() {
+		return new Iterator<CrailNode>() {
+			@Override
+			public boolean hasNext() {
+				return advance();
+			}
+
+			@Override
+			public CrailNode next() {
+				String name = CrailUtils.combinePath(path, page.getName(index));
+				return CoreNode.create(fs, page.getEntry(index++), name);
+			}
+		};
+	}
+
+	//moves to the next named entry, fetching further pages as needed
+	private boolean advance() {
+		try {
+			while(true){
+				while(index < page.getEntryCount()){
+					if (page.getName(index) != null){
+						return true;
+					}
+					index++;
+				}
+				if (pending == null){
+					return false;
+				}
+				nextPage();
+			}
+		} catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	private boolean nextPage() throws Exception {
+		RpcListDirectory res = pending.get(CrailConstants.RPC_TIMEOUT, TimeUnit.MILLISECONDS);
+		pending = null;
+		if (res.getError() == RpcErrors.ERR_LISTING_UNSUPPORTED){
+			return false;
+		} else if (res.getError() == RpcErrors.ERR_FILE_NOT_FOUND || res.getError() == RpcErrors.ERR_FILE_IS_NOT_DIR){
+			throw new FileNotFoundException(RpcErrors.messages[res.getError()] + ", path " + path);
+		} else if (res.getError() != RpcErrors.ERR_OK){
+			throw new IOException("listDirectory: " + RpcErrors.messages[res.getError()] + ", path " + path);
+		}
+		if (res.getCursor() != RpcListDirectory.END){
+			pending = fs.getNamenodeClientRpc().listDirectory(fd, res.getCursor(), RpcListDirectory.MAX_ENTRIES);
+		}
+		page = res;
+		index = 0;
+		return true;
+	}
+}
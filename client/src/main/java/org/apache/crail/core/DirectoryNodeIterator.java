@@ -0,0 +1,67 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.core;
+
+import java.util.Iterator;
+
+import org.apache.crail.CrailNode;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.utils.CrailUtils;
+
+/*
+ * Iterates over the nodes of a directory. Nodes of packed records are created from the record, 
+ * entries in the fixed format are looked up at the namenode. Entries deleted in the meantime are skipped.
+ */
+class DirectoryNodeIterator implements Iterator<CrailNode> {
+	private CoreDataStore fs;
+	private DirectoryInputStream stream;
+	private CrailNode current;
+	
+	public DirectoryNodeIterator(CoreDataStore fs, DirectoryInputStream stream) {
+		this.fs = fs;
+		this.stream = stream;
+		this.current = null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		try {
+			while(current == null && stream.hasNext()){
+				DirectoryRecord record = stream.nextEntry();
+				String path = CrailUtils.combinePath(record.getParent(), record.getFile());
+				if (record.hasAttributes()){
+					FileInfo fileInfo = new FileInfo(record.getFd(), record.getType(), record.getCapacity(), record.getModificationTime());
+					current = CoreNode.create(fs, fileInfo, path);
+				} else {
+					current = fs.lookup(path).get();
+				}
+			}
+		} catch(Exception e){
+			throw new RuntimeException(e);
+		}
+		return current != null;
+	}
+
+	@Override
+	public CrailNode next() {
+		CrailNode ret = current;
+		current = null;
+		return ret;
+	}
+}
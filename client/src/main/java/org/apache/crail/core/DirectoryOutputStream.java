@@ -19,10 +19,12 @@
 package org.apache.crail.core;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.Future;
 
 import org.apache.crail.CrailBuffer;
 import org.apache.crail.CrailResult;
+import org.apache.crail.conf.CrailConstants;
 
 public class DirectoryOutputStream {
 	private CoreOutputStream stream;
@@ -51,6 +53,37 @@ public class DirectoryOutputStream {
 		return future;
 	}	
 	
+	//writes the records of adjacent slots starting at the given offset with a single write
+	Future<CrailResult> writeRecords(List<DirectoryRecord> records, long offset) throws Exception {
+		if (!open) {
+			throw new IOException("stream closed");
+		} 		
+		
+		internalBuf.clear();
+		for (int i = 0; i < records.size(); i++){
+			internalBuf.position(i*CrailConstants.DIRECTORY_RECORD);
+			records.get(i).write(internalBuf);
+		}
+		internalBuf.flip();
+		stream.seek(offset);
+		Future<CrailResult> future = stream.write(internalBuf);
+		return future;
+	}
+	
+	//overwrites capacity and modification time of the packed record at the given offset, the rest of the record stays
+	Future<CrailResult> writeAttributes(DirectoryRecord record, long offset) throws Exception {
+		if (!open) {
+			throw new IOException("stream closed");
+		} 		
+		
+		internalBuf.clear();
+		record.writeAttributes(internalBuf);
+		internalBuf.flip();
+		stream.seek(offset + DirectoryRecord.ATTRIBUTES_OFFSET);
+		Future<CrailResult> future = stream.write(internalBuf);
+		return future;
+	}
+	
 	public void close() throws IOException {
 		try {
 			if (!open){
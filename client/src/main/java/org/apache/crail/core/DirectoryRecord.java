@@ -18,30 +18,105 @@
 
 package org.apache.crail.core;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
 import org.apache.crail.CrailBuffer;
+import org.apache.crail.CrailNodeType;
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.FileInfo;
 import org.apache.crail.utils.CrailUtils;
 
+/*
+ * A directory record occupies one slot of DIRECTORY_RECORD bytes at the offset assigned by the namenode. 
+ * The fixed format only stores a valid flag and the name. The packed format stores the fd, type, capacity 
+ * and modification time of the entry in front of the name, so that a listing does not need to look up 
+ * every entry, and only uses as many bytes of the slot as the name needs. Readers understand both formats, 
+ * writers use crail.directoryversion.
+ * 
+ * packed: header (4) | capacity (8) | modification time (8) | fd (8) | type (2) | name length (2) | name
+ */
 public class DirectoryRecord {
+	public static final int VERSION_FIXED = 0;
+	public static final int VERSION_PACKED = 1;
+	
+	//the fixed format stores 0 or 1 in the header, the packed format tags the header with the version
+	private static final int PACKED = VERSION_PACKED << 8;
+	//capacity and modification time, refreshed when a writer closes the file
+	public static final int ATTRIBUTES_OFFSET = 4;
+	public static final int ATTRIBUTES_SIZE = 16;
+	public static final int PACKED_HEADER = 4 + ATTRIBUTES_SIZE + 8 + 2 + 2;
+	
 	private int valid;
+	private int version;
 	private String parent;
 	private String filename;
+	private long fd;
+	private CrailNodeType type;
+	private long capacity;
+	private long modificationTime;
 	
 	public DirectoryRecord(boolean valid, String path){
+		this(valid, path, null);
+	}
+	
+	public DirectoryRecord(boolean valid, String path, FileInfo fileInfo){
 		this.valid = valid == true ? 1 : 0;
+		this.version = CrailConstants.DIRECTORY_VERSION;
 		this.parent = CrailUtils.getParent(path);
 		this.filename = CrailUtils.getName(path);
+		this.fd = -1;
+		this.type = null;
+		if (fileInfo != null){
+			this.fd = fileInfo.getFd();
+			this.type = fileInfo.getType();
+			this.capacity = fileInfo.getCapacity();
+			this.modificationTime = fileInfo.getModificationTime();
+		}
 	}	
 	
 	public DirectoryRecord(String parent) {
 		this.valid = 0;
+		this.version = VERSION_FIXED;
 		this.parent = parent;
 		this.filename = null;
-		
+		this.fd = -1;
+		this.type = null;
+	}
+	
+	//names which do not fit into a packed record are rejected before the namenode creates the entry
+	static void checkName(String path) throws IOException {
+		if (CrailConstants.DIRECTORY_VERSION != VERSION_PACKED && CrailConstants.NAMENODE_LISTING == 0){
+			return;
+		}
+		String filename = CrailUtils.getName(path);
+		int length = filename.getBytes(StandardCharsets.UTF_8).length;
+		if (CrailConstants.DIRECTORY_VERSION == VERSION_PACKED && PACKED_HEADER + length > CrailConstants.DIRECTORY_RECORD){
+			throw new IOException("name too long for directory record, name " + filename + ", record size " + CrailConstants.DIRECTORY_RECORD);
+		}
+		if (length > CrailConstants.NAMENODE_LISTING && CrailConstants.NAMENODE_LISTING > 0){
+			throw new IOException("name too long for namenode listing, name " + filename + ", " + CrailConstants.NAMENODE_LISTING_KEY + " " + CrailConstants.NAMENODE_LISTING);
+		}
 	}
 	
 	public void write(CrailBuffer buffer) throws Exception {
 		int oldposition = buffer.position();
+		if (version == VERSION_PACKED){
+			byte barray[] = filename.getBytes(StandardCharsets.UTF_8);
+			if (PACKED_HEADER + barray.length > CrailConstants.DIRECTORY_RECORD){
+				throw new IOException("name too long for directory record, name " + filename + ", record size " + CrailConstants.DIRECTORY_RECORD);
+			}
+			buffer.putInt(PACKED | valid);
+			buffer.putLong(capacity);
+			buffer.putLong(modificationTime);
+			buffer.putLong(fd);
+			buffer.putShort((short) (type != null ? type.getLabel() : -1));
+			buffer.putShort((short) barray.length);
+			buffer.put(barray);
+			//only the used part of the slot is written
+			buffer.position(oldposition + PACKED_HEADER + barray.length);
+			return;
+		}
 		buffer.putInt(valid);
 		byte barray[] = filename.getBytes();
 		buffer.putInt(barray.length);
@@ -49,12 +124,37 @@ public class DirectoryRecord {
 		buffer.position(oldposition + CrailConstants.DIRECTORY_RECORD);
 	}
 	
+	//writes capacity and modification time, to be stored at ATTRIBUTES_OFFSET of an existing packed record
+	public void writeAttributes(CrailBuffer buffer) {
+		buffer.putLong(capacity);
+		buffer.putLong(modificationTime);
+	}
+	
 	public void update(CrailBuffer buffer) {
 		int oldlimit = buffer.limit();
 		int tmplimit = buffer.position() + CrailConstants.DIRECTORY_RECORD;
 		buffer.limit(tmplimit);
-		valid = buffer.getInt();
-		if (valid == 1) {
+		int header = buffer.getInt();
+		if ((header & ~1) == PACKED){
+			version = VERSION_PACKED;
+			valid = header & 1;
+		} else {
+			version = VERSION_FIXED;
+			valid = header;
+		}
+		fd = -1;
+		type = null;
+		if (valid == 1 && version == VERSION_PACKED) {
+			capacity = buffer.getLong();
+			modificationTime = buffer.getLong();
+			fd = buffer.getLong();
+			short label = buffer.getShort();
+			type = label >= 0 ? CrailNodeType.parse(label) : null;
+			int length = buffer.getShort();
+			byte barray[] = new byte[length];
+			buffer.get(barray);
+			filename = new String(barray, StandardCharsets.UTF_8);
+		} else if (valid == 1) {
 			int length = buffer.getInt();
 			byte barray[] = new byte[length];
 			buffer.get(barray);
@@ -69,8 +169,16 @@ public class DirectoryRecord {
 	public boolean isValid() {
 		return valid == 1;
 	}
+	
+	//true if the record carries the attributes of the entry, i.e., listing it needs no lookup
+	public boolean hasAttributes() {
+		return version == VERSION_PACKED && type != null && fd >= 0;
+	}
 
 	public String toString() {
+		if (hasAttributes()){
+			return valid + "\t\t" + filename + "\t" + type + "\t" + fd + "\t" + capacity + "\t" + modificationTime;
+		}
 		return valid + "\t\t" + filename;
 	}
 
@@ -81,4 +189,24 @@ public class DirectoryRecord {
 	public String getParent() {
 		return parent;
 	}
+	
+	public int getVersion() {
+		return version;
+	}
+	
+	public long getFd() {
+		return fd;
+	}
+	
+	public CrailNodeType getType() {
+		return type;
+	}
+	
+	public long getCapacity() {
+		return capacity;
+	}
+	
+	public long getModificationTime() {
+		return modificationTime;
+	}
 }
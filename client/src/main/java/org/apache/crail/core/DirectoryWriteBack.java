@@ -0,0 +1,281 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.crail.CrailStatistics;
+import org.apache.crail.CrailStatistics.StatisticsProvider;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Write-back buffer for the directory records of a client (crail.directoryconsistency lazy). Records are
+ * kept per directory and slot, a later record for the same slot replaces an earlier one. A flush writes
+ * runs of adjacent slots within the same directory block with a single storage write. The records of a
+ * directory are flushed on syncDir() or close of any node of the directory, before the client lists the
+ * directory, once a directory block worth of records is pending, and at the latest after
+ * crail.directoryflush milliseconds. Other clients see new entries only after the flush. Records whose
+ * write failed stay pending, the next flush retries them and a failing sync, list or close reports it.
+ */
+public class DirectoryWriteBack implements Runnable, CrailStatistics.StatisticsProvider {
+	private static final Logger LOG = CrailUtils.getLogger();
+	public static final String IMMEDIATE = "immediate";
+	public static final String LAZY = "lazy";
+
+	private CoreDataStore fs;
+	private ConcurrentHashMap<Long, PendingDirectory> directories;
+	private volatile boolean running;
+	private Thread flusher;
+	private AtomicLong totalRecords;
+	private AtomicLong totalWrites;
+
+	DirectoryWriteBack(CoreDataStore fs) {
+		this.fs = fs;
+		this.directories = new ConcurrentHashMap<Long, PendingDirectory>();
+		this.totalRecords = new AtomicLong(0);
+		this.totalWrites = new AtomicLong(0);
+		this.running = true;
+		this.flusher = new Thread(this, "DirectoryWriteBack");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	//buffers the record, the returned operation flushes the directory
+	CoreSyncOperation addRecord(FileInfo dirInfo, long dirOffset, DirectoryRecord record) throws Exception {
+		PendingDirectory directory = null;
+		boolean full = false;
+		while(directory == null){
+			directory = directories.get(dirInfo.getFd());
+			if (directory == null){
+				directory = new PendingDirectory(dirInfo.getFd());
+				PendingDirectory old = directories.putIfAbsent(dirInfo.getFd(), directory);
+				directory = old != null ? old : directory;
+			}
+			synchronized(directory){
+				if (directory.removed){
+					directory = null;
+					continue;
+				}
+				full = directory.add(dirInfo, dirOffset, record);
+			}
+		}
+		totalRecords.incrementAndGet();
+		if (full){
+			flush(directory);
+		}
+		return new CoreSyncOperation(this, directory);
+	}
+
+	void flush(long fd) throws Exception {
+		PendingDirectory directory = directories.get(fd);
+		if (directory != null){
+			flush(directory);
+		}
+	}
+
+	void flush(PendingDirectory directory) throws Exception {
+		synchronized(directory.flushLock){
+			TreeMap<Long, DirectoryRecord> records = null;
+			FileInfo dirInfo = new FileInfo();
+			String parent = null;
+			synchronized(directory){
+				if (directory.records.isEmpty()){
+					return;
+				}
+				records = directory.records;
+				directory.records = new TreeMap<Long, DirectoryRecord>();
+				dirInfo.setFileInfo(directory.dirInfo);
+				parent = directory.parent;
+			}
+
+			int runRecords = CrailConstants.BUFFER_SIZE / CrailConstants.DIRECTORY_RECORD;
+			ArrayList<CoreSyncOperation> operations = new ArrayList<CoreSyncOperation>();
+			ArrayList<long[]> ranges = new ArrayList<long[]>();
+			ArrayList<DirectoryRecord> run = new ArrayList<DirectoryRecord>();
+			Exception error = null;
+			long first = -1;
+			long last = -1;
+			try {
+				for (Map.Entry<Long, DirectoryRecord> entry : records.entrySet()){
+					long dirOffset = entry.getKey();
+					boolean adjacent = dirOffset == last + CrailConstants.DIRECTORY_RECORD && CrailUtils.computeIndex(dirOffset) == CrailUtils.computeIndex(first);
+					if (!run.isEmpty() && (!adjacent || run.size() == runRecords)){
+						operations.add(writeRecords(dirInfo, parent, first, last, run));
+						ranges.add(new long[]{first, last});
+						run = new ArrayList<DirectoryRecord>();
+					}
+					if (run.isEmpty()){
+						first = dirOffset;
+					}
+					run.add(entry.getValue());
+					last = dirOffset;
+				}
+				operations.add(writeRecords(dirInfo, parent, first, last, run));
+				ranges.add(new long[]{first, last});
+			} catch(Exception e){
+				error = e;
+			}
+			totalWrites.addAndGet(operations.size());
+
+			for (int i = 0; i < operations.size(); i++){
+				try {
+					operations.get(i).close();
+					records.subMap(ranges.get(i)[0], true, ranges.get(i)[1], true).clear();
+				} catch(Exception e){
+					error = e;
+				}
+			}
+			if (error != null){
+				//the records not written stay pending unless replaced in the meantime, the next flush retries them
+				synchronized(directory){
+					if (directory.records.isEmpty()){
+						directory.since = System.currentTimeMillis();
+					}
+					for (Map.Entry<Long, DirectoryRecord> entry : records.entrySet()){
+						if (!directory.records.containsKey(entry.getKey())){
+							directory.records.put(entry.getKey(), entry.getValue());
+						}
+					}
+				}
+				throw error;
+			}
+		}
+	}
+
+	//issues the write of the records of adjacent slots from first to last
+	CoreSyncOperation writeRecords(FileInfo dirInfo, String parent, long first, long last, List<DirectoryRecord> records) throws Exception {
+		return fs.getSyncOperation(dirInfo, parent, first, last, records);
+	}
+
+	void flushAll() throws Exception {
+		for (PendingDirectory directory : directories.values()){
+			flush(directory);
+		}
+	}
+
+	void close() throws Exception {
+		running = false;
+		flusher.interrupt();
+		flusher.join();
+		flushAll();
+	}
+
+	@Override
+	public void run() {
+		long interval = Math.max(1, CrailConstants.DIRECTORY_FLUSH / 2);
+		while(running){
+			try {
+				Thread.sleep(interval);
+			} catch(InterruptedException e){
+				continue;
+			}
+			long now = System.currentTimeMillis();
+			for (PendingDirectory directory : directories.values()){
+				try {
+					if (directory.pendingSince(now) >= interval){
+						flush(directory);
+					} else if (directory.idleSince(now) >= CrailConstants.DIRECTORY_FLUSH){
+						synchronized(directory.flushLock){
+							synchronized(directory){
+								if (directory.records.isEmpty()){
+									directory.removed = true;
+									directories.remove(directory.fd, directory);
+								}
+							}
+						}
+					}
+				} catch(Exception e){
+					LOG.error("flushing directory records failed, fd " + directory.fd + ", pending " + directory.size() + ", " + e.getMessage());
+				}
+			}
+		}
+	}
+
+	@Override
+	public String providerName() {
+		return "directory/writeback";
+	}
+
+	@Override
+	public String printStatistics() {
+		return "directories " + directories.size() + ", records " + totalRecords.get() + ", writes " + totalWrites.get();
+	}
+
+	@Override
+	public void mergeStatistics(StatisticsProvider provider) {
+	}
+
+	@Override
+	public void resetStatistics() {
+		totalRecords.set(0);
+		totalWrites.set(0);
+	}
+
+	static class PendingDirectory {
+		private final long fd;
+		private final Object flushLock;
+		private TreeMap<Long, DirectoryRecord> records;
+		private FileInfo dirInfo;
+		private String parent;
+		private long since;
+		private long updated;
+		private boolean removed;
+
+		PendingDirectory(long fd){
+			this.fd = fd;
+			this.flushLock = new Object();
+			this.records = new TreeMap<Long, DirectoryRecord>();
+			this.updated = System.currentTimeMillis();
+			this.removed = false;
+		}
+
+		//returns true if a directory block worth of records is pending
+		boolean add(FileInfo dirInfo, long dirOffset, DirectoryRecord record){
+			long now = System.currentTimeMillis();
+			if (records.isEmpty()){
+				since = now;
+			}
+			records.put(dirOffset, record);
+			this.dirInfo = dirInfo;
+			this.parent = record.getParent();
+			this.updated = now;
+			return records.size() * CrailConstants.DIRECTORY_RECORD >= CrailConstants.BLOCK_SIZE;
+		}
+
+		synchronized long pendingSince(long now){
+			return records.isEmpty() ? -1 : now - since;
+		}
+
+		synchronized long idleSince(long now){
+			return now - updated;
+		}
+
+		synchronized int size(){
+			return records.size();
+		}
+	}
+}
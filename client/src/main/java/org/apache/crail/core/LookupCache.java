@@ -0,0 +1,181 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.core;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.crail.CrailStatistics;
+import org.apache.crail.CrailStatistics.StatisticsProvider;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.FileInfo;
+
+/*
+ * Client cache of lookup results keyed by path (crail.lookupcache), including misses. Entries
+ * expire after crail.lookupcachettl milliseconds, the least recently used entry is dropped once
+ * the cache is full. Create, delete, rename and closing a writer on this client invalidate the
+ * affected paths, changes by other clients become visible once the entry has expired. A lookup
+ * which overlaps with an invalidation is not cached.
+ */
+class LookupCache implements CrailStatistics.StatisticsProvider {
+	private long ttl;
+	private LinkedHashMap<String, CachedLookup> entries;
+	private AtomicLong generation;
+	private AtomicLong hits;
+	private AtomicLong negativeHits;
+	private AtomicLong misses;
+	private AtomicLong invalidations;
+
+	LookupCache(final long limit, long ttl){
+		this.ttl = ttl;
+		this.entries = new LinkedHashMap<String, CachedLookup>(16, 0.75f, true){
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedLookup> eldest) {
+				return size() > limit;
+			}
+		};
+		this.generation = new AtomicLong(0);
+		this.hits = new AtomicLong(0);
+		this.negativeHits = new AtomicLong(0);
+		this.misses = new AtomicLong(0);
+		this.invalidations = new AtomicLong(0);
+	}
+
+	//returns null if the path is not cached, an entry without file info if the path is known to be missing
+	CachedLookup get(String path){
+		String key = key(path);
+		CachedLookup entry = null;
+		synchronized(entries){
+			entry = entries.get(key);
+			if (entry != null && entry.expires < System.currentTimeMillis()){
+				entries.remove(key);
+				entry = null;
+			}
+		}
+		if (entry == null){
+			misses.incrementAndGet();
+		} else if (entry.fileInfo == null){
+			negativeHits.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return entry;
+	}
+
+	//to be read before the lookup is issued, results of lookups overlapping with an invalidation are dropped
+	long generation(){
+		return generation.get();
+	}
+
+	void put(String path, FileInfo fileInfo, BlockInfo fileBlock, long lookupGeneration){
+		CachedLookup entry = new CachedLookup(fileInfo, fileBlock, System.currentTimeMillis() + ttl);
+		synchronized(entries){
+			if (generation.get() == lookupGeneration){
+				entries.put(key(path), entry);
+			}
+		}
+	}
+
+	//drops the path and, for containers, everything below it
+	void invalidate(String path, boolean recursive){
+		String key = key(path);
+		String prefix = key.equals("/") ? key : key + "/";
+		synchronized(entries){
+			generation.incrementAndGet();
+			entries.remove(key);
+			if (recursive){
+				for (Iterator<String> iter = entries.keySet().iterator(); iter.hasNext(); ){
+					if (iter.next().startsWith(prefix)){
+						iter.remove();
+					}
+				}
+			}
+		}
+		invalidations.incrementAndGet();
+	}
+
+	private static String key(String path){
+		StringBuilder key = new StringBuilder();
+		StringTokenizer tokenizer = new StringTokenizer(path, "/");
+		while(tokenizer.hasMoreTokens()){
+			key.append('/').append(tokenizer.nextToken());
+		}
+		return key.length() == 0 ? "/" : key.toString();
+	}
+
+	@Override
+	public String providerName() {
+		return "cache/lookup";
+	}
+
+	@Override
+	public String printStatistics() {
+		int size = 0;
+		synchronized(entries){
+			size = entries.size();
+		}
+		return "entries " + size + ", hits " + hits.get() + ", negativeHits " + negativeHits.get() + ", misses " + misses.get() + ", invalidations " + invalidations.get();
+	}
+
+	@Override
+	public void mergeStatistics(StatisticsProvider provider) {
+	}
+
+	@Override
+	public void resetStatistics() {
+		hits.set(0);
+		negativeHits.set(0);
+		misses.set(0);
+		invalidations.set(0);
+	}
+
+	static class CachedLookup {
+		private FileInfo fileInfo;
+		private BlockInfo fileBlock;
+		private long expires;
+
+		CachedLookup(FileInfo fileInfo, BlockInfo fileBlock, long expires){
+			if (fileInfo != null){
+				this.fileInfo = new FileInfo();
+				this.fileInfo.setFileInfo(fileInfo);
+			}
+			this.fileBlock = fileBlock;
+			this.expires = expires;
+		}
+
+		//a private copy, nodes may modify their file info
+		FileInfo getFileInfo(){
+			if (fileInfo == null){
+				return null;
+			}
+			FileInfo copy = new FileInfo();
+			copy.setFileInfo(fileInfo);
+			return copy;
+		}
+
+		BlockInfo getFileBlock(){
+			return fileBlock;
+		}
+	}
+}
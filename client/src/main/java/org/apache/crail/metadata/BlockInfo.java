@@ -21,6 +21,8 @@ package org.apache.crail.metadata;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
+import org.apache.crail.rpc.RpcEncoding;
+
 public class BlockInfo {
 	public static int CSIZE = DataNodeInfo.CSIZE + 24;
 	
@@ -54,22 +56,40 @@ public class BlockInfo {
 		this.lkey = blockInfo.getLkey();
 		
 	}
+	
+	//clears the block in place, the datanode info is cleared as well and must not be shared
+	public void reset() {
+		this.dnInfo.reset();
+		this.lba = 0;
+		this.addr = 0;
+		this.length = 0;
+		this.lkey = 0;
+	}
 
 	public int write(ByteBuffer buffer){
-		this.getDnInfo().write(buffer);
-		buffer.putLong(this.getLba());
-		buffer.putLong(this.getAddr());
-		buffer.putInt(this.getLength());
-		buffer.putInt(this.getLkey());
-		return CSIZE;
+		return write(buffer, RpcEncoding.FIXED);
+	}
+	
+	public int write(ByteBuffer buffer, RpcEncoding encoding){
+		int start = buffer.position();
+		this.getDnInfo().write(buffer, encoding);
+		encoding.putLong(buffer, this.getLba());
+		encoding.putLong(buffer, this.getAddr());
+		encoding.putInt(buffer, this.getLength());
+		encoding.putInt(buffer, this.getLkey());
+		return buffer.position() - start;
 	}
 	
 	public void update(ByteBuffer buffer) throws UnknownHostException{
-		this.dnInfo.update(buffer);
-		this.lba = buffer.getLong();
-		this.addr = buffer.getLong();
-		this.length = buffer.getInt();
-		this.lkey = buffer.getInt();
+		update(buffer, RpcEncoding.FIXED);
+	}
+	
+	public void update(ByteBuffer buffer, RpcEncoding encoding) throws UnknownHostException{
+		this.dnInfo.update(buffer, encoding);
+		this.lba = encoding.getLong(buffer);
+		this.addr = encoding.getLong(buffer);
+		this.length = encoding.getInt(buffer);
+		this.lkey = encoding.getInt(buffer);
 	}
 
 	public long getLba() {
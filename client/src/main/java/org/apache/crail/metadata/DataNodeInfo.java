@@ -22,6 +22,7 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
+import org.apache.crail.rpc.RpcEncoding;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
@@ -68,22 +69,40 @@ public class DataNodeInfo {
 		this.port = info.getPort();
 		this.key = 0;
 	}
+	
+	void reset() {
+		this.storageType = 0;
+		this.storageClass = 0;
+		this.locationClass = 0;
+		Arrays.fill(ipAddress, (byte) 0);
+		this.port = 0;
+		this.key = 0;
+	}
 
 	public int write(ByteBuffer buffer){
-		buffer.putInt(storageType);
-		buffer.putInt(storageClass);
-		buffer.putInt(locationClass);
+		return write(buffer, RpcEncoding.FIXED);
+	}
+	
+	public int write(ByteBuffer buffer, RpcEncoding encoding){
+		int start = buffer.position();
+		encoding.putInt(buffer, storageType);
+		encoding.putInt(buffer, storageClass);
+		encoding.putInt(buffer, locationClass);
 		buffer.put(ipAddress);
-		buffer.putInt(port);		
-		return CSIZE;
+		encoding.putInt(buffer, port);		
+		return buffer.position() - start;
 	}
 	
 	public void update(ByteBuffer buffer) throws UnknownHostException {
-		this.storageType = buffer.getInt();
-		this.storageClass = buffer.getInt();
-		this.locationClass = buffer.getInt();
+		update(buffer, RpcEncoding.FIXED);
+	}	
+	
+	public void update(ByteBuffer buffer, RpcEncoding encoding) throws UnknownHostException {
+		this.storageType = encoding.getInt(buffer);
+		this.storageClass = encoding.getInt(buffer);
+		this.locationClass = encoding.getInt(buffer);
 		buffer.get(ipAddress);
-		this.port = buffer.getInt();
+		this.port = encoding.getInt(buffer);
 		this.key = 0;
 	}	
 	
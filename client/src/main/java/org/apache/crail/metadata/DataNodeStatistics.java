@@ -21,6 +21,8 @@ package org.apache.crail.metadata;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 
+import org.apache.crail.rpc.RpcEncoding;
+
 public class DataNodeStatistics {
 	public static int CSIZE = DataNodeStatus.CSIZE + 12;
 
@@ -35,16 +37,25 @@ public class DataNodeStatistics {
 	}
 	
 	public int write(ByteBuffer buffer){
+		return write(buffer, RpcEncoding.FIXED);
+	}
+	
+	public int write(ByteBuffer buffer, RpcEncoding encoding){
+		int start = buffer.position();
 		this.status.write(buffer);
-		buffer.putLong(serviceId);
-		buffer.putInt(freeBlockCount);
-		return CSIZE;
+		encoding.putLong(buffer, serviceId);
+		encoding.putInt(buffer, freeBlockCount);
+		return buffer.position() - start;
 	}
 	
 	public void update(ByteBuffer buffer) throws UnknownHostException {
+		update(buffer, RpcEncoding.FIXED);
+	}
+	
+	public void update(ByteBuffer buffer, RpcEncoding encoding) throws UnknownHostException {
 		this.status.update(buffer);
-		this.serviceId = buffer.getLong();
-		this.freeBlockCount = buffer.getInt();
+		this.serviceId = encoding.getLong(buffer);
+		this.freeBlockCount = encoding.getInt(buffer);
 	}
 
 	public int getFreeBlockCount() {
@@ -25,6 +25,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.crail.CrailNodeType;
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.rpc.RpcEncoding;
 
 public class FileInfo {
 	public static final int CSIZE = 44;
@@ -52,6 +53,12 @@ public class FileInfo {
 		this.modificationTime = 0;
 	}
 	
+	public FileInfo(long fd, CrailNodeType type, long capacity, long modificationTime){
+		this(fd, type, true);
+		this.capacity.set(capacity);
+		this.modificationTime = modificationTime;
+	}
+	
 	public void setFileInfo(FileInfo fileInfo){
 		this.fd = fileInfo.getFd();
 		this.type = fileInfo.getType();
@@ -63,27 +70,36 @@ public class FileInfo {
 	}
 	
 	public int write(ByteBuffer buffer, boolean shipToken){
-		buffer.putLong(fd);
-		buffer.putLong(capacity.get());
-		buffer.putInt(type.getLabel());
-		buffer.putLong(dirOffset);
+		return write(buffer, shipToken, RpcEncoding.FIXED);
+	}
+	
+	public int write(ByteBuffer buffer, boolean shipToken, RpcEncoding encoding){
+		int start = buffer.position();
+		encoding.putLong(buffer, fd);
+		encoding.putLong(buffer, capacity.get());
+		encoding.putInt(buffer, type.getLabel());
+		encoding.putLong(buffer, dirOffset);
 		if (shipToken){
-			buffer.putLong(token);
+			encoding.putLong(buffer, token);
 		} else {
-			buffer.putLong(0);
+			encoding.putLong(buffer, 0);
 		}
-		buffer.putLong(modificationTime);
+		encoding.putLong(buffer, modificationTime);
 		
-		return CSIZE;
+		return buffer.position() - start;
 	}
 	
 	public void update(ByteBuffer buffer) throws UnknownHostException{
-		fd = buffer.getLong();
-		capacity.set(buffer.getLong());
-		type = CrailNodeType.parse(buffer.getInt());
-		dirOffset = buffer.getLong();
-		token = buffer.getLong();
-		modificationTime = buffer.getLong();
+		update(buffer, RpcEncoding.FIXED);
+	}
+	
+	public void update(ByteBuffer buffer, RpcEncoding encoding) throws UnknownHostException{
+		fd = encoding.getLong(buffer);
+		capacity.set(encoding.getLong(buffer));
+		type = CrailNodeType.parse(encoding.getInt(buffer));
+		dirOffset = encoding.getLong(buffer);
+		token = encoding.getLong(buffer);
+		modificationTime = encoding.getLong(buffer);
 	}
 	
 	public long getCapacity() {
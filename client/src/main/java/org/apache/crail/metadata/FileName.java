@@ -23,15 +23,26 @@ import java.nio.ByteBuffer;
 import java.util.StringTokenizer;
 
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.rpc.RpcEncoding;
 
+/*
+ * A file name is either absolute, i.e., resolved from the root, or relative to the directory 
+ * given by its base fd. Relative names are marked on the wire by a negative length followed 
+ * by the base fd, absolute names are encoded as before. 
+ */
 public class FileName {
-	public static int CSIZE = 4 + CrailConstants.DIRECTORY_DEPTH*4;
+	public static int CSIZE = 4 + CrailConstants.DIRECTORY_DEPTH*4 + 8;
+	public static final long ABSOLUTE = -1;
 	
 	private int length;
 	private int[] components;
+	private long baseFd;
+	//last component as given by the client, not shipped with the name itself
+	private String leaf;
 	
 	public FileName(){
 		this.length = 0;
+		this.baseFd = ABSOLUTE;
 		this.components = new int[CrailConstants.DIRECTORY_DEPTH];
 		for (int i = 0; i < components.length; i++){
 			components[i] = 0;
@@ -50,34 +61,91 @@ public class FileName {
 		while (tokenizer.hasMoreElements()) {
 			String token = tokenizer.nextToken();
 			components[i] = token.hashCode();
+			leaf = token;
 			i++;
 		}	
 	}
 	
+	public FileName(long baseFd, String name) throws IOException {
+		this(name);
+		if (baseFd < 0){
+			throw new IOException("invalid base fd " + baseFd + ", filename " + name);
+		}
+		this.baseFd = baseFd;
+	}
+	
 	public FileName(FileName name){
 		this();
 		this.length = name.length;
+		this.baseFd = name.baseFd;
+		this.leaf = name.leaf;
 		for (int i = 0; i < components.length; i++){
 			this.components[i] = name.components[i];
 		}	
 	}
 	
 	public int write(ByteBuffer buffer) {
-		buffer.putInt(length);
+		buffer.putInt(isRelative() ? ~length : length);
 		int written = 4;
 		for (int i = 0; i < components.length; i++){
 			buffer.putInt(components[i]);
 			written += 4;
 		}		
+		if (isRelative()){
+			buffer.putLong(baseFd);
+			written += 8;
+		}
 		return written;
 	}		
 
+	//the compact encoding only ships the components in use, component hashes are not small enough to benefit from varints
+	public int write(ByteBuffer buffer, RpcEncoding encoding) {
+		if (!encoding.isCompact()){
+			return write(buffer);
+		}
+		int start = buffer.position();
+		encoding.putInt(buffer, isRelative() ? ~length : length);
+		for (int i = 0; i < length; i++){
+			buffer.putInt(components[i]);
+		}
+		if (isRelative()){
+			encoding.putLong(buffer, baseFd);
+		}
+		return buffer.position() - start;
+	}
+
 	public void update(ByteBuffer buffer) {
 		this.length = buffer.getInt();
 		for (int i = 0; i < components.length; i++){
 			components[i] = buffer.getInt();
 		}
+		if (length < 0){
+			this.length = ~length;
+			this.baseFd = buffer.getLong();
+		} else {
+			this.baseFd = ABSOLUTE;
+		}
 	}	
+	
+	public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+		if (!encoding.isCompact()){
+			update(buffer);
+			return;
+		}
+		int newLength = encoding.getInt(buffer);
+		boolean relative = newLength < 0;
+		if (relative){
+			newLength = ~newLength;
+		}
+		if (newLength > components.length){
+			throw new IOException("filename with too many tokens, length " + newLength + ", tokens " + components.length);
+		}
+		this.length = newLength;
+		for (int i = 0; i < components.length; i++){
+			components[i] = i < length ? buffer.getInt() : 0;
+		}
+		this.baseFd = relative ? encoding.getLong(buffer) : ABSOLUTE;
+	}
 
 	public int getFileComponent(){
 		return getComponent(length - 1);
@@ -95,6 +163,18 @@ public class FileName {
 		return length;
 	}
 	
+	public boolean isRelative(){
+		return baseFd != ABSOLUTE;
+	}
+	
+	public long getBaseFd(){
+		return baseFd;
+	}
+	
+	public String getLeaf(){
+		return leaf;
+	}
+	
 	
 	public int size(){
 		return CSIZE;
@@ -121,6 +201,9 @@ public class FileName {
 			tmp = tmp + components[i] + "/";
 		}
 		tmp = tmp + ", length=" + length;
+		if (isRelative()){
+			tmp = tmp + ", baseFd=" + baseFd;
+		}
 		return tmp;
 	}
 }
@@ -0,0 +1,355 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.rpc;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.metadata.FileName;
+
+/*
+ * Coalesces create, lookup and delete calls issued within a short window into batch requests. A batch
+ * is sent once it is full, once its window has passed and a caller waits for one of its operations, or
+ * before any other call goes out on the connection, so operations reach the namenode in the order they
+ * were issued.
+ */
+public class RpcBatcher implements RpcConnection {
+	private RpcConnection connection;
+	private long window;
+	private Batch pending;
+	
+	public RpcBatcher(RpcConnection connection, long window) {
+		this.connection = connection;
+		this.window = TimeUnit.MICROSECONDS.toNanos(window);
+		this.pending = null;
+	}
+
+	@Override
+	public RpcFuture<RpcCreateFile> createFile(FileName filename,
+			CrailNodeType type, int storageClass, int locationClass, int placement, boolean enumerable)
+			throws IOException {
+		return enqueue(RpcOperation.createFile(filename, type, storageClass, locationClass, placement, enumerable));
+	}
+
+	@Override
+	public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable)
+			throws IOException {
+		return enqueue(RpcOperation.getFile(filename, writeable));
+	}
+
+	@Override
+	public RpcFuture<RpcDeleteFile> removeFile(FileName filename,
+			boolean recursive) throws IOException {
+		return enqueue(RpcOperation.removeFile(filename, recursive));
+	}
+
+	@Override
+	public RpcFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close)
+			throws IOException {
+		flush();
+		return connection.setFile(fileInfo, close);
+	}
+
+	@Override
+	public RpcFuture<RpcRenameFile> renameFile(FileName srcHash,
+			FileName dstHash) throws IOException {
+		flush();
+		return connection.renameFile(srcHash, dstHash);
+	}
+
+	@Override
+	public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long position,
+			long capacity) throws IOException {
+		flush();
+		return connection.getBlock(fd, token, position, capacity);
+	}
+
+	@Override
+	public RpcFuture<RpcLeaseBlocks> leaseBlocks(long fd, long token, long position,
+			long capacity, int count) throws IOException {
+		flush();
+		return connection.leaseBlocks(fd, token, position, capacity, count);
+	}
+
+	@Override
+	public RpcFuture<RpcGetBlocks> getBlocks(long fd, long position, int count)
+			throws IOException {
+		flush();
+		return connection.getBlocks(fd, position, count);
+	}
+
+	@Override
+	public RpcFuture<RpcGetLocation> getLocation(FileName fileName,
+			long position) throws IOException {
+		flush();
+		return connection.getLocation(fileName, position);
+	}
+
+	@Override
+	public RpcFuture<RpcGetLocations> getLocations(FileName fileName,
+			long position, int count) throws IOException {
+		flush();
+		return connection.getLocations(fileName, position, count);
+	}
+
+	@Override
+	public RpcFuture<RpcListDirectory> listDirectory(long fd, long cursor, int count)
+			throws IOException {
+		flush();
+		return connection.listDirectory(fd, cursor, count);
+	}
+
+	@Override
+	public RpcFuture<RpcBatch> batch(RpcOperation[] operations)
+			throws IOException {
+		flush();
+		return connection.batch(operations);
+	}
+
+	@Override
+	public RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
+		flush();
+		return connection.setBlock(blockInfo);
+	}
+
+	@Override
+	public RpcFuture<RpcGetDataNode> getDataNode(DataNodeInfo dnInfo)
+			throws Exception {
+		flush();
+		return connection.getDataNode(dnInfo);
+	}
+
+	@Override
+	public RpcFuture<RpcVoid> dumpNameNode() throws Exception {
+		flush();
+		return connection.dumpNameNode();
+	}
+
+	@Override
+	public RpcFuture<RpcPing> pingNameNode() throws Exception {
+		flush();
+		return connection.pingNameNode();
+	}
+
+	@Override
+	public RpcFuture<RpcRemoveDataNode> removeDataNode(InetAddress ipaddr, int port) throws Exception {
+		flush();
+		return connection.removeDataNode(ipaddr, port);
+	}
+
+	@Override
+	public void close() throws Exception {
+		flush();
+		connection.close();
+	}
+
+	@Override
+	public String toString() {
+		return connection.toString();
+	}
+	
+	private synchronized <T> BatchFuture<T> enqueue(RpcOperation operation){
+		long now = System.nanoTime();
+		if (pending != null && now >= pending.deadline){
+			flush();
+		}
+		if (pending == null){
+			pending = new Batch(now + window);
+		}
+		Batch batch = pending;
+		int index = batch.add(operation);
+		if (batch.count == RpcBatch.MAX_OPS){
+			flush();
+		}
+		return new BatchFuture<T>(this, batch, index);
+	}
+	
+	//batches are sent while holding the lock to keep them in order
+	private synchronized void flush(){
+		if (pending != null){
+			Batch batch = pending;
+			pending = null;
+			batch.send(connection);
+		}
+	}
+	
+	private synchronized void flush(Batch batch){
+		if (pending == batch){
+			flush();
+		}
+	}
+	
+	private static class Batch {
+		private final RpcOperation[] operations;
+		private final long deadline;
+		private int count;
+		private RpcFuture<RpcBatch> future;
+		private IOException error;
+		private boolean sent;
+		
+		public Batch(long deadline){
+			this.operations = new RpcOperation[RpcBatch.MAX_OPS];
+			this.deadline = deadline;
+			this.count = 0;
+			this.future = null;
+			this.error = null;
+			this.sent = false;
+		}
+		
+		public int add(RpcOperation operation){
+			operations[count] = operation;
+			return count++;
+		}
+		
+		public void send(RpcConnection connection){
+			RpcFuture<RpcBatch> future = null;
+			IOException error = null;
+			try {
+				future = connection.batch(Arrays.copyOf(operations, count));
+			} catch(IOException e){
+				error = e;
+			}
+			synchronized(this){
+				this.future = future;
+				this.error = error;
+				this.sent = true;
+				this.notifyAll();
+			}
+		}
+		
+		//waits for other operations to join until the window closes or the batch has been sent
+		public synchronized void await() throws InterruptedException {
+			long now = System.nanoTime();
+			while(!sent && now < deadline){
+				long remaining = deadline - now;
+				this.wait(remaining / 1000000, (int) (remaining % 1000000));
+				now = System.nanoTime();
+			}
+		}
+		
+		public synchronized boolean isSent(){
+			return sent;
+		}
+		
+		public synchronized RpcFuture<RpcBatch> getFuture() throws ExecutionException {
+			if (error != null){
+				throw new ExecutionException(error);
+			}
+			return future;
+		}
+	}
+	
+	private static class BatchFuture<T> implements RpcFuture<T> {
+		private RpcBatcher batcher;
+		private Batch batch;
+		private int index;
+		private boolean prefetched;
+		
+		public BatchFuture(RpcBatcher batcher, Batch batch, int index){
+			this.batcher = batcher;
+			this.batch = batch;
+			this.index = index;
+			this.prefetched = false;
+		}
+
+		@Override
+		public int getTicket() {
+			if (!batch.isSent() || batch.future == null){
+				return 0;
+			}
+			return batch.future.getTicket();
+		}
+
+		@Override
+		public boolean isPrefetched() {
+			return prefetched;
+		}
+
+		@Override
+		public void setPrefetched(boolean prefetched) {
+			this.prefetched = prefetched;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			if (!batch.isSent()){
+				if (System.nanoTime() < batch.deadline){
+					return false;
+				}
+				batcher.flush(batch);
+			}
+			try {
+				return batch.getFuture().isDone();
+			} catch(ExecutionException e){
+				return true;
+			}
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException {
+			batch.await();
+			batcher.flush(batch);
+			return getResult(batch.getFuture().get());
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) throws InterruptedException,
+				ExecutionException, TimeoutException {
+			batch.await();
+			batcher.flush(batch);
+			return getResult(batch.getFuture().get(timeout, unit));
+		}
+		
+		@SuppressWarnings("unchecked")
+		private T getResult(RpcBatch result) throws ExecutionException {
+			if (result.getError() != RpcErrors.ERR_OK){
+				throw new ExecutionException(new IOException("batch failed, error " + RpcErrors.messages[result.getError()]));
+			}
+			if (index >= result.getOpCount()){
+				throw new ExecutionException(new IOException("batch result incomplete, operations " + result.getOpCount() + ", index " + index));
+			}
+			switch(batch.operations[index].getType()){
+			case RpcOperation.CREATE_FILE:
+				return (T) result.getCreateFile(index);
+			case RpcOperation.GET_FILE:
+				return (T) result.getFile(index);
+			default:
+				return (T) result.getDeleteFile(index);
+			}
+		}
+	}
+}
@@ -29,7 +29,7 @@ import org.apache.crail.metadata.FileName;
 
 public interface RpcConnection {
 	public abstract RpcFuture<RpcCreateFile> createFile(
-			FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) throws IOException;
+			FileName filename, CrailNodeType type, int storageClass, int locationClass, int placement, boolean enumerable) throws IOException;
 
 	public abstract RpcFuture<RpcGetFile> getFile(FileName filename,
 			boolean writeable) throws IOException;
@@ -46,9 +46,24 @@ public interface RpcConnection {
 	public abstract RpcFuture<RpcGetBlock> getBlock(long fd,
 			long token, long position, long capacity) throws IOException;
 
+	public abstract RpcFuture<RpcLeaseBlocks> leaseBlocks(long fd,
+			long token, long position, long capacity, int count) throws IOException;
+
+	public abstract RpcFuture<RpcGetBlocks> getBlocks(long fd,
+			long position, int count) throws IOException;
+
 	public abstract RpcFuture<RpcGetLocation> getLocation(
 			FileName fileName, long position) throws IOException;
 
+	public abstract RpcFuture<RpcGetLocations> getLocations(
+			FileName fileName, long position, int count) throws IOException;
+
+	public abstract RpcFuture<RpcListDirectory> listDirectory(long fd,
+			long cursor, int count) throws IOException;
+
+	public abstract RpcFuture<RpcBatch> batch(
+			RpcOperation[] operations) throws IOException;
+
 	public abstract RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo)
 			throws Exception;
 
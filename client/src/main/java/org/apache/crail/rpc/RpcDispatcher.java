@@ -48,11 +48,11 @@ public class RpcDispatcher implements RpcConnection {
 
 	@Override
 	public RpcFuture<RpcCreateFile> createFile(FileName filename,
-			CrailNodeType type, int storageClass, int locationClass, boolean enumerable)
+			CrailNodeType type, int storageClass, int locationClass, int placement, boolean enumerable)
 			throws IOException {
 		int index = computeIndex(filename.getComponent(0));
 //		LOG.info("issuing create file for filename [" + filename.toString() + "], on index " + index);
-		return connections[index].createFile(filename, type, storageClass, locationClass, enumerable);
+		return connections[index].createFile(filename, type, storageClass, locationClass, placement, enumerable);
 	}
 
 	@Override
@@ -100,6 +100,20 @@ public class RpcDispatcher implements RpcConnection {
 		return connections[index].getBlock(fd, token, position, capacity);
 	}
 
+	@Override
+	public RpcFuture<RpcLeaseBlocks> leaseBlocks(long fd, long token, long position,
+			long capacity, int count) throws IOException {
+		int index = computeIndex(fd);
+		return connections[index].leaseBlocks(fd, token, position, capacity, count);
+	}
+
+	@Override
+	public RpcFuture<RpcGetBlocks> getBlocks(long fd, long position, int count)
+			throws IOException {
+		int index = computeIndex(fd);
+		return connections[index].getBlocks(fd, position, count);
+	}
+
 	@Override
 	public RpcFuture<RpcGetLocation> getLocation(FileName fileName,
 			long position) throws IOException {
@@ -108,6 +122,32 @@ public class RpcDispatcher implements RpcConnection {
 		return connections[index].getLocation(fileName, position);
 	}
 
+	@Override
+	public RpcFuture<RpcGetLocations> getLocations(FileName fileName,
+			long position, int count) throws IOException {
+		int index = computeIndex(fileName.getComponent(0));
+		return connections[index].getLocations(fileName, position, count);
+	}
+
+	@Override
+	public RpcFuture<RpcListDirectory> listDirectory(long fd, long cursor, int count)
+			throws IOException {
+		int index = computeIndex(fd);
+		return connections[index].listDirectory(fd, cursor, count);
+	}
+
+	@Override
+	public RpcFuture<RpcBatch> batch(RpcOperation[] operations)
+			throws IOException {
+		int index = computeIndex(operations[0].getFileName().getComponent(0));
+		for (int i = 1; i < operations.length; i++){
+			if (computeIndex(operations[i].getFileName().getComponent(0)) != index){
+				throw new IOException("Batch not supported across namenode domains");
+			}
+		}
+		return connections[index].batch(operations);
+	}
+
 	@Override
 	public RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
 //		LOG.info("issuing set block on index " + setBlockIndex);
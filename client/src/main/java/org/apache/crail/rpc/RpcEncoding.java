@@ -0,0 +1,136 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.rpc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/*
+ * Wire encoding of the namenode rpc messages. The fixed encoding writes every field at its full
+ * width and is the layout used by older clients, the namenode log and checkpoints. The compact
+ * encoding writes integers as zigzag varints, so small values and unset fields take a single byte,
+ * and only the used components of a filename.
+ */
+public abstract class RpcEncoding {
+	public static final short VERSION_FIXED = 0;
+	public static final short VERSION_COMPACT = 1;
+	
+	public static final RpcEncoding FIXED = new Fixed();
+	public static final RpcEncoding COMPACT = new Compact();
+	
+	public static RpcEncoding get(int version) throws IOException {
+		if (version == VERSION_FIXED){
+			return FIXED;
+		} else if (version == VERSION_COMPACT){
+			return COMPACT;
+		} else {
+			throw new IOException("unknown rpc version " + version);
+		}
+	}
+	
+	public abstract short getVersion();
+	
+	public abstract boolean isCompact();
+	
+	public abstract void putInt(ByteBuffer buffer, int value);
+	
+	public abstract int getInt(ByteBuffer buffer);
+	
+	public abstract void putLong(ByteBuffer buffer, long value);
+	
+	public abstract long getLong(ByteBuffer buffer);
+	
+	private static class Fixed extends RpcEncoding {
+		public short getVersion() {
+			return VERSION_FIXED;
+		}
+
+		public boolean isCompact() {
+			return false;
+		}
+
+		public void putInt(ByteBuffer buffer, int value) {
+			buffer.putInt(value);
+		}
+
+		public int getInt(ByteBuffer buffer) {
+			return buffer.getInt();
+		}
+
+		public void putLong(ByteBuffer buffer, long value) {
+			buffer.putLong(value);
+		}
+
+		public long getLong(ByteBuffer buffer) {
+			return buffer.getLong();
+		}
+	}
+	
+	private static class Compact extends RpcEncoding {
+		public short getVersion() {
+			return VERSION_COMPACT;
+		}
+
+		public boolean isCompact() {
+			return true;
+		}
+
+		public void putInt(ByteBuffer buffer, int value) {
+			int bits = (value << 1) ^ (value >> 31);
+			while ((bits & ~0x7F) != 0){
+				buffer.put((byte) ((bits & 0x7F) | 0x80));
+				bits >>>= 7;
+			}
+			buffer.put((byte) bits);
+		}
+
+		public int getInt(ByteBuffer buffer) {
+			int bits = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				bits |= (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+			return (bits >>> 1) ^ -(bits & 1);
+		}
+
+		public void putLong(ByteBuffer buffer, long value) {
+			long bits = (value << 1) ^ (value >> 63);
+			while ((bits & ~0x7FL) != 0){
+				buffer.put((byte) ((bits & 0x7F) | 0x80));
+				bits >>>= 7;
+			}
+			buffer.put((byte) bits);
+		}
+
+		public long getLong(ByteBuffer buffer) {
+			long bits = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				bits |= ((long) (b & 0x7F)) << shift;
+				shift += 7;
+			} while (b < 0);
+			return (bits >>> 1) ^ -(bits & 1);
+		}
+	}
+}
@@ -55,6 +55,7 @@ public class RpcErrors {
 	public static short ERR_DIR_LOCATION_AFFINITY_MISMATCH = 26;
 	public static short ERR_ADD_BLOCK_FAILED = 27;
 	public static short ERR_CREATE_FILE_BUG = 28;
+	public static short ERR_LISTING_UNSUPPORTED = 29;
 
 	static {
 		messages[ERR_OK] = "ERROR: No error, all fine";
@@ -86,5 +87,6 @@ public class RpcErrors {
 		messages[ERR_DIR_LOCATION_AFFINITY_MISMATCH] = "Directories cannot have local affinity";
 		messages[ERR_ADD_BLOCK_FAILED] = "Could not add block";
 		messages[ERR_CREATE_FILE_BUG] = "Could not retrieve parent block";
+		messages[ERR_LISTING_UNSUPPORTED] = "ERROR: Directory listing not enabled at the namenode";
 	}
 }
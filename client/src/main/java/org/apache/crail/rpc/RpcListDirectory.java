@@ -0,0 +1,37 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.crail.rpc;
+
+import org.apache.crail.metadata.FileInfo;
+
+public interface RpcListDirectory extends RpcResponse {
+	//cursor of the first page, and the cursor returned with the last page
+	public static final long FIRST = Long.MIN_VALUE;
+	public static final long END = Long.MAX_VALUE;
+	//maximum number of entries, and of bytes of entries and names, returned by a single request
+	public static final int MAX_ENTRIES = 24;
+	public static final int MAX_BYTES = 1536;
+	//longest name the namenode can return
+	public static final int MAX_NAME = MAX_BYTES - FileInfo.CSIZE - 4;
+	
+	public int getEntryCount();
+	public FileInfo getEntry(int index);
+	//name of the entry, null if the namenode does not know the name
+	public String getName(int index);
+	public long getCursor();
+}
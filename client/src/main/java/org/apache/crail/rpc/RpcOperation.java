@@ -0,0 +1,108 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.rpc;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.metadata.FileName;
+
+public class RpcOperation {
+	public static final short CREATE_FILE = 1;
+	public static final short GET_FILE = 2;
+	public static final short REMOVE_FILE = 3;
+	
+	private short type;
+	private FileName fileName;
+	private CrailNodeType nodeType;
+	private int storageClass;
+	private int locationClass;
+	private int placement;
+	private boolean enumerable;
+	private boolean writeable;
+	private boolean recursive;
+	
+	private RpcOperation(short type, FileName fileName){
+		this.type = type;
+		this.fileName = fileName;
+		this.nodeType = CrailNodeType.DATAFILE;
+		this.storageClass = 0;
+		this.locationClass = 0;
+		this.placement = 0;
+		this.enumerable = true;
+		this.writeable = false;
+		this.recursive = false;
+	}
+	
+	public static RpcOperation createFile(FileName fileName, CrailNodeType nodeType, int storageClass, int locationClass, int placement, boolean enumerable){
+		RpcOperation operation = new RpcOperation(CREATE_FILE, fileName);
+		operation.nodeType = nodeType;
+		operation.storageClass = storageClass;
+		operation.locationClass = locationClass;
+		operation.placement = placement;
+		operation.enumerable = enumerable;
+		return operation;
+	}
+	
+	public static RpcOperation getFile(FileName fileName, boolean writeable){
+		RpcOperation operation = new RpcOperation(GET_FILE, fileName);
+		operation.writeable = writeable;
+		return operation;
+	}
+	
+	public static RpcOperation removeFile(FileName fileName, boolean recursive){
+		RpcOperation operation = new RpcOperation(REMOVE_FILE, fileName);
+		operation.recursive = recursive;
+		return operation;
+	}
+
+	public short getType() {
+		return type;
+	}
+
+	public FileName getFileName() {
+		return fileName;
+	}
+
+	public CrailNodeType getNodeType() {
+		return nodeType;
+	}
+
+	public int getStorageClass() {
+		return storageClass;
+	}
+
+	public int getLocationClass() {
+		return locationClass;
+	}
+
+	public int getPlacement() {
+		return placement;
+	}
+
+	public boolean isEnumerable() {
+		return enumerable;
+	}
+
+	public boolean isWriteable() {
+		return writeable;
+	}
+
+	public boolean isRecursive() {
+		return recursive;
+	}
+}
@@ -18,60 +18,23 @@
 
 package org.apache.crail.utils;
 
-import java.util.concurrent.ConcurrentHashMap;
-
+import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 
-public class BlockCache {
-	private ConcurrentHashMap<Long, FileBlockCache> blockCache;
-	
+public class BlockCache extends FileCache<BlockInfo, BlockCache.FileBlockCache> {
+
 	public BlockCache(){
-		this.blockCache = new ConcurrentHashMap<Long, FileBlockCache>();  
-	}
-	
-	public FileBlockCache getFileBlockCache(long fd){
-		FileBlockCache fileBlockCache = blockCache.get(fd);
-		if (fileBlockCache == null){
-			fileBlockCache = new FileBlockCache(fd);
-			FileBlockCache oldFileBlockCache = blockCache.putIfAbsent(fd, fileBlockCache);
-			if (oldFileBlockCache != null){
-				fileBlockCache = oldFileBlockCache;
-			}
-		}
-		return fileBlockCache;
-	}
-	
-	public void remove(long fd) {
-		blockCache.remove(fd);
-	}	
-	
-	public void purge() {
-		blockCache.clear();
+		super("cache/block", CrailConstants.BLOCK_CACHE_LIMIT, CrailConstants.BLOCK_CACHE_TTL);
 	}
 
-	public static class FileBlockCache {
-		private long fd;
-		private ConcurrentHashMap<Long, BlockInfo> fileBlockCache;
-		
-		public FileBlockCache(long fd){
-			this.fd = fd;
-			this.fileBlockCache = new ConcurrentHashMap<Long, BlockInfo>();
-		}
-
-		public void put(long blockstart, BlockInfo block){
-			this.fileBlockCache.put(blockstart, block);
-		}
-		
-		public BlockInfo get(long blockstart){
-			return this.fileBlockCache.get(blockstart);
-		}
-
-		public boolean containsKey(long blockstart) {
-			return this.fileBlockCache.containsKey(blockstart);
-		}
+	@Override
+	protected FileBlockCache createEntries(long fd) {
+		return new FileBlockCache(fd, this);
+	}
 
-		public long getFd() {
-			return fd;
+	public static class FileBlockCache extends FileCache.Entries<BlockInfo> {
+		public FileBlockCache(long fd, BlockCache cache){
+			super(fd, cache);
 		}
 	}
 }
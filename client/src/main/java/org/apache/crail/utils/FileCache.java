@@ -0,0 +1,337 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.utils;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.crail.CrailStatistics;
+import org.apache.crail.CrailStatistics.StatisticsProvider;
+
+/*
+ * Per file cache of block metadata, bounded by the number of entries over all files. Files are
+ * evicted as a whole in CLOCK order, a file accessed since the last sweep gets a second chance.
+ * A file evicted by the clock is registered again on the next access of a stream holding it, or
+ * that stream continues with the file cache a stream opened later registered. A removed file no
+ * longer caches anything. With a ttl the entries of a file are dropped once they are older than
+ * ttl milliseconds.
+ */
+public abstract class FileCache<V, F extends FileCache.Entries<V>> implements CrailStatistics.StatisticsProvider {
+	private String name;
+	private long limit;
+	private long ttl;
+	private ConcurrentHashMap<Long, F> files;
+	private ConcurrentLinkedQueue<F> clock;
+	private AtomicBoolean evicting;
+	//removed files still queued in the clock
+	private AtomicLong stale;
+	private AtomicLong size;
+	private AtomicLong hits;
+	private AtomicLong misses;
+	private AtomicLong evictions;
+	private AtomicLong expirations;
+
+	protected abstract F createEntries(long fd);
+
+	protected FileCache(String name, long limit, long ttl){
+		this.name = name;
+		this.limit = limit;
+		this.ttl = ttl;
+		this.files = new ConcurrentHashMap<Long, F>();
+		this.clock = new ConcurrentLinkedQueue<F>();
+		this.evicting = new AtomicBoolean(false);
+		this.stale = new AtomicLong(0);
+		this.size = new AtomicLong(0);
+		this.hits = new AtomicLong(0);
+		this.misses = new AtomicLong(0);
+		this.evictions = new AtomicLong(0);
+		this.expirations = new AtomicLong(0);
+	}
+
+	public F getFileBlockCache(long fd){
+		F fileBlockCache = files.get(fd);
+		if (fileBlockCache == null){
+			fileBlockCache = createEntries(fd);
+			F oldFileBlockCache = files.putIfAbsent(fd, fileBlockCache);
+			if (oldFileBlockCache != null){
+				fileBlockCache = oldFileBlockCache;
+			} else {
+				clock.add(fileBlockCache);
+			}
+		}
+		return fileBlockCache;
+	}
+
+	public void remove(long fd) {
+		F fileBlockCache = files.remove(fd);
+		if (fileBlockCache != null){
+			fileBlockCache.remove();
+			if (stale.incrementAndGet() > files.size()){
+				prune();
+			}
+		}
+	}
+
+	public void purge() {
+		for (Iterator<F> iter = files.values().iterator(); iter.hasNext(); ){
+			F fileBlockCache = iter.next();
+			iter.remove();
+			fileBlockCache.remove();
+		}
+		clock.clear();
+		stale.set(0);
+	}
+
+	//drops removed files from the clock once they make up half of it, so deletes cost amortized constant time
+	private void prune(){
+		if (!evicting.compareAndSet(false, true)){
+			return;
+		}
+		try {
+			stale.set(0);
+			for (Iterator<F> iter = clock.iterator(); iter.hasNext(); ){
+				if (iter.next().isEvicted()){
+					iter.remove();
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	//sweeps the clock until the cache is within its limit, a single thread sweeps at a time
+	private void evict(){
+		if (!evicting.compareAndSet(false, true)){
+			return;
+		}
+		try {
+			long sweep = 2 * clock.size();
+			for (long i = 0; i < sweep && size.get() > limit; i++){
+				F fileBlockCache = clock.poll();
+				if (fileBlockCache == null){
+					break;
+				}
+				if (fileBlockCache.isEvicted()){
+					continue;
+				}
+				if (fileBlockCache.clearReferenced()){
+					clock.add(fileBlockCache);
+					continue;
+				}
+				if (files.remove(fileBlockCache.getFd(), fileBlockCache)){
+					fileBlockCache.evict();
+					evictions.incrementAndGet();
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	//registers a file evicted by the clock again, returns the file cache now registered for its fd
+	@SuppressWarnings("unchecked")
+	private Entries<V> register(Entries<V> fileBlockCache){
+		F current = files.get(fileBlockCache.getFd());
+		if (current != null){
+			return current;
+		}
+		current = files.putIfAbsent(fileBlockCache.getFd(), (F) fileBlockCache);
+		if (current != null){
+			return current;
+		}
+		synchronized(fileBlockCache){
+			if (fileBlockCache.removed){
+				files.remove(fileBlockCache.getFd(), fileBlockCache);
+				return fileBlockCache;
+			}
+			fileBlockCache.evicted = false;
+			fileBlockCache.referenced = true;
+		}
+		clock.add((F) fileBlockCache);
+		return fileBlockCache;
+	}
+
+	long getClockSize(){
+		return clock.size();
+	}
+
+	private void added(long count){
+		if (size.addAndGet(count) > limit && limit > 0){
+			evict();
+		}
+	}
+
+	private void removed(long count){
+		size.addAndGet(-count);
+	}
+
+	@Override
+	public String providerName() {
+		return name;
+	}
+
+	@Override
+	public String printStatistics() {
+		return "files " + files.size() + ", entries " + size.get() + ", hits " + hits.get() + ", misses " + misses.get() + ", evictions " + evictions.get() + ", expirations " + expirations.get();
+	}
+
+	@Override
+	public void mergeStatistics(StatisticsProvider provider) {
+	}
+
+	@Override
+	public void resetStatistics() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+		expirations.set(0);
+	}
+
+	public static class Entries<V> {
+		private long fd;
+		private FileCache<V, ?> cache;
+		private ConcurrentHashMap<Long, V> entries;
+		private volatile boolean referenced;
+		private volatile boolean evicted;
+		private volatile boolean removed;
+		private volatile long created;
+
+		protected Entries(long fd, FileCache<V, ?> cache){
+			this.fd = fd;
+			this.cache = cache;
+			this.entries = new ConcurrentHashMap<Long, V>();
+			this.referenced = true;
+			this.evicted = false;
+			this.removed = false;
+			this.created = cache.ttl > 0 ? System.currentTimeMillis() : 0;
+		}
+
+		public void put(long blockstart, V value){
+			current().store(blockstart, value, false);
+		}
+
+		protected void putIfAbsent(long blockstart, V value){
+			current().store(blockstart, value, true);
+		}
+
+		private synchronized void store(long blockstart, V value, boolean absent){
+			if (evicted){
+				return;
+			}
+			referenced = true;
+			V old = absent ? entries.putIfAbsent(blockstart, value) : entries.put(blockstart, value);
+			if (old == null){
+				cache.added(1);
+			}
+		}
+
+		//counts a hit or a miss, a stream looks a block up once per operation
+		public V get(long blockstart){
+			V value = current().lookup(blockstart);
+			if (value != null){
+				cache.hits.incrementAndGet();
+			} else {
+				cache.misses.incrementAndGet();
+			}
+			return value;
+		}
+
+		//looks the block up again without counting, e.g., once the stream fetched the block map after a miss
+		public V recheck(long blockstart){
+			return current().lookup(blockstart);
+		}
+
+		private V lookup(long blockstart){
+			if (cache.ttl > 0 && System.currentTimeMillis() - created > cache.ttl){
+				expire();
+			}
+			referenced = true;
+			return entries.get(blockstart);
+		}
+
+		public boolean containsKey(long blockstart) {
+			return current().entries.containsKey(blockstart);
+		}
+
+		private Entries<V> current(){
+			if (!evicted || removed){
+				return this;
+			}
+			return cache.register(this);
+		}
+
+		//drops all blocks starting at or after the given offset
+		public void trim(long offset){
+			current().trimEntries(offset);
+		}
+
+		private synchronized void trimEntries(long offset){
+			long count = 0;
+			for (Iterator<Long> iter = entries.keySet().iterator(); iter.hasNext(); ){
+				if (iter.next() >= offset){
+					iter.remove();
+					count++;
+				}
+			}
+			cache.removed(count);
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		boolean isEvicted(){
+			return evicted;
+		}
+
+		//returns whether the file was accessed since the last sweep and resets the flag
+		boolean clearReferenced(){
+			boolean wasReferenced = referenced;
+			referenced = false;
+			return wasReferenced;
+		}
+
+		synchronized void evict(){
+			if (!evicted){
+				evicted = true;
+				cache.removed(entries.size());
+				entries.clear();
+			}
+		}
+
+		//the file was deleted or the cache closed, unlike an evicted file it is not registered again
+		synchronized void remove(){
+			removed = true;
+			evict();
+		}
+
+		private synchronized void expire(){
+			long now = System.currentTimeMillis();
+			if (!evicted && now - created > cache.ttl){
+				cache.removed(entries.size());
+				entries.clear();
+				cache.expirations.incrementAndGet();
+			}
+			created = now;
+		}
+	}
+}
@@ -18,61 +18,33 @@
 
 package org.apache.crail.utils;
 
-import java.util.concurrent.ConcurrentHashMap;
-
+import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.rpc.RpcFuture;
 import org.apache.crail.rpc.RpcGetBlock;
 
-public class NextBlockCache {
-	private ConcurrentHashMap<Long, FileNextBlockCache> nextBlockCache;
-	
+/*
+ * Pending block lookups issued ahead of the stream position. Evicting a lookup only drops the
+ * reference, the response is still consumed by the rpc endpoint and the stream issues a new lookup.
+ */
+public class NextBlockCache extends FileCache<RpcFuture<? extends RpcGetBlock>, NextBlockCache.FileNextBlockCache> {
+
 	public NextBlockCache(){
-		this.nextBlockCache = new ConcurrentHashMap<Long, FileNextBlockCache>();  
-	}
-	
-	public FileNextBlockCache getFileBlockCache(long fd){
-		FileNextBlockCache fileBlockCache = nextBlockCache.get(fd);
-		if (fileBlockCache == null){
-			fileBlockCache = new FileNextBlockCache(fd);
-			FileNextBlockCache oldFileBlockCache = nextBlockCache.putIfAbsent(fd, fileBlockCache);
-			if (oldFileBlockCache != null){
-				fileBlockCache = oldFileBlockCache;
-			}
-		}
-		return fileBlockCache;
+		super("cache/nextblock", CrailConstants.BLOCK_CACHE_LIMIT, CrailConstants.BLOCK_CACHE_TTL);
 	}
-	
-	public void remove(long fd) {
-		nextBlockCache.remove(fd);
-	}	
-	
-	public void purge() {
-		nextBlockCache.clear();
-	}
-
-	public static class FileNextBlockCache {
-		private long fd;
-		private ConcurrentHashMap<Long, RpcFuture<RpcGetBlock>> fileBlockCache;
-		
-		public FileNextBlockCache(long fd){
-			this.fd = fd;
-			this.fileBlockCache = new ConcurrentHashMap<Long, RpcFuture<RpcGetBlock>>();
-		}
 
-		public void put(long blockstart, RpcFuture<RpcGetBlock> block){
-			this.fileBlockCache.putIfAbsent(blockstart, block);
-		}
-		
-		public RpcFuture<RpcGetBlock> get(long blockstart){
-			return this.fileBlockCache.get(blockstart);
-		}
+	@Override
+	protected FileNextBlockCache createEntries(long fd) {
+		return new FileNextBlockCache(fd, this);
+	}
 
-		public boolean containsKey(long blockstart) {
-			return this.fileBlockCache.containsKey(blockstart);
+	public static class FileNextBlockCache extends FileCache.Entries<RpcFuture<? extends RpcGetBlock>> {
+		public FileNextBlockCache(long fd, NextBlockCache cache){
+			super(fd, cache);
 		}
 
-		public long getFd() {
-			return fd;
+		@Override
+		public void put(long blockstart, RpcFuture<? extends RpcGetBlock> block){
+			putIfAbsent(blockstart, block);
 		}
 	}
 }
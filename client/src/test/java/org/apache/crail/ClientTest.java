@@ -316,4 +316,85 @@ public class ClientTest {
 		endBuffer.clear();
 		Assert.assertEquals(endBuffer, buffer);
 	}
+
+	void writeBlocks(String filename, int blocks) throws Exception {
+		CrailFile file = fs.create(filename, CrailNodeType.DATAFILE, CrailStorageClass.DEFAULT, CrailLocationClass.DEFAULT, true).get().asFile();
+		CrailOutputStream outputStream = file.getDirectOutputStream(0);
+		CrailBuffer buffer = OffHeapBuffer.wrap(ByteBuffer.allocateDirect((int) CrailConstants.BLOCK_SIZE));
+		for (int i = 0; i < blocks; i++) {
+			buffer.clear();
+			while (buffer.remaining() > 0) {
+				buffer.getByteBuffer().putInt(i);
+			}
+			buffer.clear();
+			outputStream.write(buffer).get();
+		}
+		outputStream.close();
+	}
+
+	void readBlock(CrailInputStream inputStream, int block) throws Exception {
+		CrailBuffer buffer = OffHeapBuffer.wrap(ByteBuffer.allocateDirect((int) CrailConstants.BLOCK_SIZE));
+		inputStream.seek(block*CrailConstants.BLOCK_SIZE);
+		Assert.assertEquals(CrailConstants.BLOCK_SIZE, inputStream.read(buffer).get().getLen());
+		buffer.clear();
+		while (buffer.remaining() > 0) {
+			Assert.assertEquals(block, buffer.getByteBuffer().getInt());
+		}
+	}
+
+	@Test
+	public void testBlockMapRead() throws Exception {
+		String filename = basePath + "/fooBlockMap";
+		int blocks = 40;
+		writeBlocks(filename, blocks);
+		int blockMap = CrailConstants.BLOCK_MAP;
+		try {
+			//maps smaller and larger than the file, and none
+			for (int size : new int[]{ 16, 1024, 0 }) {
+				CrailConstants.BLOCK_MAP = size;
+				CrailFile file = fs.lookup(filename).get().asFile();
+				Assert.assertEquals(blocks*CrailConstants.BLOCK_SIZE, file.getCapacity());
+				CrailInputStream inputStream = file.getDirectInputStream(file.getCapacity());
+				for (int i = 0; i < blocks; i++) {
+					readBlock(inputStream, i);
+				}
+				for (int i = 0; i < blocks; i++) {
+					readBlock(inputStream, random.nextInt(blocks));
+				}
+				inputStream.close();
+			}
+		} finally {
+			CrailConstants.BLOCK_MAP = blockMap;
+		}
+	}
+
+	@Test
+	public void testBatchLocations() throws Exception {
+		long blockSize = CrailConstants.BLOCK_SIZE;
+		writeBlocks(basePath + "/fooLocations1", 4);
+		//more blocks than fit into one location page
+		writeBlocks(basePath + "/fooLocations2", 300);
+		String[] paths = { basePath + "/fooLocations1", null, basePath + "/fooLocations2" };
+		long[] starts = { 100, 0, 5*blockSize + 7 };
+		long[] lens = { 3*blockSize, 0, 250*blockSize };
+		CrailBlockLocation[][] locations = fs.getBlockLocations(paths, starts, lens);
+		Assert.assertEquals(3, locations.length);
+		Assert.assertNull(locations[1]);
+		Assert.assertEquals(4, locations[0].length);
+		Assert.assertEquals(251, locations[2].length);
+		for (int i : new int[]{ 0, 2 }) {
+			long offset = starts[i] - starts[i] % blockSize;
+			for (CrailBlockLocation location : locations[i]) {
+				Assert.assertEquals(offset, location.getOffset());
+				Assert.assertEquals(Math.min(blockSize, starts[i] + lens[i] - offset), location.getLength());
+				Assert.assertNotNull(location.getHosts()[0]);
+				offset += blockSize;
+			}
+		}
+		try {
+			fs.getBlockLocations(new String[]{ basePath + "/fooLocations1" }, new long[]{ 0 }, new long[]{ 5*blockSize });
+			Assert.fail("range past the end of the file");
+		} catch (Exception e) {
+		}
+	}
 }
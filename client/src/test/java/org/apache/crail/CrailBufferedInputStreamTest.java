@@ -0,0 +1,350 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail;
+
+import org.apache.crail.CrailStatistics.StatisticsProvider;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.memory.OffHeapBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CrailBufferedInputStreamTest {
+	private static final int SLICE = 1024;
+	private static final int SLICES = 64;
+	private int bufferSize;
+	private int sliceSize;
+	private int readAhead;
+	private TestStore store;
+	private TestStream stream;
+	private TestBufferedStream buffered;
+
+	@Before
+	public void init() throws Exception {
+		bufferSize = CrailConstants.BUFFER_SIZE;
+		sliceSize = CrailConstants.SLICE_SIZE;
+		readAhead = CrailConstants.READ_AHEAD;
+		CrailConstants.BUFFER_SIZE = 4*SLICE;
+		CrailConstants.SLICE_SIZE = SLICE;
+		CrailConstants.READ_AHEAD = 8;
+		store = new TestStore();
+		stream = new TestStream(SLICES*SLICE);
+		buffered = new TestBufferedStream(store, stream, 2);
+	}
+
+	@After
+	public void reset() throws Exception {
+		CrailConstants.BUFFER_SIZE = bufferSize;
+		CrailConstants.SLICE_SIZE = sliceSize;
+		CrailConstants.READ_AHEAD = readAhead;
+	}
+
+	private static void check(byte[] data, long offset, int length){
+		for (int i = 0; i < length; i++){
+			assertEquals(TestStream.content(offset + i), data[i]);
+		}
+	}
+
+	private void readSlice() throws Exception {
+		long offset = buffered.position();
+		byte[] data = new byte[SLICE];
+		assertEquals(SLICE, buffered.read(data));
+		check(data, offset, SLICE);
+	}
+
+	//slices read or in flight beyond the ones consumed
+	private int window(int consumed){
+		return stream.reads.size() - consumed;
+	}
+
+	@Test
+	public void windowGrowsWithSequentialRuns() throws Exception {
+		//starts at the queue depth and doubles after each run of its own size, up to crail.readahead
+		int[] windows = {2, 4, 4, 4, 4, 8, 8, 8};
+		for (int consumed = 1; consumed <= windows.length; consumed++){
+			readSlice();
+			assertEquals(windows[consumed - 1], window(consumed));
+		}
+		//slices of a grown window fill up the last buffer first
+		assertEquals(2, store.allocated);
+
+		//the window never reads past the end of the file
+		for (int consumed = windows.length + 1; consumed <= SLICES; consumed++){
+			readSlice();
+			assertEquals(Math.min(8, SLICES - consumed), window(consumed));
+		}
+		assertEquals(-1, buffered.read(new byte[SLICE]));
+		assertEquals(SLICES, stream.reads.size());
+
+		buffered.close();
+		assertEquals(2, store.freed);
+		assertEquals("totalOps 64, blockingOps 0, nonBlockingOps 64, randomSeeks 0, discardedOps 0, wastedBytes 0", store.buffered.printStatistics());
+	}
+
+	@Test
+	public void randomSeekShrinksWindow() throws Exception {
+		for (int consumed = 1; consumed <= 8; consumed++){
+			readSlice();
+		}
+		assertEquals(16, stream.reads.size());
+
+		//a skip within the window drops the skipped read but keeps the window
+		assertEquals(SLICE, buffered.skip(SLICE));
+		assertEquals(17, stream.reads.size());
+		readSlice();
+
+		//a seek outside the window restarts with a single slice
+		long target = 40*SLICE + 100;
+		buffered.seek(target);
+		assertEquals(19, stream.reads.size());
+		assertEquals(40*SLICE, stream.reads.get(18).longValue());
+		byte[] data = new byte[SLICE - 100];
+		assertEquals(data.length, buffered.read(data));
+		check(data, target, data.length);
+		assertEquals(21, stream.reads.size());
+		assertEquals(42*SLICE, stream.reads.get(20).longValue());
+		readSlice();
+
+		buffered.close();
+		//the skipped read and the eight reads in flight at the seek
+		assertTrue(store.buffered.printStatistics().endsWith("randomSeeks 1, discardedOps 9, wastedBytes " + 9*SLICE));
+	}
+
+	@Test
+	public void seekDoesNotWaitForDiscardedReads() throws Exception {
+		readSlice();
+		stream.hold = true;
+		readSlice();
+		assertEquals(6, stream.reads.size());
+		stream.hold = false;
+
+		//the first read completed, the three held ones are left to finish in the background
+		buffered.seek(40*SLICE);
+		readSlice();
+		readSlice();
+		for (ReadFuture future : stream.held){
+			assertFalse(future.isDone());
+		}
+		for (ReadFuture future : stream.held){
+			future.done = true;
+		}
+		buffered.close();
+		//the four slices share one buffer
+		assertEquals(1, store.allocated);
+		assertEquals(1, store.freed);
+		assertTrue(store.buffered.printStatistics().endsWith("randomSeeks 1, discardedOps 4, wastedBytes " + 4*SLICE));
+	}
+
+	private static class TestBufferedStream extends CrailBufferedInputStream {
+		private CrailInputStream stream;
+
+		TestBufferedStream(CrailStore fs, CrailInputStream stream, int queueDepth) throws Exception {
+			super(fs, queueDepth, SLICES*SLICE);
+			this.stream = stream;
+		}
+
+		@Override
+		public CrailInputStream getStream() throws Exception {
+			return stream;
+		}
+
+		@Override
+		public void putStream() throws Exception {
+		}
+	}
+
+	//serves a file of the given capacity, reads issued while hold is set complete only once released
+	private static class TestStream implements CrailInputStream {
+		private long capacity;
+		private long position;
+		private boolean hold;
+		private List<Long> reads = new ArrayList<Long>();
+		private List<ReadFuture> held = new ArrayList<ReadFuture>();
+
+		TestStream(long capacity){
+			this.capacity = capacity;
+		}
+
+		static byte content(long offset){
+			return (byte) (offset % 251);
+		}
+
+		@Override
+		public CrailNode getFile() {
+			return null;
+		}
+
+		@Override
+		public Future<CrailResult> read(CrailBuffer dataBuf) throws Exception {
+			int length = (int) Math.min(dataBuf.remaining(), capacity - position);
+			if (length <= 0){
+				return null;
+			}
+			reads.add(position);
+			for (int i = 0; i < length; i++){
+				dataBuf.put(content(position + i));
+			}
+			position += length;
+			ReadFuture future = new ReadFuture(length, !hold);
+			if (hold){
+				held.add(future);
+			}
+			return future;
+		}
+
+		@Override
+		public void seek(long pos) throws IOException {
+			this.position = pos;
+		}
+
+		@Override
+		public int available() {
+			return 0;
+		}
+
+		@Override
+		public long position() {
+			return position;
+		}
+
+		@Override
+		public void close() throws Exception {
+		}
+	}
+
+	//waiting for a read which has not completed fails instead of blocking the single test thread
+	private static class ReadFuture implements Future<CrailResult>, CrailResult {
+		private long len;
+		private volatile boolean done;
+
+		ReadFuture(long len, boolean done){
+			this.len = len;
+			this.done = done;
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled() {
+			return false;
+		}
+
+		@Override
+		public boolean isDone() {
+			return done;
+		}
+
+		@Override
+		public CrailResult get() {
+			if (!done){
+				throw new AssertionError("waited for a read in flight");
+			}
+			return this;
+		}
+
+		@Override
+		public CrailResult get(long timeout, TimeUnit unit) {
+			return get();
+		}
+
+		@Override
+		public long getLen() {
+			return len;
+		}
+	}
+
+	private static class TestStore extends CrailStore {
+		private int allocated;
+		private int freed;
+		private StatisticsProvider buffered;
+		private CrailStatistics statistics = new CrailStatistics(){
+			@Override
+			public void addProvider(StatisticsProvider provider){
+				buffered = provider;
+			}
+		};
+
+		@Override
+		public CrailBuffer allocateBuffer() throws Exception {
+			allocated++;
+			return OffHeapBuffer.wrap(ByteBuffer.allocateDirect(CrailConstants.BUFFER_SIZE));
+		}
+
+		@Override
+		public void freeBuffer(CrailBuffer buffer) throws Exception {
+			freed++;
+		}
+
+		@Override
+		public CrailStatistics getStatistics() {
+			return statistics;
+		}
+
+		@Override
+		public Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, boolean enumerable) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Upcoming<CrailNode> create(String path, CrailNodeType type, CrailStorageClass storageClass, CrailLocationClass locationClass, CrailPlacementPolicy placement, boolean enumerable) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Upcoming<CrailNode> lookup(String path) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Upcoming<CrailNode> rename(String srcPath, String dstPath) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Upcoming<CrailNode> delete(String path, boolean recursive) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CrailBlockLocation[][] getBlockLocations(String[] paths, long[] start, long[] len) throws Exception {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public CrailLocationClass getLocationClass() {
+			return null;
+		}
+
+		@Override
+		protected void closeFileSystem() throws Exception {
+		}
+	}
+}
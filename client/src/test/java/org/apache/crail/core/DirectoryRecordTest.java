@@ -0,0 +1,153 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.core;
+
+import org.apache.crail.CrailBuffer;
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.memory.OffHeapBuffer;
+import org.apache.crail.metadata.FileInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DirectoryRecordTest {
+	private int version;
+	private int record;
+	private CrailBuffer buffer;
+
+	@Before
+	public void init() throws Exception {
+		version = CrailConstants.DIRECTORY_VERSION;
+		record = CrailConstants.DIRECTORY_RECORD;
+		CrailConstants.DIRECTORY_VERSION = DirectoryRecord.VERSION_PACKED;
+		CrailConstants.DIRECTORY_RECORD = 128;
+		buffer = OffHeapBuffer.wrap(ByteBuffer.allocateDirect(4*128));
+	}
+
+	@After
+	public void reset() {
+		CrailConstants.DIRECTORY_VERSION = version;
+		CrailConstants.DIRECTORY_RECORD = record;
+	}
+
+	private DirectoryRecord read(int offset) {
+		buffer.clear();
+		buffer.position(offset);
+		DirectoryRecord read = new DirectoryRecord("/dir");
+		read.update(buffer);
+		assertEquals(offset + CrailConstants.DIRECTORY_RECORD, buffer.position());
+		return read;
+	}
+
+	@Test
+	public void packedRoundTrip() throws Exception {
+		FileInfo fileInfo = new FileInfo(42, CrailNodeType.MULTIFILE, 1L << 33, 1234567890123L);
+		String name = "für-文件";
+		new DirectoryRecord(true, "/dir/" + name, fileInfo).write(buffer);
+		//only the used part of the slot is written
+		assertEquals(DirectoryRecord.PACKED_HEADER + name.getBytes("UTF-8").length, buffer.position());
+
+		DirectoryRecord read = read(0);
+		assertTrue(read.isValid());
+		assertTrue(read.hasAttributes());
+		assertEquals(DirectoryRecord.VERSION_PACKED, read.getVersion());
+		assertEquals(name, read.getFile());
+		assertEquals(42, read.getFd());
+		assertEquals(CrailNodeType.MULTIFILE, read.getType());
+		assertEquals(1L << 33, read.getCapacity());
+		assertEquals(1234567890123L, read.getModificationTime());
+
+		//a writer refreshes capacity and modification time in place
+		fileInfo.setCapacity(1L << 34);
+		fileInfo.setModificationTime(7);
+		buffer.clear();
+		buffer.position(DirectoryRecord.ATTRIBUTES_OFFSET);
+		new DirectoryRecord(true, "/dir/" + name, fileInfo).writeAttributes(buffer);
+		read = read(0);
+		assertEquals(name, read.getFile());
+		assertEquals(1L << 34, read.getCapacity());
+		assertEquals(7, read.getModificationTime());
+		assertEquals(42, read.getFd());
+	}
+
+	@Test
+	public void packedWithoutAttributes() throws Exception {
+		buffer.position(CrailConstants.DIRECTORY_RECORD);
+		new DirectoryRecord(true, "/dir/plain").write(buffer);
+		buffer.position(2*CrailConstants.DIRECTORY_RECORD);
+		new DirectoryRecord(false, "/dir/deleted", new FileInfo(3, CrailNodeType.DATAFILE, 0, 0)).write(buffer);
+
+		DirectoryRecord plain = read(CrailConstants.DIRECTORY_RECORD);
+		assertTrue(plain.isValid());
+		assertFalse(plain.hasAttributes());
+		assertEquals("plain", plain.getFile());
+		DirectoryRecord deleted = read(2*CrailConstants.DIRECTORY_RECORD);
+		assertFalse(deleted.isValid());
+		assertFalse(deleted.hasAttributes());
+		assertNull(deleted.getFile());
+	}
+
+	@Test
+	public void fixedRecords() throws Exception {
+		//records written before the packed format are still understood
+		CrailConstants.DIRECTORY_VERSION = DirectoryRecord.VERSION_FIXED;
+		new DirectoryRecord(true, "/dir/old", new FileInfo(5, CrailNodeType.DATAFILE, 10, 10)).write(buffer);
+		assertEquals(CrailConstants.DIRECTORY_RECORD, buffer.position());
+		new DirectoryRecord(false, "/dir/gone").write(buffer);
+		CrailConstants.DIRECTORY_VERSION = DirectoryRecord.VERSION_PACKED;
+
+		DirectoryRecord old = read(0);
+		assertTrue(old.isValid());
+		assertEquals(DirectoryRecord.VERSION_FIXED, old.getVersion());
+		assertFalse(old.hasAttributes());
+		assertEquals(-1, old.getFd());
+		assertEquals("old", old.getFile());
+		assertFalse(read(CrailConstants.DIRECTORY_RECORD).isValid());
+	}
+
+	@Test
+	public void longNames() throws Exception {
+		StringBuilder name = new StringBuilder("/dir/");
+		for (int i = 0; i < CrailConstants.DIRECTORY_RECORD - DirectoryRecord.PACKED_HEADER; i++) {
+			name.append('x');
+		}
+		DirectoryRecord.checkName(name.toString());
+		new DirectoryRecord(true, name.toString()).write(buffer);
+		assertEquals(CrailConstants.DIRECTORY_RECORD, buffer.position());
+		assertEquals(name.substring(5), read(0).getFile());
+
+		name.append('x');
+		try {
+			DirectoryRecord.checkName(name.toString());
+			fail();
+		} catch(IOException e) {
+		}
+		try {
+			new DirectoryRecord(true, name.toString()).write(buffer);
+			fail();
+		} catch(IOException e) {
+		}
+	}
+}
@@ -0,0 +1,235 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.core;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.CrailResult;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.FileInfo;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class DirectoryWriteBackTest {
+	private static final int RECORD = 512;
+	private long flush;
+	private long blockSize;
+	private int bufferSize;
+	private int record;
+	private RecordingWriteBack writeBack;
+	private FileInfo dir;
+
+	@Before
+	public void init() throws Exception {
+		flush = CrailConstants.DIRECTORY_FLUSH;
+		blockSize = CrailConstants.BLOCK_SIZE;
+		bufferSize = CrailConstants.BUFFER_SIZE;
+		record = CrailConstants.DIRECTORY_RECORD;
+		CrailConstants.DIRECTORY_FLUSH = 60000;
+		CrailConstants.BLOCK_SIZE = 16*RECORD;
+		CrailConstants.BUFFER_SIZE = 4*RECORD;
+		CrailConstants.DIRECTORY_RECORD = RECORD;
+		dir = new FileInfo(1, CrailNodeType.DIRECTORY, 0, 0);
+	}
+
+	@After
+	public void reset() throws Exception {
+		if (writeBack != null){
+			writeBack.close();
+		}
+		CrailConstants.DIRECTORY_FLUSH = flush;
+		CrailConstants.BLOCK_SIZE = blockSize;
+		CrailConstants.BUFFER_SIZE = bufferSize;
+		CrailConstants.DIRECTORY_RECORD = record;
+	}
+
+	private CoreSyncOperation add(FileInfo dirInfo, int slot) throws Exception {
+		return writeBack.addRecord(dirInfo, slot*RECORD, new DirectoryRecord(true, "/dir/f" + slot));
+	}
+
+	@Test
+	public void coalescing() throws Exception {
+		writeBack = new RecordingWriteBack();
+		//a later record for a slot replaces the earlier one
+		add(dir, 0);
+		add(dir, 1);
+		add(dir, 1);
+		add(dir, 2);
+		add(dir, 5);
+		//a run ends at a block boundary and after a buffer worth of records
+		for (int slot = 9; slot < 20; slot++){
+			add(dir, slot);
+		}
+		assertTrue(writeBack.writes.isEmpty());
+		add(dir, 6).close();
+		assertEquals(Collections.singletonList(1), writeBack.directories);
+		assertEquals("0-2 5-6 9-12 13-15 16-19", writeBack.runs());
+		assertEquals("directories 1, records 17, writes 5", writeBack.printStatistics());
+
+		//nothing is pending after the flush
+		add(dir, 3).close();
+		assertEquals("0-2 5-6 9-12 13-15 16-19 3-3", writeBack.runs());
+	}
+
+	@Test
+	public void fullBlockIsFlushed() throws Exception {
+		writeBack = new RecordingWriteBack();
+		for (int slot = 0; slot < 15; slot++){
+			add(dir, slot);
+		}
+		assertTrue(writeBack.writes.isEmpty());
+		add(dir, 15);
+		assertEquals("0-3 4-7 8-11 12-15", writeBack.runs());
+	}
+
+	@Test
+	public void flushOnSyncAndList() throws Exception {
+		writeBack = new RecordingWriteBack();
+		FileInfo other = new FileInfo(2, CrailNodeType.DIRECTORY, 0, 0);
+		add(dir, 0);
+		CoreSyncOperation sync = add(other, 4);
+
+		//listing a directory flushes only its own records
+		writeBack.flush(dir.getFd());
+		assertEquals("0-0", writeBack.runs());
+		writeBack.flush(dir.getFd());
+		writeBack.flush(3);
+		assertEquals("0-0", writeBack.runs());
+
+		//syncing any node of a directory flushes the directory
+		add(other, 5);
+		sync.close();
+		assertEquals("0-0 4-5", writeBack.runs());
+		assertEquals(2, writeBack.directories.get(1).intValue());
+
+		//close flushes everything
+		add(dir, 7);
+		writeBack.close();
+		assertEquals("0-0 4-5 7-7", writeBack.runs());
+		writeBack = null;
+	}
+
+	@Test
+	public void flushAfterTimeout() throws Exception {
+		CrailConstants.DIRECTORY_FLUSH = 100;
+		writeBack = new RecordingWriteBack();
+		add(dir, 0);
+		for (int i = 0; i < 100 && writeBack.writes.isEmpty(); i++){
+			Thread.sleep(10);
+		}
+		assertEquals("0-0", writeBack.runs());
+	}
+
+	@Test
+	public void failedRecordsStayPending() throws Exception {
+		writeBack = new RecordingWriteBack();
+		add(dir, 0);
+		add(dir, 1);
+		add(dir, 5);
+		writeBack.failing = 5*RECORD;
+		try {
+			add(dir, 6).close();
+			fail();
+		} catch(IOException e){
+		}
+		assertEquals("0-1 5-6", writeBack.runs());
+
+		//a record replaced while the write failed is not overwritten by the failed one
+		DirectoryRecord replaced = new DirectoryRecord(false, "/dir/f6");
+		writeBack.addRecord(dir, 6*RECORD, replaced);
+		try {
+			writeBack.flush(dir.getFd());
+			fail();
+		} catch(IOException e){
+		}
+		assertEquals("0-1 5-6 5-6", writeBack.runs());
+		assertSame(replaced, writeBack.written.get(writeBack.written.size() - 1).get(1));
+
+		writeBack.failing = -1;
+		writeBack.flush(dir.getFd());
+		assertEquals("0-1 5-6 5-6 5-6", writeBack.runs());
+		writeBack.flush(dir.getFd());
+		assertEquals("0-1 5-6 5-6 5-6", writeBack.runs());
+	}
+
+	@Test
+	public void failedBackgroundFlushIsRetried() throws Exception {
+		CrailConstants.DIRECTORY_FLUSH = 100;
+		writeBack = new RecordingWriteBack();
+		writeBack.failing = 0;
+		add(dir, 0);
+		for (int i = 0; i < 100 && writeBack.writes.size() < 2; i++){
+			Thread.sleep(10);
+		}
+		//the flusher only logs the failure, the records are still reported by the next sync
+		writeBack.failing = -1;
+		add(dir, 1).close();
+		assertTrue(writeBack.writes.size() >= 3);
+		assertEquals("0-1", writeBack.writes.get(writeBack.writes.size() - 1));
+		writeBack.flush(dir.getFd());
+	}
+
+	//records the runs instead of writing them, the run starting at failing fails
+	private static class RecordingWriteBack extends DirectoryWriteBack {
+		private List<String> writes = Collections.synchronizedList(new ArrayList<String>());
+		private List<List<DirectoryRecord>> written = Collections.synchronizedList(new ArrayList<List<DirectoryRecord>>());
+		private List<Integer> directories = Collections.synchronizedList(new ArrayList<Integer>());
+		private volatile long failing = -1;
+
+		RecordingWriteBack() {
+			super(null);
+		}
+
+		@Override
+		CoreSyncOperation writeRecords(FileInfo dirInfo, String parent, long first, long last, List<DirectoryRecord> records) throws Exception {
+			assertEquals(last - first, (records.size() - 1)*RECORD);
+			writes.add(first/RECORD + "-" + last/RECORD);
+			written.add(new ArrayList<DirectoryRecord>(records));
+			if (!directories.contains((int) dirInfo.getFd())){
+				directories.add((int) dirInfo.getFd());
+			}
+			final boolean fail = first == failing;
+			return new CoreSyncOperation((DirectoryOutputStream) null, (Future<CrailResult>) null){
+				public void close() throws Exception {
+					if (fail){
+						throw new IOException("write failed");
+					}
+				}
+			};
+		}
+
+		String runs() {
+			StringBuilder runs = new StringBuilder();
+			synchronized(writes){
+				for (String write : writes){
+					runs.append(runs.length() > 0 ? " " : "").append(write);
+				}
+			}
+			return runs.toString();
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.core;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LookupCacheTest {
+
+	private static void put(LookupCache cache, String path, long fd){
+		cache.put(path, new FileInfo(fd, CrailNodeType.DATAFILE, 0, 0), new BlockInfo(), cache.generation());
+	}
+
+	private static long fd(LookupCache cache, String path){
+		LookupCache.CachedLookup entry = cache.get(path);
+		if (entry == null){
+			return -1;
+		}
+		return entry.getFileInfo() == null ? 0 : entry.getFileInfo().getFd();
+	}
+
+	@Test
+	public void hitsAndMisses() throws Exception {
+		LookupCache cache = new LookupCache(100, 60000);
+		assertNull(cache.get("/a"));
+		put(cache, "/a", 1);
+		cache.put("/missing", null, null, cache.generation());
+		//paths are normalized
+		assertEquals(1, fd(cache, "//a/"));
+		assertEquals(0, fd(cache, "/missing"));
+
+		//callers get their own copy of the file info
+		cache.get("/a").getFileInfo().setCapacity(4096);
+		assertEquals(0, cache.get("/a").getFileInfo().getCapacity());
+		assertEquals("entries 2, hits 3, negativeHits 1, misses 1, invalidations 0", cache.printStatistics());
+	}
+
+	@Test
+	public void ttlExpiry() throws Exception {
+		LookupCache cache = new LookupCache(100, 50);
+		put(cache, "/a", 1);
+		cache.put("/missing", null, null, cache.generation());
+		assertEquals(1, fd(cache, "/a"));
+		Thread.sleep(100);
+		//expired entries, including negative ones, are dropped on access
+		assertNull(cache.get("/a"));
+		assertNull(cache.get("/missing"));
+		assertTrue(cache.printStatistics().startsWith("entries 0, hits 1, negativeHits 0, misses 2,"));
+	}
+
+	@Test
+	public void leastRecentlyUsedIsDropped() throws Exception {
+		LookupCache cache = new LookupCache(2, 60000);
+		put(cache, "/a", 1);
+		put(cache, "/b", 2);
+		assertEquals(1, fd(cache, "/a"));
+		put(cache, "/c", 3);
+		assertEquals(1, fd(cache, "/a"));
+		assertNull(cache.get("/b"));
+		assertEquals(3, fd(cache, "/c"));
+	}
+
+	@Test
+	public void subtreeInvalidation() throws Exception {
+		LookupCache cache = new LookupCache(100, 60000);
+		put(cache, "/dir", 1);
+		put(cache, "/dir/f", 2);
+		put(cache, "/dir/sub/f", 3);
+		put(cache, "/dirx", 4);
+		put(cache, "/other/f", 5);
+
+		//a file only drops its own path
+		cache.invalidate("/dir/f", false);
+		assertNull(cache.get("/dir/f"));
+		assertEquals(3, fd(cache, "/dir/sub/f"));
+
+		//a container drops everything below it, but not siblings sharing its prefix
+		cache.invalidate("/dir/", true);
+		assertNull(cache.get("/dir"));
+		assertNull(cache.get("/dir/sub/f"));
+		assertEquals(4, fd(cache, "/dirx"));
+		assertEquals(5, fd(cache, "/other/f"));
+
+		cache.invalidate("/", true);
+		assertNull(cache.get("/dirx"));
+		assertNull(cache.get("/other/f"));
+		assertTrue(cache.printStatistics().endsWith("invalidations 3"));
+	}
+
+	@Test
+	public void racingLookupIsDropped() throws Exception {
+		LookupCache cache = new LookupCache(100, 60000);
+		//a lookup issued before an invalidation may have seen the old state
+		long generation = cache.generation();
+		cache.invalidate("/unrelated", false);
+		cache.put("/a", new FileInfo(1, CrailNodeType.DATAFILE, 0, 0), new BlockInfo(), generation);
+		assertNull(cache.get("/a"));
+		cache.put("/missing", null, null, generation);
+		assertNull(cache.get("/missing"));
+
+		//a lookup issued after the invalidation is cached
+		generation = cache.generation();
+		cache.put("/a", new FileInfo(1, CrailNodeType.DATAFILE, 0, 0), new BlockInfo(), generation);
+		assertEquals(1, fd(cache, "/a"));
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.rpc;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.metadata.FileName;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RpcBatcherTest {
+
+	@Test
+	public void fullBatchIsSent() throws Exception {
+		RecordingConnection connection = new RecordingConnection();
+		RpcBatcher batcher = new RpcBatcher(connection, TimeUnit.SECONDS.toMicros(10));
+		List<RpcFuture<RpcGetFile>> futures = new ArrayList<>();
+		for (int i = 0; i < RpcBatch.MAX_OPS; i++){
+			futures.add(batcher.getFile(new FileName("/f" + i), false));
+		}
+		assertEquals(1, connection.calls.size());
+		assertEquals("batch " + RpcBatch.MAX_OPS, connection.calls.get(0));
+		for (int i = 0; i < RpcBatch.MAX_OPS; i++){
+			assertTrue(futures.get(i).isDone());
+			assertSame(connection.batches.get(0)[i], ((Result) futures.get(i).get()).operation);
+		}
+		
+		batcher.getFile(new FileName("/g"), false);
+		assertEquals(1, connection.calls.size());
+	}
+	
+	@Test
+	public void waitSendsAfterWindow() throws Exception {
+		RecordingConnection connection = new RecordingConnection();
+		long window = TimeUnit.MILLISECONDS.toMicros(50);
+		RpcBatcher batcher = new RpcBatcher(connection, window);
+		long start = System.nanoTime();
+		RpcFuture<RpcCreateFile> create = batcher.createFile(new FileName("/a"), CrailNodeType.DATAFILE, 0, 0, 0, true);
+		RpcFuture<RpcGetFile> lookup = batcher.getFile(new FileName("/b"), false);
+		RpcFuture<RpcDeleteFile> delete = batcher.removeFile(new FileName("/c"), false);
+		assertTrue(connection.calls.isEmpty());
+		
+		Result result = (Result) lookup.get();
+		assertTrue(System.nanoTime() - start >= TimeUnit.MICROSECONDS.toNanos(window));
+		assertEquals(1, connection.calls.size());
+		assertEquals("batch 3", connection.calls.get(0));
+		RpcOperation[] operations = connection.batches.get(0);
+		assertSame(operations[1], result.operation);
+		assertEquals(RpcOperation.GET_FILE, result.operation.getType());
+		assertSame(operations[0], ((Result) create.get()).operation);
+		assertSame(operations[2], ((Result) delete.get()).operation);
+		assertEquals(1, connection.calls.size());
+	}
+	
+	@Test
+	public void isDoneSendsAfterWindow() throws Exception {
+		RecordingConnection connection = new RecordingConnection();
+		RpcBatcher batcher = new RpcBatcher(connection, TimeUnit.MILLISECONDS.toMicros(20));
+		RpcFuture<RpcGetFile> lookup = batcher.getFile(new FileName("/a"), false);
+		assertFalse(lookup.isDone());
+		assertTrue(connection.calls.isEmpty());
+		
+		Thread.sleep(40);
+		assertTrue(lookup.isDone());
+		assertEquals(1, connection.calls.size());
+	}
+	
+	@Test
+	public void expiredBatchIsNotJoined() throws Exception {
+		RecordingConnection connection = new RecordingConnection();
+		RpcBatcher batcher = new RpcBatcher(connection, TimeUnit.MILLISECONDS.toMicros(20));
+		RpcFuture<RpcGetFile> first = batcher.getFile(new FileName("/a"), false);
+		Thread.sleep(40);
+		RpcFuture<RpcGetFile> second = batcher.getFile(new FileName("/b"), false);
+		assertEquals(1, connection.calls.size());
+		assertEquals("batch 1", connection.calls.get(0));
+		assertEquals(new FileName("/a").toString(), ((Result) first.get()).operation.getFileName().toString());
+		
+		second.get();
+		assertEquals(2, connection.calls.size());
+		assertEquals("batch 1", connection.calls.get(1));
+		assertEquals(new FileName("/b").toString(), ((Result) second.get()).operation.getFileName().toString());
+	}
+	
+	@Test
+	public void otherCallsFlushFirst() throws Exception {
+		RecordingConnection connection = new RecordingConnection();
+		RpcBatcher batcher = new RpcBatcher(connection, TimeUnit.SECONDS.toMicros(10));
+		batcher.createFile(new FileName("/a"), CrailNodeType.DATAFILE, 0, 0, 0, true);
+		batcher.createFile(new FileName("/b"), CrailNodeType.DATAFILE, 0, 0, 0, true);
+		batcher.getBlock(1, 1, 0, 0);
+		batcher.getFile(new FileName("/a"), false);
+		batcher.renameFile(new FileName("/a"), new FileName("/c"));
+		batcher.renameFile(new FileName("/b"), new FileName("/d"));
+		batcher.removeFile(new FileName("/c"), false);
+		batcher.close();
+		
+		String[] expected = {"batch 2", "getBlock", "batch 1", "renameFile", "renameFile", "batch 1", "close"};
+		assertArrayEquals(expected, connection.calls.toArray());
+	}
+	
+	@Test
+	public void sendFailureIsReported() throws Exception {
+		RecordingConnection connection = new RecordingConnection();
+		connection.failure = new IOException("connection closed");
+		RpcBatcher batcher = new RpcBatcher(connection, TimeUnit.SECONDS.toMicros(10));
+		RpcFuture<RpcGetFile> lookup = batcher.getFile(new FileName("/a"), false);
+		batcher.pingNameNode();
+		assertTrue(lookup.isDone());
+		try {
+			lookup.get();
+			fail("lookup succeeded on a failed batch");
+		} catch(ExecutionException e){
+			assertSame(connection.failure, e.getCause());
+		}
+	}
+	
+	private static class RecordingConnection implements RpcConnection {
+		private List<String> calls = new ArrayList<>();
+		private List<RpcOperation[]> batches = new ArrayList<>();
+		private IOException failure;
+
+		@Override
+		public synchronized RpcFuture<RpcBatch> batch(final RpcOperation[] operations) throws IOException {
+			calls.add("batch " + operations.length);
+			if (failure != null){
+				throw failure;
+			}
+			batches.add(operations);
+			return new DoneFuture<RpcBatch>(new RpcBatch(){
+				public short getError(){ return RpcErrors.ERR_OK; }
+				public int getOpCount(){ return operations.length; }
+				public RpcCreateFile getCreateFile(int index){ return new Result(operations[index]); }
+				public RpcGetFile getFile(int index){ return new Result(operations[index]); }
+				public RpcDeleteFile getDeleteFile(int index){ return new Result(operations[index]); }
+			});
+		}
+		
+		private synchronized <T> RpcFuture<T> record(String call){
+			calls.add(call);
+			return new DoneFuture<T>(null);
+		}
+
+		public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageClass, int locationClass, int placement, boolean enumerable) { return record("createFile"); }
+		public RpcFuture<RpcGetFile> getFile(FileName filename, boolean writeable) { return record("getFile"); }
+		public RpcFuture<RpcVoid> setFile(FileInfo fileInfo, boolean close) { return record("setFile"); }
+		public RpcFuture<RpcDeleteFile> removeFile(FileName filename, boolean recursive) { return record("removeFile"); }
+		public RpcFuture<RpcRenameFile> renameFile(FileName srcHash, FileName dstHash) { return record("renameFile"); }
+		public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long position, long capacity) { return record("getBlock"); }
+		public RpcFuture<RpcLeaseBlocks> leaseBlocks(long fd, long token, long position, long capacity, int count) { return record("leaseBlocks"); }
+		public RpcFuture<RpcGetBlocks> getBlocks(long fd, long position, int count) { return record("getBlocks"); }
+		public RpcFuture<RpcGetLocation> getLocation(FileName fileName, long position) { return record("getLocation"); }
+		public RpcFuture<RpcGetLocations> getLocations(FileName fileName, long position, int count) { return record("getLocations"); }
+		public RpcFuture<RpcListDirectory> listDirectory(long fd, long cursor, int count) { return record("listDirectory"); }
+		public RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo) { return record("setBlock"); }
+		public RpcFuture<RpcGetDataNode> getDataNode(DataNodeInfo dnInfo) { return record("getDataNode"); }
+		public RpcFuture<RpcVoid> dumpNameNode() { return record("dumpNameNode"); }
+		public RpcFuture<RpcPing> pingNameNode() { return record("pingNameNode"); }
+		public RpcFuture<RpcRemoveDataNode> removeDataNode(InetAddress ipaddr, int port) { return record("removeDataNode"); }
+		public synchronized void close() { calls.add("close"); }
+	}
+	
+	private static class Result implements RpcCreateFile, RpcGetFile, RpcDeleteFile {
+		private RpcOperation operation;
+		
+		public Result(RpcOperation operation){
+			this.operation = operation;
+		}
+		
+		public short getError(){ return RpcErrors.ERR_OK; }
+		public FileInfo getFile(){ return null; }
+		public FileInfo getParent(){ return null; }
+		public BlockInfo getFileBlock(){ return null; }
+		public BlockInfo getDirBlock(){ return null; }
+	}
+	
+	private static class DoneFuture<T> implements RpcFuture<T> {
+		private T result;
+		
+		public DoneFuture(T result){
+			this.result = result;
+		}
+		
+		public int getTicket(){ return 0; }
+		public boolean isPrefetched(){ return false; }
+		public void setPrefetched(boolean prefetched){ }
+		public boolean cancel(boolean mayInterruptIfRunning){ return false; }
+		public boolean isCancelled(){ return false; }
+		public boolean isDone(){ return true; }
+		public T get(){ return result; }
+		public T get(long timeout, TimeUnit unit){ return result; }
+	}
+}
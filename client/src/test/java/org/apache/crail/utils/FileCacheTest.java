@@ -0,0 +1,148 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FileCacheTest {
+
+	private static FileCache.Entries<Long> file(TestCache cache, long fd) {
+		FileCache.Entries<Long> entries = cache.getFileBlockCache(fd);
+		entries.put(0, fd);
+		return entries;
+	}
+
+	@Test
+	public void clockOrder() throws Exception {
+		TestCache cache = new TestCache(4);
+		FileCache.Entries<Long>[] files = newFiles(7);
+		for (int fd = 1; fd <= 4; fd++) {
+			files[fd] = file(cache, fd);
+		}
+		//new files start referenced, a full sweep clears them all and evicts the oldest
+		files[5] = file(cache, 5);
+		assertTrue(files[1].isEvicted());
+		for (int fd = 2; fd <= 5; fd++) {
+			assertFalse(files[fd].isEvicted());
+		}
+
+		//an access since the last sweep gives a file a second chance
+		assertEquals(2, files[2].get(0).longValue());
+		files[6] = file(cache, 6);
+		assertFalse(files[2].isEvicted());
+		assertTrue(files[3].isEvicted());
+		assertTrue(cache.printStatistics().startsWith("files 4, entries 4,"));
+		assertTrue(cache.printStatistics().endsWith("evictions 2, expirations 0"));
+	}
+
+	@Test
+	public void evictedFileIsRegisteredAgain() throws Exception {
+		TestCache cache = new TestCache(2);
+		FileCache.Entries<Long> first = file(cache, 1);
+		FileCache.Entries<Long> second = file(cache, 2);
+		file(cache, 3);
+		assertTrue(first.isEvicted());
+		assertNull(first.get(0));
+
+		//the stream holding the evicted file caches again
+		first.put(0, 1L);
+		assertFalse(first.isEvicted());
+		assertSame(first, cache.getFileBlockCache(1));
+		assertEquals(1, first.get(0).longValue());
+
+		//a stream holding an evicted file continues with the one a later stream registered
+		assertTrue(second.isEvicted());
+		FileCache.Entries<Long> later = file(cache, 2);
+		assertNotSame(second, later);
+		assertEquals(2, second.get(0).longValue());
+		second.put(4096, 5L);
+		assertEquals(5, later.get(4096).longValue());
+		second.trim(4096);
+		assertFalse(later.containsKey(4096));
+		assertTrue(second.containsKey(0));
+	}
+
+	@Test
+	public void removedFileIsNotRegisteredAgain() throws Exception {
+		TestCache cache = new TestCache(10);
+		FileCache.Entries<Long> removed = file(cache, 1);
+		cache.remove(1);
+		removed.put(0, 1L);
+		assertNull(removed.get(0));
+		assertTrue(removed.isEvicted());
+		FileCache.Entries<Long> created = cache.getFileBlockCache(1);
+		assertNotSame(removed, created);
+		assertNull(created.get(0));
+
+		FileCache.Entries<Long> purged = file(cache, 2);
+		cache.purge();
+		purged.put(0, 2L);
+		assertTrue(purged.isEvicted());
+		assertNotSame(purged, cache.getFileBlockCache(2));
+	}
+
+	@Test
+	public void missesAreCountedOncePerLookup() throws Exception {
+		TestCache cache = new TestCache(10);
+		FileCache.Entries<Long> entries = cache.getFileBlockCache(1);
+		assertNull(entries.get(0));
+		entries.put(0, 1L);
+		assertEquals(1, entries.recheck(0).longValue());
+		assertNull(entries.recheck(4096));
+		assertEquals(1, entries.get(0).longValue());
+		assertTrue(cache.printStatistics().contains("hits 1, misses 1,"));
+	}
+
+	@Test
+	public void removalSweep() throws Exception {
+		TestCache cache = new TestCache(100);
+		for (int fd = 0; fd < 10; fd++) {
+			file(cache, fd);
+		}
+		assertEquals(10, cache.getClockSize());
+		//removed files stay queued until they outnumber the live ones
+		for (int fd = 0; fd < 5; fd++) {
+			cache.remove(fd);
+		}
+		assertEquals(10, cache.getClockSize());
+		cache.remove(5);
+		assertEquals(4, cache.getClockSize());
+		cache.remove(5);
+		assertEquals(4, cache.getClockSize());
+		assertTrue(cache.printStatistics().startsWith("files 4, entries 4,"));
+	}
+
+	@SuppressWarnings("unchecked")
+	private static FileCache.Entries<Long>[] newFiles(int count) {
+		return new FileCache.Entries[count];
+	}
+
+	private static class TestCache extends FileCache<Long, FileCache.Entries<Long>> {
+		TestCache(long limit) {
+			super("cache/test", limit, 0);
+		}
+
+		@Override
+		protected FileCache.Entries<Long> createEntries(long fd) {
+			return new FileCache.Entries<Long>(fd, this);
+		}
+	}
+}
@@ -46,7 +46,10 @@ import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FsStatus;
+import org.apache.hadoop.fs.LocatedFileStatus;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.apache.hadoop.util.Progressable;
 
@@ -178,19 +181,16 @@ public class CrailHadoopFileSystem extends FileSystem {
 	public FileStatus[] listStatus(Path path) throws FileNotFoundException, IOException {
 		try {
 			CrailNode node = dfs.lookup(path.toUri().getRawPath()).get();
-			Iterator<String> iter = node.asContainer().listEntries();
+			Iterator<CrailNode> iter = node.asContainer().listNodes();
 			ArrayList<FileStatus> statusList = new ArrayList<FileStatus>();
 			while(iter.hasNext()){
-				String filepath = iter.next();
-				CrailNode directFile = dfs.lookup(filepath).get();
-				if (directFile != null){
-					FsPermission permission = FsPermission.getFileDefault();
-					if (directFile.getType().isDirectory()) {
-						permission = FsPermission.getDirDefault();
-					}
-					FileStatus status = new FileStatus(directFile.getCapacity(), directFile.getType().isContainer(), CrailConstants.SHADOW_REPLICATION, CrailConstants.BLOCK_SIZE, directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, new Path(filepath).makeQualified(this.getUri(), this.workingDir));	
-					statusList.add(status);
+				CrailNode directFile = iter.next();
+				FsPermission permission = FsPermission.getFileDefault();
+				if (directFile.getType().isDirectory()) {
+					permission = FsPermission.getDirDefault();
 				}
+				FileStatus status = new FileStatus(directFile.getCapacity(), directFile.getType().isContainer(), CrailConstants.SHADOW_REPLICATION, CrailConstants.BLOCK_SIZE, directFile.getModificationTime(), directFile.getModificationTime(), permission, CrailConstants.USER, CrailConstants.USER, new Path(directFile.getPath()).makeQualified(this.getUri(), this.workingDir));	
+				statusList.add(status);
 			}
 			FileStatus[] list = new FileStatus[statusList.size()];
 			statusList.toArray(list);
@@ -260,21 +260,72 @@ public class CrailHadoopFileSystem extends FileSystem {
 		try {
 			statistics.incrementReadOps(1);
 			CrailBlockLocation[] _locations = dfs.lookup(path.toUri().getRawPath()).get().asFile().getBlockLocations(start, len);
-			BlockLocation[] locations = new BlockLocation[_locations.length];
-			for (int i = 0; i < locations.length; i++){
-				locations[i] = new BlockLocation();
-				locations[i].setOffset(_locations[i].getOffset());
-				locations[i].setLength(_locations[i].getLength());
-				locations[i].setNames(_locations[i].getNames());
-				locations[i].setHosts(_locations[i].getHosts());
-				locations[i].setTopologyPaths(_locations[i].getTopology());
-				
-			}			
-			return locations;
+			return toBlockLocations(_locations);
 		} catch(Exception e){
 			throw new IOException(e);
 		}
 	}
+
+	@Override
+	protected RemoteIterator<LocatedFileStatus> listLocatedStatus(Path path, PathFilter filter) throws FileNotFoundException, IOException {
+		FileStatus[] statusList = listStatus(path);
+		ArrayList<FileStatus> accepted = new ArrayList<FileStatus>(statusList.length);
+		for (FileStatus status : statusList){
+			if (filter.accept(status.getPath())){
+				accepted.add(status);
+			}
+		}
+		
+		//locations of all files in the directory are resolved in one batch
+		String[] paths = new String[accepted.size()];
+		long[] starts = new long[accepted.size()];
+		long[] lens = new long[accepted.size()];
+		for (int i = 0; i < paths.length; i++){
+			FileStatus status = accepted.get(i);
+			if (!status.isDirectory()){
+				paths[i] = status.getPath().toUri().getRawPath();
+				lens[i] = status.getLen();
+			}
+		}
+		CrailBlockLocation[][] _locations = null;
+		try {
+			statistics.incrementReadOps(1);
+			_locations = dfs.getBlockLocations(paths, starts, lens);
+		} catch(Exception e){
+			throw new IOException(e);
+		}
+		
+		ArrayList<LocatedFileStatus> located = new ArrayList<LocatedFileStatus>(paths.length);
+		for (int i = 0; i < paths.length; i++){
+			BlockLocation[] locations = _locations[i] != null ? toBlockLocations(_locations[i]) : null;
+			located.add(new LocatedFileStatus(accepted.get(i), locations));
+		}
+		final Iterator<LocatedFileStatus> iter = located.iterator();
+		return new RemoteIterator<LocatedFileStatus>() {
+			@Override
+			public boolean hasNext() throws IOException {
+				return iter.hasNext();
+			}
+
+			@Override
+			public LocatedFileStatus next() throws IOException {
+				return iter.next();
+			}
+		};
+	}
+	
+	private BlockLocation[] toBlockLocations(CrailBlockLocation[] _locations) throws IOException {
+		BlockLocation[] locations = new BlockLocation[_locations.length];
+		for (int i = 0; i < locations.length; i++){
+			locations[i] = new BlockLocation();
+			locations[i].setOffset(_locations[i].getOffset());
+			locations[i].setLength(_locations[i].getLength());
+			locations[i].setNames(_locations[i].getNames());
+			locations[i].setHosts(_locations[i].getHosts());
+			locations[i].setTopologyPaths(_locations[i].getTopology());
+		}
+		return locations;
+	}
 	
 	@Override
 	public FsStatus getStatus(Path p) throws IOException {
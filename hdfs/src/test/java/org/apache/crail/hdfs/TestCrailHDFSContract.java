@@ -22,8 +22,12 @@ import java.net.URI;
 
 import org.apache.crail.hdfs.CrailHadoopFileSystem;
 import org.apache.hadoop.conf.Configuration;
-import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.FileSystemContractBaseTest;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
 
 public class TestCrailHDFSContract extends FileSystemContractBaseTest {
 
@@ -34,10 +38,46 @@ public class TestCrailHDFSContract extends FileSystemContractBaseTest {
 		fs.initialize(URI.create(conf.get("fs.defaultFS")), conf);
 	}
 
+	public void testListLocatedStatus() throws Exception {
+		Path dir = new Path("/test/located");
+		fs.mkdirs(new Path(dir, "subdir"));
+		createFile(new Path(dir, "empty"), new byte[0]);
+		createFile(new Path(dir, "data"), data);
+		RemoteIterator<LocatedFileStatus> iterator = fs.listLocatedStatus(dir);
+		int count = 0;
+		while (iterator.hasNext()) {
+			LocatedFileStatus status = iterator.next();
+			String name = status.getPath().getName();
+			if (name.equals("subdir")) {
+				assertTrue(status.isDirectory());
+				assertNull(status.getBlockLocations());
+			} else if (name.equals("empty")) {
+				assertEquals(0, status.getBlockLocations().length);
+			} else {
+				assertEquals("data", name);
+				BlockLocation[] locations = status.getBlockLocations();
+				long length = 0;
+				for (BlockLocation location : locations) {
+					assertEquals(length, location.getOffset());
+					assertTrue(location.getHosts().length > 0);
+					length += location.getLength();
+				}
+				assertEquals(data.length, length);
+			}
+			count++;
+		}
+		assertEquals(3, count);
+	}
+
+	private void createFile(Path path, byte[] content) throws Exception {
+		FSDataOutputStream stream = fs.create(path);
+		stream.write(content);
+		stream.close();
+	}
+
 	// --------------------
 
 	protected final static String TEST_UMASK = "062";
-	protected FileSystem fs;
 	protected byte[] data = dataset(getBlockSize() * 2, 0, 255);
 
 	@Override
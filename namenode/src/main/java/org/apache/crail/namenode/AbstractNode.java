@@ -18,6 +18,8 @@
 
 package org.apache.crail.namenode;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.TimeUnit;
@@ -30,16 +32,22 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 	private long delay;
 	private int storageClass;
 	private int locationClass;
+	private int placement;
+	private volatile boolean unlinked;
+	//utf-8 leaf name, only known if the client shipped it while directory listing was enabled
+	private volatile byte[] name;
 	
 	//children manipulation
-	//adds or replaces a child, returns previous value or null if there was no mapping
-	public abstract AbstractNode putChild(AbstractNode child) throws Exception;
+	//adds or replaces a child, enumerable children get the directory slot at dirOffset (or NEXT_SLOT), returns previous value or null if there was no mapping
+	public abstract AbstractNode putChild(AbstractNode child, long dirOffset) throws Exception;
 	//get the child with the given component name, returns null if there is no mapping
 	public abstract AbstractNode getChild(int component) throws Exception;
 	//remove a child, returns previous value of existing or null otherwise
 	public abstract AbstractNode removeChild(int component) throws Exception;
 	//clear all the children (used by GC)
 	public abstract void clearChildren(Queue<AbstractNode> queue) throws Exception;
+	//adds all the children to the given queue without modifying the node (used by checkpointing)
+	public abstract void collectChildren(Queue<AbstractNode> queue) throws Exception;
 //	public abstract AbstractNode updateParent() throws Exception;
 	
 	//block manipulation
@@ -47,8 +55,12 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 	public abstract boolean addBlock(int index, NameNodeBlockInfo block) throws Exception;
 	//get block at the given index, returns a valid block or null otherwise
 	public abstract NameNodeBlockInfo getBlock(int index) throws Exception;
-	//clear all the blocks (used by GC)
-	public abstract void freeBlocks(BlockStore blockStore) throws Exception;	
+	//removes all blocks from the given index onwards and adds them to the list (used to return unused leases)
+	public abstract void truncateBlocks(int index, List<NameNodeBlockInfo> blocks) throws Exception;
+	//adds all the blocks to the list, the GC returns them to the block store in batches
+	public abstract void freeBlocks(List<NameNodeBlockInfo> blocks) throws Exception;	
+	//adds all the blocks together with their index to the given map (used by checkpointing)
+	public abstract void collectBlocks(Map<Integer, NameNodeBlockInfo> blockMap) throws Exception;
 	
 	public AbstractNode(long fd, int fileComponent, CrailNodeType type, int storageClass, int locationAffinity, boolean enumerable){
 		super(fd, type, enumerable);
@@ -63,11 +75,26 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 	void rename(int newFileComponent) throws Exception {
 		this.fileComponent = newFileComponent;
 	}	
+	
+	void restore(long capacity, long dirOffset, long token, long modificationTime) {
+		this.capacity.set(capacity);
+		this.setDirOffset(dirOffset);
+		this.setToken(token);
+		this.setModificationTime(modificationTime);
+	}
 
 	public int getComponent() {
 		return this.fileComponent;
 	}
 	
+	void unlink() {
+		this.unlinked = true;
+	}
+	
+	boolean isUnlinked() {
+		return unlinked;
+	}
+	
 	public void dump(){
 		System.out.println(this.toString());
 	}
@@ -95,7 +122,10 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 
 	@Override
 	public int compareTo(Delayed o) {
-		return 0;
+		if (o instanceof AbstractNode){
+			return Long.compare(delay, ((AbstractNode) o).delay);
+		}
+		return Long.compare(getDelay(TimeUnit.MILLISECONDS), o.getDelay(TimeUnit.MILLISECONDS));
 	}
 
 	public int getStorageClass() {
@@ -105,4 +135,20 @@ public abstract class AbstractNode extends FileInfo implements Delayed {
 	public int getLocationClass() {
 		return locationClass;
 	}
+
+	public int getPlacement() {
+		return placement;
+	}
+
+	void setPlacement(int placement) {
+		this.placement = placement;
+	}
+
+	byte[] getName() {
+		return name;
+	}
+
+	void setName(byte[] name) {
+		this.name = name;
+	}
 }
@@ -0,0 +1,320 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Lock-free allocator for the blocks of one datanode. Each block has a fixed slot, a region reserves
+ * a contiguous range of slots when it is first seen. Free blocks are tracked in a bitmap which
+ * allocating threads scan starting from a per-thread stripe. Blocks sharing a bitmap word are
+ * allocated or freed with a single CAS. Counters are striped, only the first registration of a
+ * region or a block is locked.
+ */
+class BlockAllocator {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int CHUNK_SHIFT = 12;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int WORDS_PER_CHUNK = CHUNK_SIZE >>> 6;
+	private static final int STRIPES = 64;
+	//hints are spread over cache lines to avoid false sharing between stripes
+	private static final int HINT_PADDING = 16;
+
+	private volatile NameNodeBlockInfo[][] blocks;
+	private volatile AtomicLongArray[] bitmap;
+	private volatile int slots;
+	private final LongObjectMap<Region> regions;
+	private final LongAdder freeCount;
+	private final LongAdder blockCount;
+	private final int[] hints;
+
+	public BlockAllocator(){
+		this.blocks = new NameNodeBlockInfo[0][];
+		this.bitmap = new AtomicLongArray[0];
+		this.slots = 0;
+		this.regions = new LongObjectMap<Region>();
+		this.freeCount = new LongAdder();
+		this.blockCount = new LongAdder();
+		this.hints = new int[STRIPES*HINT_PADDING];
+		for (int i = 0; i < STRIPES; i++){
+			hints[i*HINT_PADDING] = i*WORDS_PER_CHUNK;
+		}
+	}
+
+	public NameNodeBlockInfo allocate(){
+		if (freeCount.sum() <= 0){
+			return null;
+		}
+		int words = (slots + 63) >>> 6;
+		int hint = stripe();
+		int word = hints[hint];
+		for (int i = 0; i < words; i++, word++){
+			if (word >= words){
+				word = 0;
+			}
+			AtomicLongArray chunk = bitmap[word / WORDS_PER_CHUNK];
+			int index = word % WORDS_PER_CHUNK;
+			long bits = chunk.get(index);
+			while (bits != 0){
+				long bit = bits & -bits;
+				if (chunk.compareAndSet(index, bits, bits & ~bit)){
+					freeCount.decrement();
+					hints[hint] = word;
+					return getBlock((word << 6) + Long.numberOfTrailingZeros(bit));
+				}
+				bits = chunk.get(index);
+			}
+		}
+		return null;
+	}
+
+	//allocates up to count blocks, returns the number of blocks added to the collection
+	public int allocate(int count, Collection<? super NameNodeBlockInfo> out){
+		int allocated = 0;
+		if (count <= 0 || freeCount.sum() <= 0){
+			return allocated;
+		}
+		int words = (slots + 63) >>> 6;
+		int hint = stripe();
+		int word = hints[hint];
+		for (int i = 0; i < words && allocated < count; i++, word++){
+			if (word >= words){
+				word = 0;
+			}
+			AtomicLongArray chunk = bitmap[word / WORDS_PER_CHUNK];
+			int index = word % WORDS_PER_CHUNK;
+			long bits = chunk.get(index);
+			while (bits != 0){
+				long take = 0;
+				long rest = bits;
+				for (int n = allocated; n < count && rest != 0; n++){
+					take |= rest & -rest;
+					rest &= rest - 1;
+				}
+				if (chunk.compareAndSet(index, bits, bits & ~take)){
+					int taken = Long.bitCount(take);
+					freeCount.add(-taken);
+					allocated += taken;
+					hints[hint] = word;
+					while (take != 0){
+						out.add(getBlock((word << 6) + Long.numberOfTrailingZeros(take)));
+						take &= take - 1;
+					}
+					break;
+				}
+				bits = chunk.get(index);
+			}
+		}
+		return allocated;
+	}
+
+	//returns false if the block was already free
+	public boolean free(NameNodeBlockInfo block){
+		int slot = register(block);
+		AtomicLongArray chunk = bitmap[slot >>> CHUNK_SHIFT];
+		int index = (slot & CHUNK_MASK) >>> 6;
+		long bit = 1L << (slot & 63);
+		long bits = chunk.get(index);
+		while ((bits & bit) == 0){
+			if (chunk.compareAndSet(index, bits, bits | bit)){
+				freeCount.increment();
+				return true;
+			}
+			bits = chunk.get(index);
+		}
+		return false;
+	}
+
+	//frees a batch of blocks, blocks sharing a bitmap word are released with one CAS, returns the number of blocks freed
+	public int free(List<NameNodeBlockInfo> batch){
+		int freed = 0;
+		int word = -1;
+		long mask = 0;
+		for (int i = 0; i < batch.size(); i++){
+			int slot = register(batch.get(i));
+			if ((slot >>> 6) != word){
+				freed += release(word, mask);
+				word = slot >>> 6;
+				mask = 0;
+			}
+			mask |= 1L << (slot & 63);
+		}
+		freed += release(word, mask);
+		return freed;
+	}
+
+	//registers a block which is in use, used when restoring the namenode state
+	public void addUsed(NameNodeBlockInfo block){
+		register(block);
+	}
+
+	//takes a specific block out of the free set, used to re-apply logged allocations. Returns null if
+	//the block is unknown or not free, i.e., the log does not match the state of the namenode.
+	public NameNodeBlockInfo take(long lba){
+		Region region = findRegion(lba);
+		if (region == null){
+			LOG.info("cannot take block, no region for lba " + lba);
+			return null;
+		}
+		long offset = lba - region.info.getLba();
+		int slot = region.base + (int) (offset / CrailConstants.BLOCK_SIZE);
+		NameNodeBlockInfo block = getBlock(slot);
+		if (block == null){
+			LOG.info("cannot take block, unknown block, lba " + lba);
+			return null;
+		}
+		AtomicLongArray chunk = bitmap[slot >>> CHUNK_SHIFT];
+		int index = (slot & CHUNK_MASK) >>> 6;
+		long bit = 1L << (slot & 63);
+		long bits = chunk.get(index);
+		while ((bits & bit) != 0){
+			if (chunk.compareAndSet(index, bits, bits & ~bit)){
+				freeCount.decrement();
+				return block;
+			}
+			bits = chunk.get(index);
+		}
+		LOG.info("cannot take block, block is in use, lba " + lba);
+		return null;
+	}
+
+	public long getFreeCount(){
+		return freeCount.sum();
+	}
+
+	public long getBlockCount(){
+		return blockCount.sum();
+	}
+
+	public BlockInfo getRegion(long lba){
+		Region region = regions.get(lba);
+		return region != null ? region.info : null;
+	}
+
+	public Collection<BlockInfo> getRegions(){
+		ArrayList<Region> values = new ArrayList<Region>(regions.size());
+		regions.collectValues(values);
+		ArrayList<BlockInfo> infos = new ArrayList<BlockInfo>(values.size());
+		for (Region region : values){
+			infos.add(region.info);
+		}
+		return infos;
+	}
+
+	private int release(int word, long mask){
+		if (mask == 0){
+			return 0;
+		}
+		AtomicLongArray chunk = bitmap[word / WORDS_PER_CHUNK];
+		int index = word % WORDS_PER_CHUNK;
+		long bits = chunk.get(index);
+		while (!chunk.compareAndSet(index, bits, bits | mask)){
+			bits = chunk.get(index);
+		}
+		int freed = Long.bitCount(mask & ~bits);
+		freeCount.add(freed);
+		return freed;
+	}
+
+	private int register(NameNodeBlockInfo block){
+		BlockInfo info = block.getRegion();
+		Region region = regions.get(info.getLba());
+		if (region == null){
+			region = reserve(info);
+		}
+		int slot = region.base + (int) ((block.getLba() - info.getLba()) / CrailConstants.BLOCK_SIZE);
+		if (getBlock(slot) == null){
+			assign(slot, block);
+		}
+		return slot;
+	}
+
+	private synchronized void assign(int slot, NameNodeBlockInfo block){
+		NameNodeBlockInfo[] chunk = blocks[slot >>> CHUNK_SHIFT];
+		if (chunk[slot & CHUNK_MASK] == null){
+			chunk[slot & CHUNK_MASK] = block;
+			blockCount.increment();
+		}
+	}
+
+	private synchronized Region reserve(BlockInfo info){
+		Region region = regions.get(info.getLba());
+		if (region != null){
+			return region;
+		}
+		int count = (int) (((long) info.getLength()) / CrailConstants.BLOCK_SIZE);
+		region = new Region(info, slots);
+		int limit = slots + count;
+		int chunks = (limit + CHUNK_MASK) >>> CHUNK_SHIFT;
+		if (chunks > blocks.length){
+			NameNodeBlockInfo[][] newBlocks = Arrays.copyOf(blocks, chunks);
+			AtomicLongArray[] newBitmap = Arrays.copyOf(bitmap, chunks);
+			for (int i = blocks.length; i < chunks; i++){
+				newBlocks[i] = new NameNodeBlockInfo[CHUNK_SIZE];
+				newBitmap[i] = new AtomicLongArray(WORDS_PER_CHUNK);
+			}
+			blocks = newBlocks;
+			bitmap = newBitmap;
+		}
+		regions.put(info.getLba(), region);
+		slots = limit;
+		return region;
+	}
+
+	private Region findRegion(long lba){
+		ArrayList<Region> values = new ArrayList<Region>(regions.size());
+		regions.collectValues(values);
+		for (Region region : values){
+			long offset = lba - region.info.getLba();
+			if (offset >= 0 && offset < region.info.getLength()){
+				return region;
+			}
+		}
+		return null;
+	}
+
+	private NameNodeBlockInfo getBlock(int slot){
+		return blocks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+	}
+
+	private static int stripe(){
+		return ((int) Thread.currentThread().getId() & (STRIPES - 1))*HINT_PADDING;
+	}
+
+	private static class Region {
+		final BlockInfo info;
+		final int base;
+
+		Region(BlockInfo info, int base){
+			this.info = info;
+			this.base = base;
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/*
+ * Append-only index of the blocks of a file. Appends are serialized, lookups are wait-free. 
+ * A block is stored before the new size is published and chunks are never moved once allocated, 
+ * so any index below the size seen by a reader refers to a fully published block.
+ */
+class BlockIndex {
+	private final int chunkShift;
+	private final int chunkMask;
+	private volatile NameNodeBlockInfo[][] chunks;
+	private volatile int size;
+	
+	public BlockIndex(int chunkSize){
+		int shift = 0;
+		while((1 << shift) < chunkSize){
+			shift++;
+		}
+		this.chunkShift = shift;
+		this.chunkMask = (1 << shift) - 1;
+		this.chunks = new NameNodeBlockInfo[1][];
+		this.size = 0;
+	}
+	
+	public NameNodeBlockInfo get(int index){
+		if (index < 0 || index >= size){
+			return null;
+		}
+		return chunks[index >>> chunkShift][index & chunkMask];
+	}
+	
+	public synchronized boolean append(int index, NameNodeBlockInfo block){
+		int current = size;
+		if (index != current){
+			return false;
+		}
+		
+		int chunk = index >>> chunkShift;
+		NameNodeBlockInfo[][] directory = chunks;
+		if (chunk == directory.length){
+			directory = Arrays.copyOf(directory, directory.length*2);
+			chunks = directory;
+		}
+		if (directory[chunk] == null){
+			directory[chunk] = new NameNodeBlockInfo[chunkMask + 1];
+		}
+		directory[chunk][index & chunkMask] = block;
+		size = current + 1;
+		return true;
+	}
+	
+	//drops all blocks from the given index onwards, adds the dropped blocks to the collection
+	public synchronized void truncate(int index, Collection<? super NameNodeBlockInfo> dropped){
+		NameNodeBlockInfo[][] directory = chunks;
+		int current = size;
+		if (index < 0 || index >= current){
+			return;
+		}
+		size = index;
+		for (int i = index; i < current; i++){
+			NameNodeBlockInfo[] chunk = directory[i >>> chunkShift];
+			dropped.add(chunk[i & chunkMask]);
+			chunk[i & chunkMask] = null;
+		}
+	}
+	
+	public int size(){
+		return size;
+	}
+}
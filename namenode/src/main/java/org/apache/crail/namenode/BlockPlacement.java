@@ -0,0 +1,188 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.crail.CrailPlacementPolicy;
+import org.apache.crail.utils.AtomicIntegerModulo;
+import org.apache.crail.utils.CrailUtils;
+
+/*
+ * Chooses the datanodes of a storage class new blocks are taken from. Policies are instantiated
+ * per storage class and location set and must be thread-safe.
+ */
+public interface BlockPlacement {
+	//returns the index of the datanode to try first, the previous block of the file is null for the first block
+	public abstract int select(DataNodeBlocks[] dataNodes, NameNodeBlockInfo previous);
+	
+	//whether the blocks of a batch should be spread over the datanodes rather than taken from one datanode
+	public abstract boolean isStriped();
+	
+	//accepts the name of a built-in policy or a class name, falls back to random placement
+	public static BlockPlacement createInstance(String name) {
+		for (CrailPlacementPolicy policy : CrailPlacementPolicy.values()){
+			if (policy.getLabel() > 0 && policy.name().equalsIgnoreCase(name)){
+				return createInstance(policy);
+			}
+		}
+		try {
+			Class<?> placementClass = Class.forName(name);
+			if (BlockPlacement.class.isAssignableFrom(placementClass)){
+				return (BlockPlacement) placementClass.newInstance();
+			} 
+			CrailUtils.getLogger().error("block placement " + name + " does not implement " + BlockPlacement.class.getName());
+		} catch(Exception e){
+			CrailUtils.getLogger().error("cannot instantiate block placement " + name + ", " + e.getMessage());
+		}
+		return new RandomPlacement();
+	}
+	
+	public static BlockPlacement createInstance(CrailPlacementPolicy policy) {
+		switch(policy){
+		case ROUNDROBIN:
+			return new RoundRobinPlacement();
+		case SEQUENTIAL:
+			return new SequentialPlacement();
+		case LOADAWARE:
+			return new LoadAwarePlacement();
+		case STRIPE:
+			return new StripePlacement();
+		case PACK:
+			return new PackPlacement();
+		case RANDOM:
+			return new RandomPlacement();
+		default:
+			throw new IllegalArgumentException("no block placement for policy " + policy);
+		}
+	}
+	
+	public static class RoundRobinPlacement implements BlockPlacement {
+		private AtomicIntegerModulo counter = new AtomicIntegerModulo();
+		
+		@Override
+		public int select(DataNodeBlocks[] dataNodes, NameNodeBlockInfo previous) {
+			return counter.getAndIncrement() % dataNodes.length;
+		}
+
+		@Override
+		public boolean isStriped() {
+			return false;
+		}
+	}
+	
+	public static class RandomPlacement implements BlockPlacement {
+		@Override
+		public int select(DataNodeBlocks[] dataNodes, NameNodeBlockInfo previous) {
+			return ThreadLocalRandom.current().nextInt(dataNodes.length);
+		}
+
+		@Override
+		public boolean isStriped() {
+			return false;
+		}
+	}
+	
+	public static class SequentialPlacement implements BlockPlacement {
+		@Override
+		public int select(DataNodeBlocks[] dataNodes, NameNodeBlockInfo previous) {
+			return 0;
+		}
+
+		@Override
+		public boolean isStriped() {
+			return false;
+		}
+	}
+	
+	//free blocks discounted by the recent allocation rate, hot datanodes are avoided unless they have much more capacity
+	public static class LoadAwarePlacement implements BlockPlacement {
+		@Override
+		public int select(DataNodeBlocks[] dataNodes, NameNodeBlockInfo previous) {
+			return selectLeastLoaded(dataNodes);
+		}
+
+		@Override
+		public boolean isStriped() {
+			return false;
+		}
+	}
+	
+	//consecutive blocks of a file go to consecutive datanodes
+	public static class StripePlacement implements BlockPlacement {
+		private AtomicIntegerModulo counter = new AtomicIntegerModulo();
+		
+		@Override
+		public int select(DataNodeBlocks[] dataNodes, NameNodeBlockInfo previous) {
+			int index = indexOf(dataNodes, previous);
+			if (index < 0){
+				return counter.getAndIncrement() % dataNodes.length;
+			}
+			return (index + 1) % dataNodes.length;
+		}
+
+		@Override
+		public boolean isStriped() {
+			return true;
+		}
+	}
+	
+	//blocks of a file stay on the datanode of the previous block, new files start on the datanode with most free blocks
+	public static class PackPlacement implements BlockPlacement {
+		@Override
+		public int select(DataNodeBlocks[] dataNodes, NameNodeBlockInfo previous) {
+			int index = indexOf(dataNodes, previous);
+			if (index >= 0 && dataNodes[index].getBlockCount() > 0){
+				return index;
+			}
+			return selectLeastLoaded(dataNodes);
+		}
+
+		@Override
+		public boolean isStriped() {
+			return false;
+		}
+	}
+	
+	static int indexOf(DataNodeBlocks[] dataNodes, NameNodeBlockInfo block) {
+		if (block == null){
+			return -1;
+		}
+		long key = block.getDnInfo().key();
+		for (int i = 0; i < dataNodes.length; i++){
+			if (dataNodes[i].key() == key){
+				return i;
+			}
+		}
+		return -1;
+	}
+	
+	static int selectLeastLoaded(DataNodeBlocks[] dataNodes) {
+		int index = 0;
+		double best = -1;
+		for (int i = 0; i < dataNodes.length; i++){
+			double score = dataNodes[i].getBlockCount() / (1.0 + dataNodes[i].getAllocationRate());
+			if (score > best){
+				best = score;
+				index = i;
+			}
+		}
+		return index;
+	}
+}
@@ -22,14 +22,12 @@ import java.io.IOException;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import org.apache.crail.CrailPlacementPolicy;
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.rpc.RpcErrors;
-import org.apache.crail.utils.AtomicIntegerModulo;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
@@ -50,6 +48,51 @@ public class BlockStore {
 		return storageClasses[storageClass].addBlock(blockInfo);
 	}
 
+	//returns a batch of blocks to the free lists, blocks are grouped by datanode
+	public short addBlocks(List<NameNodeBlockInfo> blocks) throws UnknownHostException {
+		if (blocks.isEmpty()){
+			return RpcErrors.ERR_OK;
+		} else if (blocks.size() == 1){
+			return addBlock(blocks.get(0));
+		}
+		HashMap<Long, ArrayList<NameNodeBlockInfo>> dataNodes = new HashMap<Long, ArrayList<NameNodeBlockInfo>>();
+		for (NameNodeBlockInfo block : blocks){
+			ArrayList<NameNodeBlockInfo> dnBlocks = dataNodes.get(block.getDnInfo().key());
+			if (dnBlocks == null){
+				dnBlocks = new ArrayList<NameNodeBlockInfo>();
+				dataNodes.put(block.getDnInfo().key(), dnBlocks);
+			}
+			dnBlocks.add(block);
+		}
+		short error = RpcErrors.ERR_OK;
+		for (ArrayList<NameNodeBlockInfo> dnBlocks : dataNodes.values()){
+			int storageClass = dnBlocks.get(0).getDnInfo().getStorageClass();
+			short res = storageClasses[storageClass].addBlocks(dnBlocks);
+			if (res != RpcErrors.ERR_OK){
+				error = res;
+			}
+		}
+		return error;
+	}
+
+	public short restoreBlock(NameNodeBlockInfo blockInfo) throws UnknownHostException {
+		int storageClass = blockInfo.getDnInfo().getStorageClass();
+		return storageClasses[storageClass].restoreBlock(blockInfo);
+	}
+
+	public NameNodeBlockInfo takeBlock(BlockInfo blockInfo) {
+		int storageClass = blockInfo.getDnInfo().getStorageClass();
+		return storageClasses[storageClass].takeBlock(blockInfo);
+	}
+
+	public void collectRegions(List<BlockInfo> regions) {
+		for (StorageClass storageClass : storageClasses) {
+			for (DataNodeBlocks dataNode : storageClass.getDataNodeBlocks()) {
+				regions.addAll(dataNode.getRegions());
+			}
+		}
+	}
+
 	public boolean regionExists(BlockInfo region) {
 		int storageClass = region.getDnInfo().getStorageClass();
 		return storageClasses[storageClass].regionExists(region);
@@ -61,17 +104,22 @@ public class BlockStore {
 	}
 
 	public NameNodeBlockInfo getBlock(int storageClass, int locationAffinity) throws InterruptedException {
+		return getBlock(storageClass, locationAffinity, CrailPlacementPolicy.DEFAULT.getLabel(), null);
+	}
+
+	//previous is the block preceding the new block in the file, or null if there is none
+	public NameNodeBlockInfo getBlock(int storageClass, int locationAffinity, int placement, NameNodeBlockInfo previous) throws InterruptedException {
 		NameNodeBlockInfo block = null;
 		if (storageClass > 0){
 			if (storageClass < storageClasses.length){
-				block = storageClasses[storageClass].getBlock(locationAffinity);
+				block = storageClasses[storageClass].getBlock(locationAffinity, placement, previous);
 			} else {
 				//TODO: warn if requested storage class is invalid
 			}
 		}
 		if (block == null){
 			for (int i = 0; i < storageClasses.length; i++){
-				block = storageClasses[i].getBlock(locationAffinity);
+				block = storageClasses[i].getBlock(locationAffinity, placement, previous);
 				if (block != null){
 					break;
 				}
@@ -81,6 +129,18 @@ public class BlockStore {
 		return block;
 	}
 
+	//allocates up to count blocks, falls back to the other storage classes like getBlock, returns the number of blocks allocated
+	public int getBlocks(int storageClass, int locationAffinity, int placement, NameNodeBlockInfo previous, int count, List<? super NameNodeBlockInfo> blocks) throws InterruptedException {
+		int allocated = 0;
+		if (storageClass > 0 && storageClass < storageClasses.length){
+			allocated = storageClasses[storageClass].getBlocks(locationAffinity, placement, previous, count, blocks);
+		}
+		for (int i = 0; i < storageClasses.length && allocated < count; i++){
+			allocated += storageClasses[i].getBlocks(locationAffinity, placement, previous, count - allocated, blocks);
+		}
+		return allocated;
+	}
+
 	public DataNodeBlocks getDataNode(DataNodeInfo dnInfo) {
 		int storageClass = dnInfo.getStorageClass();
 		return storageClasses[storageClass].getDataNode(dnInfo);
@@ -195,20 +255,30 @@ class StorageClass {
 	private ConcurrentHashMap<Long, DataNodeBlocks> membership;
 	private ConcurrentHashMap<Integer, DataNodeArray> affinitySets;
 	private DataNodeArray anySet;
-	private BlockSelection blockSelection;
+	private BlockPlacement defaultPlacement;
+	//built-in policies by label, files created with an explicit policy use these
+	private BlockPlacement[] placements;
 	
 	public StorageClass(int storageClass){
 		this.storageClass = storageClass;
 		this.membership = new ConcurrentHashMap<Long, DataNodeBlocks>();
 		this.affinitySets = new ConcurrentHashMap<Integer, DataNodeArray>();
-		if (CrailConstants.NAMENODE_BLOCKSELECTION.equalsIgnoreCase("roundrobin")){
-			this.blockSelection = new RoundRobinBlockSelection();
-		} else if (CrailConstants.NAMENODE_BLOCKSELECTION.equalsIgnoreCase("sequential")) {
-			this.blockSelection = new SequentialBlockSelection();
-		} else {
-			this.blockSelection = new RandomBlockSelection();
+		this.anySet = new DataNodeArray();
+		
+		CrailPlacementPolicy[] policies = CrailPlacementPolicy.values();
+		this.placements = new BlockPlacement[policies.length];
+		for (CrailPlacementPolicy policy : policies){
+			if (policy.getLabel() > 0){
+				placements[policy.getLabel()] = BlockPlacement.createInstance(policy);
+			}
+		}
+		String placement = CrailConstants.NAMENODE_BLOCKSELECTION;
+		String[] classPlacements = CrailConstants.NAMENODE_PLACEMENT.split(",");
+		if (storageClass < classPlacements.length && !classPlacements[storageClass].trim().isEmpty()){
+			placement = classPlacements[storageClass].trim();
 		}
-		this.anySet = new DataNodeArray(blockSelection);
+		this.defaultPlacement = BlockPlacement.createInstance(placement);
+		LOG.info("storage class " + storageClass + ", block placement " + defaultPlacement.getClass().getSimpleName());
 	}
 	
 	public short updateRegion(BlockInfo region) {
@@ -244,20 +314,78 @@ class StorageClass {
 		return RpcErrors.ERR_OK;
 	}
 
-	NameNodeBlockInfo getBlock(int affinity) throws InterruptedException {
+	short addBlocks(List<NameNodeBlockInfo> blocks) throws UnknownHostException {
+		NameNodeBlockInfo block = blocks.get(0);
+		long dnAddress = block.getDnInfo().key();
+		DataNodeBlocks current = membership.get(dnAddress);
+		if (current == null) {
+			current = DataNodeBlocks.fromDataNodeInfo(block.getDnInfo());
+			addDataNode(current);
+		}
+
+		current.touch();
+		current.addFreeBlocks(blocks);
+		return RpcErrors.ERR_OK;
+	}
+
+	short restoreBlock(NameNodeBlockInfo block) throws UnknownHostException {
+		long dnAddress = block.getDnInfo().key();
+		DataNodeBlocks current = membership.get(dnAddress);
+		if (current == null) {
+			current = DataNodeBlocks.fromDataNodeInfo(block.getDnInfo());
+			addDataNode(current);
+		}
+
+		current.touch();
+		current.addUsedBlock(block);
+		return RpcErrors.ERR_OK;
+	}
+
+	NameNodeBlockInfo takeBlock(BlockInfo block) {
+		DataNodeBlocks current = membership.get(block.getDnInfo().key());
+		if (current == null) {
+			return null;
+		}
+		return current.takeBlock(block.getLba());
+	}
+
+	NameNodeBlockInfo getBlock(int affinity, int placement, NameNodeBlockInfo previous) throws InterruptedException {
+		BlockPlacement policy = getPlacement(placement);
 		NameNodeBlockInfo block = null;
 		if (affinity == 0) {
-			block = anySet.get();
+			block = anySet.get(policy, previous);
 		} else {
-			block = _getAffinityBlock(affinity);
+			block = _getAffinityBlock(affinity, policy, previous);
 			if (block == null) {
-				block = anySet.get();
+				block = anySet.get(policy, previous);
 			} else {
 			}
 		}
 		return block;
 	}
 
+	int getBlocks(int affinity, int placement, NameNodeBlockInfo previous, int count, List<? super NameNodeBlockInfo> blocks) throws InterruptedException {
+		BlockPlacement policy = getPlacement(placement);
+		int allocated = 0;
+		if (affinity != 0) {
+			DataNodeArray affinitySet = affinitySets.get(affinity);
+			if (affinitySet != null){
+				allocated = affinitySet.get(policy, previous, count, blocks);
+			}
+		}
+		if (allocated < count) {
+			allocated += anySet.get(policy, previous, count - allocated, blocks);
+		}
+		return allocated;
+	}
+
+	private BlockPlacement getPlacement(int placement) {
+		if (placement > 0 && placement < placements.length){
+			return placements[placement];
+		}
+		return defaultPlacement;
+	}
+
 	DataNodeBlocks getDataNode(DataNodeInfo dataNode) {
 		return membership.get(dataNode.key());
 	}
@@ -335,7 +463,7 @@ class StorageClass {
 		LOG.info("adding datanode " + CrailUtils.getIPAddressFromBytes(dataNode.getIpAddress()) + ":" + dataNode.getPort() + " of type " + dataNode.getStorageType() + " to storage class " + storageClass);
 		DataNodeArray hostMap = affinitySets.get(dataNode.getLocationClass());
 		if (hostMap == null){
-			hostMap = new DataNodeArray(blockSelection);
+			hostMap = new DataNodeArray();
 			DataNodeArray oldMap = affinitySets.putIfAbsent(dataNode.getLocationClass(), hostMap);
 			if (oldMap != null){
 				hostMap = oldMap;
@@ -345,98 +473,70 @@ class StorageClass {
 		anySet.add(dataNode);
 	}
 	
-	private NameNodeBlockInfo _getAffinityBlock(int affinity) throws InterruptedException {
+	private NameNodeBlockInfo _getAffinityBlock(int affinity, BlockPlacement policy, NameNodeBlockInfo previous) throws InterruptedException {
 		NameNodeBlockInfo block = null;
 		DataNodeArray affinitySet = affinitySets.get(affinity);
 		if (affinitySet != null){
-			block = affinitySet.get();
+			block = affinitySet.get(policy, previous);
 		}
 		return block;
 	}
 	
-	public static interface BlockSelection {
-		int getNext(int size);
-	}
-	
-	private class RoundRobinBlockSelection implements BlockSelection {
-		private AtomicIntegerModulo counter;
+	//copy-on-write array of datanodes, datanodes are added rarely while every allocation walks the array
+	private class DataNodeArray {
+		private volatile DataNodeBlocks[] dataNodes;
 		
-		public RoundRobinBlockSelection(){
-			LOG.info("round robin block selection");
-			counter = new AtomicIntegerModulo();
+		public DataNodeArray(){
+			this.dataNodes = new DataNodeBlocks[0];
 		}
 		
-		@Override
-		public int getNext(int size) {
-			return counter.getAndIncrement() % size;
+		public synchronized void add(DataNodeBlocks dataNode){
+			DataNodeBlocks[] newDataNodes = Arrays.copyOf(dataNodes, dataNodes.length + 1);
+			newDataNodes[dataNodes.length] = dataNode;
+			dataNodes = newDataNodes;
 		}
-	}
-	
-	private class RandomBlockSelection implements BlockSelection {
-		public RandomBlockSelection(){
-			LOG.info("random block selection");
-		}		
 		
-		@Override
-		public int getNext(int size) {
-			return ThreadLocalRandom.current().nextInt(size);
-		}
-	}
-	
-	public class SequentialBlockSelection implements BlockSelection {
-		public SequentialBlockSelection(){
-			LOG.info("sequential block selection");
-		}
-
-		@Override
-		public int getNext(int size) {
-			return 0;
-		}
-	}
-	
-	private class DataNodeArray {
-		private ArrayList<DataNodeBlocks> arrayList;
-		private ReentrantReadWriteLock lock;
-		private BlockSelection blockSelection;
-		
-		public DataNodeArray(BlockSelection blockSelection){
-			this.arrayList = new ArrayList<DataNodeBlocks>();
-			this.lock = new ReentrantReadWriteLock();
-			this.blockSelection = blockSelection;
-		}
-		
-		public void add(DataNodeBlocks dataNode){
-			lock.writeLock().lock();
-			try {
-				arrayList.add(dataNode);
-			} finally {
-				lock.writeLock().unlock();
+		private NameNodeBlockInfo get(BlockPlacement policy, NameNodeBlockInfo previous) throws InterruptedException {
+			DataNodeBlocks[] current = dataNodes;
+			NameNodeBlockInfo block = null;
+			int size = current.length;
+			if (size > 0){
+				int startIndex = policy.select(current, previous);
+				for (int i = 0; i < size; i++){
+					int index = (startIndex + i) % size;
+					DataNodeBlocks anyDn = current[index];
+					if (anyDn.isOnline() && !anyDn.isScheduleForRemoval()){
+						block = anyDn.getFreeBlock();
+					}
+					if (block != null){
+						break;
+					} 
+				}
 			}
+			return block;
 		}
 		
-		private NameNodeBlockInfo get() throws InterruptedException {
-			lock.readLock().lock();
-			try {
-				NameNodeBlockInfo block = null;
-				int size = arrayList.size();
-				if (size > 0){
-					int startIndex = blockSelection.getNext(size);
-					for (int i = 0; i < size; i++){
-						int index = (startIndex + i) % size;
-						DataNodeBlocks anyDn = arrayList.get(index);
-						if (anyDn.isOnline() && !anyDn.isScheduleForRemoval()){
-							block = anyDn.getFreeBlock();
-						}
-						if (block != null){
-							break;
-						} 
+		//striped policies take one block per datanode and round, the others fill up datanode by datanode
+		private int get(BlockPlacement policy, NameNodeBlockInfo previous, int count, List<? super NameNodeBlockInfo> blocks) throws InterruptedException {
+			DataNodeBlocks[] current = dataNodes;
+			int allocated = 0;
+			int size = current.length;
+			if (size > 0){
+				int startIndex = policy.select(current, previous);
+				int chunk = policy.isStriped() ? 1 : count;
+				int misses = 0;
+				for (int i = 0; allocated < count && misses < size; i++){
+					int index = (startIndex + i) % size;
+					DataNodeBlocks anyDn = current[index];
+					int taken = 0;
+					if (anyDn.isOnline() && !anyDn.isScheduleForRemoval()){
+						taken = anyDn.getFreeBlocks(Math.min(chunk, count - allocated), blocks);
 					}
+					allocated += taken;
+					misses = taken > 0 ? 0 : misses + 1;
 				}
-				return block;
-			} finally {
-				lock.readLock().unlock();
 			}
+			return allocated;
 		}
 	}
 }
-
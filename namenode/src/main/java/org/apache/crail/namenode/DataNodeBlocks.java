@@ -19,9 +19,10 @@
 package org.apache.crail.namenode;
 
 import java.net.UnknownHostException;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
@@ -32,12 +33,15 @@ import org.slf4j.Logger;
 
 public class DataNodeBlocks extends DataNodeInfo {
 	private static final Logger LOG = CrailUtils.getLogger();
+	private static final long RATE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
 	
-	private ConcurrentHashMap<Long, BlockInfo> regions;
-	private LinkedBlockingQueue<NameNodeBlockInfo> freeBlocks;
+	private BlockAllocator allocator;
 	private long token;
-	private long maxBlockCount;
 	private boolean scheduleForRemoval;
+	private LongAdder allocations;
+	private long rateAllocations;
+	private volatile long rateTimestamp;
+	private volatile double allocationRate;
 
 	public static DataNodeBlocks fromDataNodeInfo(DataNodeInfo dnInfo) throws UnknownHostException{
 		DataNodeBlocks dnInfoNn = new DataNodeBlocks(dnInfo.getStorageType(), dnInfo.getStorageClass(), dnInfo.getLocationClass(), dnInfo.getIpAddress(), dnInfo.getPort());
@@ -46,40 +50,77 @@ public class DataNodeBlocks extends DataNodeInfo {
 
 	private DataNodeBlocks(int storageType, int getStorageClass, int locationClass, byte[] ipAddress, int port) throws UnknownHostException {
 		super(storageType, getStorageClass, locationClass, ipAddress, port);
-		this.regions = new ConcurrentHashMap<Long, BlockInfo>();
-		this.freeBlocks = new LinkedBlockingQueue<NameNodeBlockInfo>();
+		this.allocator = new BlockAllocator();
 		this.scheduleForRemoval = false;
-		this.maxBlockCount = 0;
+		this.allocations = new LongAdder();
+		this.rateAllocations = 0;
+		this.rateTimestamp = System.nanoTime();
+		this.allocationRate = 0;
 	}
 
-	private void updateBlockCount(){
+	// When a datanode connects for the first time to the namenode, all of the offered storage capacities
+	// are added in the form of free blocks. Every block is registered with the allocator the first time it
+	// is seen, the number of registered blocks is the capacity of the datanode. Only when the number of 
+	// free blocks equals the number of all blocks, the datanode is safe to be removed.
+	public void addFreeBlock(NameNodeBlockInfo nnBlock) {
+		allocator.free(nnBlock);
+	}
 
-		// When a datanode connects for the first time to the namenode, all of the offered storage capacities
-		// are added in the form of free blocks. By keeping track of this number (which grows block for block), we
-		// learn the maximum available capacity in this datanode. Only when the number of free blocks equals the number
-		// of all blocks, the datanode is safe to be removed.
-		if(freeBlocks.size() > this.maxBlockCount) {
-			this.maxBlockCount = freeBlocks.size();
-		}
+	public void addFreeBlocks(List<NameNodeBlockInfo> nnBlocks) {
+		allocator.free(nnBlocks);
 	}
-	
-	public void addFreeBlock(NameNodeBlockInfo nnBlock) {
-		regions.put(nnBlock.getRegion().getLba(), nnBlock.getRegion());
-		freeBlocks.add(nnBlock);
-		updateBlockCount();
+
+	public void addUsedBlock(NameNodeBlockInfo nnBlock) {
+		allocator.addUsed(nnBlock);
 	}
 
 	public NameNodeBlockInfo getFreeBlock() throws InterruptedException {
-		NameNodeBlockInfo block = this.freeBlocks.poll();
+		NameNodeBlockInfo block = allocator.allocate();
+		if (block != null){
+			allocations.increment();
+		}
 		return block;
 	}
 
+	public int getFreeBlocks(int count, Collection<? super NameNodeBlockInfo> nnBlocks) throws InterruptedException {
+		int allocated = allocator.allocate(count, nnBlocks);
+		allocations.add(allocated);
+		return allocated;
+	}
+
+	// Allocations per second, smoothed over intervals of 100ms. The rate is updated lazily by the
+	// threads asking for it, a datanode nobody asks about keeps its last rate.
+	public double getAllocationRate() {
+		long now = System.nanoTime();
+		long elapsed = now - rateTimestamp;
+		if (elapsed > RATE_INTERVAL){
+			synchronized(this){
+				elapsed = now - rateTimestamp;
+				if (elapsed > RATE_INTERVAL){
+					long current = allocations.sum();
+					double rate = ((double) (current - rateAllocations)) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+					//an idle datanode decays towards zero with the number of intervals missed
+					double weight = Math.min(1.0, 0.5 * elapsed / RATE_INTERVAL);
+					allocationRate = allocationRate + weight * (rate - allocationRate);
+					rateAllocations = current;
+					rateTimestamp = now;
+				}
+			}
+		}
+		return allocationRate;
+	}
+
+	// Takes a specific free block, used to re-apply logged allocations. Returns null if the block is not free.
+	public NameNodeBlockInfo takeBlock(long lba) {
+		return allocator.take(lba);
+	}
+
 	public void scheduleForRemoval() {
 		this.scheduleForRemoval = true;
 	}
 
 	public boolean safeForRemoval() {
-		return  this.maxBlockCount == this.freeBlocks.size();
+		return allocator.getBlockCount() == allocator.getFreeCount();
 	}
 
 	public boolean isScheduleForRemoval(){
@@ -87,22 +128,23 @@ public class DataNodeBlocks extends DataNodeInfo {
 	}
 
 	public long getTotalNumberOfBlocks() {
-		return this.maxBlockCount;
+		return allocator.getBlockCount();
 	}
 
 	public int getBlockCount() {
-		return this.freeBlocks.size();
+		return (int) allocator.getFreeCount();
 	}
 
 	public boolean regionExists(BlockInfo region) {
-		if (regions.containsKey(region.getLba())){
-			return true;
-		} 
-		return false;
+		return allocator.getRegion(region.getLba()) != null;
+	}
+
+	public Collection<BlockInfo> getRegions() {
+		return allocator.getRegions();
 	}
 
 	public short updateRegion(BlockInfo region) {
-		BlockInfo oldRegion = regions.get(region.getLba());
+		BlockInfo oldRegion = allocator.getRegion(region.getLba());
 		if (oldRegion == null){
 			return RpcErrors.ERR_ADD_BLOCK_FAILED;
 		} else {
@@ -0,0 +1,186 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.nio.ByteBuffer;
+
+/*
+ * Off-heap open addressing table mapping (parent fd, name component) to the fd of the child,
+ * shared by all directories of the namespace. Entries live in direct chunks, a removed entry
+ * leaves a tombstone which is purged when the table is rebuilt. Not thread-safe, the owner
+ * serializes updates.
+ */
+class DentryTable {
+	private static final int ENTRY_SIZE = 20;
+	private static final int PARENT = 0;
+	private static final int CHILD = 8;
+	private static final int COMPONENT = 16;
+	//children are stored as fd+1 so that zeroed memory reads as empty
+	private static final long EMPTY = 0;
+	private static final long TOMBSTONE = -1;
+
+	private static final int CHUNK_SHIFT = 16;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private ByteBuffer[] chunks;
+	private long mask;
+	private long size;
+	private long used;
+
+	public DentryTable(){
+		this.chunks = allocate(CHUNK_SIZE);
+		this.mask = CHUNK_SIZE - 1;
+		this.size = 0;
+		this.used = 0;
+	}
+
+	public long get(long parentFd, int component){
+		long index = hash(parentFd, component) & mask;
+		while(true){
+			long child = getChild(index);
+			if (child == EMPTY){
+				return InodeTable.NONE;
+			} else if (child != TOMBSTONE && getParent(index) == parentFd && getComponent(index) == component){
+				return child - 1;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	//inserts or replaces the mapping, returns the previous child or NONE
+	public long put(long parentFd, int component, long childFd){
+		long index = hash(parentFd, component) & mask;
+		long free = -1;
+		while(true){
+			long child = getChild(index);
+			if (child == EMPTY){
+				break;
+			} else if (child == TOMBSTONE){
+				if (free < 0){
+					free = index;
+				}
+			} else if (getParent(index) == parentFd && getComponent(index) == component){
+				setChild(index, childFd + 1);
+				return child - 1;
+			}
+			index = (index + 1) & mask;
+		}
+		if (free >= 0){
+			index = free;
+		} else {
+			used++;
+		}
+		setEntry(index, parentFd, component, childFd + 1);
+		size++;
+		if (used > ((mask + 1) >>> 2)*3){
+			rebuild();
+		}
+		return InodeTable.NONE;
+	}
+
+	public long remove(long parentFd, int component){
+		long index = hash(parentFd, component) & mask;
+		while(true){
+			long child = getChild(index);
+			if (child == EMPTY){
+				return InodeTable.NONE;
+			} else if (child != TOMBSTONE && getParent(index) == parentFd && getComponent(index) == component){
+				setChild(index, TOMBSTONE);
+				size--;
+				return child - 1;
+			}
+			index = (index + 1) & mask;
+		}
+	}
+
+	public long size(){
+		return size;
+	}
+
+	public long getOffHeapBytes(){
+		return (mask + 1)*ENTRY_SIZE;
+	}
+
+	private void rebuild(){
+		ByteBuffer[] oldChunks = chunks;
+		long oldCapacity = mask + 1;
+		long capacity = oldCapacity;
+		//grow if live entries dominate, otherwise only purge tombstones
+		if (size > (oldCapacity >>> 1)){
+			capacity = oldCapacity << 1;
+		}
+		this.chunks = allocate(capacity);
+		this.mask = capacity - 1;
+		this.used = 0;
+		for (long i = 0; i < oldCapacity; i++){
+			ByteBuffer chunk = oldChunks[(int) (i >>> CHUNK_SHIFT)];
+			int offset = (int) (i & CHUNK_MASK)*ENTRY_SIZE;
+			long child = chunk.getLong(offset + CHILD);
+			if (child == EMPTY || child == TOMBSTONE){
+				continue;
+			}
+			long parentFd = chunk.getLong(offset + PARENT);
+			int component = chunk.getInt(offset + COMPONENT);
+			long index = hash(parentFd, component) & mask;
+			while(getChild(index) != EMPTY){
+				index = (index + 1) & mask;
+			}
+			setEntry(index, parentFd, component, child);
+			used++;
+		}
+	}
+
+	private long getChild(long index){
+		return chunks[(int) (index >>> CHUNK_SHIFT)].getLong((int) (index & CHUNK_MASK)*ENTRY_SIZE + CHILD);
+	}
+
+	private void setChild(long index, long child){
+		chunks[(int) (index >>> CHUNK_SHIFT)].putLong((int) (index & CHUNK_MASK)*ENTRY_SIZE + CHILD, child);
+	}
+
+	private long getParent(long index){
+		return chunks[(int) (index >>> CHUNK_SHIFT)].getLong((int) (index & CHUNK_MASK)*ENTRY_SIZE + PARENT);
+	}
+
+	private int getComponent(long index){
+		return chunks[(int) (index >>> CHUNK_SHIFT)].getInt((int) (index & CHUNK_MASK)*ENTRY_SIZE + COMPONENT);
+	}
+
+	private void setEntry(long index, long parentFd, int component, long child){
+		ByteBuffer chunk = chunks[(int) (index >>> CHUNK_SHIFT)];
+		int offset = (int) (index & CHUNK_MASK)*ENTRY_SIZE;
+		chunk.putLong(offset + PARENT, parentFd);
+		chunk.putInt(offset + COMPONENT, component);
+		chunk.putLong(offset + CHILD, child);
+	}
+
+	private static ByteBuffer[] allocate(long capacity){
+		ByteBuffer[] chunks = new ByteBuffer[(int) (capacity >>> CHUNK_SHIFT)];
+		for (int i = 0; i < chunks.length; i++){
+			chunks[i] = ByteBuffer.allocateDirect(CHUNK_SIZE*ENTRY_SIZE);
+		}
+		return chunks;
+	}
+
+	private static long hash(long parentFd, int component){
+		long h = (parentFd * 0x9E3779B97F4A7C15L) ^ (component * 0xC2B2AE3D27D4EB4FL);
+		return h ^ (h >>> 29);
+	}
+}
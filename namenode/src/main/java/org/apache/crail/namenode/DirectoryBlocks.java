@@ -18,35 +18,68 @@
 
 package org.apache.crail.namenode;
 
-import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Collection;
 import java.util.Queue;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.crail.CrailNodeType;
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.rpc.RpcListDirectory;
+import org.apache.crail.utils.CrailUtils;
 
+/*
+ * The directory records of the children are stored in slots of DIRECTORY_RECORD bytes. The slot of a 
+ * deleted child is reused once the delete had the time to invalidate its record, i.e., after the lease 
+ * expiration, free slots are handed out lowest first. Free slots at the end of the directory are trimmed, 
+ * which shrinks the capacity and releases the directory blocks past the end, so that reading a directory 
+ * costs in proportion to its live entries. The capacity of a directory always equals the slot counter.
+ * If directory listing is enabled, the enumerable children whose name is known are additionally indexed by 
+ * their component, the component of the last child of a page is the cursor for the next page.
+ */
 public class DirectoryBlocks extends AbstractNode {
+	//take the lowest free slot or append a new one
+	public static final long NEXT_SLOT = -1;
+	//always append, used when replaying log records written before slots were logged
+	public static final long END_SLOT = -2;
+	
 	protected AtomicLong dirOffsetCounter;
-	protected ConcurrentHashMap<Integer, AbstractNode> children;	
-	private ConcurrentHashMap<Integer, NameNodeBlockInfo> blocks;
+	protected IntObjectMap<AbstractNode> children;	
+	private IntObjectMap<NameNodeBlockInfo> blocks;
+	private BitSet freeSlots;
+	private BitSet pendingSlots;
+	private ArrayDeque<PendingSlot> pendingQueue;
+	private ConcurrentSkipListMap<Integer, AbstractNode> listing;
 	
 	DirectoryBlocks(long fd, int fileComponent, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) {
 		super(fd, fileComponent, type, storageClass, locationClass, enumerable);
-		this.children = new ConcurrentHashMap<Integer, AbstractNode>();
+		this.children = new IntObjectMap<AbstractNode>();
 		this.dirOffsetCounter = new AtomicLong(0);
-		this.blocks = new ConcurrentHashMap<Integer, NameNodeBlockInfo>();
+		this.blocks = new IntObjectMap<NameNodeBlockInfo>();
+		this.freeSlots = new BitSet();
+		this.pendingSlots = new BitSet();
+		this.pendingQueue = new ArrayDeque<PendingSlot>();
+		if (CrailConstants.NAMENODE_LISTING > 0){
+			this.listing = new ConcurrentSkipListMap<Integer, AbstractNode>();
+		}
 	}
 	
-	public AbstractNode putChild(AbstractNode child) throws Exception {
+	public AbstractNode putChild(AbstractNode child, long dirOffset) throws Exception {
 		AbstractNode old = children.putIfAbsent(child.getComponent(), child);
 		if (old != null){
 			throw new Exception("File exists");
 		}
 		if (child.isEnumerable()) {
-			child.setDirOffset(dirOffsetCounter.getAndAdd(CrailConstants.DIRECTORY_RECORD));
+			child.setDirOffset(takeSlot(dirOffset));
 		}
+		indexChild(child);
 		return old;
 	}	
 	
@@ -55,7 +88,146 @@ public class DirectoryBlocks extends AbstractNode {
 	}	
 	
 	public AbstractNode removeChild(int component) {
-		return children.remove(component);
+		AbstractNode child = children.remove(component);
+		if (child != null){
+			releaseSlot(child);
+			unindexChild(child);
+		}
+		return child;
+	}
+	
+	void restoreChild(AbstractNode child) {
+		children.put(child.getComponent(), child);
+		if (child.isEnumerable() && child.getDirOffset() >= 0){
+			synchronized(this){
+				freeSlots.clear(slot(child.getDirOffset()));
+			}
+		}
+		indexChild(child);
+	}
+	
+	//the listed children past the given cursor in component order, null if listing is disabled
+	Collection<AbstractNode> listChildren(long cursor) {
+		if (listing == null){
+			return null;
+		}
+		if (cursor == RpcListDirectory.FIRST){
+			return listing.values();
+		}
+		return listing.tailMap((int) cursor, false).values();
+	}
+	
+	protected void indexChild(AbstractNode child) {
+		if (listing != null && child.isEnumerable() && child.getName() != null){
+			listing.put(child.getComponent(), child);
+		}
+	}
+	
+	protected void unindexChild(AbstractNode child) {
+		if (listing != null){
+			listing.remove(child.getComponent(), child);
+		}
+	}
+	
+	long getDirOffsetCounter() {
+		return dirOffsetCounter.get();
+	}
+	
+	//slots not claimed by a restored child are free
+	synchronized void restoreDirOffsetCounter(long dirOffset) {
+		dirOffsetCounter.set(dirOffset);
+		freeSlots.clear();
+		freeSlots.set(0, slot(dirOffset));
+	}
+	
+	int getFreeSlots() {
+		synchronized(this){
+			return freeSlots.cardinality() + pendingSlots.cardinality();
+		}
+	}
+	
+	protected synchronized long takeSlot(long dirOffset) {
+		long counter = dirOffsetCounter.get();
+		if (dirOffset >= 0 && dirOffset < counter && !freeSlots.get(slot(dirOffset)) && !pendingSlots.get(slot(dirOffset))){
+			//a replayed slot which is still in use, the log does not match the namespace
+			dirOffset = NEXT_SLOT;
+		}
+		if (dirOffset == NEXT_SLOT){
+			int free = freeSlots.nextSetBit(0);
+			dirOffset = free >= 0 ? ((long) free)*CrailConstants.DIRECTORY_RECORD : counter;
+		} else if (dirOffset == END_SLOT){
+			dirOffset = counter;
+		}
+		if (dirOffset >= counter){
+			freeSlots.set(slot(counter), slot(dirOffset));
+			counter = dirOffset + CrailConstants.DIRECTORY_RECORD;
+			dirOffsetCounter.set(counter);
+		}
+		freeSlots.clear(slot(dirOffset));
+		pendingSlots.clear(slot(dirOffset));
+		updateCapacity();
+		return dirOffset;
+	}
+	
+	protected void releaseSlot(AbstractNode child) {
+		if (!child.isEnumerable() || child.getDirOffset() < 0){
+			return;
+		}
+		long expires = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION);
+		synchronized(this){
+			int slot = slot(child.getDirOffset());
+			if (child.getDirOffset() < dirOffsetCounter.get() && !pendingSlots.get(slot)){
+				pendingSlots.set(slot);
+				pendingQueue.add(new PendingSlot(slot, expires));
+			}
+		}
+	}
+	
+	//makes the slots whose delete has expired available and trims the free slots at the end of the directory
+	synchronized void compactSlots(long now, List<NameNodeBlockInfo> released) {
+		PendingSlot pending = pendingQueue.peek();
+		while(pending != null && pending.expires <= now){
+			pendingQueue.poll();
+			if (pendingSlots.get(pending.slot)){
+				pendingSlots.clear(pending.slot);
+				freeSlots.set(pending.slot);
+			}
+			pending = pendingQueue.peek();
+		}
+		int end = slot(dirOffsetCounter.get());
+		while(end > 0 && freeSlots.get(end - 1)){
+			end--;
+		}
+		trimSlots(((long) end)*CrailConstants.DIRECTORY_RECORD, released);
+	}
+	
+	//shrinks the directory to the given size, the slots past the end must be free
+	synchronized void trimSlots(long counter, List<NameNodeBlockInfo> released) {
+		long current = dirOffsetCounter.get();
+		if (counter >= current){
+			return;
+		}
+		freeSlots.clear(slot(counter), slot(current));
+		pendingSlots.clear(slot(counter), slot(current));
+		int first = counter > 0 ? CrailUtils.computeIndex(counter - 1) + 1 : 0;
+		int last = CrailUtils.computeIndex(current - 1);
+		for (int i = first; i <= last; i++){
+			NameNodeBlockInfo block = blocks.remove(i);
+			if (block != null){
+				released.add(block);
+			}
+		}
+		dirOffsetCounter.set(counter);
+		updateCapacity();
+	}
+	
+	private void updateCapacity() {
+		this.capacity.set(dirOffsetCounter.get());
+		this.setModificationTime(System.currentTimeMillis());
+	}
+	
+	private static int slot(long dirOffset) {
+		return (int) (dirOffset / CrailConstants.DIRECTORY_RECORD);
 	}
 	
 	@Override
@@ -70,12 +242,18 @@ public class DirectoryBlocks extends AbstractNode {
 	}
 
 	@Override
-	public void freeBlocks(BlockStore blockStore) throws Exception {
-		Iterator<NameNodeBlockInfo> iter = blocks.values().iterator();
-		while (iter.hasNext()){
-			NameNodeBlockInfo blockInfo = iter.next();
-			blockStore.addBlock(blockInfo);
-		}	
+	public void truncateBlocks(int index, List<NameNodeBlockInfo> values) throws Exception {
+		throw new Exception("Attempt to truncate the blocks of a container type");
+	}
+
+	@Override
+	public void freeBlocks(List<NameNodeBlockInfo> values) throws Exception {
+		blocks.collectValues(values);
+	}
+
+	@Override
+	public void collectBlocks(Map<Integer, NameNodeBlockInfo> blockMap) {
+		blocks.collectEntries(blockMap);
 	}
 
 	@Override
@@ -89,17 +267,30 @@ public class DirectoryBlocks extends AbstractNode {
 
 	@Override
 	public void clearChildren(Queue<AbstractNode> queue) {
-		Iterator<AbstractNode> iter = children.values().iterator();
-		while(iter.hasNext()){
-			AbstractNode child = iter.next();
-			queue.add(child);
-		}		
+		children.collectValues(queue);
+	}
+
+	@Override
+	public void collectChildren(Queue<AbstractNode> queue) {
+		children.collectValues(queue);
+	}
+
+	private static class PendingSlot {
+		private final int slot;
+		private final long expires;
+		
+		PendingSlot(int slot, long expires){
+			this.slot = slot;
+			this.expires = expires;
+		}
 	}
 
 	@Override
 	public void dump() {
 		super.dump();
-		for (AbstractNode child : children.values()){
+		ArrayList<AbstractNode> values = new ArrayList<AbstractNode>(children.size());
+		children.collectValues(values);
+		for (AbstractNode child : values){
 			child.dump();
 		}		
 	}
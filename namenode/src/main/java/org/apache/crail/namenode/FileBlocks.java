@@ -18,76 +18,54 @@
 
 package org.apache.crail.namenode;
 
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.crail.CrailNodeType;
 import org.apache.crail.conf.CrailConstants;
 
 public class FileBlocks extends AbstractNode {
-	private ArrayList<NameNodeBlockInfo> blocks;
-	private final ReentrantReadWriteLock lock;
-	private final Lock readLock;
-	private final Lock writeLock;
+	private BlockIndex blocks;
 	
 	public FileBlocks(long fd, int fileComponent, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) {
 		super(fd, fileComponent, type, storageClass, locationClass, enumerable);
-		this.blocks = new ArrayList<NameNodeBlockInfo>(CrailConstants.NAMENODE_FILEBLOCKS);
-		this.lock = new ReentrantReadWriteLock();
-		this.readLock = lock.readLock();
-		this.writeLock = lock.writeLock();
+		this.blocks = new BlockIndex(CrailConstants.NAMENODE_FILEBLOCKS);
 	}
 
 	@Override
 	public NameNodeBlockInfo getBlock(int index) {
-		readLock.lock();
-		try {
-			if (index < blocks.size()){
-				return blocks.get(index);
-			} else {
-				return null;
-			}
-		} catch(Exception e){ 
-			return null;
-		} finally {
-			readLock.unlock();
-		}
+		return blocks.get(index);
 	}
 
 	@Override
 	public boolean addBlock(int index, NameNodeBlockInfo block) {
-		writeLock.lock();
-		try {
-			if (index == blocks.size()){
-				blocks.add(index, block);
-				return true;
-			} else {
-				return false;
-			}
-		} finally {
-			writeLock.unlock();
+		return blocks.append(index, block);
+	}
+
+	@Override
+	public void truncateBlocks(int index, List<NameNodeBlockInfo> values) {
+		blocks.truncate(index, values);
+	}
+
+	@Override
+	public void freeBlocks(List<NameNodeBlockInfo> values) throws Exception {
+		int size = blocks.size();
+		for (int i = 0; i < size; i++){
+			values.add(blocks.get(i));
 		}
 	}
 
 	@Override
-	public void freeBlocks(BlockStore blockStore) throws Exception {
-		readLock.lock();
-		try {
-			Iterator<NameNodeBlockInfo> iter = blocks.iterator();
-			while (iter.hasNext()){
-				NameNodeBlockInfo blockInfo = iter.next();
-				blockStore.addBlock(blockInfo);
-			}	
-		} finally {
-			readLock.unlock();
+	public void collectBlocks(Map<Integer, NameNodeBlockInfo> blockMap) throws Exception {
+		int size = blocks.size();
+		for (int i = 0; i < size; i++){
+			blockMap.put(i, blocks.get(i));
 		}
 	}
 
 	@Override
-	public AbstractNode putChild(AbstractNode child) throws Exception {
+	public AbstractNode putChild(AbstractNode child, long dirOffset) throws Exception {
 		throw new Exception("Attempt to add a child to a non-container type");
 	}
 
@@ -105,4 +83,9 @@ public class FileBlocks extends AbstractNode {
 	public void clearChildren(Queue<AbstractNode> queue) throws Exception {
 		throw new Exception("Attempt collect children from non-container type");
 	}
+
+	@Override
+	public void collectChildren(Queue<AbstractNode> queue) throws Exception {
+		throw new Exception("Attempt collect children from non-container type");
+	}
 }
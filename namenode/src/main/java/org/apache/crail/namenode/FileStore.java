@@ -28,24 +28,30 @@ import org.apache.crail.rpc.RpcNameNodeState;
 
 public class FileStore {
 	private Sequencer sequencer;
+	private LongObjectMap<AbstractNode> fileTable;
 	private AbstractNode root;
 	
-	public FileStore(Sequencer sequencer) throws IOException { 
+	public FileStore(Sequencer sequencer, LongObjectMap<AbstractNode> fileTable) throws IOException { 
 		this.sequencer = sequencer;
+		this.fileTable = fileTable;
 		this.root = createNode(new FileName("/").getFileComponent(), CrailNodeType.DIRECTORY, CrailConstants.STORAGE_ROOTCLASS, 0, false);
 	}
 	
 	public AbstractNode createNode(int fileComponent, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) throws IOException {
+		return restoreNode(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+	}	
+	
+	AbstractNode restoreNode(long fd, int fileComponent, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) throws IOException {
 		if (type == CrailNodeType.DIRECTORY){
-			return new DirectoryBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new DirectoryBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else if (type == CrailNodeType.MULTIFILE){
-			return new MultiFileBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new MultiFileBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else if (type == CrailNodeType.TABLE){
-			return new TableBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new TableBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else if (type == CrailNodeType.KEYVALUE){
-			return new KeyValueBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new KeyValueBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else if (type == CrailNodeType.DATAFILE){
-			return new FileBlocks(sequencer.getNextId(), fileComponent, type, storageClass, locationClass, enumerable);
+			return new FileBlocks(fd, fileComponent, type, storageClass, locationClass, enumerable);
 		} else {
 			throw new IOException("File type unkown: " + type);
 		}
@@ -74,6 +80,12 @@ public class FileStore {
 		}
 		
 		AbstractNode current = root;
+		if (filename.isRelative()){
+			current = retrieveBase(filename.getBaseFd(), length);
+			if (current == null){
+				return null;
+			}
+		}
 		for (int i = 0; i < length; i++){
 			int component = filename.getComponent(i);
 			current = current.getChild(component);
@@ -84,4 +96,16 @@ public class FileStore {
 		
 		return current;
 	}
+	
+	//relative names start at a directory that is still linked into the tree
+	private AbstractNode retrieveBase(long baseFd, int length) {
+		if (length < 0){
+			return null;
+		}
+		AbstractNode base = fileTable.get(baseFd);
+		if (base == null || !base.getType().isContainer() || base.isUnlinked()){
+			return null;
+		}
+		return base;
+	}
 }
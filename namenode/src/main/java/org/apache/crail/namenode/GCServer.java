@@ -18,35 +18,146 @@
 
 package org.apache.crail.namenode;
 
+import java.util.ArrayList;
 import java.util.concurrent.DelayQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
+import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
+/*
+ * Reclaims deleted files. The GC thread moves files whose delay has expired from the delete queue 
+ * to the reclaim queue, which is drained by a pool of workers. The children of a deleted directory 
+ * are put back into the reclaim queue so that large subtrees are freed by all workers in parallel. 
+ * Workers return the freed blocks to the block store in batches, and the number of files reclaimed 
+ * per second can be limited to keep the GC from competing with the rpc threads.
+ */
 public class GCServer implements Runnable {
 	private static final Logger LOG = CrailUtils.getLogger();
 	
 	private NameNodeService rpcService;
 	private DelayQueue<AbstractNode> deleteQueue;
+	private LinkedBlockingQueue<AbstractNode> reclaimQueue;
+	private long interval;
+	private long nextSlot;
+	private LongAdder reclaimedFiles;
+	private LongAdder reclaimedBlocks;
+	private long lastFiles;
+	private long lastTime;
 	
 	public GCServer(NameNodeService service, DelayQueue<AbstractNode> deleteQueue){
 		this.rpcService = service;
 		this.deleteQueue = deleteQueue;
+		this.reclaimQueue = new LinkedBlockingQueue<AbstractNode>();
+		this.interval = CrailConstants.NAMENODE_GC_RATE > 0 ? TimeUnit.SECONDS.toNanos(1) / CrailConstants.NAMENODE_GC_RATE : 0;
+		this.nextSlot = System.nanoTime();
+		this.reclaimedFiles = new LongAdder();
+		this.reclaimedBlocks = new LongAdder();
+		this.lastFiles = 0;
+		this.lastTime = System.nanoTime();
 	}
 
 	@Override
 	public void run() {
+		for (int i = 0; i < CrailConstants.NAMENODE_GC_THREADS; i++){
+			Thread worker = new Thread(new Worker());
+			worker.start();
+		}
 		while(true){
 			try{
 				AbstractNode file = deleteQueue.take();
-				if (file.getType().isContainer()){
-					file.clearChildren(deleteQueue);
-				}
-				rpcService.freeFile(file);
+				reclaimQueue.add(file);
 			} catch(Exception e){
 				LOG.info("Exception during GC: " + e.getMessage());
 			}
 		}
 	}
-
+	
+	//files deleted but not yet reclaimed, including files whose delay has not expired
+	public long getBacklog() {
+		return deleteQueue.size() + reclaimQueue.size();
+	}
+	
+	public long getReclaimedFiles() {
+		return reclaimedFiles.sum();
+	}
+	
+	public long getReclaimedBlocks() {
+		return reclaimedBlocks.sum();
+	}
+	
+	//files reclaimed per second since the previous call
+	public synchronized double getReclaimRate() {
+		long now = System.nanoTime();
+		long files = reclaimedFiles.sum();
+		double rate = now > lastTime ? (files - lastFiles) * 1e9 / (now - lastTime) : 0;
+		lastFiles = files;
+		lastTime = now;
+		return rate;
+	}
+	
+	public void printStatistics() {
+		System.out.println("gc backlog " + getBacklog() + ", reclaimed files " + getReclaimedFiles() + ", reclaimed blocks " + getReclaimedBlocks() + ", rate " + String.format("%.1f", getReclaimRate()) + " files/s");
+	}
+	
+	//paces the workers to the configured rate, slots are handed out in order and waited for outside the lock
+	private void throttle() throws InterruptedException {
+		if (interval == 0){
+			return;
+		}
+		long wait;
+		synchronized(this){
+			long now = System.nanoTime();
+			long slot = Math.max(nextSlot, now);
+			nextSlot = slot + interval;
+			wait = slot - now;
+		}
+		if (wait > 0){
+			TimeUnit.NANOSECONDS.sleep(wait);
+		}
+	}
+	
+	private void flush(ArrayList<NameNodeBlockInfo> blocks) throws Exception {
+		if (!blocks.isEmpty()){
+			rpcService.getBlockStore().addBlocks(blocks);
+			reclaimedBlocks.add(blocks.size());
+			blocks.clear();
+		}
+	}
+	
+	private class Worker implements Runnable {
+		private ArrayList<NameNodeBlockInfo> blocks;
+		
+		public Worker(){
+			this.blocks = new ArrayList<NameNodeBlockInfo>(CrailConstants.NAMENODE_GC_BATCH);
+		}
+		
+		@Override
+		public void run() {
+			while(true){
+				try{
+					AbstractNode file = reclaimQueue.poll();
+					if (file == null){
+						//return the pending blocks before going idle
+						flush(blocks);
+						file = reclaimQueue.take();
+					}
+					throttle();
+					if (file.getType().isContainer()){
+						file.clearChildren(reclaimQueue);
+					}
+					rpcService.freeFile(file, blocks);
+					reclaimedFiles.increment();
+					if (blocks.size() >= CrailConstants.NAMENODE_GC_BATCH){
+						flush(blocks);
+					}
+				} catch(Exception e){
+					LOG.info("Exception during GC: " + e.getMessage());
+				}
+			}
+		}
+	}
 }
@@ -0,0 +1,379 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.apache.crail.CrailNodeType;
+
+/*
+ * Inode attributes kept off-heap in fixed size slabs, one column per attribute. A small on-heap
+ * index of primitive arrays maps each fd to its slot, slots of freed inodes go to a free list and
+ * are handed out again before the table grows, so the off-heap footprint follows the number of live
+ * inodes rather than the number of fds ever created. Lookups do not modify the table and may run
+ * concurrently, the owner serializes updates.
+ */
+class InodeTable {
+	public static final long NONE = -1;
+	public static final int INLINE_BLOCKS = 2;
+
+	private static final int SLAB_SHIFT = 16;
+	private static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+	private static final int SLAB_MASK = SLAB_SIZE - 1;
+
+	//long columns
+	private static final int CAPACITY = 0;
+	private static final int TOKEN = CAPACITY + 8*SLAB_SIZE;
+	private static final int DIR_OFFSET = TOKEN + 8*SLAB_SIZE;
+	private static final int MODIFICATION_TIME = DIR_OFFSET + 8*SLAB_SIZE;
+	private static final int DIR_OFFSET_COUNTER = MODIFICATION_TIME + 8*SLAB_SIZE;
+	private static final int FIRST_CHILD = DIR_OFFSET_COUNTER + 8*SLAB_SIZE;
+	private static final int NEXT_SIBLING = FIRST_CHILD + 8*SLAB_SIZE;
+	private static final int PREV_SIBLING = NEXT_SIBLING + 8*SLAB_SIZE;
+	//int columns
+	private static final int COMPONENT = PREV_SIBLING + 8*SLAB_SIZE;
+	private static final int META = COMPONENT + 4*SLAB_SIZE;
+	private static final int CLASSES = META + 4*SLAB_SIZE;
+	private static final int BLOCKS = CLASSES + 4*SLAB_SIZE;
+	private static final int SLAB_BYTES = BLOCKS + 4*INLINE_BLOCKS*SLAB_SIZE;
+
+	public static final int INODE_BYTES = SLAB_BYTES / SLAB_SIZE;
+
+	private static final int LIVE = 1 << 31;
+	private static final int UNLINKED = 1 << 30;
+	private static final int TYPE_MASK = 0xff;
+	private static final int PLACEMENT_SHIFT = 8;
+
+	private ByteBuffer[] slabs;
+	private SlotIndex index;
+	private int[] freeSlots;
+	private int freeCount;
+	private int nextSlot;
+
+	public InodeTable(){
+		this.slabs = new ByteBuffer[16];
+		this.index = new SlotIndex();
+		this.freeSlots = new int[1024];
+		this.freeCount = 0;
+		this.nextSlot = 0;
+	}
+
+	public void allocate(long fd, int component, CrailNodeType type, int storageClass, int locationClass, long dirOffset, long modificationTime){
+		int slot;
+		if (freeCount > 0){
+			slot = freeSlots[--freeCount];
+		} else {
+			slot = nextSlot++;
+			int slabIndex = slot >>> SLAB_SHIFT;
+			if (slabIndex >= slabs.length){
+				slabs = Arrays.copyOf(slabs, slabs.length*2);
+			}
+			if (slabs[slabIndex] == null){
+				slabs[slabIndex] = ByteBuffer.allocateDirect(SLAB_BYTES);
+			}
+		}
+		index.put(fd, slot);
+		ByteBuffer slab = slabs[slot >>> SLAB_SHIFT];
+		int offset = slot & SLAB_MASK;
+		slab.putLong(CAPACITY + 8*offset, 0);
+		slab.putLong(TOKEN + 8*offset, 0);
+		slab.putLong(DIR_OFFSET + 8*offset, dirOffset);
+		slab.putLong(MODIFICATION_TIME + 8*offset, modificationTime);
+		slab.putLong(DIR_OFFSET_COUNTER + 8*offset, 0);
+		slab.putLong(FIRST_CHILD + 8*offset, NONE);
+		slab.putLong(NEXT_SIBLING + 8*offset, NONE);
+		slab.putLong(PREV_SIBLING + 8*offset, NONE);
+		slab.putInt(COMPONENT + 4*offset, component);
+		slab.putInt(META + 4*offset, LIVE | type.getLabel());
+		slab.putInt(CLASSES + 4*offset, (storageClass << 16) | (locationClass & 0xffff));
+		for (int i = 0; i < INLINE_BLOCKS; i++){
+			slab.putInt(BLOCKS + 4*(INLINE_BLOCKS*offset + i), 0);
+		}
+	}
+
+	public void free(long fd){
+		int slot = index.remove(fd);
+		if (slot < 0){
+			return;
+		}
+		slabs[slot >>> SLAB_SHIFT].putInt(META + 4*(slot & SLAB_MASK), 0);
+		if (freeCount == freeSlots.length){
+			freeSlots = Arrays.copyOf(freeSlots, freeSlots.length*2);
+		}
+		freeSlots[freeCount++] = slot;
+	}
+
+	public boolean isLive(long fd){
+		return fd != NONE && index.get(fd) >= 0;
+	}
+
+	//set once the inode has been removed from its parent and waits for the gc
+	public void setUnlinked(long fd){
+		putInt(fd, META, getInt(fd, META) | UNLINKED);
+	}
+
+	public boolean isUnlinked(long fd){
+		return (getInt(fd, META) & UNLINKED) != 0;
+	}
+
+	public CrailNodeType getType(long fd){
+		return CrailNodeType.parse(getInt(fd, META) & TYPE_MASK);
+	}
+
+	public int getPlacement(long fd){
+		return (getInt(fd, META) >>> PLACEMENT_SHIFT) & 0xff;
+	}
+
+	public void setPlacement(long fd, int placement){
+		int meta = getInt(fd, META);
+		putInt(fd, META, (meta & ~(0xff << PLACEMENT_SHIFT)) | ((placement & 0xff) << PLACEMENT_SHIFT));
+	}
+
+	public int getComponent(long fd){
+		return getInt(fd, COMPONENT);
+	}
+
+	public void setComponent(long fd, int component){
+		putInt(fd, COMPONENT, component);
+	}
+
+	public int getStorageClass(long fd){
+		return getInt(fd, CLASSES) >>> 16;
+	}
+
+	public int getLocationClass(long fd){
+		return getInt(fd, CLASSES) & 0xffff;
+	}
+
+	public long getCapacity(long fd){
+		return getLong(fd, CAPACITY);
+	}
+
+	public void setCapacity(long fd, long capacity){
+		putLong(fd, CAPACITY, capacity);
+	}
+
+	public long getToken(long fd){
+		return getLong(fd, TOKEN);
+	}
+
+	public void setToken(long fd, long token){
+		putLong(fd, TOKEN, token);
+	}
+
+	public long getDirOffset(long fd){
+		return getLong(fd, DIR_OFFSET);
+	}
+
+	public void setDirOffset(long fd, long dirOffset){
+		putLong(fd, DIR_OFFSET, dirOffset);
+	}
+
+	public long getModificationTime(long fd){
+		return getLong(fd, MODIFICATION_TIME);
+	}
+
+	public void setModificationTime(long fd, long modificationTime){
+		putLong(fd, MODIFICATION_TIME, modificationTime);
+	}
+
+	public long getDirOffsetCounter(long fd){
+		return getLong(fd, DIR_OFFSET_COUNTER);
+	}
+
+	public void setDirOffsetCounter(long fd, long dirOffset){
+		putLong(fd, DIR_OFFSET_COUNTER, dirOffset);
+	}
+
+	public long getFirstChild(long fd){
+		return getLong(fd, FIRST_CHILD);
+	}
+
+	public long getNextSibling(long fd){
+		return getLong(fd, NEXT_SIBLING);
+	}
+
+	//links the child at the head of the child list of the parent
+	public void link(long parentFd, long childFd){
+		long head = getLong(parentFd, FIRST_CHILD);
+		putLong(childFd, PREV_SIBLING, NONE);
+		putLong(childFd, NEXT_SIBLING, head);
+		if (head != NONE){
+			putLong(head, PREV_SIBLING, childFd);
+		}
+		putLong(parentFd, FIRST_CHILD, childFd);
+	}
+
+	public void unlink(long parentFd, long childFd){
+		long prev = getLong(childFd, PREV_SIBLING);
+		long next = getLong(childFd, NEXT_SIBLING);
+		if (prev == NONE){
+			putLong(parentFd, FIRST_CHILD, next);
+		} else {
+			putLong(prev, NEXT_SIBLING, next);
+		}
+		if (next != NONE){
+			putLong(next, PREV_SIBLING, prev);
+		}
+		putLong(childFd, PREV_SIBLING, NONE);
+		putLong(childFd, NEXT_SIBLING, NONE);
+	}
+
+	public int getInlineBlock(long fd, int index){
+		int slot = slot(fd);
+		return slabs[slot >>> SLAB_SHIFT].getInt(BLOCKS + 4*(INLINE_BLOCKS*(slot & SLAB_MASK) + index));
+	}
+
+	public void setInlineBlock(long fd, int index, int blockId){
+		int slot = slot(fd);
+		slabs[slot >>> SLAB_SHIFT].putInt(BLOCKS + 4*(INLINE_BLOCKS*(slot & SLAB_MASK) + index), blockId);
+	}
+
+	public long getInodeCount(){
+		return index.size();
+	}
+
+	public long getOffHeapBytes(){
+		return (long) ((nextSlot + SLAB_MASK) >>> SLAB_SHIFT)*SLAB_BYTES;
+	}
+
+	private int slot(long fd){
+		int slot = index.get(fd);
+		if (slot < 0){
+			throw new IllegalStateException("no inode for fd " + fd);
+		}
+		return slot;
+	}
+
+	private long getLong(long fd, int column){
+		int slot = slot(fd);
+		return slabs[slot >>> SLAB_SHIFT].getLong(column + 8*(slot & SLAB_MASK));
+	}
+
+	private void putLong(long fd, int column, long value){
+		int slot = slot(fd);
+		slabs[slot >>> SLAB_SHIFT].putLong(column + 8*(slot & SLAB_MASK), value);
+	}
+
+	private int getInt(long fd, int column){
+		int slot = slot(fd);
+		return slabs[slot >>> SLAB_SHIFT].getInt(column + 4*(slot & SLAB_MASK));
+	}
+
+	private void putInt(long fd, int column, int value){
+		int slot = slot(fd);
+		slabs[slot >>> SLAB_SHIFT].putInt(column + 4*(slot & SLAB_MASK), value);
+	}
+
+	/*
+	 * Open addressing map from fd to slot with linear probing, removals shift the following entries
+	 * back so no tombstones are needed. Uses two primitive arrays, no objects per entry.
+	 */
+	private static class SlotIndex {
+		private long[] keys;
+		private int[] values;
+		private int size;
+
+		SlotIndex(){
+			this.keys = new long[1024];
+			this.values = new int[1024];
+			this.size = 0;
+			Arrays.fill(keys, NONE);
+		}
+
+		int get(long key){
+			int mask = keys.length - 1;
+			for (int i = hash(key) & mask; keys[i] != NONE; i = (i + 1) & mask){
+				if (keys[i] == key){
+					return values[i];
+				}
+			}
+			return -1;
+		}
+
+		void put(long key, int value){
+			if (2*(size + 1) > keys.length){
+				resize(keys.length*2);
+			}
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != NONE && keys[i] != key){
+				i = (i + 1) & mask;
+			}
+			if (keys[i] == NONE){
+				size++;
+			}
+			keys[i] = key;
+			values[i] = value;
+		}
+
+		int remove(long key){
+			int mask = keys.length - 1;
+			int i = hash(key) & mask;
+			while (keys[i] != key){
+				if (keys[i] == NONE){
+					return -1;
+				}
+				i = (i + 1) & mask;
+			}
+			int value = values[i];
+			//move entries of the probe sequence into the hole unless they sit between their home and the hole
+			int j = i;
+			while (true){
+				j = (j + 1) & mask;
+				if (keys[j] == NONE){
+					break;
+				}
+				int home = hash(keys[j]) & mask;
+				if (((j - home) & mask) >= ((j - i) & mask)){
+					keys[i] = keys[j];
+					values[i] = values[j];
+					i = j;
+				}
+			}
+			keys[i] = NONE;
+			size--;
+			return value;
+		}
+
+		int size(){
+			return size;
+		}
+
+		private void resize(int capacity){
+			long[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new long[capacity];
+			values = new int[capacity];
+			Arrays.fill(keys, NONE);
+			size = 0;
+			for (int i = 0; i < oldKeys.length; i++){
+				if (oldKeys[i] != NONE){
+					put(oldKeys[i], oldValues[i]);
+				}
+			}
+		}
+
+		private static int hash(long key){
+			long h = key * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ (h >>> 32));
+		}
+	}
+}
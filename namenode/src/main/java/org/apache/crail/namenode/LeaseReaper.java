@@ -0,0 +1,122 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcNameNodeService;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Returns the blocks leased to writers which never closed their file. A lease is tracked until the 
+ * token it was granted under expires, the blocks past the end of the file are then released through 
+ * the outermost rpc service so that the release is logged like the one sent on close. The service 
+ * ignores the release if the file has been closed or reopened in the meantime, as the token no 
+ * longer matches. Only the latest lease of a file is tracked.
+ */
+class LeaseReaper implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
+	private DelayQueue<Lease> leaseQueue;
+	private LongObjectMap<Lease> leases;
+	private RpcNameNodeService service;
+	
+	public LeaseReaper(RpcNameNodeService service){
+		this.leaseQueue = new DelayQueue<Lease>();
+		this.leases = new LongObjectMap<Lease>();
+		this.service = service;
+	}
+	
+	//token is the expiry time of the writer token in nanoseconds
+	public synchronized void add(long fd, long token){
+		Lease lease = leases.get(fd);
+		if (lease != null && lease.token == token){
+			return;
+		}
+		lease = new Lease(fd, token);
+		leases.put(fd, lease);
+		leaseQueue.add(lease);
+	}
+	
+	//leases expiring while no service is set are held back until one is set again, e.g., during log replay
+	public synchronized void setService(RpcNameNodeService service){
+		this.service = service;
+		notifyAll();
+	}
+	
+	public int size(){
+		return leases.size();
+	}
+
+	@Override
+	public void run() {
+		while(true){
+			try {
+				Lease lease = leaseQueue.take();
+				RpcNameNodeService target = null;
+				synchronized(this){
+					if (leases.get(lease.fd) != lease){
+						continue;
+					}
+					leases.remove(lease.fd);
+					while(service == null){
+						wait();
+					}
+					target = service;
+				}
+				RpcRequestMessage.LeaseBlocksReq release = new RpcRequestMessage.LeaseBlocksReq(lease.fd, lease.token, 0, RpcRequestMessage.LeaseBlocksReq.KEEP_CAPACITY, 0);
+				LogResponse response = new LogResponse();
+				short error = target.leaseBlocks(release, response.leaseBlocks(), response);
+				if (error != RpcErrors.ERR_OK && error != RpcErrors.ERR_TOKEN_MISMATCH && error != RpcErrors.ERR_FILE_NOT_OPEN){
+					LOG.info("cannot release expired lease, fd " + lease.fd + ", error " + error);
+				}
+			} catch(Exception e){
+				LOG.info("Exception during lease expiry: " + e.getMessage());
+			}
+		}
+	}
+	
+	private static class Lease implements Delayed {
+		final long fd;
+		final long token;
+		
+		Lease(long fd, long token){
+			this.fd = fd;
+			this.token = token;
+		}
+
+		@Override
+		public long getDelay(TimeUnit unit) {
+			return unit.convert(token - System.nanoTime(), TimeUnit.NANOSECONDS);
+		}
+
+		@Override
+		public int compareTo(Delayed o) {
+			if (o instanceof Lease){
+				return Long.compare(token, ((Lease) o).token);
+			}
+			return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS));
+		}
+	}
+}
@@ -18,82 +18,180 @@
 
 package org.apache.crail.namenode;
 
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcNameNodeService;
 import org.apache.crail.rpc.RpcNameNodeState;
 import org.apache.crail.rpc.RpcProtocol;
+import org.apache.crail.rpc.RpcRequestMessage.BatchReq;
 import org.apache.crail.rpc.RpcRequestMessage.CreateFileReq;
 import org.apache.crail.rpc.RpcRequestMessage.DumpNameNodeReq;
 import org.apache.crail.rpc.RpcRequestMessage.GetBlockReq;
+import org.apache.crail.rpc.RpcRequestMessage.GetBlocksReq;
 import org.apache.crail.rpc.RpcRequestMessage.GetDataNodeReq;
 import org.apache.crail.rpc.RpcRequestMessage.GetFileReq;
 import org.apache.crail.rpc.RpcRequestMessage.GetLocationReq;
+import org.apache.crail.rpc.RpcRequestMessage.GetLocationsReq;
+import org.apache.crail.rpc.RpcRequestMessage.LeaseBlocksReq;
+import org.apache.crail.rpc.RpcRequestMessage.ListDirectoryReq;
 import org.apache.crail.rpc.RpcRequestMessage.PingNameNodeReq;
 import org.apache.crail.rpc.RpcRequestMessage.RemoveDataNodeReq;
 import org.apache.crail.rpc.RpcRequestMessage.RemoveFileReq;
 import org.apache.crail.rpc.RpcRequestMessage.RenameFileReq;
 import org.apache.crail.rpc.RpcRequestMessage.SetBlockReq;
 import org.apache.crail.rpc.RpcRequestMessage.SetFileReq;
+import org.apache.crail.rpc.RpcResponseMessage.BatchRes;
 import org.apache.crail.rpc.RpcResponseMessage.CreateFileRes;
 import org.apache.crail.rpc.RpcResponseMessage.DeleteFileRes;
 import org.apache.crail.rpc.RpcResponseMessage.GetBlockRes;
 import org.apache.crail.rpc.RpcResponseMessage.GetDataNodeRes;
 import org.apache.crail.rpc.RpcResponseMessage.GetFileRes;
 import org.apache.crail.rpc.RpcResponseMessage.GetLocationRes;
+import org.apache.crail.rpc.RpcResponseMessage.GetLocationsRes;
+import org.apache.crail.rpc.RpcResponseMessage.LeaseBlocksRes;
+import org.apache.crail.rpc.RpcResponseMessage.ListDirectoryRes;
 import org.apache.crail.rpc.RpcResponseMessage.PingNameNodeRes;
 import org.apache.crail.rpc.RpcResponseMessage.RemoveDataNodeRes;
 import org.apache.crail.rpc.RpcResponseMessage.RenameRes;
 import org.apache.crail.rpc.RpcResponseMessage.VoidRes;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
 
 public class LogDispatcher implements RpcNameNodeService {
+	private static final Logger LOG = CrailUtils.getLogger();
+	
 	private RpcNameNodeService service;
 	private LogService logService;
+	//updates are applied in the order their records are appended, responses wait until the record is durable
+	private Object order;
+	private GetBlockReq probe;
+	private GetBlockRes probeResponse;
 	
 	public LogDispatcher(RpcNameNodeService service) throws Exception{
 		this.service = service;
 		this.logService = new LogService();
+		this.order = new Object();
+		this.probe = new GetBlockReq();
+		this.probeResponse = new GetBlockRes();
+		//expired leases are released through the dispatcher so the release is logged, not while replaying
+		LeaseReaper leaseReaper = null;
+		if (service instanceof NameNodeService){
+			leaseReaper = ((NameNodeService) service).getLeaseReaper();
+		} else if (service instanceof OffHeapNameNodeService){
+			leaseReaper = ((OffHeapNameNodeService) service).getLeaseReaper();
+		}
+		if (leaseReaper != null){
+			leaseReaper.setService(null);
+		}
 		this.logService.replay(service);
+		if (leaseReaper != null){
+			leaseReaper.setService(this);
+		}
+		if (CrailConstants.NAMENODE_CHECKPOINT_INTERVAL > 0){
+			if (service instanceof NameNodeService){
+				Thread checkpointer = new Thread(new CheckpointServer(logService));
+				checkpointer.start();
+			} else {
+				LOG.info("checkpointing not supported for " + service.getClass().getName());
+			}
+		}
 	}
 
 	@Override
 	public short createFile(CreateFileReq request, CreateFileRes response,
 			RpcNameNodeState errorState) throws Exception {
-		LogRecord record = new LogRecord(request);
-		record.setCommand(RpcProtocol.CMD_CREATE_FILE);
-		logService.writeRecord(record);
-		return service.createFile(request, response, errorState);
+		short error = 0;
+		long sequence = 0;
+		synchronized(order){
+			error = service.createFile(request, response, errorState);
+			LogRecord record = new LogRecord(request);
+			record.setCommand(RpcProtocol.CMD_CREATE_FILE);
+			if (error == RpcErrors.ERR_OK){
+				record.addAllocation(response.getFileBlock());
+				if (response.getFile().getDirOffset() >= 0){
+					record.addAllocation(response.getDirBlock());
+					record.setDirSlot(response.getFile().getDirOffset(), response.getParent().getCapacity());
+				}
+			}
+			sequence = logService.appendRecord(record);
+		}
+		logService.awaitRecord(sequence);
+		return error;
 	}
 
 	@Override
 	public short getFile(GetFileReq request, GetFileRes response,
 			RpcNameNodeState errorState) throws Exception {
-		return service.getFile(request, response, errorState);
+		if (!request.isWriteable()){
+			return service.getFile(request, response, errorState);
+		}
+		short error = 0;
+		long sequence = 0;
+		synchronized(order){
+			error = service.getFile(request, response, errorState);
+			//a new writer releases the blocks the previous writer left past the end of the file
+			if (error == RpcErrors.ERR_OK){
+				FileInfo fileInfo = response.getFile();
+				LeaseBlocksReq release = new LeaseBlocksReq(fileInfo.getFd(), fileInfo.getToken(), fileInfo.getCapacity(), fileInfo.getCapacity(), 0);
+				LogRecord record = new LogRecord(release);
+				record.setCommand(RpcProtocol.CMD_LEASE_BLOCKS);
+				sequence = logService.appendRecord(record);
+			}
+		}
+		logService.awaitRecord(sequence);
+		return error;
 	}
 
 	@Override
 	public short setFile(SetFileReq request, VoidRes response,
 			RpcNameNodeState errorState) throws Exception {
-		LogRecord record = new LogRecord(request);
-		record.setCommand(RpcProtocol.CMD_SET_FILE);
-		logService.writeRecord(record);		
-		return service.setFile(request, response, errorState);
+		short error = 0;
+		long sequence = 0;
+		synchronized(order){
+			LogRecord record = new LogRecord(request);
+			record.setCommand(RpcProtocol.CMD_SET_FILE);
+			sequence = logService.appendRecord(record);
+			error = service.setFile(request, response, errorState);
+		}
+		logService.awaitRecord(sequence);
+		return error;
 	}
 
 	@Override
 	public short removeFile(RemoveFileReq request, DeleteFileRes response,
 			RpcNameNodeState errorState) throws Exception {
-		LogRecord record = new LogRecord(request);
-		record.setCommand(RpcProtocol.CMD_REMOVE_FILE);
-		logService.writeRecord(record);		
-		return service.removeFile(request, response, errorState);
+		short error = 0;
+		long sequence = 0;
+		synchronized(order){
+			LogRecord record = new LogRecord(request);
+			record.setCommand(RpcProtocol.CMD_REMOVE_FILE);
+			sequence = logService.appendRecord(record);
+			error = service.removeFile(request, response, errorState);
+		}
+		logService.awaitRecord(sequence);
+		return error;
 	}
 
 	@Override
 	public short renameFile(RenameFileReq request, RenameRes response,
 			RpcNameNodeState errorState) throws Exception {
-		LogRecord record = new LogRecord(request);
-		record.setCommand(RpcProtocol.CMD_RENAME_FILE);
-		logService.writeRecord(record);		
-		return service.renameFile(request, response, errorState);
+		short error = 0;
+		long sequence = 0;
+		synchronized(order){
+			error = service.renameFile(request, response, errorState);
+			LogRecord record = new LogRecord(request);
+			record.setCommand(RpcProtocol.CMD_RENAME_FILE);
+			if (error == RpcErrors.ERR_OK){
+				record.addAllocation(response.getDstBlock());
+				if (response.getDstFile().getDirOffset() >= 0){
+					record.setDirSlot(response.getDstFile().getDirOffset(), response.getDstParent().getCapacity());
+				}
+			}
+			sequence = logService.appendRecord(record);
+		}
+		logService.awaitRecord(sequence);
+		return error;
 	}
 
 	@Override
@@ -105,19 +203,67 @@ public class LogDispatcher implements RpcNameNodeService {
 	@Override
 	public short setBlock(SetBlockReq request, VoidRes response,
 			RpcNameNodeState errorState) throws Exception {
-		LogRecord record = new LogRecord(request);
-		record.setCommand(RpcProtocol.CMD_SET_BLOCK);
-		logService.writeRecord(record);		
-		return service.setBlock(request, response, errorState);
+		short error = 0;
+		long sequence = 0;
+		synchronized(order){
+			LogRecord record = new LogRecord(request);
+			record.setCommand(RpcProtocol.CMD_SET_BLOCK);
+			sequence = logService.appendRecord(record);
+			error = service.setBlock(request, response, errorState);
+		}
+		logService.awaitRecord(sequence);
+		return error;
 	}
 
 	@Override
 	public short getBlock(GetBlockReq request, GetBlockRes response,
 			RpcNameNodeState errorState) throws Exception {
-		LogRecord record = new LogRecord(request);
-		record.setCommand(RpcProtocol.CMD_GET_BLOCK);
-		logService.writeRecord(record);		
-		return service.getBlock(request, response, errorState);
+		//only writers allocate blocks, plain lookups do not change any state
+		if (request.getToken() == 0){
+			return service.getBlock(request, response, errorState);
+		}
+		short error = 0;
+		long sequence = 0;
+		synchronized(order){
+			//a writer asking again for a block it already has does not allocate anything
+			probe.set(request.getFd(), 0, request.getPosition(), request.getCapacity());
+			boolean allocated = service.getBlock(probe, probeResponse, errorState) != RpcErrors.ERR_OK;
+			error = service.getBlock(request, response, errorState);
+			if (error == RpcErrors.ERR_OK && allocated){
+				LogRecord record = new LogRecord(request);
+				record.setCommand(RpcProtocol.CMD_GET_BLOCK);
+				record.addAllocation(response.getBlockInfo());
+				sequence = logService.appendRecord(record);
+			}
+		}
+		logService.awaitRecord(sequence);
+		return error;
+	}
+
+	@Override
+	public short leaseBlocks(LeaseBlocksReq request, LeaseBlocksRes response,
+			RpcNameNodeState errorState) throws Exception {
+		short error = 0;
+		long sequence = 0;
+		synchronized(order){
+			error = service.leaseBlocks(request, response, errorState);
+			if (error == RpcErrors.ERR_OK){
+				LogRecord record = new LogRecord(request);
+				record.setCommand(RpcProtocol.CMD_LEASE_BLOCKS);
+				for (int i = response.getBlockCount() - response.getAllocated(); i < response.getBlockCount(); i++){
+					record.addAllocation(response.getBlockInfo(i));
+				}
+				sequence = logService.appendRecord(record);
+			}
+		}
+		logService.awaitRecord(sequence);
+		return error;
+	}
+
+	@Override
+	public short getBlocks(GetBlocksReq request, LeaseBlocksRes response,
+			RpcNameNodeState errorState) throws Exception {
+		return service.getBlocks(request, response, errorState);
 	}
 
 	@Override
@@ -126,6 +272,25 @@ public class LogDispatcher implements RpcNameNodeService {
 		return service.getLocation(request, response, errorState);
 	}
 
+	@Override
+	public short getLocations(GetLocationsReq request, GetLocationsRes response,
+			RpcNameNodeState errorState) throws Exception {
+		return service.getLocations(request, response, errorState);
+	}
+
+	@Override
+	public short listDirectory(ListDirectoryReq request, ListDirectoryRes response,
+			RpcNameNodeState errorState) throws Exception {
+		return service.listDirectory(request, response, errorState);
+	}
+
+	@Override
+	public short batch(BatchReq request, BatchRes response,
+			RpcNameNodeState errorState) throws Exception {
+		//operations go through this dispatcher so that every update is logged
+		return RpcNameNodeService.dispatchBatch(this, request, response, errorState);
+	}
+
 	@Override
 	public short dump(DumpNameNodeReq request, VoidRes response,
 			RpcNameNodeState errorState) throws Exception {
@@ -143,5 +308,9 @@ public class LogDispatcher implements RpcNameNodeService {
 			RpcNameNodeState errorState) throws Exception {
 		return service.removeDataNode(request, response, errorState);
 	}
+	
+	LogService getLogService() {
+		return logService;
+	}
 
 }
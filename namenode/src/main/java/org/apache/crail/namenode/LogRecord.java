@@ -21,14 +21,18 @@ package org.apache.crail.namenode;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.rpc.RpcEncoding;
 import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
 public class LogRecord {
 	public static final Logger LOG = CrailUtils.getLogger();
-	public static final int CSIZE = 4 + Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE);
+	public static final int MAX_BLOCKS = Math.max(2, RpcResponseMessage.LeaseBlocksRes.MAX_BLOCKS);
+	public static final int CSIZE = 4 + Math.max(RpcRequestMessage.SetFileReq.CSIZE, Math.max(RpcRequestMessage.CreateFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE)) + 2 + MAX_BLOCKS*BlockInfo.CSIZE + 16;
 	
 	private short cmd;
 	private short type;
@@ -38,21 +42,32 @@ public class LogRecord {
 	private RpcRequestMessage.RemoveFileReq removeReq;
 	private RpcRequestMessage.RenameFileReq renameFileReq;
 	private RpcRequestMessage.GetBlockReq getBlockReq;
+	private RpcRequestMessage.LeaseBlocksReq leaseBlocksReq;
 	private RpcRequestMessage.GetLocationReq getLocationReq;
 	private RpcRequestMessage.SetBlockReq setBlockReq;
 	private RpcRequestMessage.GetDataNodeReq getDataNodeReq;
 	private RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq;
 	private RpcRequestMessage.PingNameNodeReq pingNameNodeReq;
+	//blocks allocated by the operation, -1 for records written before allocations were logged
+	private BlockInfo[] blocks = new BlockInfo[MAX_BLOCKS];
+	private int blockCount = 0;
+	//directory slot taken by a create or rename and the parent capacity afterwards, -1 if not logged
+	private long dirOffset = -1;
+	private long dirCapacity = -1;
 
 	public LogRecord() {
 		this.cmd = 0;
 		this.type = 0;
+		for (int i = 0; i < blocks.length; i++){
+			blocks[i] = new BlockInfo();
+		}
 		this.createFileReq = new RpcRequestMessage.CreateFileReq();
 		this.fileReq = new RpcRequestMessage.GetFileReq();
 		this.setFileReq = new RpcRequestMessage.SetFileReq();
 		this.removeReq = new RpcRequestMessage.RemoveFileReq();
 		this.renameFileReq = new RpcRequestMessage.RenameFileReq();
 		this.getBlockReq = new RpcRequestMessage.GetBlockReq();
+		this.leaseBlocksReq = new RpcRequestMessage.LeaseBlocksReq();
 		this.getLocationReq = new RpcRequestMessage.GetLocationReq();
 		this.setBlockReq = new RpcRequestMessage.SetBlockReq();
 		this.dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
@@ -89,6 +104,11 @@ public class LogRecord {
 		this.getBlockReq = message;
 	}
 	
+	public LogRecord(RpcRequestMessage.LeaseBlocksReq message) {
+		this.type = message.getType();
+		this.leaseBlocksReq = message;
+	}
+	
 	public LogRecord(RpcRequestMessage.GetLocationReq message) {
 		this.type = message.getType();
 		this.getLocationReq = message;
@@ -129,40 +149,56 @@ public class LogRecord {
 		int written = 4;
 		switch(type){
 		case RpcProtocol.REQ_CREATE_FILE:
-			written += createFileReq.write(buffer);
+			written += createFileReq.write(buffer, RpcEncoding.FIXED);
 			break;		
 		case RpcProtocol.REQ_GET_FILE:
-			written += fileReq.write(buffer);
+			written += fileReq.write(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_SET_FILE:
-			written += setFileReq.write(buffer);
+			written += setFileReq.write(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_REMOVE_FILE:
-			written += removeReq.write(buffer);
+			written += removeReq.write(buffer, RpcEncoding.FIXED);
 			break;			
 		case RpcProtocol.REQ_RENAME_FILE:
-			written += renameFileReq.write(buffer);
+			written += renameFileReq.write(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_GET_BLOCK:
-			written += getBlockReq.write(buffer);
+			written += getBlockReq.write(buffer, RpcEncoding.FIXED);
+			break;
+		case RpcProtocol.REQ_LEASE_BLOCKS:
+			written += leaseBlocksReq.write(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_GET_LOCATION:
-			written += getLocationReq.write(buffer);
+			written += getLocationReq.write(buffer, RpcEncoding.FIXED);
 			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
-			written += setBlockReq.write(buffer);
+			written += setBlockReq.write(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_GET_DATANODE:
-			written += getDataNodeReq.write(buffer);
+			written += getDataNodeReq.write(buffer, RpcEncoding.FIXED);
 			break;				
 		case RpcProtocol.REQ_DUMP_NAMENODE:
-			written += dumpNameNodeReq.write(buffer);
+			written += dumpNameNodeReq.write(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_PING_NAMENODE:
-			written += pingNameNodeReq.write(buffer);
+			written += pingNameNodeReq.write(buffer, RpcEncoding.FIXED);
 			break;
 		}
 		
+		buffer.putShort((short) blockCount);
+		written += 2;
+		for (int i = 0; i < blockCount; i++){
+			written += blocks[i].write(buffer);
+		}
+		buffer.putLong(dirOffset);
+		buffer.putLong(dirCapacity);
+		written += 16;
+		//the name of a renamed node goes last, records written before names were logged end here
+		if (type == RpcProtocol.REQ_RENAME_FILE){
+			written += renameFileReq.writeName(buffer, RpcEncoding.FIXED);
+		}
+		
 		return written;
 	}
 	
@@ -172,39 +208,93 @@ public class LogRecord {
 		
 		switch(type){
 		case RpcProtocol.REQ_CREATE_FILE:
-			createFileReq.update(buffer);
+			createFileReq.update(buffer, RpcEncoding.FIXED);
 			break;		
 		case RpcProtocol.REQ_GET_FILE:
-			fileReq.update(buffer);
+			fileReq.update(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_SET_FILE:
-			setFileReq.update(buffer);
+			setFileReq.update(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_REMOVE_FILE:
-			removeReq.update(buffer);
+			removeReq.update(buffer, RpcEncoding.FIXED);
 			break;			
 		case RpcProtocol.REQ_RENAME_FILE:
-			renameFileReq.update(buffer);
+			renameFileReq.update(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_GET_BLOCK:
-			getBlockReq.update(buffer);
+			getBlockReq.update(buffer, RpcEncoding.FIXED);
+			break;
+		case RpcProtocol.REQ_LEASE_BLOCKS:
+			leaseBlocksReq.update(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_GET_LOCATION:
-			getLocationReq.update(buffer);
+			getLocationReq.update(buffer, RpcEncoding.FIXED);
 			break;			
 		case RpcProtocol.REQ_SET_BLOCK:
-			setBlockReq.update(buffer);
+			setBlockReq.update(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.REQ_GET_DATANODE:
-			getDataNodeReq.update(buffer);
+			getDataNodeReq.update(buffer, RpcEncoding.FIXED);
 			break;				
 		case RpcProtocol.REQ_DUMP_NAMENODE:
-			dumpNameNodeReq.update(buffer);
+			dumpNameNodeReq.update(buffer, RpcEncoding.FIXED);
 			break;		
 		case RpcProtocol.REQ_PING_NAMENODE:
-			pingNameNodeReq.update(buffer);
+			pingNameNodeReq.update(buffer, RpcEncoding.FIXED);
 			break;
 		}
+		
+		if (buffer.remaining() >= 2){
+			this.blockCount = buffer.getShort();
+			for (int i = 0; i < blockCount; i++){
+				blocks[i].update(buffer);
+			}
+		} else {
+			this.blockCount = -1;
+		}
+		if (buffer.remaining() >= 16){
+			this.dirOffset = buffer.getLong();
+			this.dirCapacity = buffer.getLong();
+		} else {
+			this.dirOffset = -1;
+			this.dirCapacity = -1;
+		}
+		if (type == RpcProtocol.REQ_RENAME_FILE){
+			renameFileReq.updateName(buffer, RpcEncoding.FIXED);
+		}
+	}
+	
+	public void addAllocation(BlockInfo block) throws IOException {
+		if (blockCount >= MAX_BLOCKS){
+			throw new IOException("too many blocks in log record, max " + MAX_BLOCKS);
+		}
+		blocks[blockCount++] = block;
+	}
+	
+	public void setDirSlot(long dirOffset, long dirCapacity){
+		this.dirOffset = dirOffset;
+		this.dirCapacity = dirCapacity;
+	}
+	
+	public long getDirOffset(){
+		return dirOffset;
+	}
+	
+	public long getDirCapacity(){
+		return dirCapacity;
+	}
+	
+	public boolean hasAllocations(){
+		return blockCount >= 0;
+	}
+	
+	public int getAllocationCount(){
+		return blockCount;
+	}
+	
+	public BlockInfo getAllocation(int index){
+		return blocks[index];
 	}
 
 	public short getCmd() {
@@ -239,6 +329,10 @@ public class LogRecord {
 		return getBlockReq;
 	}
 	
+	public RpcRequestMessage.LeaseBlocksReq leaseBlocks() {
+		return leaseBlocksReq;
+	}
+	
 	public RpcRequestMessage.GetLocationReq getLocation() {
 		return getLocationReq;
 	}	
@@ -281,6 +375,9 @@ public class LogRecord {
 		case RpcProtocol.REQ_GET_BLOCK:
 			message += getBlockReq.toString();
 			break;
+		case RpcProtocol.REQ_LEASE_BLOCKS:
+			message += leaseBlocksReq.toString();
+			break;
 		case RpcProtocol.REQ_GET_LOCATION:
 			message += getLocationReq.toString();
 			break;			
@@ -20,12 +20,13 @@ package org.apache.crail.namenode;
 
 import java.nio.ByteBuffer;
 
+import org.apache.crail.rpc.RpcEncoding;
 import org.apache.crail.rpc.RpcNameNodeState;
 import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcResponseMessage;
 
 public class LogResponse implements RpcNameNodeState {
-	public static final int CSIZE = 4 + Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE);
+	public static final int CSIZE = 4 + Math.max(RpcResponseMessage.LeaseBlocksRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE);
 	
 	private short type;
 	private short error;
@@ -35,6 +36,7 @@ public class LogResponse implements RpcNameNodeState {
 	private RpcResponseMessage.DeleteFileRes delFileRes;
 	private RpcResponseMessage.RenameRes renameRes;
 	private RpcResponseMessage.GetBlockRes getBlockRes;
+	private RpcResponseMessage.LeaseBlocksRes leaseBlocksRes;
 	private RpcResponseMessage.GetLocationRes getLocationRes;	
 	private RpcResponseMessage.GetDataNodeRes getDataNodeRes;
 	private RpcResponseMessage.PingNameNodeRes pingNameNodeRes;
@@ -49,6 +51,7 @@ public class LogResponse implements RpcNameNodeState {
 		this.delFileRes = new RpcResponseMessage.DeleteFileRes();
 		this.renameRes = new RpcResponseMessage.RenameRes();
 		this.getBlockRes = new RpcResponseMessage.GetBlockRes();
+		this.leaseBlocksRes = new RpcResponseMessage.LeaseBlocksRes();
 		this.getLocationRes = new RpcResponseMessage.GetLocationRes();
 		this.getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
 		this.pingNameNodeRes = new RpcResponseMessage.PingNameNodeRes();
@@ -84,6 +87,11 @@ public class LogResponse implements RpcNameNodeState {
 		this.getBlockRes = message;
 	}
 	
+	public LogResponse(RpcResponseMessage.LeaseBlocksRes message) {
+		this.type = message.getType();
+		this.leaseBlocksRes = message;
+	}
+	
 	public LogResponse(RpcResponseMessage.GetLocationRes message) {
 		this.type = message.getType();
 		this.getLocationRes = message;
@@ -132,6 +140,11 @@ public class LogResponse implements RpcNameNodeState {
 				throw new Exception("Response type not set");
 			}
 			break;
+		case RpcProtocol.RES_LEASE_BLOCKS:
+			if (leaseBlocksRes == null){
+				throw new Exception("Response type not set");
+			}
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
 			if (getLocationRes == null){
 				throw new Exception("Response type not set");
@@ -161,31 +174,34 @@ public class LogResponse implements RpcNameNodeState {
 		int written = 4;
 		switch(type){
 		case RpcProtocol.RES_VOID:
-			written += voidRes.write(buffer);
+			written += voidRes.write(buffer, RpcEncoding.FIXED);
 			break;	
 		case RpcProtocol.RES_CREATE_FILE:
-			written += createFileRes.write(buffer);
+			written += createFileRes.write(buffer, RpcEncoding.FIXED);
 			break;				
 		case RpcProtocol.RES_GET_FILE:
-			written += getFileRes.write(buffer);
+			written += getFileRes.write(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.RES_DELETE_FILE:
-			written += delFileRes.write(buffer);
+			written += delFileRes.write(buffer, RpcEncoding.FIXED);
 			break;				
 		case RpcProtocol.RES_RENAME_FILE:
-			written += renameRes.write(buffer);
+			written += renameRes.write(buffer, RpcEncoding.FIXED);
 			break;				
 		case RpcProtocol.RES_GET_BLOCK:
-			written += getBlockRes.write(buffer);
+			written += getBlockRes.write(buffer, RpcEncoding.FIXED);
+			break;
+		case RpcProtocol.RES_LEASE_BLOCKS:
+			written += leaseBlocksRes.write(buffer, RpcEncoding.FIXED);
 			break;
 		case RpcProtocol.RES_GET_LOCATION:
-			written += getLocationRes.write(buffer);
+			written += getLocationRes.write(buffer, RpcEncoding.FIXED);
 			break;			
 		case RpcProtocol.RES_GET_DATANODE:
-			written += getDataNodeRes.write(buffer);
+			written += getDataNodeRes.write(buffer, RpcEncoding.FIXED);
 			break;			
 		case RpcProtocol.RES_PING_NAMENODE:
-			written += pingNameNodeRes.write(buffer);
+			written += pingNameNodeRes.write(buffer, RpcEncoding.FIXED);
 			break;			
 		}
 		
@@ -198,39 +214,43 @@ public class LogResponse implements RpcNameNodeState {
 		
 		switch(type){
 		case RpcProtocol.RES_VOID:
-			voidRes.update(buffer);
+			voidRes.update(buffer, RpcEncoding.FIXED);
 			voidRes.setError(error);
 			break;			
 		case RpcProtocol.RES_CREATE_FILE:
-			createFileRes.update(buffer);
+			createFileRes.update(buffer, RpcEncoding.FIXED);
 			createFileRes.setError(error);
 			break;				
 		case RpcProtocol.RES_GET_FILE:
-			getFileRes.update(buffer);
+			getFileRes.update(buffer, RpcEncoding.FIXED);
 			getFileRes.setError(error);
 			break;	
 		case RpcProtocol.RES_DELETE_FILE:
-			delFileRes.update(buffer);
+			delFileRes.update(buffer, RpcEncoding.FIXED);
 			delFileRes.setError(error);
 			break;				
 		case RpcProtocol.RES_RENAME_FILE:
-			renameRes.update(buffer);
+			renameRes.update(buffer, RpcEncoding.FIXED);
 			renameRes.setError(error);
 			break;				
 		case RpcProtocol.RES_GET_BLOCK:
-			getBlockRes.update(buffer);
+			getBlockRes.update(buffer, RpcEncoding.FIXED);
 			getBlockRes.setError(error);
 			break;
+		case RpcProtocol.RES_LEASE_BLOCKS:
+			leaseBlocksRes.update(buffer, RpcEncoding.FIXED);
+			leaseBlocksRes.setError(error);
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
-			getLocationRes.update(buffer);
+			getLocationRes.update(buffer, RpcEncoding.FIXED);
 			getLocationRes.setError(error);
 			break;			
 		case RpcProtocol.RES_GET_DATANODE:
-			getDataNodeRes.update(buffer);
+			getDataNodeRes.update(buffer, RpcEncoding.FIXED);
 			getDataNodeRes.setError(error);
 			break;			
 		case RpcProtocol.RES_PING_NAMENODE:
-			pingNameNodeRes.update(buffer);
+			pingNameNodeRes.update(buffer, RpcEncoding.FIXED);
 			pingNameNodeRes.setError(error);
 			break;		
 		}
@@ -272,6 +292,10 @@ public class LogResponse implements RpcNameNodeState {
 		return getBlockRes;
 	}	
 	
+	public RpcResponseMessage.LeaseBlocksRes leaseBlocks() {
+		return leaseBlocksRes;
+	}
+	
 	public RpcResponseMessage.GetLocationRes getLocation() {
 		return getLocationRes;
 	}	
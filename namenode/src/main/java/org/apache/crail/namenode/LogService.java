@@ -22,11 +22,17 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedList;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.rpc.RpcErrors;
 import org.apache.crail.rpc.RpcNameNodeService;
 import org.apache.crail.rpc.RpcProtocol;
@@ -35,80 +41,379 @@ import org.slf4j.Logger;
 
 public class LogService {
 	public static final Logger LOG = CrailUtils.getLogger();
+	private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+	private static final int MODE_ASYNC = 0;
+	private static final int MODE_BATCH = 1;
+	private static final int MODE_FSYNC = 2;
 	
 	private ConcurrentHashMap<Long, Long> tokens;
+	private File logFile;
+	private File checkpointFile;
 	private FileOutputStream outStream;
 	private FileChannel outChannel;
-	private ByteBuffer header;
-	private ByteBuffer payload;
+	private long segment;
+	private long written;
+	
+	//group commit: records are appended to the batch buffer and written in bulk by the log writer
+	private int mode;
+	private ByteBuffer batch;
+	private ByteBuffer flushing;
+	private long appended;
+	private long durable;
+	private IOException error;
+	private boolean closed;
 	
 	public LogService() throws IOException {
-		File file = new File(CrailConstants.NAMENODE_LOG);
-		if (!file.exists()){
-			file.createNewFile();
-		}
-		outStream = new FileOutputStream(CrailConstants.NAMENODE_LOG, true);
-		outChannel = outStream.getChannel();
-		header = ByteBuffer.allocate(4);
-		payload = ByteBuffer.allocate(512);
+		logFile = new File(CrailConstants.NAMENODE_LOG);
+		checkpointFile = new File(CrailConstants.NAMENODE_LOG + CHECKPOINT_SUFFIX);
+		segment = lastSegment();
+		openLog();
 		tokens = new ConcurrentHashMap<Long, Long>();
+		
+		mode = parseMode(CrailConstants.NAMENODE_LOG_SYNC);
+		batch = ByteBuffer.allocateDirect(Math.max(CrailConstants.NAMENODE_LOG_BUFFER, 4 + LogRecord.CSIZE));
+		flushing = ByteBuffer.allocateDirect(batch.capacity());
+		appended = 0;
+		durable = 0;
+		error = null;
+		closed = false;
+		if (mode != MODE_FSYNC){
+			Thread writer = new Thread(new LogWriter());
+			writer.start();
+		}
+		LOG.info("namenode log " + logFile.getAbsolutePath() + ", sync " + CrailConstants.NAMENODE_LOG_SYNC + ", buffer " + batch.capacity());
 	}
 	
+	/*
+	 * Appends a record to the log. Depending on the sync mode the call returns once the record 
+	 * is buffered (async), once the batch containing the record has been written and synced (batch), 
+	 * or after the record has been written and synced on its own (fsync).
+	 */
 	public void writeRecord(LogRecord record) throws IOException{
-		payload.clear();
-		record.write(payload);
-		payload.flip();
+		awaitRecord(appendRecord(record));
+	}
+	
+	/*
+	 * Appends a record to the log without waiting for the batch to be synced, records are 
+	 * written in the order they are appended. Returns the sequence number to wait for.
+	 */
+	public synchronized long appendRecord(LogRecord record) throws IOException{
+		checkError();
+		while(batch.remaining() < 4 + record.size()){
+			awaitDurable(appended);
+		}
 		
-		header.clear();
-		header.putInt(payload.remaining());
-		header.flip();
+		int position = batch.position();
+		batch.position(position + 4);
+		record.write(batch);
+		int size = batch.position() - position - 4;
+		batch.putInt(position, size);
+		written += size + 4;
+		long sequence = ++appended;
 		
-		outChannel.write(header);
-		while(payload.hasRemaining()){
-			outChannel.write(payload);
+		if (mode == MODE_FSYNC){
+			batch.flip();
+			while(batch.hasRemaining()){
+				outChannel.write(batch);
+			}
+			batch.clear();
+			outChannel.force(false);
+			durable = sequence;
+		} else {
+			this.notifyAll();
+		}
+		return sequence;
+	}
+	
+	public synchronized void awaitRecord(long sequence) throws IOException{
+		if (mode == MODE_BATCH){
+			awaitDurable(sequence);
 		}
 	}
 	
 	public void replay(RpcNameNodeService service) throws Exception {
-		File file = new File(CrailConstants.NAMENODE_LOG);
-		if (!file.exists()){
+		long checkpointSegment = 0;
+		if (checkpointFile.exists()){
+			if (!(service instanceof NameNodeService)){
+				throw new IOException("checkpoint " + checkpointFile.getAbsolutePath() + " cannot be loaded into " + service.getClass().getName());
+			}
+			NameNodeCheckpoint checkpoint = new NameNodeCheckpoint((NameNodeService) service);
+			checkpointSegment = checkpoint.load(checkpointFile, tokens);
+			truncate(checkpointSegment);
+			segment = Math.max(segment, checkpointSegment);
+		}
+		for (long i = checkpointSegment + 1; i <= segment; i++){
+			replay(service, segmentFile(i), tokens);
+		}
+		replay(service, logFile, tokens);
+		synchronized(this){
+			written = outChannel.size();
+		}
+	}
+	
+	/*
+	 * Folds all closed log segments into the checkpoint. The active segment is rotated 
+	 * first, the closed segments are then replayed into a separate namenode image so that 
+	 * the live namespace is not blocked while the checkpoint is written.
+	 */
+	public void checkpoint() throws Exception {
+		long start = System.currentTimeMillis();
+		long closedSegment = rotate();
+		if (closedSegment < 0){
 			return;
+		}
+		
+		NameNodeService image = new NameNodeService(false);
+		ConcurrentHashMap<Long, Long> imageTokens = new ConcurrentHashMap<Long, Long>();
+		NameNodeCheckpoint checkpoint = new NameNodeCheckpoint(image);
+		long checkpointSegment = 0;
+		if (checkpointFile.exists()){
+			checkpointSegment = checkpoint.load(checkpointFile, imageTokens);
+		}
+		int failed = 0;
+		for (long i = checkpointSegment + 1; i <= closedSegment; i++){
+			failed += replay(image, segmentFile(i), imageTokens);
+		}
+		//an incomplete image must not replace the segments it was built from
+		if (failed > 0){
+			throw new IOException("checkpoint aborted, " + failed + " records of segments " + (checkpointSegment + 1) + " to " + closedSegment + " could not be applied");
+		}
+		checkpoint.write(checkpointFile, closedSegment);
+		truncate(closedSegment);
+		LOG.info("checkpoint completed, segments " + (checkpointSegment + 1) + " to " + closedSegment + ", time " + (System.currentTimeMillis() - start) + "ms");
+	}
+	
+	public synchronized void close() throws IOException{
+		awaitDurable(appended);
+		closed = true;
+		this.notifyAll();
+		closeLog();
+	}
+	
+	private synchronized long rotate() throws IOException {
+		awaitDurable(appended);
+		if (written == 0){
+			return -1;
+		}
+		outChannel.force(false);
+		closeLog();
+		long closedSegment = segment + 1;
+		Files.move(logFile.toPath(), segmentFile(closedSegment).toPath(), StandardCopyOption.ATOMIC_MOVE);
+		segment = closedSegment;
+		openLog();
+		return closedSegment;
+	}
+	
+	private void openLog() throws IOException {
+		if (!logFile.exists()){
+			logFile.createNewFile();
+		}
+		outStream = new FileOutputStream(logFile, true);
+		outChannel = outStream.getChannel();
+		written = outChannel.size();
+	}
+	
+	private void closeLog() throws IOException {
+		outChannel.close();
+		outStream.close();
+	}
+	
+	private void awaitDurable(long sequence) throws IOException {
+		while(durable < sequence){
+			checkError();
+			try {
+				this.wait();
+			} catch(InterruptedException e){
+				throw new InterruptedIOException("interrupted while waiting for log writer");
+			}
+		}
+	}
+	
+	private void checkError() throws IOException {
+		if (error != null){
+			throw new IOException("log writer failed, " + error.getMessage());
+		}
+	}
+	
+	private static int parseMode(String mode) throws IOException {
+		if (mode.equalsIgnoreCase("async")){
+			return MODE_ASYNC;
+		} else if (mode.equalsIgnoreCase("batch")){
+			return MODE_BATCH;
+		} else if (mode.equalsIgnoreCase("fsync")){
+			return MODE_FSYNC;
+		}
+		throw new IOException("unknown namenode log sync mode " + mode);
+	}
+	
+	private void truncate(long lastSegment) {
+		for (long i = 1; i <= lastSegment; i++){
+			File file = segmentFile(i);
+			if (file.exists() && !file.delete()){
+				LOG.info("failed to delete log segment " + file.getAbsolutePath());
+			}
+		}
+	}
+	
+	private File segmentFile(long segment){
+		return new File(logFile.getAbsolutePath() + "." + segment);
+	}
+	
+	private long lastSegment() {
+		long last = 0;
+		File dir = logFile.getAbsoluteFile().getParentFile();
+		String prefix = logFile.getName() + ".";
+		String[] names = dir != null ? dir.list() : null;
+		if (names == null){
+			return last;
+		}
+		for (String name : names){
+			if (!name.startsWith(prefix)){
+				continue;
+			}
+			try {
+				last = Math.max(last, Long.parseLong(name.substring(prefix.length())));
+			} catch(NumberFormatException e){
+			}
+		}
+		return last;
+	}
+	
+	/*
+	 * Replays all complete records of the given log file and returns the number of records 
+	 * which could not be applied. A record torn by a crash ends the replay, the file is 
+	 * truncated after the last complete record so that new records are appended behind it.
+	 */
+	private static int replay(RpcNameNodeService service, File file, ConcurrentHashMap<Long, Long> tokens) throws Exception {
+		if (!file.exists()){
+			return 0;
 		}		
 		
-		FileInputStream inStream = new FileInputStream(CrailConstants.NAMENODE_LOG);
+		FileInputStream inStream = new FileInputStream(file);
 		FileChannel inChannel = inStream.getChannel();
+		ByteBuffer header = ByteBuffer.allocate(4);
+		ByteBuffer payload = ByteBuffer.allocate(LogRecord.CSIZE);
 		LogRecord record = new LogRecord();
 		LogResponse response = new LogResponse();
+		long length = inChannel.size();
+		long valid = 0;
+		int failed = 0;
 		
-		header.clear();
-		int ret = inChannel.read(header);
-		while(ret > 0){
+		while(valid < length){
+			header.clear();
+			if (!readFully(inChannel, header)){
+				break;
+			}
 			header.flip();
 			int size = header.getInt();
+			if (size <= 0 || size > length - valid - 4){
+				break;
+			}
+			//records may carry longer names than the current configuration allows
+			if (size > payload.capacity()){
+				payload = ByteBuffer.allocate(size);
+			}
 			
 			payload.clear().limit(size);
-			while(payload.hasRemaining()){
-				inChannel.read(payload);
+			if (!readFully(inChannel, payload)){
+				break;
 			}
 			payload.flip();
 			record.update(payload);
-			processServerEvent(service, record, response);
-			
-			header.clear();
-			ret = inChannel.read(header);
+			if (!processServerEvent(service, record, response, tokens)){
+				failed++;
+			}
+			valid += size + 4;
 		}
 		
 		inChannel.close();
 		inStream.close();
+		
+		if (valid < length){
+			LOG.warn("torn record at offset " + valid + " in log " + file.getAbsolutePath() + ", truncating " + (length - valid) + " bytes");
+			RandomAccessFile repairFile = new RandomAccessFile(file, "rw");
+			try {
+				repairFile.getChannel().truncate(valid);
+				repairFile.getChannel().force(true);
+			} finally {
+				repairFile.close();
+			}
+		}
+		return failed;
 	}
 	
-	public void close() throws IOException{
-		outChannel.close();
-		outStream.close();
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+		while(buffer.hasRemaining()){
+			if (channel.read(buffer) < 0){
+				return false;
+			}
+		}
+		return true;
 	}
 	
-	private void processServerEvent(RpcNameNodeService service, LogRecord record, LogResponse response) {
+	private class LogWriter implements Runnable {
+		@Override
+		public void run() {
+			while(true){
+				long sequence = 0;
+				synchronized(LogService.this){
+					try {
+						while(batch.position() == 0 && !closed){
+							LogService.this.wait();
+						}
+					} catch(InterruptedException e){
+						return;
+					}
+					if (batch.position() == 0){
+						return;
+					}
+					ByteBuffer tmp = flushing;
+					flushing = batch;
+					batch = tmp;
+					sequence = appended;
+				}
+				
+				try {
+					flushing.flip();
+					while(flushing.hasRemaining()){
+						outChannel.write(flushing);
+					}
+					if (mode == MODE_BATCH){
+						outChannel.force(false);
+					}
+					flushing.clear();
+				} catch(IOException e){
+					LOG.info("Exception in log writer: " + e.getMessage());
+					synchronized(LogService.this){
+						error = e;
+						LogService.this.notifyAll();
+					}
+					return;
+				}
+				
+				synchronized(LogService.this){
+					durable = sequence;
+					LogService.this.notifyAll();
+				}
+			}
+		}
+	}
+	
+	private static boolean processServerEvent(RpcNameNodeService service, LogRecord record, LogResponse response, ConcurrentHashMap<Long, Long> tokens) {
 		short error = RpcErrors.ERR_OK;
+		boolean applied = true;
+		//re-apply the logged allocations instead of running block selection again
+		boolean exact = record.hasAllocations() && service instanceof NameNodeService;
+		if (exact){
+			LinkedList<BlockInfo> allocations = new LinkedList<BlockInfo>();
+			for (int i = 0; i < record.getAllocationCount(); i++){
+				allocations.add(record.getAllocation(i));
+			}
+			((NameNodeService) service).replayAllocations(allocations);
+			//records without a slot append at the end of the directory as before
+			long dirOffset = record.getDirOffset() >= 0 ? record.getDirOffset() : DirectoryBlocks.END_SLOT;
+			((NameNodeService) service).replayDirSlot(dirOffset, record.getDirCapacity());
+		}
 		try {
 			switch(record.getCmd()) {
 			case RpcProtocol.CMD_CREATE_FILE:
@@ -132,6 +437,13 @@ public class LogService {
 				record.getBlock().setToken(tokens.get(record.getBlock().getFd()));
 				error = service.getBlock(record.getBlock(), response.getBlock(), response);
 				break;
+			case RpcProtocol.CMD_LEASE_BLOCKS:
+				Long leaseToken = tokens.get(record.leaseBlocks().getFd());
+				if (leaseToken != null){
+					record.leaseBlocks().setToken(leaseToken);
+					error = service.leaseBlocks(record.leaseBlocks(), response.leaseBlocks(), response);
+				}
+				break;
 			case RpcProtocol.CMD_SET_BLOCK:
 				error = service.setBlock(record.setBlock(), response.getVoid(), response);
 				break;
@@ -141,8 +453,15 @@ public class LogService {
 			}
 		} catch(Exception e){
 			error = RpcErrors.ERR_UNKNOWN;
+			applied = false;
 			LOG.info(RpcErrors.messages[RpcErrors.ERR_UNKNOWN] + e.getMessage());
 			e.printStackTrace();
+		} finally {
+			if (exact){
+				((NameNodeService) service).replayAllocations(null);
+				((NameNodeService) service).replayDirSlot(DirectoryBlocks.NEXT_SLOT, -1);
+			}
 		}
+		return applied;
 	}	
 }
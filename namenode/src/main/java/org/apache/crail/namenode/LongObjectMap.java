@@ -0,0 +1,226 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Concurrent open addressing map with primitive long keys, lookups do not allocate. Lookups are lock-free, updates are 
+ * serialized per map. Removed entries leave a tombstone which keeps its key, a slot is only ever 
+ * reused for the same key so that a reader seeing a value always sees the key it belongs to. 
+ * Tombstones are purged when the table is rebuilt, readers of the old table see a consistent 
+ * snapshot as the old table is never modified after the new one has been published. The table 
+ * is compacted once it has become sparse after removals.
+ */
+public class LongObjectMap<V> {
+	private static final Object TOMBSTONE = new Object();
+	private static final int MIN_CAPACITY = 4;
+	private static final int COMPACT_CAPACITY = 1024;
+	
+	private volatile Table table;
+	private volatile int size;
+	private int used;
+	
+	public LongObjectMap(){
+		this(MIN_CAPACITY);
+	}
+	
+	public LongObjectMap(int capacity){
+		this.table = new Table(tableSize(capacity));
+		this.size = 0;
+		this.used = 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public V get(long key){
+		Table current = table;
+		int mask = current.mask;
+		int index = hash(key) & mask;
+		for (int i = 0; i <= mask; i++){
+			Object value = current.values.get(index);
+			if (value == null){
+				return null;
+			} else if (current.keys[index] == key){
+				return value == TOMBSTONE ? null : (V) value;
+			}
+			index = (index + 1) & mask;
+		}
+		return null;
+	}
+	
+	public synchronized V putIfAbsent(long key, V value){
+		return insert(key, value, true);
+	}
+	
+	public synchronized V put(long key, V value){
+		return insert(key, value, false);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public synchronized V remove(long key){
+		Table current = table;
+		int index = find(current, key);
+		if (index < 0){
+			return null;
+		}
+		Object old = current.values.get(index);
+		if (old == TOMBSTONE){
+			return null;
+		}
+		current.values.set(index, TOMBSTONE);
+		size--;
+		if (current.keys.length > COMPACT_CAPACITY && size < (current.keys.length >> 3)){
+			rebuild(current, tableSize(size << 1));
+		}
+		return (V) old;
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public void collectValues(Collection<? super V> collection){
+		Table current = table;
+		for (int i = 0; i < current.keys.length; i++){
+			Object value = current.values.get(i);
+			if (value != null && value != TOMBSTONE){
+				collection.add((V) value);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	public void collectEntries(Map<Long, ? super V> map){
+		Table current = table;
+		for (int i = 0; i < current.keys.length; i++){
+			Object value = current.values.get(i);
+			if (value != null && value != TOMBSTONE){
+				map.put(current.keys[i], (V) value);
+			}
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private V insert(long key, V value, boolean onlyIfAbsent){
+		if (value == null){
+			throw new NullPointerException();
+		}
+		Table current = table;
+		int index = find(current, key);
+		if (index >= 0){
+			Object old = current.values.get(index);
+			if (old == TOMBSTONE){
+				current.values.set(index, value);
+				size++;
+				return null;
+			} 
+			if (!onlyIfAbsent){
+				current.values.set(index, value);
+			}
+			return (V) old;
+		}
+		
+		if (used + 1 > threshold(current)){
+			int capacity = current.keys.length;
+			while(size + 1 > (capacity >> 1) + (capacity >> 2)){
+				capacity = capacity << 1;
+			}
+			current = rebuild(current, capacity);
+		}
+		index = hash(key) & current.mask;
+		while(current.values.get(index) != null){
+			index = (index + 1) & current.mask;
+		}
+		current.keys[index] = key;
+		current.values.set(index, value);
+		used++;
+		size++;
+		return null;
+	}
+	
+	private int find(Table current, long key){
+		int mask = current.mask;
+		int index = hash(key) & mask;
+		for (int i = 0; i <= mask; i++){
+			Object value = current.values.get(index);
+			if (value == null){
+				return -1;
+			} else if (current.keys[index] == key){
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+	
+	private Table rebuild(Table current, int capacity){
+		Table next = new Table(capacity);
+		for (int i = 0; i < current.keys.length; i++){
+			Object value = current.values.get(i);
+			if (value != null && value != TOMBSTONE){
+				int index = hash(current.keys[i]) & next.mask;
+				while(next.values.get(index) != null){
+					index = (index + 1) & next.mask;
+				}
+				next.keys[index] = current.keys[i];
+				next.values.lazySet(index, value);
+			}
+		}
+		used = size;
+		table = next;
+		return next;
+	}
+	
+	private static int threshold(Table current){
+		int capacity = current.keys.length;
+		return (capacity >> 1) + (capacity >> 2);
+	}
+	
+	private static int tableSize(int capacity){
+		int size = MIN_CAPACITY;
+		while(size < capacity){
+			size = size << 1;
+		}
+		return size;
+	}
+	
+	private static int hash(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+	
+	private static class Table {
+		final long[] keys;
+		final AtomicReferenceArray<Object> values;
+		final int mask;
+		
+		Table(int capacity){
+			this.keys = new long[capacity];
+			this.values = new AtomicReferenceArray<Object>(capacity);
+			this.mask = capacity - 1;
+		}
+	}
+}
@@ -24,6 +24,8 @@ import org.apache.crail.metadata.DataNodeInfo;
 public class NameNodeBlockInfo extends BlockInfo {
 	private BlockInfo region;
 	private long offset;
+	//dense id assigned by services referencing blocks by int, 0 if unassigned
+	private int id;
 	
 	public NameNodeBlockInfo(BlockInfo region, long offset, int length){
 		this.region = region;
@@ -60,4 +62,12 @@ public class NameNodeBlockInfo extends BlockInfo {
 		return region;
 	}
 	
+	int getId() {
+		return id;
+	}
+	
+	void setId(int id) {
+		this.id = id;
+	}
+	
 }
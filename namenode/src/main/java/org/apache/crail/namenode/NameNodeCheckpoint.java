@@ -0,0 +1,301 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Binary snapshot of the namenode state: the sequencer, all storage regions, and the
+ * file tree including the blocks of each node. Blocks which are not referenced by any
+ * node are free. Nodes are written breadth-first so that parents precede their children.
+ */
+public class NameNodeCheckpoint {
+	private static final Logger LOG = CrailUtils.getLogger();
+	private static final int MAGIC = 0x43524b50;
+	private static final int VERSION = 3;
+	private static final int STREAM_BUFFER = 1048576;
+
+	private NameNodeService service;
+	private ByteBuffer buffer;
+
+	public NameNodeCheckpoint(NameNodeService service){
+		this.service = service;
+		this.buffer = ByteBuffer.allocate(BlockInfo.CSIZE);
+	}
+
+	public void write(File file, long segment) throws Exception {
+		File tmpFile = new File(file.getAbsolutePath() + ".tmp");
+		FileOutputStream fileStream = new FileOutputStream(tmpFile);
+		DataOutputStream outStream = new DataOutputStream(new BufferedOutputStream(fileStream, STREAM_BUFFER));
+		ArrayList<BlockInfo> regions = new ArrayList<BlockInfo>();
+		long nodes = 0;
+		try {
+			outStream.writeInt(MAGIC);
+			outStream.writeInt(VERSION);
+			outStream.writeLong(segment);
+			outStream.writeLong(service.getSequenceId());
+
+			service.getBlockStore().collectRegions(regions);
+			outStream.writeInt(regions.size());
+			for (BlockInfo region : regions){
+				writeRegion(outStream, region);
+			}
+
+			HashMap<Integer, NameNodeBlockInfo> blocks = new HashMap<Integer, NameNodeBlockInfo>();
+			LinkedList<AbstractNode> children = new LinkedList<AbstractNode>();
+			LinkedList<AbstractNode> queue = new LinkedList<AbstractNode>();
+			AbstractNode root = service.getFileStore().getRoot();
+			writeNode(outStream, -1, root, blocks);
+			queue.add(root);
+			nodes++;
+			while(!queue.isEmpty()){
+				AbstractNode parent = queue.poll();
+				parent.collectChildren(children);
+				for (AbstractNode child = children.poll(); child != null; child = children.poll()){
+					writeNode(outStream, parent.getFd(), child, blocks);
+					if (child.getType().isContainer()){
+						queue.add(child);
+					}
+					nodes++;
+				}
+			}
+			outStream.writeBoolean(false);
+			outStream.flush();
+			fileStream.getFD().sync();
+		} finally {
+			outStream.close();
+		}
+		Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		LOG.info("checkpoint written, segment " + segment + ", regions " + regions.size() + ", nodes " + nodes);
+	}
+
+	public long load(File file, Map<Long, Long> tokens) throws Exception {
+		DataInputStream inStream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), STREAM_BUFFER));
+		try {
+			if (inStream.readInt() != MAGIC){
+				throw new IOException("Invalid checkpoint file " + file.getAbsolutePath());
+			}
+			int version = inStream.readInt();
+			if (version < 1 || version > VERSION){
+				throw new IOException("Unsupported checkpoint version " + version + ", expected at most " + VERSION);
+			}
+			long segment = inStream.readLong();
+			service.setSequenceId(inStream.readLong());
+
+			//materialize all blocks of all regions, blocks referenced by nodes are removed again
+			int regionCount = inStream.readInt();
+			ArrayList<BlockInfo> regions = new ArrayList<BlockInfo>(regionCount);
+			HashMap<Long, HashMap<Long, NameNodeBlockInfo>> blockTable = new HashMap<Long, HashMap<Long, NameNodeBlockInfo>>();
+			for (int i = 0; i < regionCount; i++){
+				BlockInfo region = readRegion(inStream);
+				regions.add(region);
+				HashMap<Long, NameNodeBlockInfo> dnBlocks = blockTable.get(region.getDnInfo().key());
+				if (dnBlocks == null){
+					dnBlocks = new HashMap<Long, NameNodeBlockInfo>();
+					blockTable.put(region.getDnInfo().key(), dnBlocks);
+				}
+				int realBlocks = (int) (((long) region.getLength()) / CrailConstants.BLOCK_SIZE);
+				long offset = 0;
+				for (int j = 0; j < realBlocks; j++){
+					NameNodeBlockInfo nnBlock = new NameNodeBlockInfo(region, offset, (int) CrailConstants.BLOCK_SIZE);
+					dnBlocks.put(nnBlock.getLba(), nnBlock);
+					offset += CrailConstants.BLOCK_SIZE;
+				}
+			}
+
+			//tokens are only meaningful within the process that issued them, re-issue them to expire normally
+			long token = System.nanoTime() + TimeUnit.SECONDS.toNanos(CrailConstants.TOKEN_EXPIRATION);
+			FileStore fileStore = service.getFileStore();
+			LongObjectMap<AbstractNode> fileTable = service.getFileTable();
+			ArrayList<NameNodeBlockInfo> usedBlocks = new ArrayList<NameNodeBlockInfo>();
+			long nodes = 0;
+			while(inStream.readBoolean()){
+				long parentFd = inStream.readLong();
+				long fd = inStream.readLong();
+				int component = inStream.readInt();
+				CrailNodeType type = CrailNodeType.parse(inStream.readInt());
+				int storageClass = inStream.readInt();
+				int locationClass = inStream.readInt();
+				long dirOffset = inStream.readLong();
+				long capacity = inStream.readLong();
+				boolean writeable = inStream.readBoolean();
+				long modificationTime = inStream.readLong();
+				long dirOffsetCounter = inStream.readLong();
+				int placement = version > 1 ? inStream.readInt() : 0;
+				byte[] name = version > 2 ? readName(inStream) : null;
+
+				AbstractNode node = null;
+				AbstractNode parent = null;
+				if (parentFd < 0){
+					node = fileStore.getRoot();
+					if (node.getFd() != fd){
+						throw new IOException("Checkpoint root fd " + fd + " does not match namenode root fd " + node.getFd());
+					}
+				} else {
+					parent = fileTable.get(parentFd);
+					if (parent == null || !parent.getType().isContainer()){
+						throw new IOException("Checkpoint inconsistent, parent " + parentFd + " of fd " + fd + " not found");
+					}
+					node = fileStore.restoreNode(fd, component, type, storageClass, locationClass, dirOffset != FileInfo.NOT_ENUMERABLE);
+					fileTable.put(fd, node);
+				}
+				node.restore(capacity, dirOffset, writeable ? token : 0, modificationTime);
+				node.setName(name);
+				if (parent != null){
+					//the child claims its slot, slots which no child claims are free after loading
+					((DirectoryBlocks) parent).restoreChild(node);
+				}
+				node.setPlacement(placement);
+				if (writeable){
+					tokens.put(fd, token);
+					service.openForWrite(node);
+				}
+				if (type.isContainer()){
+					((DirectoryBlocks) node).restoreDirOffsetCounter(dirOffsetCounter);
+				}
+
+				int blockCount = inStream.readInt();
+				for (int i = 0; i < blockCount; i++){
+					int index = inStream.readInt();
+					long dnKey = inStream.readLong();
+					long lba = inStream.readLong();
+					HashMap<Long, NameNodeBlockInfo> dnBlocks = blockTable.get(dnKey);
+					NameNodeBlockInfo block = dnBlocks != null ? dnBlocks.remove(lba) : null;
+					if (block == null){
+						throw new IOException("Checkpoint inconsistent, fd " + fd + " references unknown block, lba " + lba);
+					}
+					if (!node.addBlock(index, block)){
+						throw new IOException("Checkpoint inconsistent, cannot add block " + index + " to fd " + fd);
+					}
+					usedBlocks.add(block);
+				}
+				nodes++;
+			}
+
+			//free blocks first, the datanode learns its total capacity from the free blocks
+			BlockStore blockStore = service.getBlockStore();
+			for (BlockInfo region : regions){
+				HashMap<Long, NameNodeBlockInfo> dnBlocks = blockTable.get(region.getDnInfo().key());
+				int realBlocks = (int) (((long) region.getLength()) / CrailConstants.BLOCK_SIZE);
+				ArrayList<NameNodeBlockInfo> freeBlocks = new ArrayList<NameNodeBlockInfo>(realBlocks);
+				long offset = 0;
+				for (int j = 0; j < realBlocks; j++){
+					NameNodeBlockInfo nnBlock = dnBlocks.remove(region.getLba() + offset);
+					if (nnBlock != null){
+						freeBlocks.add(nnBlock);
+					}
+					offset += CrailConstants.BLOCK_SIZE;
+				}
+				blockStore.addBlocks(freeBlocks);
+			}
+			for (NameNodeBlockInfo block : usedBlocks){
+				blockStore.restoreBlock(block);
+			}
+
+			LOG.info("checkpoint loaded, segment " + segment + ", regions " + regionCount + ", nodes " + nodes + ", used blocks " + usedBlocks.size());
+			return segment;
+		} finally {
+			inStream.close();
+		}
+	}
+
+	private void writeNode(DataOutputStream outStream, long parentFd, AbstractNode node, HashMap<Integer, NameNodeBlockInfo> blocks) throws Exception {
+		outStream.writeBoolean(true);
+		outStream.writeLong(parentFd);
+		outStream.writeLong(node.getFd());
+		outStream.writeInt(node.getComponent());
+		outStream.writeInt(node.getType().getLabel());
+		outStream.writeInt(node.getStorageClass());
+		outStream.writeInt(node.getLocationClass());
+		outStream.writeLong(node.getDirOffset());
+		outStream.writeLong(node.getCapacity());
+		outStream.writeBoolean(node.getToken() != 0);
+		outStream.writeLong(node.getModificationTime());
+		if (node.getType().isContainer()){
+			outStream.writeLong(((DirectoryBlocks) node).getDirOffsetCounter());
+		} else {
+			outStream.writeLong(0);
+		}
+		outStream.writeInt(node.getPlacement());
+		byte[] name = node.getName();
+		if (name != null){
+			outStream.writeInt(name.length);
+			outStream.write(name);
+		} else {
+			outStream.writeInt(0);
+		}
+
+		blocks.clear();
+		node.collectBlocks(blocks);
+		outStream.writeInt(blocks.size());
+		for (Map.Entry<Integer, NameNodeBlockInfo> entry : blocks.entrySet()){
+			NameNodeBlockInfo block = entry.getValue();
+			outStream.writeInt(entry.getKey());
+			outStream.writeLong(block.getDnInfo().key());
+			outStream.writeLong(block.getLba());
+		}
+	}
+
+	private static byte[] readName(DataInputStream inStream) throws IOException {
+		int length = inStream.readInt();
+		if (length == 0){
+			return null;
+		}
+		byte[] name = new byte[length];
+		inStream.readFully(name);
+		return name;
+	}
+
+	private void writeRegion(DataOutputStream outStream, BlockInfo region) throws IOException {
+		buffer.clear();
+		region.write(buffer);
+		outStream.write(buffer.array(), 0, BlockInfo.CSIZE);
+	}
+
+	private BlockInfo readRegion(DataInputStream inStream) throws IOException {
+		buffer.clear();
+		inStream.readFully(buffer.array(), 0, BlockInfo.CSIZE);
+		BlockInfo region = new BlockInfo();
+		region.update(buffer);
+		return region;
+	}
+}
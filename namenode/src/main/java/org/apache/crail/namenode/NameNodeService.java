@@ -20,8 +20,11 @@ package org.apache.crail.namenode;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.StringTokenizer;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.DelayQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -29,6 +32,7 @@ import org.apache.crail.CrailNodeType;
 import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.*;
 import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcListDirectory;
 import org.apache.crail.rpc.RpcNameNodeService;
 import org.apache.crail.rpc.RpcNameNodeState;
 import org.apache.crail.rpc.RpcProtocol;
@@ -47,10 +51,22 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 	private BlockStore blockStore;
 	private DelayQueue<AbstractNode> deleteQueue;
 	private FileStore fileTree;
-	private ConcurrentHashMap<Long, AbstractNode> fileTable;	
+	private LongObjectMap<AbstractNode> fileTable;	
+	//files currently open for write, a subset of the file table
+	private LongObjectMap<AbstractNode> writeTable;
+	//allocations to re-apply while replaying a log record, null during normal operation
+	private LinkedList<BlockInfo> replayBlocks;
+	//directory slot of the replayed create or rename, together with the capacity of the parent after the operation
+	private long replayDirOffset;
+	private long replayDirCapacity;
 	private GCServer gcServer;
+	private LeaseReaper leaseReaper;
 	
 	public NameNodeService() throws IOException {
+		this(true);
+	}
+	
+	NameNodeService(boolean runGC) throws IOException {
 		URI uri = URI.create(CrailConstants.NAMENODE_ADDRESS);
 		String query = uri.getRawQuery();
 		StringTokenizer tokenizer = new StringTokenizer(query, "&");
@@ -59,14 +75,20 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		this.sequenceId = new AtomicLong(serviceId);
 		this.blockStore = new BlockStore();
 		this.deleteQueue = new DelayQueue<AbstractNode>();
-		this.fileTree = new FileStore(this);
-		this.fileTable = new ConcurrentHashMap<Long, AbstractNode>();
+		this.fileTable = new LongObjectMap<AbstractNode>();
+		this.fileTree = new FileStore(this, fileTable);
+		this.writeTable = new LongObjectMap<AbstractNode>();
 		this.gcServer = new GCServer(this, deleteQueue);
+		this.leaseReaper = new LeaseReaper(this);
 		
 		AbstractNode root = fileTree.getRoot();
 		fileTable.put(root.getFd(), root);
-		Thread gc = new Thread(gcServer);
-		gc.start();				
+		if (runGC){
+			Thread gc = new Thread(gcServer);
+			gc.start();
+			Thread reaper = new Thread(leaseReaper);
+			reaper.start();
+		}
 	}
 	
 	public long getNextId(){
@@ -86,12 +108,14 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		boolean writeable = type.isDirectory() ? false : true; 
 		int storageClass = request.getStorageClass();
 		int locationClass = request.getLocationClass();
+		int placement = request.getPlacement();
 		boolean enumerable = request.isEnumerable();
 		
 		//check params
 		if (type.isContainer() && locationClass > 0){
 			return RpcErrors.ERR_DIR_LOCATION_AFFINITY_MISMATCH;
 		}
+		request.setName(listedName(request.getName()));
 		
 		//rpc
 		AbstractNode parentInfo = fileTree.retrieveParent(fileHash, errorState);
@@ -111,10 +135,15 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		if (locationClass < 0){
 			locationClass = parentInfo.getLocationClass();
 		}
+		if (placement < 0){
+			placement = parentInfo.getPlacement();
+		}
 		
 		AbstractNode fileInfo = fileTree.createNode(fileHash.getFileComponent(), type, storageClass, locationClass, enumerable);
+		fileInfo.setPlacement(placement);
+		fileInfo.setName(request.getName());
 		try {
-			AbstractNode oldNode = parentInfo.putChild(fileInfo);
+			AbstractNode oldNode = parentInfo.putChild(fileInfo, prepareSlot(parentInfo, fileInfo));
 			if (oldNode != null && oldNode.getFd() != fileInfo.getFd()){
 				appendToDeleteQueue(oldNode);				
 			}		
@@ -123,7 +152,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		}
 		fileTable.put(fileInfo.getFd(), fileInfo);
 		
-		NameNodeBlockInfo fileBlock = blockStore.getBlock(fileInfo.getStorageClass(), fileInfo.getLocationClass());
+		NameNodeBlockInfo fileBlock = allocateBlock(fileInfo, 0);
 		if (fileBlock == null){
 			return RpcErrors.ERR_NO_FREE_BLOCKS;
 		}			
@@ -136,7 +165,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 			int index = CrailUtils.computeIndex(fileInfo.getDirOffset());
 			parentBlock = parentInfo.getBlock(index);
 			if (parentBlock == null){
-				parentBlock = blockStore.getBlock(parentInfo.getStorageClass(), parentInfo.getLocationClass());
+				parentBlock = allocateBlock(parentInfo, index);
 				if (parentBlock == null){
 					return RpcErrors.ERR_NO_FREE_BLOCKS;
 				}			
@@ -149,11 +178,11 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 					}
 				}
 			}
-			parentInfo.incCapacity(CrailConstants.DIRECTORY_RECORD);
 		}
 		
 		if (writeable) {
 			fileInfo.updateToken();
+			openForWrite(fileInfo);
 			response.shipToken(true);
 		} else {
 			response.shipToken(false);
@@ -194,7 +223,9 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		} 
 		
 		if (writeable){
+			releaseBlocks(fileInfo);
 			fileInfo.updateToken();
+			openForWrite(fileInfo);
 		}
 		fileTable.put(fileInfo.getFd(), fileInfo);
 		
@@ -232,9 +263,13 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		
 		if (storedFile.getToken() > 0 && storedFile.getToken() == fileInfo.getToken()){
 			storedFile.setCapacity(fileInfo.getCapacity());	
+			if (close){
+				releaseBlocks(storedFile);
+			}
 		}		
 		if (close){
 			storedFile.resetToken();
+			writeTable.remove(storedFile.getFd());
 		}
 		
 		if (CrailConstants.DEBUG){
@@ -298,6 +333,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		//get params
 		FileName srcFileHash = request.getSrcFileName();
 		FileName dstFileHash = request.getDstFileName();
+		request.setName(listedName(request.getName()));
 		
 		//rpc
 		AbstractNode srcParent = fileTree.retrieveParent(srcFileHash, errorState);
@@ -349,8 +385,9 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 			return RpcErrors.ERR_SRC_FILE_NOT_FOUND;
 		}
 		srcFile.rename(dstFileHash.getFileComponent());
+		srcFile.setName(request.getName());
 		try {
-			AbstractNode oldNode = dstParent.putChild(srcFile);
+			AbstractNode oldNode = dstParent.putChild(srcFile, prepareSlot(dstParent, srcFile));
 			if (oldNode != null && oldNode.getFd() != srcFile.getFd()){
 				appendToDeleteQueue(oldNode);				
 			}				
@@ -363,7 +400,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		index = CrailUtils.computeIndex(srcFile.getDirOffset());
 		NameNodeBlockInfo dstBlock = dstParent.getBlock(index);
 		if (dstBlock == null){
-			dstBlock = blockStore.getBlock(dstParent.getStorageClass(), dstParent.getLocationClass());
+			dstBlock = allocateBlock(dstParent, index);
 			if (dstBlock == null){
 				return RpcErrors.ERR_NO_FREE_BLOCKS;
 			}			
@@ -376,7 +413,6 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 				}
 			} 
 		}
-		dstParent.incCapacity(CrailConstants.DIRECTORY_RECORD);
 		//end
 		
 		response.setDstParent(dstParent);
@@ -445,16 +481,13 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		} else {
 			//rpc
 			int realBlocks = (int) (((long) region.getLength()) / CrailConstants.BLOCK_SIZE) ;
+			ArrayList<NameNodeBlockInfo> nnBlocks = new ArrayList<NameNodeBlockInfo>(realBlocks);
 			long offset = 0;
 			for (int i = 0; i < realBlocks; i++){
-				NameNodeBlockInfo nnBlock = new NameNodeBlockInfo(region, offset, (int) CrailConstants.BLOCK_SIZE);
-				error = blockStore.addBlock(nnBlock);
+				nnBlocks.add(new NameNodeBlockInfo(region, offset, (int) CrailConstants.BLOCK_SIZE));
 				offset += CrailConstants.BLOCK_SIZE;
-				
-				if (error != RpcErrors.ERR_OK){
-					break;
-				}
 			}
+			error = blockStore.addBlocks(nnBlocks);
 		}
 		
 		return error;
@@ -491,7 +524,7 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		
 		NameNodeBlockInfo block = fileInfo.getBlock(index);
 		if (block == null && fileInfo.getToken() == token){
-			block = blockStore.getBlock(fileInfo.getStorageClass(), fileInfo.getLocationClass());
+			block = allocateBlock(fileInfo, index);
 			if (block == null){
 				return RpcErrors.ERR_NO_FREE_BLOCKS;
 			}
@@ -513,6 +546,118 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		return RpcErrors.ERR_OK;
 	}
 	
+	@Override
+	public short leaseBlocks(RpcRequestMessage.LeaseBlocksReq request, RpcResponseMessage.LeaseBlocksRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_LEASE_BLOCKS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		response.reset();
+		
+		//get params
+		long fd = request.getFd();
+		long token = request.getToken();
+		long position = request.getPosition();
+		long capacity = request.getCapacity();
+		int count = Math.min(request.getCount(), RpcResponseMessage.LeaseBlocksRes.MAX_BLOCKS);
+		
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		
+		//rpc
+		AbstractNode fileInfo = fileTable.get(fd);
+		if (fileInfo == null){
+			return RpcErrors.ERR_FILE_NOT_OPEN;
+		}
+		if (token == 0 || fileInfo.getToken() != token){
+			return RpcErrors.ERR_TOKEN_MISMATCH;
+		}
+		if (capacity != RpcRequestMessage.LeaseBlocksReq.KEEP_CAPACITY){
+			fileInfo.setCapacity(capacity);
+		}
+		if (count <= 0){
+			releaseBlocks(fileInfo);
+			return RpcErrors.ERR_OK;
+		}
+		
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		
+		//blocks the file already has are part of the lease, the rest is allocated in one batch
+		NameNodeBlockInfo block = fileInfo.getBlock(index);
+		while(block != null && response.getBlockCount() < count){
+			response.addBlockInfo(block, false);
+			block = fileInfo.getBlock(index + response.getBlockCount());
+		}
+		if (response.getBlockCount() < count){
+			int next = index + response.getBlockCount();
+			LinkedList<NameNodeBlockInfo> blocks = new LinkedList<NameNodeBlockInfo>();
+			allocateBlocks(fileInfo, next, count - response.getBlockCount(), blocks);
+			for (block = blocks.peek(); block != null && fileInfo.addBlock(next, block); block = blocks.peek()){
+				response.addBlockInfo(blocks.poll(), true);
+				next++;
+			}
+			blockStore.addBlocks(blocks);
+		}
+		if (response.getBlockCount() == 0){
+			return RpcErrors.ERR_NO_FREE_BLOCKS;
+		}
+		if (response.getAllocated() > 0){
+			leaseReaper.add(fd, token);
+		}
+		
+		if (CrailConstants.DEBUG){
+			LOG.info("leaseBlocks: fd " + fd + ", position " + position + ", requested " + count + ", leased " + response.getBlockCount() + ", allocated " + response.getAllocated());
+		}
+		
+		return RpcErrors.ERR_OK;
+	}
+	
+	@Override
+	public short getBlocks(RpcRequestMessage.GetBlocksReq request, RpcResponseMessage.LeaseBlocksRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_BLOCKS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		response.reset();
+		
+		//get params
+		long fd = request.getFd();
+		long position = request.getPosition();
+		int count = Math.min(request.getCount(), RpcResponseMessage.LeaseBlocksRes.MAX_BLOCKS);
+		
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		
+		//rpc
+		AbstractNode fileInfo = fileTable.get(fd);
+		if (fileInfo == null){
+			return RpcErrors.ERR_FILE_NOT_OPEN;
+		}
+		
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		
+		NameNodeBlockInfo block = fileInfo.getBlock(index);
+		while(block != null && response.getBlockCount() < count){
+			response.addBlockInfo(block, false);
+			block = fileInfo.getBlock(index + response.getBlockCount());
+		}
+		if (response.getBlockCount() == 0){
+			return RpcErrors.ERR_CAPACITY_EXCEEDED;
+		}
+		
+		return RpcErrors.ERR_OK;
+	}
+	
 	@Override
 	public short getLocation(RpcRequestMessage.GetLocationReq request, RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState) throws Exception {
 		//check protocol
@@ -552,6 +697,101 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 		return RpcErrors.ERR_OK;
 	}
 
+	@Override
+	public short getLocations(RpcRequestMessage.GetLocationsReq request, RpcResponseMessage.GetLocationsRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_LOCATIONS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		response.reset();
+		
+		//get params
+		FileName fileName = request.getFileName();
+		long position = request.getPosition();
+		int count = request.getCount();
+		
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		
+		//rpc
+		AbstractNode fileInfo = fileTree.retrieveFile(fileName, errorState);
+		if (errorState.getError() != RpcErrors.ERR_OK){
+			return errorState.getError();
+		}
+		if (fileInfo == null){
+			return RpcErrors.ERR_GET_FILE_FAILED;
+		}
+		
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		//the response may end early if the blocks spread over too many datanodes
+		for (int i = 0; i < count; i++){
+			BlockInfo block = fileInfo.getBlock(index + i);
+			if (block == null || !response.addBlock(block.getDnInfo())){
+				break;
+			}
+		}
+		if (response.getBlockCount() == 0){
+			return RpcErrors.ERR_OFFSET_TOO_LARGE;
+		}
+		
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short listDirectory(RpcRequestMessage.ListDirectoryReq request, RpcResponseMessage.ListDirectoryRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_LIST_DIRECTORY, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		response.reset();
+		
+		//get params
+		long fd = request.getFd();
+		long cursor = request.getCursor();
+		int count = Math.min(request.getCount(), RpcListDirectory.MAX_ENTRIES);
+		
+		//check params
+		if (CrailConstants.NAMENODE_LISTING == 0){
+			return RpcErrors.ERR_LISTING_UNSUPPORTED;
+		}
+		
+		//rpc
+		AbstractNode dirInfo = fileTable.get(fd);
+		if (dirInfo == null){
+			return RpcErrors.ERR_FILE_NOT_FOUND;
+		}
+		if (!dirInfo.getType().isContainer()){
+			return RpcErrors.ERR_FILE_IS_NOT_DIR;
+		}
+		
+		//a full page ends at the last listed child, the next page continues from there
+		Collection<AbstractNode> children = ((DirectoryBlocks) dirInfo).listChildren(cursor);
+		if (children == null){
+			//created before listing was enabled
+			return RpcErrors.ERR_LISTING_UNSUPPORTED;
+		}
+		long last = cursor;
+		for (AbstractNode child : children){
+			if (response.getEntryCount() == count || !response.addEntry(child, child.getName())){
+				response.setCursor(last);
+				break;
+			}
+			last = child.getComponent();
+		}
+		
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short batch(RpcRequestMessage.BatchReq request, RpcResponseMessage.BatchRes response, RpcNameNodeState errorState) throws Exception {
+		return RpcNameNodeService.dispatchBatch(this, request, response, errorState);
+	}
+
 	public double getStorageUsedPercentage() throws Exception {
 		return this.blockStore.getStorageUsedPercentage();
 	}
@@ -620,22 +860,176 @@ public class NameNodeService implements RpcNameNodeService, Sequencer {
 
 	void appendToDeleteQueue(AbstractNode fileInfo) throws Exception {
 		if (fileInfo != null) {
+			fileInfo.unlink();
+			if (replayBlocks != null){
+				reclaimFile(fileInfo);
+				return;
+			}
 			fileInfo.setDelay(CrailConstants.TOKEN_EXPIRATION);
 			deleteQueue.add(fileInfo);			
 		}
 	}	
 	
-	void freeFile(AbstractNode fileInfo) throws Exception {
+	//when replaying there are no readers to wait for, and the blocks must be free before later records take them again
+	private void reclaimFile(AbstractNode fileInfo) throws Exception {
+		ArrayList<NameNodeBlockInfo> blocks = new ArrayList<NameNodeBlockInfo>();
+		LinkedList<AbstractNode> files = new LinkedList<AbstractNode>();
+		files.add(fileInfo);
+		while(!files.isEmpty()){
+			AbstractNode file = files.poll();
+			if (file.getType().isContainer()){
+				file.clearChildren(files);
+			}
+			freeFile(file, blocks);
+		}
+		blockStore.addBlocks(blocks);
+	}
+	
+	//the blocks of the file are added to the list, the caller returns them to the block store
+	void freeFile(AbstractNode fileInfo, List<NameNodeBlockInfo> blocks) throws Exception {
 		if (fileInfo != null) {
 			fileTable.remove(fileInfo.getFd());
-			fileInfo.freeBlocks(blockStore);
+			writeTable.remove(fileInfo.getFd());
+			fileInfo.freeBlocks(blocks);
 		}
 	}
+	
+	GCServer getGCServer() {
+		return gcServer;
+	}
+	
+	LeaseReaper getLeaseReaper() {
+		return leaseReaper;
+	}
+
+	FileStore getFileStore() {
+		return fileTree;
+	}
+	
+	BlockStore getBlockStore() {
+		return blockStore;
+	}
+	
+	LongObjectMap<AbstractNode> getFileTable() {
+		return fileTable;
+	}
+	
+	//containers never hold a token and are not tracked
+	void openForWrite(AbstractNode fileInfo) {
+		if (fileInfo.getToken() != 0){
+			writeTable.put(fileInfo.getFd(), fileInfo);
+		}
+	}
+	
+	public int getOpenFileCount() {
+		return fileTable.size();
+	}
+	
+	public int getWriteFileCount() {
+		return writeTable.size();
+	}
+	
+	long getSequenceId() {
+		return sequenceId.get();
+	}
+	
+	void replayAllocations(LinkedList<BlockInfo> blocks) {
+		this.replayBlocks = blocks;
+	}
+	
+	void replayDirSlot(long dirOffset, long dirCapacity) {
+		this.replayDirOffset = dirOffset;
+		this.replayDirCapacity = dirCapacity;
+	}
+	
+	//reclaims the expired and trailing slots of the parent and returns the slot to use for the new child, 
+	//when replaying the logged slot is used after trimming the parent to the size it had before the operation
+	private long prepareSlot(AbstractNode parent, AbstractNode child) throws Exception {
+		if (!child.isEnumerable() || !(parent instanceof DirectoryBlocks)){
+			return DirectoryBlocks.NEXT_SLOT;
+		}
+		DirectoryBlocks directory = (DirectoryBlocks) parent;
+		long dirOffset = DirectoryBlocks.NEXT_SLOT;
+		ArrayList<NameNodeBlockInfo> blocks = new ArrayList<NameNodeBlockInfo>();
+		if (replayBlocks == null){
+			directory.compactSlots(System.currentTimeMillis(), blocks);
+		} else if (replayDirOffset >= 0){
+			long size = replayDirCapacity > replayDirOffset + CrailConstants.DIRECTORY_RECORD ? replayDirCapacity : replayDirOffset;
+			directory.trimSlots(size, blocks);
+			dirOffset = replayDirOffset;
+		} else {
+			dirOffset = DirectoryBlocks.END_SLOT;
+		}
+		if (!blocks.isEmpty()){
+			blockStore.addBlocks(blocks);
+		}
+		return dirOffset;
+	}
+	
+	//names are only kept while listing is enabled and up to the configured length, also bounds the logged name
+	private static byte[] listedName(byte[] name) {
+		if (name == null || name.length > CrailConstants.NAMENODE_LISTING){
+			return null;
+		}
+		return name;
+	}
+	
+	private NameNodeBlockInfo allocateBlock(AbstractNode node, int index) throws Exception {
+		if (replayBlocks == null){
+			NameNodeBlockInfo previous = index > 0 ? node.getBlock(index - 1) : null;
+			return blockStore.getBlock(node.getStorageClass(), node.getLocationClass(), node.getPlacement(), previous);
+		}
+		BlockInfo block = replayBlocks.poll();
+		if (block == null){
+			return null;
+		}
+		return blockStore.takeBlock(block);
+	}
+	
+	private void allocateBlocks(AbstractNode node, int index, int count, LinkedList<NameNodeBlockInfo> blocks) throws Exception {
+		if (replayBlocks == null){
+			NameNodeBlockInfo previous = index > 0 ? node.getBlock(index - 1) : null;
+			blockStore.getBlocks(node.getStorageClass(), node.getLocationClass(), node.getPlacement(), previous, count, blocks);
+			return;
+		}
+		while(blocks.size() < count){
+			BlockInfo block = replayBlocks.poll();
+			if (block == null){
+				return;
+			}
+			//a logged block which is not free would end up with two owners, the replayed operation fails instead
+			NameNodeBlockInfo taken = blockStore.takeBlock(block);
+			if (taken == null){
+				blockStore.addBlocks(blocks);
+				blocks.clear();
+				throw new IOException("replayed allocation not free, lba " + block.getLba());
+			}
+			blocks.add(taken);
+		}
+	}
+	
+	//returns the blocks past the end of the file, these are left over from leases or from writers which never synced
+	private void releaseBlocks(AbstractNode node) throws Exception {
+		if (node.getType().isContainer()){
+			return;
+		}
+		int limit = Math.max(1, CrailUtils.computeIndex(CrailUtils.nextBlockAddress(node.getCapacity())));
+		ArrayList<NameNodeBlockInfo> blocks = new ArrayList<NameNodeBlockInfo>();
+		node.truncateBlocks(limit, blocks);
+		blockStore.addBlocks(blocks);
+	}
+	
+	void setSequenceId(long value) {
+		sequenceId.set(value);
+	}
 
 	private void dumpFastMap(){
-		for (Long key : fileTable.keySet()){
-			AbstractNode file = fileTable.get(key);
+		ArrayList<AbstractNode> files = new ArrayList<AbstractNode>(fileTable.size());
+		fileTable.collectValues(files);
+		for (AbstractNode file : files){
 			System.out.println(file.toString());
 		}		
+		System.out.println("open files " + fileTable.size() + ", open for write " + writeTable.size());
+		gcServer.printStatistics();
 	}
 }
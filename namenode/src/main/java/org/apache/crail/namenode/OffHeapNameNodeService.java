@@ -0,0 +1,1174 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.*;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcNameNodeService;
+import org.apache.crail.rpc.RpcNameNodeState;
+import org.apache.crail.rpc.RpcProtocol;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+/*
+ * Namenode keeping the namespace off the Java heap. Inodes live in an off-heap InodeTable indexed
+ * by fd, directory entries in an off-heap DentryTable, blocks are referenced by int ids. On-heap
+ * state is limited to the block store and the block lists of files with more than two blocks, so
+ * the size of the namespace does not show up in GC pauses. Lookups share a read lock, namespace
+ * updates are serialized. Select with crail.namenode.rpcservice.
+ */
+public class OffHeapNameNodeService implements RpcNameNodeService, Sequencer {
+	private static final Logger LOG = CrailUtils.getLogger();
+
+	private long serviceId;
+	private long serviceSize;
+	private AtomicLong sequenceId;
+	private BlockStore blockStore;
+	private InodeTable inodes;
+	private DentryTable dentries;
+	//block lists beyond the inline blocks, indexed by fd
+	private HashMap<Long, int[]> overflowBlocks;
+	private NameNodeBlockInfo[] blockTable;
+	private int blockCount;
+	private long rootFd;
+	private DeleteQueue deleteQueue;
+	private ReentrantReadWriteLock lock;
+	private LeaseReaper leaseReaper;
+
+	public OffHeapNameNodeService() throws IOException {
+		this(true);
+	}
+
+	OffHeapNameNodeService(boolean runGC) throws IOException {
+		URI uri = URI.create(CrailConstants.NAMENODE_ADDRESS);
+		String query = uri.getRawQuery();
+		StringTokenizer tokenizer = new StringTokenizer(query, "&");
+		this.serviceId = Long.parseLong(tokenizer.nextToken().substring(3));
+		this.serviceSize = Long.parseLong(tokenizer.nextToken().substring(5));
+		this.sequenceId = new AtomicLong(serviceId);
+		this.blockStore = new BlockStore();
+		this.inodes = new InodeTable();
+		this.dentries = new DentryTable();
+		this.overflowBlocks = new HashMap<Long, int[]>();
+		this.blockTable = new NameNodeBlockInfo[1024];
+		this.blockCount = 1;
+		this.deleteQueue = new DeleteQueue();
+		this.lock = new ReentrantReadWriteLock();
+		this.leaseReaper = new LeaseReaper(this);
+
+		this.rootFd = getNextId();
+		inodes.allocate(rootFd, new FileName("/").getFileComponent(), CrailNodeType.DIRECTORY, CrailConstants.STORAGE_ROOTCLASS, 0, FileInfo.NOT_ENUMERABLE, System.currentTimeMillis());
+		if (runGC){
+			Thread gc = new Thread(new InodeCollector());
+			gc.start();
+			Thread reaper = new Thread(leaseReaper);
+			reaper.start();
+		}
+		LOG.info("off-heap namenode, inode size " + InodeTable.INODE_BYTES + " bytes");
+	}
+
+	public long getNextId(){
+		return sequenceId.getAndAdd(serviceSize);
+	}
+
+	@Override
+	public short createFile(RpcRequestMessage.CreateFileReq request, RpcResponseMessage.CreateFileRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_CREATE_FILE, request, response)) {
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		//names are not kept, nor logged
+		request.setName(null);
+
+		//get params
+		FileName fileHash = request.getFileName();
+		CrailNodeType type = request.getFileType();
+		boolean writeable = type.isDirectory() ? false : true;
+		int storageClass = request.getStorageClass();
+		int locationClass = request.getLocationClass();
+		int placement = request.getPlacement();
+		boolean enumerable = request.isEnumerable();
+
+		//check params
+		if (type.isContainer() && locationClass > 0){
+			return RpcErrors.ERR_DIR_LOCATION_AFFINITY_MISMATCH;
+		}
+
+		//rpc
+		lock.writeLock().lock();
+		try {
+			long parentFd = retrieve(fileHash, fileHash.getLength() - 1, errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (parentFd == InodeTable.NONE) {
+				return RpcErrors.ERR_PARENT_MISSING;
+			}
+			CrailNodeType parentType = inodes.getType(parentFd);
+			if (!parentType.isContainer()){
+				return RpcErrors.ERR_PARENT_NOT_DIR;
+			}
+
+			if (storageClass < 0){
+				storageClass = inodes.getStorageClass(parentFd);
+			}
+			if (locationClass < 0){
+				locationClass = inodes.getLocationClass(parentFd);
+			}
+			if (placement < 0){
+				placement = inodes.getPlacement(parentFd);
+			}
+
+			int component = fileHash.getFileComponent();
+			long oldFd = dentries.get(parentFd, component);
+			if (parentType.isTable()){
+				if (!type.isKeyValue()){
+					return RpcErrors.ERR_FILE_EXISTS;
+				}
+			} else if (oldFd != InodeTable.NONE){
+				return RpcErrors.ERR_FILE_EXISTS;
+			}
+			if (oldFd != InodeTable.NONE){
+				unlinkChild(parentFd, oldFd);
+				appendToDeleteQueue(oldFd);
+			}
+
+			long fd = getNextId();
+			long dirOffset = FileInfo.NOT_ENUMERABLE;
+			if (enumerable){
+				dirOffset = nextDirOffset(parentFd);
+			}
+			inodes.allocate(fd, component, type, storageClass, locationClass, dirOffset, System.currentTimeMillis());
+			inodes.setPlacement(fd, placement);
+			linkChild(parentFd, fd);
+
+			NameNodeBlockInfo fileBlock = allocateBlock(fd, 0);
+			if (fileBlock == null){
+				return RpcErrors.ERR_NO_FREE_BLOCKS;
+			}
+			setBlock(fd, 0, fileBlock);
+
+			NameNodeBlockInfo parentBlock = null;
+			if (dirOffset >= 0){
+				int index = CrailUtils.computeIndex(dirOffset);
+				parentBlock = getBlock(parentFd, index);
+				if (parentBlock == null){
+					parentBlock = allocateBlock(parentFd, index);
+					if (parentBlock == null){
+						return RpcErrors.ERR_NO_FREE_BLOCKS;
+					}
+					setBlock(parentFd, index, parentBlock);
+				}
+				incCapacity(parentFd, CrailConstants.DIRECTORY_RECORD);
+			}
+
+			if (writeable) {
+				updateToken(fd);
+				response.shipToken(true);
+			} else {
+				response.shipToken(false);
+			}
+			response.setParentInfo(new InodeInfo(parentFd));
+			response.setFileInfo(new InodeInfo(fd));
+			response.setFileBlock(fileBlock);
+			response.setDirBlock(parentBlock);
+
+			if (CrailConstants.DEBUG){
+				LOG.info("createFile: fd " + fd + ", parent " + parentFd + ", writeable " + writeable + ", token " + inodes.getToken(fd) + ", capacity " + inodes.getCapacity(fd) + ", dirOffset " + dirOffset);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short getFile(RpcRequestMessage.GetFileReq request, RpcResponseMessage.GetFileRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_FILE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		//get params
+		FileName fileHash = request.getFileName();
+		boolean writeable = request.isWriteable();
+
+		//rpc, only writers update the inode
+		Lock opLock = writeable ? lock.writeLock() : lock.readLock();
+		opLock.lock();
+		try {
+			long fd = retrieve(fileHash, fileHash.getLength(), errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (fd == InodeTable.NONE){
+				return RpcErrors.ERR_GET_FILE_FAILED;
+			}
+			if (writeable && !(System.nanoTime() > inodes.getToken(fd))){
+				return RpcErrors.ERR_TOKEN_TAKEN;
+			}
+
+			if (writeable){
+				releaseBlocks(fd);
+				updateToken(fd);
+			}
+
+			response.setFileInfo(new InodeInfo(fd));
+			response.setFileBlock(getBlock(fd, 0));
+			if (writeable){
+				response.shipToken();
+			}
+
+			if (CrailConstants.DEBUG){
+				LOG.info("getFile: fd " + fd + ", isDir " + inodes.getType(fd).isDirectory() + ", token " + inodes.getToken(fd) + ", capacity " + inodes.getCapacity(fd));
+			}
+		} finally {
+			opLock.unlock();
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short setFile(RpcRequestMessage.SetFileReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_SET_FILE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		//get params
+		FileInfo fileInfo = request.getFileInfo();
+		boolean close = request.isClose();
+
+		//rpc
+		lock.writeLock().lock();
+		try {
+			long fd = fileInfo.getFd();
+			if (!inodes.isLive(fd)){
+				return RpcErrors.ERR_FILE_NOT_OPEN;
+			}
+
+			long token = inodes.getToken(fd);
+			if (token > 0 && token == fileInfo.getToken()){
+				setCapacity(fd, fileInfo.getCapacity());
+				if (close){
+					releaseBlocks(fd);
+				}
+			}
+			if (close){
+				inodes.setToken(fd, 0);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		if (CrailConstants.DEBUG){
+			LOG.info("setFile: " + fileInfo.toString() + ", close " + close);
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short removeFile(RpcRequestMessage.RemoveFileReq request, RpcResponseMessage.DeleteFileRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_REMOVE_FILE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		//get params
+		FileName fileHash = request.getFileName();
+
+		//rpc
+		lock.writeLock().lock();
+		try {
+			long parentFd = retrieve(fileHash, fileHash.getLength() - 1, errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (parentFd == InodeTable.NONE) {
+				return RpcErrors.ERR_CREATE_FILE_FAILED;
+			}
+
+			long fd = retrieve(fileHash, fileHash.getLength(), errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (fd == InodeTable.NONE || fd == rootFd){
+				return RpcErrors.ERR_GET_FILE_FAILED;
+			}
+
+			response.setParentInfo(new InodeInfo(parentFd));
+			response.setFileInfo(new InodeInfo(fd));
+
+			unlinkChild(parentFd, fd);
+			appendToDeleteQueue(fd);
+
+			if (CrailConstants.DEBUG){
+				LOG.info("removeFile: filename, fd " + fd);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short renameFile(RpcRequestMessage.RenameFileReq request, RpcResponseMessage.RenameRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_RENAME_FILE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		//names are not kept, nor logged
+		request.setName(null);
+
+		//get params
+		FileName srcFileHash = request.getSrcFileName();
+		FileName dstFileHash = request.getDstFileName();
+
+		//rpc
+		lock.writeLock().lock();
+		try {
+			long srcParent = retrieve(srcFileHash, srcFileHash.getLength() - 1, errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (srcParent == InodeTable.NONE) {
+				return RpcErrors.ERR_GET_FILE_FAILED;
+			}
+
+			long srcFile = retrieve(srcFileHash, srcFileHash.getLength(), errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (srcFile == InodeTable.NONE || srcFile == rootFd){
+				return RpcErrors.ERR_SRC_FILE_NOT_FOUND;
+			}
+
+			//directory block
+			int index = CrailUtils.computeIndex(inodes.getDirOffset(srcFile));
+			NameNodeBlockInfo srcBlock = getBlock(srcParent, index);
+			if (srcBlock == null){
+				return RpcErrors.ERR_GET_FILE_FAILED;
+			}
+			//end
+
+			response.setSrcParent(new InodeInfo(srcParent));
+			response.setSrcFile(new InodeInfo(srcFile));
+			response.setSrcBlock(srcBlock);
+
+			long dstParent = retrieve(dstFileHash, dstFileHash.getLength() - 1, errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (dstParent == InodeTable.NONE) {
+				return RpcErrors.ERR_GET_FILE_FAILED;
+			}
+
+			long dstFile = retrieve(dstFileHash, dstFileHash.getLength(), errorState);
+			if (dstFile != InodeTable.NONE && !inodes.getType(dstFile).isDirectory()){
+				return RpcErrors.ERR_FILE_EXISTS;
+			}
+			if (dstFile != InodeTable.NONE && inodes.getType(dstFile).isDirectory()){
+				dstParent = dstFile;
+			}
+
+			//check the destination before detaching the source so a failed rename leaves it in place
+			int dstComponent = dstFileHash.getFileComponent();
+			CrailNodeType dstParentType = inodes.getType(dstParent);
+			if (!dstParentType.isContainer()){
+				return RpcErrors.ERR_FILE_EXISTS;
+			}
+			long oldFd = dentries.get(dstParent, dstComponent);
+			if (dstParentType.isTable()){
+				if (!inodes.getType(srcFile).isKeyValue()){
+					return RpcErrors.ERR_FILE_EXISTS;
+				}
+			} else if (oldFd != InodeTable.NONE && oldFd != srcFile){
+				return RpcErrors.ERR_FILE_EXISTS;
+			}
+
+			unlinkChild(srcParent, srcFile);
+			oldFd = dentries.get(dstParent, dstComponent);
+			if (oldFd != InodeTable.NONE){
+				unlinkChild(dstParent, oldFd);
+				appendToDeleteQueue(oldFd);
+			}
+			inodes.setComponent(srcFile, dstComponent);
+			if (inodes.getDirOffset(srcFile) != FileInfo.NOT_ENUMERABLE){
+				inodes.setDirOffset(srcFile, nextDirOffset(dstParent));
+			}
+			linkChild(dstParent, srcFile);
+			dstFile = srcFile;
+
+			//directory block
+			index = CrailUtils.computeIndex(inodes.getDirOffset(srcFile));
+			NameNodeBlockInfo dstBlock = getBlock(dstParent, index);
+			if (dstBlock == null){
+				dstBlock = allocateBlock(dstParent, index);
+				if (dstBlock == null){
+					return RpcErrors.ERR_NO_FREE_BLOCKS;
+				}
+				setBlock(dstParent, index, dstBlock);
+			}
+			incCapacity(dstParent, CrailConstants.DIRECTORY_RECORD);
+			//end
+
+			response.setDstParent(new InodeInfo(dstParent));
+			response.setDstFile(new InodeInfo(dstFile));
+			response.setDstBlock(dstBlock);
+
+			if (CrailConstants.DEBUG){
+				LOG.info("renameFile: src-parent " + srcParent + ", src-file " + srcFile + ", dst-parent " + dstParent + ", dst-fd " + dstFile);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short getDataNode(RpcRequestMessage.GetDataNodeReq request, RpcResponseMessage.GetDataNodeRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_DATANODE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		//get params
+		DataNodeInfo dnInfo = request.getInfo();
+
+		//rpc
+		DataNodeBlocks dnInfoNn = blockStore.getDataNode(dnInfo);
+		if (dnInfoNn == null){
+			return RpcErrors.ERR_DATANODE_NOT_REGISTERED;
+		}
+
+		if(dnInfoNn.isScheduleForRemoval()){
+			// verify that datanode does not store any remaining blocks
+			if(dnInfoNn.safeForRemoval()){
+				// remove datanode from internal datastructures and prepare response
+				blockStore.removeDataNode(dnInfo);
+				response.setServiceId(serviceId);
+				response.setStatus(DataNodeStatus.STATUS_DATANODE_STOP);
+				return RpcErrors.ERR_OK;
+			}
+		}
+
+		dnInfoNn.touch();
+		response.setServiceId(serviceId);
+		response.setFreeBlockCount(dnInfoNn.getBlockCount());
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short setBlock(RpcRequestMessage.SetBlockReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_SET_BLOCK, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		//get params
+		BlockInfo region = new BlockInfo();
+		region.setBlockInfo(request.getBlockInfo());
+
+		short error = RpcErrors.ERR_OK;
+		if (blockStore.regionExists(region)){
+			error = blockStore.updateRegion(region);
+		} else {
+			//rpc
+			int realBlocks = (int) (((long) region.getLength()) / CrailConstants.BLOCK_SIZE) ;
+			ArrayList<NameNodeBlockInfo> nnBlocks = new ArrayList<NameNodeBlockInfo>(realBlocks);
+			long offset = 0;
+			for (int i = 0; i < realBlocks; i++){
+				nnBlocks.add(new NameNodeBlockInfo(region, offset, (int) CrailConstants.BLOCK_SIZE));
+				offset += CrailConstants.BLOCK_SIZE;
+			}
+			error = blockStore.addBlocks(nnBlocks);
+		}
+
+		return error;
+	}
+
+	@Override
+	public short getBlock(RpcRequestMessage.GetBlockReq request, RpcResponseMessage.GetBlockRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_BLOCK, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		//get params
+		long fd = request.getFd();
+		long token = request.getToken();
+		long position = request.getPosition();
+		long capacity = request.getCapacity();
+
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+
+		//rpc, existing blocks are served under the read lock
+		NameNodeBlockInfo block = null;
+		lock.readLock().lock();
+		try {
+			if (!inodes.isLive(fd)){
+				return RpcErrors.ERR_FILE_NOT_OPEN;
+			}
+			block = getBlock(fd, index);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		if (block == null){
+			lock.writeLock().lock();
+			try {
+				if (!inodes.isLive(fd)){
+					return RpcErrors.ERR_FILE_NOT_OPEN;
+				}
+				block = getBlock(fd, index);
+				if (block == null && inodes.getToken(fd) == token){
+					block = allocateBlock(fd, index);
+					if (block == null){
+						return RpcErrors.ERR_NO_FREE_BLOCKS;
+					}
+					setBlock(fd, index, block);
+					setCapacity(fd, capacity);
+				} else if (block == null && token > 0){
+					return RpcErrors.ERR_TOKEN_MISMATCH;
+				} else if (block == null && token == 0){
+					return RpcErrors.ERR_CAPACITY_EXCEEDED;
+				}
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+		response.setBlockInfo(block);
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short leaseBlocks(RpcRequestMessage.LeaseBlocksReq request, RpcResponseMessage.LeaseBlocksRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_LEASE_BLOCKS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		response.reset();
+
+		//get params
+		long fd = request.getFd();
+		long token = request.getToken();
+		long position = request.getPosition();
+		long capacity = request.getCapacity();
+		int count = Math.min(request.getCount(), RpcResponseMessage.LeaseBlocksRes.MAX_BLOCKS);
+
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+
+		//rpc
+		lock.writeLock().lock();
+		try {
+			if (!inodes.isLive(fd)){
+				return RpcErrors.ERR_FILE_NOT_OPEN;
+			}
+			if (token == 0 || inodes.getToken(fd) != token){
+				return RpcErrors.ERR_TOKEN_MISMATCH;
+			}
+			if (capacity != RpcRequestMessage.LeaseBlocksReq.KEEP_CAPACITY){
+				setCapacity(fd, capacity);
+			}
+			if (count <= 0){
+				releaseBlocks(fd);
+				return RpcErrors.ERR_OK;
+			}
+			for (int i = 0; i < count; i++){
+				NameNodeBlockInfo block = getBlock(fd, index + i);
+				boolean allocated = block == null;
+				if (allocated){
+					block = allocateBlock(fd, index + i);
+					if (block == null){
+						break;
+					}
+					setBlock(fd, index + i, block);
+				}
+				response.addBlockInfo(block, allocated);
+			}
+			if (response.getAllocated() > 0){
+				leaseReaper.add(fd, token);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		if (response.getBlockCount() == 0){
+			return RpcErrors.ERR_NO_FREE_BLOCKS;
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short getBlocks(RpcRequestMessage.GetBlocksReq request, RpcResponseMessage.LeaseBlocksRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_BLOCKS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		response.reset();
+
+		//get params
+		long fd = request.getFd();
+		long position = request.getPosition();
+		int count = Math.min(request.getCount(), RpcResponseMessage.LeaseBlocksRes.MAX_BLOCKS);
+
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+
+		//rpc
+		lock.readLock().lock();
+		try {
+			if (!inodes.isLive(fd)){
+				return RpcErrors.ERR_FILE_NOT_OPEN;
+			}
+			for (int i = 0; i < count; i++){
+				NameNodeBlockInfo block = getBlock(fd, index + i);
+				if (block == null){
+					break;
+				}
+				response.addBlockInfo(block, false);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (response.getBlockCount() == 0){
+			return RpcErrors.ERR_CAPACITY_EXCEEDED;
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short getLocation(RpcRequestMessage.GetLocationReq request, RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_LOCATION, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		//get params
+		FileName fileName = request.getFileName();
+		long position = request.getPosition();
+
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+
+		//rpc
+		lock.readLock().lock();
+		try {
+			long fd = retrieve(fileName, fileName.getLength(), errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (fd == InodeTable.NONE){
+				return RpcErrors.ERR_GET_FILE_FAILED;
+			}
+
+			BlockInfo block = getBlock(fd, index);
+			if (block == null){
+				return RpcErrors.ERR_OFFSET_TOO_LARGE;
+			}
+			response.setBlockInfo(block);
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short getLocations(RpcRequestMessage.GetLocationsReq request, RpcResponseMessage.GetLocationsRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_GET_LOCATIONS, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		response.reset();
+
+		//get params
+		FileName fileName = request.getFileName();
+		long position = request.getPosition();
+		int count = request.getCount();
+
+		//check params
+		if (position < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+		int index = CrailUtils.computeIndex(position);
+		if (index < 0){
+			return RpcErrors.ERR_POSITION_NEGATIV;
+		}
+
+		//rpc
+		lock.readLock().lock();
+		try {
+			long fd = retrieve(fileName, fileName.getLength(), errorState);
+			if (errorState.getError() != RpcErrors.ERR_OK){
+				return errorState.getError();
+			}
+			if (fd == InodeTable.NONE){
+				return RpcErrors.ERR_GET_FILE_FAILED;
+			}
+			for (int i = 0; i < count; i++){
+				BlockInfo block = getBlock(fd, index + i);
+				if (block == null || !response.addBlock(block.getDnInfo())){
+					break;
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		if (response.getBlockCount() == 0){
+			return RpcErrors.ERR_OFFSET_TOO_LARGE;
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short listDirectory(RpcRequestMessage.ListDirectoryReq request, RpcResponseMessage.ListDirectoryRes response, RpcNameNodeState errorState) throws Exception {
+		//check protocol
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_LIST_DIRECTORY, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		response.reset();
+		
+		//the off-heap tables do not keep names, directories are listed through their records
+		return RpcErrors.ERR_LISTING_UNSUPPORTED;
+	}
+
+	@Override
+	public short batch(RpcRequestMessage.BatchReq request, RpcResponseMessage.BatchRes response, RpcNameNodeState errorState) throws Exception {
+		//the whole batch is applied under one acquisition of the lock
+		lock.writeLock().lock();
+		try {
+			return RpcNameNodeService.dispatchBatch(this, request, response, errorState);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public short dump(RpcRequestMessage.DumpNameNodeReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_DUMP_NAMENODE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		lock.readLock().lock();
+		try {
+			System.out.println("#fd\t\tfilecomp\t\tcapacity\t\tisdir\t\t\tdiroffset");
+			long[] stack = new long[64];
+			int top = 0;
+			stack[top++] = rootFd;
+			while(top > 0){
+				long fd = stack[--top];
+				System.out.println(String.format("%08d\t%08d\t\t%08d\t\t%08d\t\t%08d", fd, inodes.getComponent(fd), inodes.getCapacity(fd), inodes.getType(fd).getLabel(), inodes.getDirOffset(fd)));
+				for (long child = inodes.getFirstChild(fd); child != InodeTable.NONE; child = inodes.getNextSibling(child)){
+					if (top == stack.length){
+						stack = Arrays.copyOf(stack, stack.length*2);
+					}
+					stack[top++] = child;
+				}
+			}
+			System.out.println("inodes " + inodes.getInodeCount() + ", dentries " + dentries.size() + ", off-heap bytes " + getOffHeapBytes());
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short ping(RpcRequestMessage.PingNameNodeReq request, RpcResponseMessage.PingNameNodeRes response, RpcNameNodeState errorState) throws Exception {
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_PING_NAMENODE, request, response)){
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+
+		response.setData(request.getOp()+1);
+
+		return RpcErrors.ERR_OK;
+	}
+
+	@Override
+	public short removeDataNode(RpcRequestMessage.RemoveDataNodeReq request, RpcResponseMessage.RemoveDataNodeRes response, RpcNameNodeState errorState) throws Exception {
+		DataNodeInfo dn_info = new DataNodeInfo(0,0,0,request.getIPAddress().getAddress(), request.port());
+
+		LOG.info("Removing data node: " + dn_info);
+		short res = blockStore.prepareDataNodeForRemoval(dn_info);
+		response.setRpcStatus(res);
+
+		return RpcErrors.ERR_OK;
+	}
+
+	public long getInodeCount() {
+		lock.readLock().lock();
+		try {
+			return inodes.getInodeCount();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	LeaseReaper getLeaseReaper() {
+		return leaseReaper;
+	}
+
+	public long getOffHeapBytes() {
+		lock.readLock().lock();
+		try {
+			return inodes.getOffHeapBytes() + dentries.getOffHeapBytes();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	//--------------- helper functions, callers hold the lock
+
+	private long retrieve(FileName filename, int length, RpcNameNodeState error) {
+		if (length >= CrailConstants.DIRECTORY_DEPTH){
+			error.setError(RpcErrors.ERR_FILE_COMPONENTS_EXCEEDED);
+			return InodeTable.NONE;
+		}
+
+		long current = rootFd;
+		if (filename.isRelative()){
+			current = filename.getBaseFd();
+			if (length < 0 || !inodes.isLive(current) || inodes.isUnlinked(current) || !inodes.getType(current).isContainer()){
+				return InodeTable.NONE;
+			}
+		}
+		for (int i = 0; i < length; i++){
+			if (!inodes.getType(current).isContainer()){
+				return InodeTable.NONE;
+			}
+			current = dentries.get(current, filename.getComponent(i));
+			if (current == InodeTable.NONE){
+				break;
+			}
+		}
+		return current;
+	}
+
+	private void linkChild(long parentFd, long fd) {
+		dentries.put(parentFd, inodes.getComponent(fd), fd);
+		inodes.link(parentFd, fd);
+	}
+
+	private void unlinkChild(long parentFd, long fd) {
+		dentries.remove(parentFd, inodes.getComponent(fd));
+		inodes.unlink(parentFd, fd);
+	}
+
+	private long nextDirOffset(long parentFd) {
+		long dirOffset = inodes.getDirOffsetCounter(parentFd);
+		inodes.setDirOffsetCounter(parentFd, dirOffset + CrailConstants.DIRECTORY_RECORD);
+		return dirOffset;
+	}
+
+	private void incCapacity(long fd, int delta) {
+		inodes.setCapacity(fd, inodes.getCapacity(fd) + delta);
+		inodes.setModificationTime(fd, System.currentTimeMillis());
+	}
+
+	//containers track their capacity through directory records only
+	private void setCapacity(long fd, long capacity) {
+		if (inodes.getType(fd).isContainer()){
+			return;
+		}
+		if (capacity > inodes.getCapacity(fd)){
+			inodes.setCapacity(fd, capacity);
+			inodes.setModificationTime(fd, System.currentTimeMillis());
+		}
+	}
+
+	private void updateToken(long fd) {
+		if (!inodes.getType(fd).isContainer()){
+			inodes.setToken(fd, System.nanoTime() + TimeUnit.SECONDS.toNanos(CrailConstants.TOKEN_EXPIRATION));
+		}
+	}
+
+	private NameNodeBlockInfo getBlock(long fd, int index) {
+		int blockId = 0;
+		if (index < InodeTable.INLINE_BLOCKS){
+			blockId = inodes.getInlineBlock(fd, index);
+		} else {
+			int[] blocks = overflowBlocks.get(fd);
+			int offset = index - InodeTable.INLINE_BLOCKS;
+			if (blocks != null && offset < blocks.length){
+				blockId = blocks[offset];
+			}
+		}
+		return blockId > 0 ? blockTable[blockId] : null;
+	}
+
+	private void setBlock(long fd, int index, NameNodeBlockInfo block) {
+		int blockId = block.getId();
+		if (blockId == 0){
+			if (blockCount == blockTable.length){
+				blockTable = Arrays.copyOf(blockTable, blockTable.length*2);
+			}
+			blockId = blockCount++;
+			block.setId(blockId);
+			blockTable[blockId] = block;
+		}
+		if (index < InodeTable.INLINE_BLOCKS){
+			inodes.setInlineBlock(fd, index, blockId);
+		} else {
+			int offset = index - InodeTable.INLINE_BLOCKS;
+			int[] blocks = overflowBlocks.get(fd);
+			if (blocks == null || offset >= blocks.length){
+				int length = blocks == null ? 4 : blocks.length;
+				while(length <= offset){
+					length *= 2;
+				}
+				blocks = blocks == null ? new int[length] : Arrays.copyOf(blocks, length);
+				overflowBlocks.put(fd, blocks);
+			}
+			blocks[offset] = blockId;
+		}
+	}
+
+	private void freeBlocks(long fd) throws Exception {
+		ArrayList<NameNodeBlockInfo> values = new ArrayList<NameNodeBlockInfo>();
+		for (int i = 0; i < InodeTable.INLINE_BLOCKS; i++){
+			int blockId = inodes.getInlineBlock(fd, i);
+			if (blockId > 0){
+				values.add(blockTable[blockId]);
+			}
+		}
+		int[] blocks = overflowBlocks.remove(fd);
+		if (blocks != null){
+			for (int blockId : blocks){
+				if (blockId > 0){
+					values.add(blockTable[blockId]);
+				}
+			}
+		}
+		blockStore.addBlocks(values);
+	}
+
+	//returns the blocks past the end of the file, these are left over from leases or from writers which never synced
+	private void releaseBlocks(long fd) throws Exception {
+		if (inodes.getType(fd).isContainer()){
+			return;
+		}
+		int limit = Math.max(1, CrailUtils.computeIndex(CrailUtils.nextBlockAddress(inodes.getCapacity(fd))));
+		ArrayList<NameNodeBlockInfo> values = new ArrayList<NameNodeBlockInfo>();
+		for (int i = limit; i < InodeTable.INLINE_BLOCKS; i++){
+			int blockId = inodes.getInlineBlock(fd, i);
+			if (blockId > 0){
+				values.add(blockTable[blockId]);
+				inodes.setInlineBlock(fd, i, 0);
+			}
+		}
+		int[] blocks = overflowBlocks.get(fd);
+		if (blocks != null){
+			for (int i = Math.max(0, limit - InodeTable.INLINE_BLOCKS); i < blocks.length; i++){
+				if (blocks[i] > 0){
+					values.add(blockTable[blocks[i]]);
+					blocks[i] = 0;
+				}
+			}
+		}
+		blockStore.addBlocks(values);
+	}
+
+	private NameNodeBlockInfo allocateBlock(long fd, int index) throws Exception {
+		NameNodeBlockInfo previous = index > 0 ? getBlock(fd, index - 1) : null;
+		return blockStore.getBlock(inodes.getStorageClass(fd), inodes.getLocationClass(fd), inodes.getPlacement(fd), previous);
+	}
+
+	private void appendToDeleteQueue(long fd) {
+		inodes.setUnlinked(fd);
+		deleteQueue.add(fd, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(CrailConstants.TOKEN_EXPIRATION));
+	}
+
+	//frees the inode together with all its descendants
+	private void freeFile(long fd) throws Exception {
+		long[] stack = new long[16];
+		int top = 0;
+		stack[top++] = fd;
+		while(top > 0){
+			long current = stack[--top];
+			if (inodes.getType(current).isContainer()){
+				for (long child = inodes.getFirstChild(current); child != InodeTable.NONE; child = inodes.getNextSibling(child)){
+					dentries.remove(current, inodes.getComponent(child));
+					if (top == stack.length){
+						stack = Arrays.copyOf(stack, stack.length*2);
+					}
+					stack[top++] = child;
+				}
+			}
+			freeBlocks(current);
+			inodes.free(current);
+		}
+	}
+
+	/*
+	 * FIFO of removed fds, all entries are delayed by the same amount so they expire in insertion order.
+	 */
+	private static class DeleteQueue {
+		private long[] fds = new long[1024];
+		private long[] deadlines = new long[1024];
+		private int head = 0;
+		private int size = 0;
+
+		public void add(long fd, long deadline){
+			if (size == fds.length){
+				long[] newFds = new long[fds.length*2];
+				long[] newDeadlines = new long[fds.length*2];
+				for (int i = 0; i < size; i++){
+					newFds[i] = fds[(head + i) % fds.length];
+					newDeadlines[i] = deadlines[(head + i) % fds.length];
+				}
+				fds = newFds;
+				deadlines = newDeadlines;
+				head = 0;
+			}
+			int tail = (head + size) % fds.length;
+			fds[tail] = fd;
+			deadlines[tail] = deadline;
+			size++;
+		}
+
+		public boolean isEmpty(){
+			return size == 0;
+		}
+
+		public long peekDeadline(){
+			return deadlines[head];
+		}
+
+		public long poll(){
+			long fd = fds[head];
+			head = (head + 1) % fds.length;
+			size--;
+			return fd;
+		}
+	}
+
+	private class InodeCollector implements Runnable {
+		private static final long MAX_WAIT = 1000;
+
+		@Override
+		public void run() {
+			while(true){
+				long wait = MAX_WAIT;
+				lock.writeLock().lock();
+				try {
+					long now = System.currentTimeMillis();
+					while(!deleteQueue.isEmpty() && deleteQueue.peekDeadline() <= now){
+						freeFile(deleteQueue.poll());
+					}
+					if (!deleteQueue.isEmpty()){
+						wait = Math.min(MAX_WAIT, deleteQueue.peekDeadline() - now);
+					}
+				} catch(Exception e){
+					LOG.info("Exception during GC: " + e.getMessage());
+				} finally {
+					lock.writeLock().unlock();
+				}
+
+				try {
+					Thread.sleep(wait);
+				} catch(InterruptedException e){
+					return;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Read-through view of an inode, responses copy the attributes they ship.
+	 */
+	private class InodeInfo extends FileInfo {
+		private long fd;
+
+		public InodeInfo(long fd){
+			super(fd, inodes.getType(fd), true);
+			this.fd = fd;
+		}
+
+		@Override
+		public long getCapacity() {
+			return inodes.getCapacity(fd);
+		}
+
+		@Override
+		public long getToken() {
+			return inodes.getToken(fd);
+		}
+
+		@Override
+		public long getModificationTime() {
+			return inodes.getModificationTime(fd);
+		}
+
+		@Override
+		public long getDirOffset() {
+			return inodes.getDirOffset(fd);
+		}
+	}
+}
@@ -29,15 +29,20 @@ public class TableBlocks extends DirectoryBlocks {
 	}
 
 	@Override
-	public AbstractNode putChild(AbstractNode child) throws Exception {
+	public AbstractNode putChild(AbstractNode child, long dirOffset) throws Exception {
 		if (!child.getType().isKeyValue()){
 			throw new Exception("Attempt to create key/value pair in container other than a table");
 		}
 		
 		AbstractNode oldNode = children.put(child.getComponent(), child);
+		if (oldNode != null) {
+			releaseSlot(oldNode);
+			unindexChild(oldNode);
+		}
 		if (child.isEnumerable()) {
-			child.setDirOffset(dirOffsetCounter.getAndAdd(CrailConstants.DIRECTORY_RECORD));
+			child.setDirOffset(takeSlot(dirOffset));
 		}		
+		indexChild(child);
 		return oldNode;
 	}
 }
@@ -0,0 +1,653 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode.tools;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
+import org.apache.commons.cli.Options;
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.namenode.AbstractNode;
+import org.apache.crail.namenode.DataNodeBlocks;
+import org.apache.crail.namenode.FileBlocks;
+import org.apache.crail.namenode.IntObjectMap;
+import org.apache.crail.namenode.LogResponse;
+import org.apache.crail.namenode.LongObjectMap;
+import org.apache.crail.namenode.NameNodeBlockInfo;
+import org.apache.crail.namenode.NameNodeService;
+import org.apache.crail.namenode.OffHeapNameNodeService;
+import org.apache.crail.rpc.RpcEncoding;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcNameNodeService;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
+
+/*
+ * Micro benchmarks for namenode data structures, runs standalone without a namenode or datanodes.
+ */
+public class NameNodeBenchmark {
+	private static final int FILES_PER_DIR = 1000;
+	
+	private int warmup;
+	
+	public NameNodeBenchmark(int warmup){
+		this.warmup = warmup;
+	}
+	
+	void getBlock(int size, int loop, int threads) throws Exception {
+		System.out.println("getBlock, blocks " + size + ", loop " + loop + ", threads " + threads);
+		
+		BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, (int) (size*CrailConstants.BLOCK_SIZE), 0);
+		FileBlocks file = new FileBlocks(1, 1, CrailNodeType.DATAFILE, 0, 0, true);
+		LockedBlockList lockedFile = new LockedBlockList();
+		for (int i = 0; i < size; i++){
+			NameNodeBlockInfo block = new NameNodeBlockInfo(region, i*CrailConstants.BLOCK_SIZE, (int) CrailConstants.BLOCK_SIZE);
+			file.addBlock(i, block);
+			lockedFile.addBlock(i, block);
+		}
+		
+		BlockLookup fileLookup = new FileLookup(file);
+		BlockLookup lockedLookup = new LockedLookup(lockedFile);
+		for (int i = 1; i <= threads; i = i*2){
+			runLookup(lockedLookup, size, warmup, i);
+			double locked = runLookup(lockedLookup, size, loop, i);
+			runLookup(fileLookup, size, warmup, i);
+			double lockFree = runLookup(fileLookup, size, loop, i);
+			System.out.println("threads " + i + ", locked " + String.format("%.2f", locked) + " Mops/sec, lock-free " + String.format("%.2f", lockFree) + " Mops/sec");
+		}
+	}
+	
+	void blockAlloc(int size, int loop, int threads) throws Exception {
+		System.out.println("blockAlloc, blocks " + size + ", loop " + loop + ", threads " + threads);
+		
+		//small blocks so that large block counts fit into a single region
+		CrailConstants.BLOCK_SIZE = 4096;
+		BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, (int) (size*CrailConstants.BLOCK_SIZE), 0);
+		DataNodeBlocks dataNode = DataNodeBlocks.fromDataNodeInfo(region.getDnInfo());
+		QueueAllocation queue = new QueueAllocation();
+		ArrayList<NameNodeBlockInfo> blocks = new ArrayList<NameNodeBlockInfo>(size);
+		for (int i = 0; i < size; i++){
+			NameNodeBlockInfo block = new NameNodeBlockInfo(region, i*CrailConstants.BLOCK_SIZE, (int) CrailConstants.BLOCK_SIZE);
+			blocks.add(block);
+			queue.free(block);
+		}
+		dataNode.addFreeBlocks(blocks);
+		
+		//every operation allocates and frees one block, as done for a small file
+		BlockAllocation bitmap = new BitmapAllocation(dataNode);
+		for (int i = 1; i <= threads; i = i*2){
+			runAllocation(queue, warmup, i);
+			double queued = runAllocation(queue, loop, i);
+			runAllocation(bitmap, warmup, i);
+			double lockFree = runAllocation(bitmap, loop, i);
+			System.out.println("threads " + i + ", queue " + String.format("%.2f", queued) + " Mops/sec, bitmap " + String.format("%.2f", lockFree) + " Mops/sec");
+		}
+		
+		int batch = 16;
+		ArrayList<NameNodeBlockInfo> allocated = new ArrayList<NameNodeBlockInfo>(batch);
+		long start = System.nanoTime();
+		for (int i = 0; i < loop / batch; i++){
+			dataNode.getFreeBlocks(batch, allocated);
+			dataNode.addFreeBlocks(allocated);
+			allocated.clear();
+		}
+		long end = System.nanoTime();
+		System.out.println("batch " + batch + ", bitmap " + String.format("%.2f", ((double) (loop / batch)*batch) / ((end - start) / 1000.0)) + " Mops/sec");
+		System.out.println("free blocks " + dataNode.getBlockCount() + ", total blocks " + dataNode.getTotalNumberOfBlocks());
+	}
+	
+	void dirMemory(int size) throws Exception {
+		System.out.println("dirMemory, entries " + size);
+		
+		//all entries share one node so that only the map overhead is measured
+		AbstractNode node = new FileBlocks(1, 1, CrailNodeType.DATAFILE, 0, 0, true);
+		long base = usedMemory();
+		ConcurrentHashMap<Integer, AbstractNode> hashMap = new ConcurrentHashMap<Integer, AbstractNode>();
+		long start = System.nanoTime();
+		for (int i = 0; i < size; i++){
+			hashMap.putIfAbsent(component(i), node);
+		}
+		long end = System.nanoTime();
+		long hashMapBytes = usedMemory() - base;
+		System.out.println("ConcurrentHashMap, size " + hashMap.size() + ", bytes " + hashMapBytes + ", bytes/entry " + String.format("%.2f", ((double) hashMapBytes) / size) + ", insert " + String.format("%.2f", ((double) (end - start)) / size) + " ns/op");
+		hashMap = null;
+		
+		base = usedMemory();
+		IntObjectMap<AbstractNode> intMap = new IntObjectMap<AbstractNode>();
+		start = System.nanoTime();
+		for (int i = 0; i < size; i++){
+			intMap.putIfAbsent(component(i), node);
+		}
+		end = System.nanoTime();
+		long intMapBytes = usedMemory() - base;
+		System.out.println("IntObjectMap, size " + intMap.size() + ", bytes " + intMapBytes + ", bytes/entry " + String.format("%.2f", ((double) intMapBytes) / size) + ", insert " + String.format("%.2f", ((double) (end - start)) / size) + " ns/op");
+		intMap = null;
+	}
+	
+	void inodeMemory(int size) throws Exception {
+		System.out.println("inodeMemory, files " + size);
+		
+		//small blocks keep the number of regions low, the namespace layout is independent of the block size
+		CrailConstants.NAMENODE_ADDRESS = "crail://localhost:9060?id=0&size=1";
+		CrailConstants.BLOCK_SIZE = 65536;
+		String[] services = {NameNodeService.class.getName(), OffHeapNameNodeService.class.getName()};
+		for (String name : services){
+			long base = usedMemory();
+			RpcNameNodeService service = RpcNameNodeService.createInstance(name);
+			LogResponse response = new LogResponse();
+			int regionBlocks = 16384;
+			int dirs = size / FILES_PER_DIR + 1;
+			long blocks = size + dirs*(1 + FILES_PER_DIR*CrailConstants.DIRECTORY_RECORD / CrailConstants.BLOCK_SIZE + 1);
+			DataNodeInfo dnInfo = new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020);
+			for (long lba = 0; lba < blocks*CrailConstants.BLOCK_SIZE; lba += regionBlocks*CrailConstants.BLOCK_SIZE){
+				BlockInfo region = new BlockInfo(dnInfo, lba, lba, (int) (regionBlocks*CrailConstants.BLOCK_SIZE), 0);
+				service.setBlock(new RpcRequestMessage.SetBlockReq(region), response.getVoid(), response);
+			}
+			long blockBytes = usedMemory() - base;
+			
+			long gcCount = gcCount();
+			long gcTime = gcTime();
+			long start = System.nanoTime();
+			for (int i = 0; i < dirs; i++){
+				create(service, response, "/dir-" + i, CrailNodeType.DIRECTORY);
+			}
+			for (int i = 0; i < size; i++){
+				create(service, response, "/dir-" + (i / FILES_PER_DIR) + "/part-" + i, CrailNodeType.DATAFILE);
+			}
+			long end = System.nanoTime();
+			gcCount = gcCount() - gcCount;
+			gcTime = gcTime() - gcTime;
+			
+			for (int i = 0; i < size; i += Math.max(1, size / 1000)){
+				RpcRequestMessage.GetFileReq request = new RpcRequestMessage.GetFileReq(new FileName("/dir-" + (i / FILES_PER_DIR) + "/part-" + i), false);
+				if (service.getFile(request, response.getFile(), response) != RpcErrors.ERR_OK){
+					throw new Exception("lookup failed, file " + i);
+				}
+			}
+			
+			long heapBytes = usedMemory() - base - blockBytes;
+			long pauseStart = System.nanoTime();
+			System.gc();
+			long pauseEnd = System.nanoTime();
+			String offHeap = "";
+			if (service instanceof OffHeapNameNodeService){
+				offHeap = ", off-heap bytes/file " + String.format("%.2f", ((double) ((OffHeapNameNodeService) service).getOffHeapBytes()) / size);
+			}
+			//heap usage is relative to the registered block store, taking blocks off the free lists shrinks it
+			System.out.println(service.getClass().getSimpleName() + ", create " + String.format("%.2f", ((double) (end - start)) / (size + dirs)) + " ns/op" 
+					+ ", block store bytes " + blockBytes + ", heap bytes/file " + String.format("%.2f", ((double) heapBytes) / size) + offHeap 
+					+ ", gc count " + gcCount + ", gc time " + gcTime + " ms, full gc " + String.format("%.2f", (pauseEnd - pauseStart) / 1000000.0) + " ms");
+		}
+	}
+	
+	void fileTable(int size, int loop) throws Exception {
+		System.out.println("fileTable, files " + size + ", loop " + loop);
+		
+		//fds as handed out by a namenode with 4 services
+		AbstractNode node = new FileBlocks(1, 1, CrailNodeType.DATAFILE, 0, 0, true);
+		ConcurrentHashMap<Long, AbstractNode> hashMap = new ConcurrentHashMap<Long, AbstractNode>();
+		LongObjectMap<AbstractNode> longMap = new LongObjectMap<AbstractNode>();
+		for (int i = 0; i < size; i++){
+			hashMap.put(i*4L + 1, node);
+			longMap.put(i*4L + 1, node);
+		}
+		
+		//scattered lookups, consecutive fds would favour the identity hash of Long
+		for (int k = 0; k < 2; k++){
+			long found = 0;
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < loop; i++){
+				if (hashMap.get(((i*2654435761L) % size)*4L + 1) != null){
+					found++;
+				}
+			}
+			long end = System.nanoTime();
+			bytes = allocatedBytes() - bytes;
+			System.out.println("ConcurrentHashMap, found " + found + ", lookup " + String.format("%.2f", ((double) (end - start)) / loop) + " ns/op, allocated " + String.format("%.2f", ((double) bytes) / loop) + " bytes/op");
+			
+			found = 0;
+			bytes = allocatedBytes();
+			start = System.nanoTime();
+			for (int i = 0; i < loop; i++){
+				if (longMap.get(((i*2654435761L) % size)*4L + 1) != null){
+					found++;
+				}
+			}
+			end = System.nanoTime();
+			bytes = allocatedBytes() - bytes;
+			System.out.println("LongObjectMap, found " + found + ", lookup " + String.format("%.2f", ((double) (end - start)) / loop) + " ns/op, allocated " + String.format("%.2f", ((double) bytes) / loop) + " bytes/op");
+		}
+		
+		//end to end lookup of existing blocks through the namenode service
+		CrailConstants.NAMENODE_ADDRESS = "crail://localhost:9060?id=0&size=1";
+		RpcNameNodeService service = RpcNameNodeService.createInstance(NameNodeService.class.getName());
+		LogResponse response = new LogResponse();
+		BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, (int) (64*CrailConstants.BLOCK_SIZE), 0);
+		service.setBlock(new RpcRequestMessage.SetBlockReq(region), response.getVoid(), response);
+		create(service, response, "/file", CrailNodeType.DATAFILE);
+		RpcRequestMessage.GetBlockReq request = new RpcRequestMessage.GetBlockReq(response.createFile().getFile().getFd(), 0, 0, 0);
+		for (int k = 0; k < 2; k++){
+			long bytes = allocatedBytes();
+			long start = System.nanoTime();
+			for (int i = 0; i < loop; i++){
+				if (service.getBlock(request, response.getBlock(), response) != RpcErrors.ERR_OK){
+					throw new Exception("getBlock failed");
+				}
+			}
+			long end = System.nanoTime();
+			bytes = allocatedBytes() - bytes;
+			System.out.println("NameNodeService.getBlock, " + String.format("%.2f", ((double) (end - start)) / loop) + " ns/op, allocated " + String.format("%.2f", ((double) bytes) / loop) + " bytes/op");
+		}
+	}
+	
+	void rpcEncoding(int size, int loop) throws Exception {
+		System.out.println("rpcEncoding, files " + size + ", loop " + loop);
+		
+		//every request is encoded, decoded and executed as on the namenode, the response takes the same way back to the client
+		CrailConstants.NAMENODE_ADDRESS = "crail://localhost:9060?id=0&size=1";
+		CrailConstants.BLOCK_SIZE = 65536;
+		RpcNameNodeService service = RpcNameNodeService.createInstance(NameNodeService.class.getName());
+		LogResponse response = new LogResponse();
+		RpcEncoding[] encodings = {RpcEncoding.FIXED, RpcEncoding.COMPACT};
+		int rounds = 2;
+		int regionBlocks = 16384;
+		int dirs = size / FILES_PER_DIR + 1;
+		long blocks = rounds*encodings.length*(size + dirs*(1 + FILES_PER_DIR*CrailConstants.DIRECTORY_RECORD / CrailConstants.BLOCK_SIZE + 1));
+		DataNodeInfo dnInfo = new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020);
+		for (long lba = 0; lba < blocks*CrailConstants.BLOCK_SIZE; lba += regionBlocks*CrailConstants.BLOCK_SIZE){
+			BlockInfo region = new BlockInfo(dnInfo, lba, lba, (int) (regionBlocks*CrailConstants.BLOCK_SIZE), 0);
+			service.setBlock(new RpcRequestMessage.SetBlockReq(region), response.getVoid(), response);
+		}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		RpcRequestMessage.CreateFileReq createReq = new RpcRequestMessage.CreateFileReq();
+		RpcResponseMessage.CreateFileRes createRes = new RpcResponseMessage.CreateFileRes();
+		RpcRequestMessage.GetFileReq getReq = new RpcRequestMessage.GetFileReq();
+		RpcResponseMessage.GetFileRes getRes = new RpcResponseMessage.GetFileRes();
+		for (int k = 0; k < rounds; k++){
+			for (RpcEncoding encoding : encodings){
+				String label = encoding.isCompact() ? "compact" : "fixed";
+				String prefix = "/" + label + "-" + k + "-";
+				RpcRequestMessage.CreateFileReq[] createRequests = new RpcRequestMessage.CreateFileReq[size];
+				RpcRequestMessage.GetFileReq[] getRequests = new RpcRequestMessage.GetFileReq[size];
+				for (int i = 0; i < dirs; i++){
+					create(service, response, prefix + i, CrailNodeType.DIRECTORY);
+				}
+				for (int i = 0; i < size; i++){
+					FileName name = new FileName(prefix + (i / FILES_PER_DIR) + "/part-" + i);
+					createRequests[i] = new RpcRequestMessage.CreateFileReq(name, CrailNodeType.DATAFILE, 0, 0, true);
+					getRequests[i] = new RpcRequestMessage.GetFileReq(name, false);
+				}
+				
+				long bytes = 0;
+				long start = System.nanoTime();
+				for (int i = 0; i < size; i++){
+					buffer.clear();
+					bytes += createRequests[i].write(buffer, encoding);
+					buffer.flip();
+					createReq.update(buffer, encoding);
+					if (service.createFile(createReq, response.createFile(), response) != RpcErrors.ERR_OK){
+						throw new Exception("createFile failed, file " + i);
+					}
+					buffer.clear();
+					bytes += response.createFile().write(buffer, encoding);
+					buffer.flip();
+					createRes.update(buffer, encoding);
+				}
+				long end = System.nanoTime();
+				System.out.println(label + ", createFile " + String.format("%.2f", ((double) bytes) / size) + " bytes/op, " 
+						+ String.format("%.0f", size*1000000000.0 / (end - start)) + " ops/s");
+				
+				bytes = 0;
+				start = System.nanoTime();
+				for (int i = 0; i < loop; i++){
+					buffer.clear();
+					bytes += getRequests[i % size].write(buffer, encoding);
+					buffer.flip();
+					getReq.update(buffer, encoding);
+					if (service.getFile(getReq, response.getFile(), response) != RpcErrors.ERR_OK){
+						throw new Exception("getFile failed, file " + (i % size));
+					}
+					buffer.clear();
+					bytes += response.getFile().write(buffer, encoding);
+					buffer.flip();
+					getRes.update(buffer, encoding);
+				}
+				end = System.nanoTime();
+				System.out.println(label + ", getFile " + String.format("%.2f", ((double) bytes) / loop) + " bytes/op, " 
+						+ String.format("%.0f", loop*1000000000.0 / (end - start)) + " ops/s");
+			}
+		}
+	}
+	
+	private static long allocatedBytes(){
+		return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	private static void create(RpcNameNodeService service, LogResponse response, String path, CrailNodeType type) throws Exception {
+		RpcRequestMessage.CreateFileReq request = new RpcRequestMessage.CreateFileReq(new FileName(path), type, 0, 0, true);
+		short error = service.createFile(request, response.createFile(), response);
+		if (error != RpcErrors.ERR_OK){
+			throw new Exception("create failed, path " + path + ", error " + error);
+		}
+	}
+	
+	private static long gcCount(){
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+			count += gc.getCollectionCount();
+		}
+		return count;
+	}
+	
+	private static long gcTime(){
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+			time += gc.getCollectionTime();
+		}
+		return time;
+	}
+	
+	//file components are name hashes, consecutive names give clustered hashes
+	private static int component(int i){
+		return ("part-" + i).hashCode();
+	}
+	
+	private static long usedMemory() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++){
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private double runLookup(final BlockLookup lookup, final int size, final int loop, int threads) throws Exception {
+		final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+		ArrayList<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++){
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						ThreadLocalRandom random = ThreadLocalRandom.current();
+						long found = 0;
+						barrier.await();
+						for (int j = 0; j < loop; j++){
+							if (lookup.getBlock(random.nextInt(size)) != null){
+								found++;
+							}
+						}
+						if (found != loop){
+							System.out.println("lookup failed, found " + found + ", expected " + loop);
+						}
+						barrier.await();
+					} catch(Exception e){
+						e.printStackTrace();
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		barrier.await();
+		long start = System.nanoTime();
+		barrier.await();
+		long end = System.nanoTime();
+		for (Thread worker : workers){
+			worker.join();
+		}
+		double ops = ((double) loop)*threads;
+		return ops / ((end - start) / 1000.0);
+	}
+	
+	private double runAllocation(final BlockAllocation allocation, final int loop, int threads) throws Exception {
+		final CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+		ArrayList<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < threads; i++){
+			Thread worker = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						barrier.await();
+						for (int j = 0; j < loop; j++){
+							NameNodeBlockInfo block = allocation.allocate();
+							if (block == null){
+								System.out.println("allocation failed");
+								break;
+							}
+							allocation.free(block);
+						}
+						barrier.await();
+					} catch(Exception e){
+						e.printStackTrace();
+					}
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		barrier.await();
+		long start = System.nanoTime();
+		barrier.await();
+		long end = System.nanoTime();
+		for (Thread worker : workers){
+			worker.join();
+		}
+		double ops = ((double) loop)*threads;
+		return ops / ((end - start) / 1000.0);
+	}
+	
+	private static interface BlockAllocation {
+		NameNodeBlockInfo allocate() throws Exception;
+		
+		void free(NameNodeBlockInfo block) throws Exception;
+	}
+	
+	private static class BitmapAllocation implements BlockAllocation {
+		private DataNodeBlocks dataNode;
+		
+		public BitmapAllocation(DataNodeBlocks dataNode){
+			this.dataNode = dataNode;
+		}
+		
+		public NameNodeBlockInfo allocate() throws Exception {
+			return dataNode.getFreeBlock();
+		}
+		
+		public void free(NameNodeBlockInfo block){
+			dataNode.addFreeBlock(block);
+		}
+	}
+	
+	//previous free list of DataNodeBlocks, kept as a reference
+	private static class QueueAllocation implements BlockAllocation {
+		private LinkedBlockingQueue<NameNodeBlockInfo> freeBlocks;
+		
+		public QueueAllocation(){
+			this.freeBlocks = new LinkedBlockingQueue<NameNodeBlockInfo>();
+		}
+		
+		public NameNodeBlockInfo allocate(){
+			return freeBlocks.poll();
+		}
+		
+		public void free(NameNodeBlockInfo block){
+			freeBlocks.add(block);
+		}
+	}
+	
+	private static interface BlockLookup {
+		NameNodeBlockInfo getBlock(int index) throws Exception;
+	}
+	
+	private static class FileLookup implements BlockLookup {
+		private AbstractNode file;
+		
+		public FileLookup(AbstractNode file){
+			this.file = file;
+		}
+		
+		public NameNodeBlockInfo getBlock(int index) throws Exception {
+			return file.getBlock(index);
+		}
+	}
+	
+	private static class LockedLookup implements BlockLookup {
+		private LockedBlockList file;
+		
+		public LockedLookup(LockedBlockList file){
+			this.file = file;
+		}
+		
+		public NameNodeBlockInfo getBlock(int index){
+			return file.getBlock(index);
+		}
+	}
+	
+	//previous block list of FileBlocks, kept as a reference
+	private static class LockedBlockList {
+		private ArrayList<NameNodeBlockInfo> blocks;
+		private final Lock readLock;
+		private final Lock writeLock;
+		
+		public LockedBlockList(){
+			ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+			this.blocks = new ArrayList<NameNodeBlockInfo>(CrailConstants.NAMENODE_FILEBLOCKS);
+			this.readLock = lock.readLock();
+			this.writeLock = lock.writeLock();
+		}
+		
+		public NameNodeBlockInfo getBlock(int index) {
+			readLock.lock();
+			try {
+				if (index < blocks.size()){
+					return blocks.get(index);
+				} else {
+					return null;
+				}
+			} finally {
+				readLock.unlock();
+			}
+		}
+		
+		public boolean addBlock(int index, NameNodeBlockInfo block) {
+			writeLock.lock();
+			try {
+				if (index == blocks.size()){
+					blocks.add(index, block);
+					return true;
+				} else {
+					return false;
+				}
+			} finally {
+				writeLock.unlock();
+			}
+		}
+	}
+	
+	public static void main(String[] args) throws Exception {
+		String type = "";
+		int size = 1024;
+		int loop = 10000000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int warmup = 1000000;
+		
+		String benchmarkTypes = "getBlock|blockAlloc|dirMemory|inodeMemory|fileTable|rpcEncoding";
+		Option typeOption = Option.builder("t").desc("type of experiment [" + benchmarkTypes + "]").hasArg().build();
+		Option sizeOption = Option.builder("s").desc("number of elements [1..n]").hasArg().build();
+		Option loopOption = Option.builder("k").desc("loop [1..n]").hasArg().build();
+		Option threadOption = Option.builder("n").desc("maximum number of threads [1..n]").hasArg().build();
+		Option warmupOption = Option.builder("w").desc("number of warmup operations [1..n]").hasArg().build();
+		
+		Options options = new Options();
+		options.addOption(typeOption);
+		options.addOption(sizeOption);
+		options.addOption(loopOption);
+		options.addOption(threadOption);
+		options.addOption(warmupOption);
+		
+		CommandLineParser parser = new DefaultParser();
+		CommandLine line = parser.parse(options, Arrays.copyOfRange(args, 0, args.length));
+		if (line.hasOption(typeOption.getOpt())) {
+			type = line.getOptionValue(typeOption.getOpt());
+		}
+		if (line.hasOption(sizeOption.getOpt())) {
+			size = Integer.parseInt(line.getOptionValue(sizeOption.getOpt()));
+		}
+		if (line.hasOption(loopOption.getOpt())) {
+			loop = Integer.parseInt(line.getOptionValue(loopOption.getOpt()));
+		}
+		if (line.hasOption(threadOption.getOpt())) {
+			threads = Integer.parseInt(line.getOptionValue(threadOption.getOpt()));
+		}
+		if (line.hasOption(warmupOption.getOpt())) {
+			warmup = Integer.parseInt(line.getOptionValue(warmupOption.getOpt()));
+		}
+		
+		NameNodeBenchmark benchmark = new NameNodeBenchmark(warmup);
+		if (type.equals("getBlock")){
+			benchmark.getBlock(size, loop, threads);
+		} else if (type.equals("blockAlloc")){
+			benchmark.blockAlloc(size, loop, threads);
+		} else if (type.equals("dirMemory")){
+			//without a size the footprint is measured at 1M, 10M and 50M entries
+			if (line.hasOption(sizeOption.getOpt())){
+				benchmark.dirMemory(size);
+			} else {
+				benchmark.dirMemory(1000000);
+				benchmark.dirMemory(10000000);
+				benchmark.dirMemory(50000000);
+			}
+		} else if (type.equals("fileTable")){
+			benchmark.fileTable(size, loop);
+			System.exit(0);
+		} else if (type.equals("rpcEncoding")){
+			benchmark.rpcEncoding(size, loop);
+			System.exit(0);
+		} else if (type.equals("inodeMemory")){
+			//the services run their garbage collection threads until exit
+			benchmark.inodeMemory(size);
+			System.exit(0);
+		} else {
+			HelpFormatter formatter = new HelpFormatter();
+			formatter.printHelp("nnbench", options);
+			System.exit(-1);	
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.*;
+
+public class BlockAllocatorTest {
+
+	@BeforeClass
+	public static void init() {
+		CrailConstants.BLOCK_SIZE = 4096;
+	}
+
+	static BlockAllocator allocator(int count) {
+		BlockAllocator allocator = new BlockAllocator();
+		BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, count*4096, 0);
+		ArrayList<NameNodeBlockInfo> blocks = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			blocks.add(new NameNodeBlockInfo(region, i*4096L, 4096));
+		}
+		assertEquals(count, allocator.free(blocks));
+		return allocator;
+	}
+
+	@Test
+	public void allocateFreeTake() {
+		BlockAllocator allocator = allocator(100);
+		assertEquals(100, allocator.getFreeCount());
+		NameNodeBlockInfo block = allocator.take(17*4096);
+		assertEquals(17*4096, block.getLba());
+		ArrayList<NameNodeBlockInfo> blocks = new ArrayList<>();
+		assertEquals(99, allocator.allocate(1000, blocks));
+		assertFalse(blocks.contains(block));
+		assertNull(allocator.allocate());
+		assertTrue(allocator.free(block));
+		assertFalse(allocator.free(block));
+		assertSame(block, allocator.allocate());
+		assertEquals(99, allocator.free(blocks));
+		assertEquals(99, allocator.getFreeCount());
+		assertEquals(100, allocator.getBlockCount());
+	}
+
+	@Test
+	public void takeRefusesUsedBlocks() {
+		BlockAllocator allocator = allocator(10);
+		assertNotNull(allocator.take(3*4096));
+		assertNull(allocator.take(3*4096));
+		assertNull(allocator.take(10*4096));
+		assertNull(allocator.take(-4096));
+		assertEquals(9, allocator.getFreeCount());
+	}
+
+	@Test
+	public void concurrentAllocateFree() throws Exception {
+		final BlockAllocator allocator = allocator(10000);
+		final AtomicIntegerArray owned = new AtomicIntegerArray(10000);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread threads[] = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					ArrayList<NameNodeBlockInfo> blocks = new ArrayList<>();
+					for (int round = 0; round < 2000; round++) {
+						blocks.clear();
+						allocator.allocate(round % 8, blocks);
+						NameNodeBlockInfo block = allocator.allocate();
+						if (block != null) {
+							blocks.add(block);
+						}
+						//no block is handed out twice
+						for (NameNodeBlockInfo allocated : blocks) {
+							if (owned.getAndIncrement((int) (allocated.getLba() / 4096)) != 0) {
+								failed.set(true);
+							}
+						}
+						for (NameNodeBlockInfo allocated : blocks) {
+							owned.decrementAndGet((int) (allocated.getLba() / 4096));
+						}
+						if (round % 2 == 0) {
+							allocator.free(blocks);
+						} else {
+							for (NameNodeBlockInfo allocated : blocks) {
+								allocator.free(allocated);
+							}
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(failed.get());
+		assertEquals(10000, allocator.getFreeCount());
+		HashSet<NameNodeBlockInfo> blocks = new HashSet<>();
+		assertEquals(10000, allocator.allocate(20000, blocks));
+		assertEquals(10000, blocks.size());
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class BlockIndexTest {
+	private static final BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, Integer.MAX_VALUE, 0);
+
+	@Test
+	public void appendAndGet() {
+		BlockIndex index = new BlockIndex(3);
+		assertFalse(index.append(1, new NameNodeBlockInfo(region, 1, 1)));
+		for (int i = 0; i < 37; i++) {
+			assertTrue(index.append(i, new NameNodeBlockInfo(region, i, 1)));
+			assertFalse(index.append(i, new NameNodeBlockInfo(region, i, 1)));
+		}
+		assertEquals(37, index.size());
+		for (int i = 0; i < 37; i++) {
+			assertEquals(i, index.get(i).getLba());
+		}
+		assertNull(index.get(-1));
+		assertNull(index.get(37));
+	}
+
+	@Test
+	public void truncate() {
+		BlockIndex index = new BlockIndex(2);
+		for (int i = 0; i < 10; i++) {
+			index.append(i, new NameNodeBlockInfo(region, i, 1));
+		}
+		ArrayList<NameNodeBlockInfo> dropped = new ArrayList<>();
+		index.truncate(10, dropped);
+		index.truncate(-1, dropped);
+		assertTrue(dropped.isEmpty());
+		index.truncate(3, dropped);
+		assertEquals(3, index.size());
+		assertEquals(7, dropped.size());
+		assertEquals(3, dropped.get(0).getLba());
+		assertNull(index.get(3));
+		assertTrue(index.append(3, new NameNodeBlockInfo(region, 30, 1)));
+		assertEquals(30, index.get(3).getLba());
+	}
+
+	@Test
+	public void concurrentReaders() throws Exception {
+		final BlockIndex index = new BlockIndex(16);
+		final int count = 100000;
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				while (index.size() < count) {
+					int size = index.size();
+					for (int i = Math.max(0, size - 64); i < size; i++) {
+						NameNodeBlockInfo block = index.get(i);
+						if (block == null || block.getLba() != i) {
+							failed.set(true);
+						}
+					}
+				}
+			}
+		});
+		reader.start();
+		for (int i = 0; i < count; i++) {
+			index.append(i, new NameNodeBlockInfo(region, i, 1));
+		}
+		reader.join();
+		assertFalse(failed.get());
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.namenode;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class DirectoryBlocksTest {
+	private static final int RECORD = 512;
+	private DirectoryBlocks directory;
+	private BlockInfo region;
+	private long now;
+
+	@Before
+	public void init() throws Exception {
+		CrailConstants.BLOCK_SIZE = 4096;
+		CrailConstants.DIRECTORY_RECORD = RECORD;
+		CrailConstants.TOKEN_EXPIRATION = 1;
+		CrailConstants.NAMENODE_LISTING = 0;
+		directory = new DirectoryBlocks(1, 1, CrailNodeType.DIRECTORY, 0, 0, true);
+		region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, 64*4096, 0);
+		now = System.currentTimeMillis();
+	}
+
+	private AbstractNode add(int component) throws Exception {
+		return add(component, DirectoryBlocks.NEXT_SLOT);
+	}
+
+	private AbstractNode add(int component, long dirOffset) throws Exception {
+		AbstractNode child = new FileBlocks(100 + component, component, CrailNodeType.DATAFILE, 0, 0, true);
+		directory.putChild(child, dirOffset);
+		//the directory blocks covering the slot, as allocated by the service
+		int index = (int) (child.getDirOffset() / CrailConstants.BLOCK_SIZE);
+		if (directory.getBlock(index) == null) {
+			directory.addBlock(index, new NameNodeBlockInfo(region, index*CrailConstants.BLOCK_SIZE, (int) CrailConstants.BLOCK_SIZE));
+		}
+		return child;
+	}
+
+	@Test
+	public void slotReuse() throws Exception {
+		for (int i = 0; i < 4; i++) {
+			assertEquals(i*RECORD, add(i).getDirOffset());
+		}
+		assertEquals(4*RECORD, directory.getCapacity());
+		directory.removeChild(1);
+		assertEquals(1, directory.getFreeSlots());
+
+		//the slot stays reserved until the delete had the time to invalidate the record
+		ArrayList<NameNodeBlockInfo> released = new ArrayList<NameNodeBlockInfo>();
+		directory.compactSlots(now, released);
+		assertEquals(4*RECORD, add(4).getDirOffset());
+		directory.compactSlots(now + 1500, released);
+		assertTrue(released.isEmpty());
+		assertEquals(RECORD, add(5).getDirOffset());
+		assertEquals(0, directory.getFreeSlots());
+		assertEquals(5*RECORD, directory.getCapacity());
+
+		//free slots are handed out lowest first, then the directory grows
+		directory.removeChild(0);
+		directory.removeChild(2);
+		directory.compactSlots(now + 1500, released);
+		assertEquals(0, add(6).getDirOffset());
+		assertEquals(2*RECORD, add(7).getDirOffset());
+		assertEquals(5*RECORD, add(8).getDirOffset());
+	}
+
+	@Test
+	public void shrink() throws Exception {
+		for (int i = 0; i < 20; i++) {
+			add(i);
+		}
+		assertEquals(20*RECORD, directory.getCapacity());
+		assertNotNull(directory.getBlock(2));
+
+		//a hole in the middle keeps the capacity, free slots at the end are trimmed with their blocks
+		directory.removeChild(3);
+		for (int i = 8; i < 20; i++) {
+			directory.removeChild(i);
+		}
+		ArrayList<NameNodeBlockInfo> released = new ArrayList<NameNodeBlockInfo>();
+		directory.compactSlots(now, released);
+		assertEquals(20*RECORD, directory.getCapacity());
+		directory.compactSlots(now + 1500, released);
+		assertEquals(8*RECORD, directory.getCapacity());
+		assertEquals(8*RECORD, directory.getDirOffsetCounter());
+		assertEquals(2, released.size());
+		assertNotNull(directory.getBlock(0));
+		assertNull(directory.getBlock(1));
+		assertNull(directory.getBlock(2));
+		assertEquals(1, directory.getFreeSlots());
+
+		//the remaining hole is reused before the directory grows again
+		assertEquals(3*RECORD, add(20).getDirOffset());
+		assertEquals(8*RECORD, add(21).getDirOffset());
+		assertNotNull(directory.getBlock(1));
+		for (int i = 0; i < 8; i++) {
+			directory.removeChild(i == 3 ? 20 : i);
+		}
+		directory.removeChild(21);
+		released.clear();
+		directory.compactSlots(now + 1500, released);
+		assertEquals(0, directory.getCapacity());
+		assertEquals(2, released.size());
+	}
+
+	@Test
+	public void replaySlots() throws Exception {
+		//replay places children at the logged slots, the gaps in between are free
+		assertEquals(2*RECORD, add(0, 2*RECORD).getDirOffset());
+		assertEquals(3*RECORD, directory.getCapacity());
+		assertEquals(2, directory.getFreeSlots());
+		assertEquals(3*RECORD, add(1, DirectoryBlocks.END_SLOT).getDirOffset());
+		assertEquals(0, add(2, 0).getDirOffset());
+		//a logged slot which is taken does not overwrite the child holding it
+		assertEquals(RECORD, add(3, 2*RECORD).getDirOffset());
+		assertEquals(0, directory.getFreeSlots());
+
+		//after a checkpoint only the slots of restored children are in use
+		DirectoryBlocks restored = new DirectoryBlocks(2, 2, CrailNodeType.DIRECTORY, 0, 0, true);
+		restored.restoreDirOffsetCounter(4*RECORD);
+		AbstractNode child = new FileBlocks(200, 7, CrailNodeType.DATAFILE, 0, 0, true);
+		child.setDirOffset(RECORD);
+		restored.restoreChild(child);
+		assertEquals(3, restored.getFreeSlots());
+		assertEquals(0, restored.takeSlot(DirectoryBlocks.NEXT_SLOT));
+		assertEquals(2*RECORD, restored.takeSlot(DirectoryBlocks.NEXT_SLOT));
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.namenode;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GCServerTest {
+	private static final int FILES = 40;
+	private NameNodeService service;
+
+	@Before
+	public void init() throws Exception {
+		CrailConstants.NAMENODE_ADDRESS = "crail://localhost:9060?id=0&size=1";
+		CrailConstants.BLOCK_SIZE = 4096;
+		CrailConstants.TOKEN_EXPIRATION = 0;
+	}
+
+	@After
+	public void reset() {
+		CrailConstants.NAMENODE_GC_RATE = 0;
+		CrailConstants.NAMENODE_GC_THREADS = 1;
+		CrailConstants.NAMENODE_GC_BATCH = 1024;
+	}
+
+	//creates a directory of files holding a block each and starts the gc on a fresh service
+	private long start() throws Exception {
+		service = new NameNodeService(false);
+		BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, 256*4096, 0);
+		service.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), new LogResponse());
+		//allocates the root's directory block, which outlives the gc
+		create("/keep", CrailNodeType.DIRECTORY);
+		long used = used();
+		create("/dir", CrailNodeType.DIRECTORY);
+		for (int i = 0; i < FILES; i++) {
+			create("/dir/f" + i, CrailNodeType.DATAFILE);
+		}
+		assertTrue(used() > used);
+		Thread gc = new Thread(service.getGCServer());
+		gc.setDaemon(true);
+		gc.start();
+		return used;
+	}
+
+	private void create(String path, CrailNodeType type) throws Exception {
+		RpcResponseMessage.CreateFileRes created = new RpcResponseMessage.CreateFileRes();
+		assertEquals(RpcErrors.ERR_OK, service.createFile(new RpcRequestMessage.CreateFileReq(new FileName(path), type, 0, 0, true), created, new LogResponse()));
+	}
+
+	private long removeAndWait() throws Exception {
+		long start = System.nanoTime();
+		RpcResponseMessage.DeleteFileRes deleted = new RpcResponseMessage.DeleteFileRes();
+		assertEquals(RpcErrors.ERR_OK, service.removeFile(new RpcRequestMessage.RemoveFileReq(new FileName("/dir"), true), deleted, new LogResponse()));
+		GCServer gc = service.getGCServer();
+		for (int i = 0; i < 200 && (gc.getReclaimedFiles() < FILES + 1 || gc.getBacklog() > 0); i++) {
+			Thread.sleep(25);
+		}
+		return (System.nanoTime() - start) / 1000000;
+	}
+
+	private long used() throws Exception {
+		return service.getBlockStore().getNumberOfBlocksUsed();
+	}
+
+	@Test
+	public void reclaimSubtree() throws Exception {
+		CrailConstants.NAMENODE_GC_THREADS = 4;
+		CrailConstants.NAMENODE_GC_BATCH = 8;
+		long used = start();
+		removeAndWait();
+		GCServer gc = service.getGCServer();
+		assertEquals(FILES + 1, gc.getReclaimedFiles());
+		assertEquals(0, gc.getBacklog());
+		//blocks are returned in batches, the last partial batch once the workers go idle
+		for (int i = 0; i < 100 && used() != used; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(used, used());
+		assertTrue(gc.getReclaimedBlocks() >= FILES);
+	}
+
+	@Test
+	public void rateLimit() throws Exception {
+		CrailConstants.NAMENODE_GC_THREADS = 4;
+		CrailConstants.NAMENODE_GC_RATE = 100;
+		long used = start();
+		GCServer gc = service.getGCServer();
+		gc.getReclaimRate();
+		long elapsed = removeAndWait();
+		assertEquals(FILES + 1, gc.getReclaimedFiles());
+		//the workers share one schedule, FILES + 1 files at 100 per second take at least FILES slots of 10ms
+		assertTrue("reclaimed in " + elapsed + "ms", elapsed >= FILES * 10);
+		assertTrue(gc.getReclaimRate() <= 110);
+		for (int i = 0; i < 100 && used() != used; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(used, used());
+	}
+}
@@ -0,0 +1,130 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import org.apache.crail.CrailNodeType;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class InodeTableTest {
+
+	@Test
+	public void attributes() {
+		InodeTable table = new InodeTable();
+		table.allocate(7, 42, CrailNodeType.DIRECTORY, 3, 5, 128, 1000);
+		table.setCapacity(7, 4096);
+		table.setToken(7, 99);
+		table.setPlacement(7, 5);
+		table.setInlineBlock(7, 1, 17);
+		assertTrue(table.isLive(7));
+		assertFalse(table.isUnlinked(7));
+		assertEquals(42, table.getComponent(7));
+		assertEquals(CrailNodeType.DIRECTORY, table.getType(7));
+		assertEquals(3, table.getStorageClass(7));
+		assertEquals(5, table.getLocationClass(7));
+		assertEquals(128, table.getDirOffset(7));
+		assertEquals(1000, table.getModificationTime(7));
+		assertEquals(4096, table.getCapacity(7));
+		assertEquals(99, table.getToken(7));
+		assertEquals(5, table.getPlacement(7));
+		assertEquals(17, table.getInlineBlock(7, 1));
+		table.setUnlinked(7);
+		assertTrue(table.isUnlinked(7));
+		assertEquals(CrailNodeType.DIRECTORY, table.getType(7));
+	}
+
+	@Test
+	public void slotsAreRecycled() {
+		InodeTable table = new InodeTable();
+		for (long fd = 0; fd < 1000; fd++) {
+			table.allocate(fd, (int) fd, CrailNodeType.DATAFILE, 0, 0, fd, 0);
+		}
+		long bytes = table.getOffHeapBytes();
+		//churn through many more fds than live inodes
+		for (long fd = 1000; fd < 500000; fd++) {
+			table.free(fd - 1000);
+			table.allocate(fd, (int) fd, CrailNodeType.DATAFILE, 0, 0, fd, 0);
+			table.setCapacity(fd, fd);
+		}
+		assertEquals(1000, table.getInodeCount());
+		assertEquals(bytes, table.getOffHeapBytes());
+		assertFalse(table.isLive(498999));
+		for (long fd = 499000; fd < 500000; fd++) {
+			assertTrue(table.isLive(fd));
+			assertEquals((int) fd, table.getComponent(fd));
+			assertEquals(fd, table.getCapacity(fd));
+			assertEquals(fd, table.getDirOffset(fd));
+		}
+		//a recycled slot starts with fresh attributes
+		table.free(499000);
+		table.allocate(1 << 40, 1, CrailNodeType.DIRECTORY, 0, 0, 0, 0);
+		assertEquals(0, table.getCapacity(1 << 40));
+		assertEquals(InodeTable.NONE, table.getFirstChild(1 << 40));
+		assertEquals(0, table.getInlineBlock(1 << 40, 0));
+	}
+
+	@Test
+	public void sparseFds() {
+		InodeTable table = new InodeTable();
+		Random random = new Random(1);
+		ArrayList<Long> fds = new ArrayList<>();
+		HashSet<Long> seen = new HashSet<>();
+		while (fds.size() < 20000) {
+			long fd = random.nextLong() & Long.MAX_VALUE;
+			if (seen.add(fd)) {
+				fds.add(fd);
+				table.allocate(fd, fds.size(), CrailNodeType.DATAFILE, 0, 0, 0, 0);
+			}
+		}
+		for (int i = 0; i < fds.size(); i += 2) {
+			table.free(fds.get(i));
+		}
+		for (int i = 0; i < fds.size(); i++) {
+			assertEquals(i % 2 == 1, table.isLive(fds.get(i)));
+			if (i % 2 == 1) {
+				assertEquals(i + 1, table.getComponent(fds.get(i)));
+			}
+		}
+		assertEquals(10000, table.getInodeCount());
+	}
+
+	@Test
+	public void childLists() {
+		InodeTable table = new InodeTable();
+		table.allocate(1, 0, CrailNodeType.DIRECTORY, 0, 0, 0, 0);
+		for (long fd = 2; fd <= 5; fd++) {
+			table.allocate(fd, 0, CrailNodeType.DATAFILE, 0, 0, 0, 0);
+			table.link(1, fd);
+		}
+		table.unlink(1, 3);
+		table.unlink(1, 5);
+		ArrayList<Long> children = new ArrayList<>();
+		for (long child = table.getFirstChild(1); child != InodeTable.NONE; child = table.getNextSibling(child)) {
+			children.add(child);
+		}
+		assertEquals(2, children.size());
+		assertEquals(4L, (long) children.get(0));
+		assertEquals(2L, (long) children.get(1));
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class IntObjectMapTest {
+
+	@Test
+	public void putGetRemove() {
+		IntObjectMap<String> map = new IntObjectMap<>();
+		assertNull(map.put(Integer.MIN_VALUE, "a"));
+		assertEquals("a", map.put(Integer.MIN_VALUE, "b"));
+		assertEquals("b", map.putIfAbsent(Integer.MIN_VALUE, "c"));
+		assertNull(map.putIfAbsent(0, "d"));
+		assertEquals(2, map.size());
+		assertEquals("b", map.remove(Integer.MIN_VALUE));
+		assertNull(map.remove(Integer.MIN_VALUE));
+		assertNull(map.get(Integer.MIN_VALUE));
+		assertEquals("d", map.get(0));
+	}
+
+	@Test
+	public void resizeWithRemovals() {
+		IntObjectMap<Integer> map = new IntObjectMap<>(2);
+		for (int i = 0; i < 100000; i++) {
+			map.put(i*31, i);
+			if (i % 2 == 0) {
+				map.remove((i/2)*31);
+			}
+		}
+		ArrayList<Integer> values = new ArrayList<>();
+		map.collectValues(values);
+		assertEquals(50000, map.size());
+		assertEquals(50000, values.size());
+		for (int i = 0; i < 100000; i++) {
+			assertEquals(i < 50000 ? null : Integer.valueOf(i), map.get(i*31));
+		}
+	}
+
+	@Test
+	public void concurrentPutRemove() throws Exception {
+		final IntObjectMap<Integer> map = new IntObjectMap<>(4);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread threads[] = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int base = t*20000;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					for (int round = 0; round < 5; round++) {
+						for (int key = base; key < base + 20000; key++) {
+							map.putIfAbsent(key, key);
+							Integer value = map.get(key ^ 1);
+							if (value != null && value != (key ^ 1)) {
+								failed.set(true);
+							}
+						}
+						for (int key = base; key < base + 20000; key += 2) {
+							if (map.remove(key) == null) {
+								failed.set(true);
+							}
+						}
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(failed.get());
+		assertEquals(40000, map.size());
+		for (int key = 0; key < 80000; key++) {
+			assertEquals(key % 2 == 0 ? null : Integer.valueOf(key), map.get(key));
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LeaseReaperTest {
+	private NameNodeService service;
+	private FileInfo file;
+
+	@Before
+	public void init() throws Exception {
+		CrailConstants.NAMENODE_ADDRESS = "crail://localhost:9060?id=0&size=1";
+		CrailConstants.BLOCK_SIZE = 4096;
+		CrailConstants.TOKEN_EXPIRATION = 1;
+		service = new NameNodeService(false);
+		BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, 64*4096, 0);
+		service.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), new LogResponse());
+		RpcResponseMessage.CreateFileRes created = new RpcResponseMessage.CreateFileRes();
+		service.createFile(new RpcRequestMessage.CreateFileReq(new FileName("/file"), CrailNodeType.DATAFILE, 0, 0, false), created, new LogResponse());
+		file = created.getFile();
+	}
+
+	short lease(long token, int count) throws Exception {
+		return service.leaseBlocks(new RpcRequestMessage.LeaseBlocksReq(file.getFd(), token, 0, 0, count), new RpcResponseMessage.LeaseBlocksRes(), new LogResponse());
+	}
+
+	long used() throws Exception {
+		return service.getBlockStore().getNumberOfBlocksUsed();
+	}
+
+	@Test
+	public void returnOnClose() throws Exception {
+		long used = used();
+		assertEquals(RpcErrors.ERR_OK, lease(file.getToken(), 8));
+		assertEquals(used + 7, used());
+		file.setCapacity(4096);
+		service.setFile(new RpcRequestMessage.SetFileReq(file, true), new RpcResponseMessage.VoidRes(), new LogResponse());
+		assertEquals(used, used());
+		assertEquals(0, service.getWriteFileCount());
+	}
+
+	@Test
+	public void returnOnExpiry() throws Exception {
+		long used = used();
+		assertEquals(RpcErrors.ERR_OK, lease(file.getToken(), 8));
+		assertEquals(1, service.getLeaseReaper().size());
+		Thread reaper = new Thread(service.getLeaseReaper());
+		reaper.setDaemon(true);
+		reaper.start();
+		for (int i = 0; i < 100 && used() != used; i++) {
+			Thread.sleep(50);
+		}
+		assertEquals(used, used());
+		assertEquals(0, service.getLeaseReaper().size());
+	}
+
+	@Test
+	public void keepLeaseOfNewWriter() throws Exception {
+		assertEquals(RpcErrors.ERR_OK, lease(file.getToken(), 8));
+		//held back while no service is set, e.g., during replay
+		service.getLeaseReaper().setService(null);
+		Thread reaper = new Thread(service.getLeaseReaper());
+		reaper.setDaemon(true);
+		reaper.start();
+		Thread.sleep(1500);
+		long used = used();
+		assertEquals(0, service.getLeaseReaper().size());
+
+		//the file is reopened and the previous lease released, the expired one no longer matches
+		RpcResponseMessage.GetFileRes reopened = new RpcResponseMessage.GetFileRes();
+		assertEquals(RpcErrors.ERR_OK, service.getFile(new RpcRequestMessage.GetFileReq(new FileName("/file"), true), reopened, new LogResponse()));
+		assertEquals(used - 7, used());
+		file = reopened.getFile();
+		assertEquals(RpcErrors.ERR_OK, lease(file.getToken(), 4));
+		used = used();
+		service.getLeaseReaper().setService(service);
+		Thread.sleep(200);
+		assertEquals(used, used());
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcProtocol;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LogServiceTest {
+	private File log;
+
+	@Before
+	public void init() throws Exception {
+		log = new File(Files.createTempDirectory("namenode").toFile(), "log");
+		CrailConstants.NAMENODE_ADDRESS = "crail://localhost:9060?id=0&size=1";
+		CrailConstants.NAMENODE_LOG = log.getAbsolutePath();
+		CrailConstants.NAMENODE_LOG_SYNC = "fsync";
+		CrailConstants.NAMENODE_CHECKPOINT_INTERVAL = 0;
+		CrailConstants.BLOCK_SIZE = 4096;
+	}
+
+	static LogDispatcher open(NameNodeService service) throws Exception {
+		LogDispatcher dispatcher = new LogDispatcher(service);
+		BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, 1024*4096, 0);
+		dispatcher.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), new LogResponse());
+		return dispatcher;
+	}
+
+	static short create(LogDispatcher dispatcher, String path, CrailNodeType type) throws Exception {
+		return dispatcher.createFile(new RpcRequestMessage.CreateFileReq(new FileName(path), type, 0, 0, true), new RpcResponseMessage.CreateFileRes(), new LogResponse());
+	}
+
+	static RpcResponseMessage.GetFileRes lookup(NameNodeService service, String path) throws Exception {
+		RpcResponseMessage.GetFileRes response = new RpcResponseMessage.GetFileRes();
+		short error = service.getFile(new RpcRequestMessage.GetFileReq(new FileName(path), false), response, new LogResponse());
+		return error == RpcErrors.ERR_OK ? response : null;
+	}
+
+	static void assertNamespace(NameNodeService expected, NameNodeService actual, String... paths) throws Exception {
+		for (String path : paths) {
+			RpcResponseMessage.GetFileRes original = lookup(expected, path);
+			RpcResponseMessage.GetFileRes restored = lookup(actual, path);
+			assertNotNull(path, restored);
+			assertEquals(path, original.getFile().getFd(), restored.getFile().getFd());
+			assertEquals(path, original.getFile().getType(), restored.getFile().getType());
+			assertEquals(path, original.getFile().getCapacity(), restored.getFile().getCapacity());
+			assertEquals(path, original.getFile().getDirOffset(), restored.getFile().getDirOffset());
+			assertEquals(path, original.getFileBlock().getLba(), restored.getFileBlock().getLba());
+		}
+	}
+
+	@Test
+	public void checkpointReload() throws Exception {
+		NameNodeService service = new NameNodeService(false);
+		LogDispatcher dispatcher = open(service);
+		assertEquals(RpcErrors.ERR_OK, create(dispatcher, "/dir", CrailNodeType.DIRECTORY));
+		assertEquals(RpcErrors.ERR_OK, create(dispatcher, "/dir/a", CrailNodeType.DATAFILE));
+		assertEquals(RpcErrors.ERR_OK, create(dispatcher, "/dir/b", CrailNodeType.DATAFILE));
+		dispatcher.getLogService().checkpoint();
+		assertTrue(new File(log.getAbsolutePath() + ".checkpoint").exists());
+		assertFalse(new File(log.getAbsolutePath() + ".1").exists());
+		assertEquals(0, log.length());
+		dispatcher.getLogService().close();
+
+		NameNodeService image = new NameNodeService(false);
+		new LogDispatcher(image).getLogService().close();
+		assertNamespace(service, image, "/dir", "/dir/a", "/dir/b");
+	}
+
+	@Test
+	public void checkpointAndTail() throws Exception {
+		NameNodeService service = new NameNodeService(false);
+		LogDispatcher dispatcher = open(service);
+		create(dispatcher, "/dir", CrailNodeType.DIRECTORY);
+		create(dispatcher, "/dir/a", CrailNodeType.DATAFILE);
+		dispatcher.getLogService().checkpoint();
+		create(dispatcher, "/dir/b", CrailNodeType.DATAFILE);
+		create(dispatcher, "/c", CrailNodeType.DIRECTORY);
+		dispatcher.removeFile(new RpcRequestMessage.RemoveFileReq(new FileName("/dir/a"), false), new RpcResponseMessage.DeleteFileRes(), new LogResponse());
+		dispatcher.getLogService().close();
+		assertTrue(log.length() > 0);
+
+		NameNodeService image = new NameNodeService(false);
+		new LogDispatcher(image).getLogService().close();
+		assertNamespace(service, image, "/dir", "/dir/b", "/c");
+		assertNull(lookup(image, "/dir/a"));
+	}
+
+	@Test
+	public void tornTail() throws Exception {
+		NameNodeService service = new NameNodeService(false);
+		LogDispatcher dispatcher = open(service);
+		create(dispatcher, "/dir", CrailNodeType.DIRECTORY);
+		create(dispatcher, "/dir/a", CrailNodeType.DATAFILE);
+		dispatcher.getLogService().close();
+		long length = log.length();
+
+		//a record header followed by only part of its payload
+		FileOutputStream stream = new FileOutputStream(log, true);
+		stream.write(new byte[]{0, 0, 0, 64, 1, 2, 3});
+		stream.close();
+
+		NameNodeService image = new NameNodeService(false);
+		dispatcher = new LogDispatcher(image);
+		assertEquals(length, log.length());
+		assertNamespace(service, image, "/dir", "/dir/a");
+		assertEquals(RpcErrors.ERR_OK, create(dispatcher, "/dir/b", CrailNodeType.DATAFILE));
+		dispatcher.getLogService().close();
+
+		NameNodeService restarted = new NameNodeService(false);
+		new LogDispatcher(restarted).getLogService().close();
+		assertNamespace(image, restarted, "/dir", "/dir/a", "/dir/b");
+	}
+
+	@Test
+	public void getBlockLogsAllocations() throws Exception {
+		NameNodeService service = new NameNodeService(false);
+		LogDispatcher dispatcher = open(service);
+		RpcResponseMessage.CreateFileRes created = new RpcResponseMessage.CreateFileRes();
+		dispatcher.createFile(new RpcRequestMessage.CreateFileReq(new FileName("/file"), CrailNodeType.DATAFILE, 0, 0, true), created, new LogResponse());
+		long fd = created.getFile().getFd();
+		long token = created.getFile().getToken();
+		long length = log.length();
+
+		RpcResponseMessage.GetBlockRes block = new RpcResponseMessage.GetBlockRes();
+		assertEquals(RpcErrors.ERR_OK, dispatcher.getBlock(new RpcRequestMessage.GetBlockReq(fd, token, 4096, 8192), block, new LogResponse()));
+		assertTrue(log.length() > length);
+		length = log.length();
+		//neither asking again for the block nor reading it is logged
+		assertEquals(RpcErrors.ERR_OK, dispatcher.getBlock(new RpcRequestMessage.GetBlockReq(fd, token, 4096, 8192), new RpcResponseMessage.GetBlockRes(), new LogResponse()));
+		assertEquals(RpcErrors.ERR_OK, dispatcher.getBlock(new RpcRequestMessage.GetBlockReq(fd, 0, 4096, 8192), new RpcResponseMessage.GetBlockRes(), new LogResponse()));
+		assertEquals(length, log.length());
+		dispatcher.getLogService().close();
+
+		NameNodeService image = new NameNodeService(false);
+		new LogDispatcher(image).getLogService().close();
+		RpcResponseMessage.GetBlockRes restored = new RpcResponseMessage.GetBlockRes();
+		assertEquals(RpcErrors.ERR_OK, image.getBlock(new RpcRequestMessage.GetBlockReq(fd, 0, 4096, 8192), restored, new LogResponse()));
+		assertEquals(block.getBlockInfo().getLba(), restored.getBlockInfo().getLba());
+	}
+
+	@Test
+	public void concurrentUpdatesReplayInOrder() throws Exception {
+		CrailConstants.NAMENODE_LOG_SYNC = "batch";
+		NameNodeService service = new NameNodeService(false);
+		final LogDispatcher dispatcher = open(service);
+		create(dispatcher, "/dir", CrailNodeType.DIRECTORY);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread threads[] = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < 8; i++) {
+							if (create(dispatcher, "/dir/" + id + "_" + i, CrailNodeType.DATAFILE) != RpcErrors.ERR_OK) {
+								failed.set(true);
+							}
+						}
+					} catch (Exception e) {
+						failed.set(true);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(failed.get());
+		dispatcher.getLogService().close();
+
+		//file descriptors and directory slots are assigned again in the same order
+		NameNodeService image = new NameNodeService(false);
+		new LogDispatcher(image).getLogService().close();
+		for (int t = 0; t < threads.length; t++) {
+			for (int i = 0; i < 8; i++) {
+				assertNamespace(service, image, "/dir/" + t + "_" + i);
+			}
+		}
+	}
+
+	static LogRecord record() throws Exception {
+		LogRecord record = new LogRecord(new RpcRequestMessage.CreateFileReq(new FileName("/file"), CrailNodeType.DATAFILE, 0, 0, true));
+		record.setCommand(RpcProtocol.CMD_CREATE_FILE);
+		return record;
+	}
+
+	//writes records from several threads
+	void writeConcurrently(final LogService logService, final boolean durable) throws Exception {
+		final LogRecord record = record();
+		final int bytes = 4 + record.write(ByteBuffer.allocate(LogRecord.CSIZE));
+		final long start = log.length();
+		final AtomicInteger acknowledged = new AtomicInteger(0);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Thread threads[] = new Thread[8];
+		for (int t = 0; t < threads.length; t++) {
+			threads[t] = new Thread(new Runnable() {
+				public void run() {
+					try {
+						for (int i = 0; i < 100; i++) {
+							logService.writeRecord(record);
+							//every acknowledged record is in the file
+							long count = acknowledged.incrementAndGet();
+							if (durable && log.length() < start + count*bytes) {
+								failed.set(true);
+							}
+						}
+					} catch (Exception e) {
+						failed.set(true);
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertFalse(failed.get());
+		logService.close();
+		assertEquals(start + threads.length*100*bytes, log.length());
+	}
+
+	@Test
+	public void fsyncMode() throws Exception {
+		LogService logService = new LogService();
+		LogRecord record = record();
+		int bytes = 4 + record.write(ByteBuffer.allocate(LogRecord.CSIZE));
+		for (int i = 1; i <= 10; i++) {
+			logService.writeRecord(record);
+			assertEquals(i*bytes, log.length());
+		}
+		logService.close();
+		writeConcurrently(new LogService(), true);
+	}
+
+	@Test
+	public void batchMode() throws Exception {
+		CrailConstants.NAMENODE_LOG_SYNC = "batch";
+		writeConcurrently(new LogService(), true);
+	}
+
+	@Test
+	public void batchModeSmallBuffer() throws Exception {
+		CrailConstants.NAMENODE_LOG_SYNC = "batch";
+		int buffer = CrailConstants.NAMENODE_LOG_BUFFER;
+		CrailConstants.NAMENODE_LOG_BUFFER = 0;
+		try {
+			writeConcurrently(new LogService(), true);
+		} finally {
+			CrailConstants.NAMENODE_LOG_BUFFER = buffer;
+		}
+	}
+
+	@Test
+	public void asyncMode() throws Exception {
+		CrailConstants.NAMENODE_LOG_SYNC = "async";
+		writeConcurrently(new LogService(), false);
+	}
+}
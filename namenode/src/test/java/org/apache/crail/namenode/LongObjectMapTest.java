@@ -0,0 +1,93 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class LongObjectMapTest {
+	//fds of a namenode carry its id in the upper bits
+	private static final long BASE = 3L << 33;
+
+	@Test
+	public void putGetRemove() {
+		LongObjectMap<String> map = new LongObjectMap<>();
+		assertNull(map.put(Long.MIN_VALUE, "a"));
+		assertEquals("a", map.putIfAbsent(Long.MIN_VALUE, "b"));
+		assertNull(map.put(BASE, "c"));
+		assertNull(map.get(0));
+		assertEquals("a", map.remove(Long.MIN_VALUE));
+		assertNull(map.remove(Long.MIN_VALUE));
+		assertEquals(1, map.size());
+		assertEquals("c", map.get(BASE));
+	}
+
+	@Test
+	public void compactAfterRemovals() {
+		LongObjectMap<Integer> map = new LongObjectMap<>(2);
+		for (int i = 0; i < 200000; i++) {
+			map.put(BASE + i, i);
+		}
+		for (int i = 0; i < 200000; i++) {
+			if (i % 1000 != 0) {
+				map.remove(BASE + i);
+			}
+		}
+		HashMap<Long, Integer> entries = new HashMap<>();
+		map.collectEntries(entries);
+		assertEquals(200, entries.size());
+		for (int i = 0; i < 200000; i += 1000) {
+			assertEquals(Integer.valueOf(i), map.get(BASE + i));
+		}
+	}
+
+	@Test
+	public void readersDuringResize() throws Exception {
+		final LongObjectMap<Long> map = new LongObjectMap<>(4);
+		final AtomicBoolean done = new AtomicBoolean(false);
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		map.put(BASE - 1, BASE - 1);
+		Thread reader = new Thread(new Runnable() {
+			public void run() {
+				while (!done.get()) {
+					if (map.get(BASE - 1) == null) {
+						failed.set(true);
+					}
+				}
+			}
+		});
+		reader.start();
+		for (int round = 0; round < 10; round++) {
+			for (long key = BASE; key < BASE + 50000; key++) {
+				map.put(key, key);
+			}
+			for (long key = BASE; key < BASE + 50000; key++) {
+				assertEquals(Long.valueOf(key), map.remove(key));
+			}
+		}
+		done.set(true);
+		reader.join();
+		assertFalse(failed.get());
+		assertEquals(1, map.size());
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.CrailPlacementPolicy;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcListDirectory;
+import org.apache.crail.rpc.RpcNameNodeService;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class NameNodeServiceTest {
+	private RpcNameNodeService[] services;
+
+	@Before
+	public void init() throws Exception {
+		CrailConstants.NAMENODE_ADDRESS = "crail://localhost:9060?id=0&size=1";
+		CrailConstants.BLOCK_SIZE = 4096;
+		services = new RpcNameNodeService[]{ new NameNodeService(false), new OffHeapNameNodeService(false) };
+		BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, 1024*4096, 0);
+		for (RpcNameNodeService service : services) {
+			assertEquals(RpcErrors.ERR_OK, service.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), new LogResponse()));
+		}
+	}
+
+	static RpcResponseMessage.CreateFileRes create(RpcNameNodeService service, String path, CrailNodeType type) throws Exception {
+		RpcResponseMessage.CreateFileRes response = new RpcResponseMessage.CreateFileRes();
+		assertEquals(path, RpcErrors.ERR_OK, service.createFile(new RpcRequestMessage.CreateFileReq(new FileName(path), type, 0, 0, true), response, new LogResponse()));
+		return response;
+	}
+
+	@Test
+	public void relativeNames() throws Exception {
+		for (RpcNameNodeService service : services) {
+			FileInfo dir = create(service, "/dir", CrailNodeType.DIRECTORY).getFile();
+			FileInfo file = create(service, "/dir/file", CrailNodeType.DATAFILE).getFile();
+
+			//relative names resolve from the base directory and see the same nodes as absolute ones
+			RpcResponseMessage.CreateFileRes created = new RpcResponseMessage.CreateFileRes();
+			assertEquals(RpcErrors.ERR_OK, service.createFile(new RpcRequestMessage.CreateFileReq(new FileName(dir.getFd(), "/sub"), CrailNodeType.DIRECTORY, 0, 0, true), created, new LogResponse()));
+			assertEquals(dir.getFd(), created.getParent().getFd());
+			long sub = created.getFile().getFd();
+			assertEquals(RpcErrors.ERR_OK, service.createFile(new RpcRequestMessage.CreateFileReq(new FileName(dir.getFd(), "/sub/nested"), CrailNodeType.DATAFILE, 0, 0, true), created, new LogResponse()));
+			assertEquals(sub, created.getParent().getFd());
+			long nested = created.getFile().getFd();
+			assertEquals(nested, lookup(service, new FileName("/dir/sub/nested")));
+			assertEquals(file.getFd(), lookup(service, new FileName(dir.getFd(), "/file")));
+			assertEquals(nested, lookup(service, new FileName(sub, "/nested")));
+			assertEquals(RpcErrors.ERR_FILE_EXISTS, service.createFile(new RpcRequestMessage.CreateFileReq(new FileName(dir.getFd(), "/file"), CrailNodeType.DATAFILE, 0, 0, true), created, new LogResponse()));
+
+			RpcResponseMessage.DeleteFileRes deleted = new RpcResponseMessage.DeleteFileRes();
+			assertEquals(RpcErrors.ERR_OK, service.removeFile(new RpcRequestMessage.RemoveFileReq(new FileName(dir.getFd(), "/file"), false), deleted, new LogResponse()));
+			assertEquals(file.getFd(), deleted.getFile().getFd());
+			assertEquals(dir.getFd(), deleted.getParent().getFd());
+			assertEquals(-1, lookup(service, new FileName("/dir/file")));
+			assertEquals(-1, lookup(service, new FileName(dir.getFd(), "/file")));
+
+			//a base that is a file, unknown or removed from the tree resolves nothing
+			FileInfo other = create(service, "/other", CrailNodeType.DATAFILE).getFile();
+			assertEquals(-1, lookup(service, new FileName(other.getFd(), "/file")));
+			assertEquals(-1, lookup(service, new FileName(other.getFd() + 1000, "/file")));
+			assertEquals(RpcErrors.ERR_OK, service.removeFile(new RpcRequestMessage.RemoveFileReq(new FileName("/dir/sub"), true), deleted, new LogResponse()));
+			assertEquals(-1, lookup(service, new FileName(sub, "/nested")));
+			assertEquals(RpcErrors.ERR_PARENT_MISSING, service.createFile(new RpcRequestMessage.CreateFileReq(new FileName(sub, "/again"), CrailNodeType.DATAFILE, 0, 0, true), created, new LogResponse()));
+			assertEquals(-1, lookup(service, new FileName("/dir/sub/again")));
+		}
+	}
+
+	@Test
+	public void pagedListing() throws Exception {
+		CrailConstants.NAMENODE_LISTING = 255;
+		try {
+			NameNodeService service = new NameNodeService(false);
+			BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, 1024*4096, 0);
+			service.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), new LogResponse());
+			long dir = create(service, "/dir", CrailNodeType.DIRECTORY).getFile().getFd();
+			HashSet<String> expected = new HashSet<>();
+			for (int i = 0; i < 50; i++) {
+				create(service, "/dir/f" + i, CrailNodeType.DATAFILE);
+				expected.add("f" + i);
+			}
+			//long names end a page by bytes before it has MAX_ENTRIES entries
+			String padding = new String(new char[200]).replace('\0', 'x');
+			for (int i = 0; i < 10; i++) {
+				create(service, "/dir/" + padding + i, CrailNodeType.DATAFILE);
+				expected.add(padding + i);
+			}
+			RpcResponseMessage.CreateFileRes hidden = new RpcResponseMessage.CreateFileRes();
+			assertEquals(RpcErrors.ERR_OK, service.createFile(new RpcRequestMessage.CreateFileReq(new FileName("/dir/hidden"), CrailNodeType.DATAFILE, 0, 0, false), hidden, new LogResponse()));
+
+			assertEquals(expected, list(service, dir, RpcListDirectory.MAX_ENTRIES, null));
+			assertEquals(expected, list(service, dir, 7, null));
+
+			//children removed while paging are skipped, the cursor stays valid when its child is removed
+			HashSet<String> removed = new HashSet<>();
+			HashSet<String> listed = list(service, dir, 10, removed);
+			assertEquals(2, removed.size());
+			for (String name : listed) {
+				assertTrue(expected.contains(name));
+			}
+			expected.removeAll(removed);
+			assertTrue(listed.containsAll(expected));
+
+			RpcResponseMessage.ListDirectoryRes page = new RpcResponseMessage.ListDirectoryRes();
+			long file = create(service, "/file", CrailNodeType.DATAFILE).getFile().getFd();
+			assertEquals(RpcErrors.ERR_FILE_IS_NOT_DIR, service.listDirectory(new RpcRequestMessage.ListDirectoryReq(file, RpcListDirectory.FIRST, 10), page, new LogResponse()));
+			assertEquals(RpcErrors.ERR_FILE_NOT_FOUND, service.listDirectory(new RpcRequestMessage.ListDirectoryReq(file + 1000, RpcListDirectory.FIRST, 10), page, new LogResponse()));
+			for (RpcNameNodeService other : services) {
+				assertEquals(RpcErrors.ERR_LISTING_UNSUPPORTED, other.listDirectory(new RpcRequestMessage.ListDirectoryReq(0, RpcListDirectory.FIRST, 10), page, new LogResponse()));
+			}
+		} finally {
+			CrailConstants.NAMENODE_LISTING = 0;
+		}
+	}
+
+	//lists all pages, if removed is given the first child of the second page and the last child of the first page are removed after the first page
+	private static HashSet<String> list(RpcNameNodeService service, long fd, int count, HashSet<String> removed) throws Exception {
+		HashSet<String> names = new HashSet<>();
+		RpcResponseMessage.ListDirectoryRes page = new RpcResponseMessage.ListDirectoryRes();
+		long cursor = RpcListDirectory.FIRST;
+		for (int pages = 0; cursor != RpcListDirectory.END; pages++) {
+			assertEquals(RpcErrors.ERR_OK, service.listDirectory(new RpcRequestMessage.ListDirectoryReq(fd, cursor, count), page, new LogResponse()));
+			assertTrue(page.getEntryCount() <= count);
+			assertTrue(page.getEntryCount() > 0 || page.getCursor() == RpcListDirectory.END);
+			int bytes = 0;
+			for (int i = 0; i < page.getEntryCount(); i++) {
+				assertTrue(names.add(page.getName(i)));
+				assertEquals(page.getEntry(i).getFd(), lookup(service, new FileName("/dir/" + page.getName(i))));
+				bytes += RpcResponseMessage.ListDirectoryRes.ENTRY_SIZE + page.getName(i).length();
+			}
+			assertTrue(bytes <= RpcListDirectory.MAX_BYTES);
+			if (page.getCursor() != RpcListDirectory.END && page.getEntryCount() < count) {
+				//only the byte limit ends a page early
+				assertTrue(bytes + RpcResponseMessage.ListDirectoryRes.ENTRY_SIZE > RpcListDirectory.MAX_BYTES - 255);
+			}
+			if (removed != null && pages == 0) {
+				String last = page.getName(page.getEntryCount() - 1);
+				RpcResponseMessage.ListDirectoryRes next = new RpcResponseMessage.ListDirectoryRes();
+				service.listDirectory(new RpcRequestMessage.ListDirectoryReq(fd, page.getCursor(), 1), next, new LogResponse());
+				String first = next.getName(0);
+				for (String name : new String[]{ last, first }) {
+					assertEquals(RpcErrors.ERR_OK, service.removeFile(new RpcRequestMessage.RemoveFileReq(new FileName("/dir/" + name), false), new RpcResponseMessage.DeleteFileRes(), new LogResponse()));
+					removed.add(name);
+				}
+				names.remove(first);
+			}
+			cursor = page.getCursor();
+		}
+		return names;
+	}
+
+	//returns the fd the name resolves to, or -1
+	private static long lookup(RpcNameNodeService service, FileName name) throws Exception {
+		RpcResponseMessage.GetFileRes response = new RpcResponseMessage.GetFileRes();
+		if (service.getFile(new RpcRequestMessage.GetFileReq(name, false), response, new LogResponse()) != RpcErrors.ERR_OK) {
+			return -1;
+		}
+		return response.getFile().getFd();
+	}
+
+	@Test
+	public void blockMapPages() throws Exception {
+		for (RpcNameNodeService service : services) {
+			FileInfo file = create(service, "/file", CrailNodeType.DATAFILE).getFile();
+			RpcResponseMessage.LeaseBlocksRes leased = new RpcResponseMessage.LeaseBlocksRes();
+			long[] lbas = new long[20];
+			for (int i = 0; i < lbas.length; i += leased.getBlockCount()) {
+				assertEquals(RpcErrors.ERR_OK, service.leaseBlocks(new RpcRequestMessage.LeaseBlocksReq(file.getFd(), file.getToken(), i*4096L, 0, lbas.length - i), leased, new LogResponse()));
+				for (int j = 0; j < leased.getBlockCount(); j++) {
+					lbas[i + j] = leased.getBlockInfo(j).getLba();
+				}
+			}
+
+			//pages hold at most MAX_BLOCKS consecutive blocks and end with the file
+			RpcResponseMessage.LeaseBlocksRes page = new RpcResponseMessage.LeaseBlocksRes();
+			for (int i = 0; i < lbas.length; i += page.getBlockCount()) {
+				assertEquals(RpcErrors.ERR_OK, service.getBlocks(new RpcRequestMessage.GetBlocksReq(file.getFd(), i*4096L + 100, 1000), page, new LogResponse()));
+				assertEquals(Math.min(RpcResponseMessage.LeaseBlocksRes.MAX_BLOCKS, lbas.length - i), page.getBlockCount());
+				assertEquals(0, page.getAllocated());
+				for (int j = 0; j < page.getBlockCount(); j++) {
+					assertEquals(lbas[i + j], page.getBlockInfo(j).getLba());
+				}
+			}
+			assertEquals(RpcErrors.ERR_CAPACITY_EXCEEDED, service.getBlocks(new RpcRequestMessage.GetBlocksReq(file.getFd(), lbas.length*4096L, 8), page, new LogResponse()));
+			assertEquals(RpcErrors.ERR_POSITION_NEGATIV, service.getBlocks(new RpcRequestMessage.GetBlocksReq(file.getFd(), -1, 8), page, new LogResponse()));
+			assertEquals(RpcErrors.ERR_FILE_NOT_OPEN, service.getBlocks(new RpcRequestMessage.GetBlocksReq(file.getFd() + 1000, 0, 8), page, new LogResponse()));
+		}
+	}
+
+	@Test
+	public void locationPages() throws Exception {
+		for (RpcNameNodeService service : services) {
+			for (int port = 1; port <= 12; port++) {
+				BlockInfo region = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{10, 0, 0, 1}, port), 0, 0, 16*4096, 0);
+				service.setBlock(new RpcRequestMessage.SetBlockReq(region), new RpcResponseMessage.VoidRes(), new LogResponse());
+			}
+			RpcResponseMessage.CreateFileRes created = new RpcResponseMessage.CreateFileRes();
+			service.createFile(new RpcRequestMessage.CreateFileReq(new FileName("/file"), CrailNodeType.DATAFILE, 0, 0, CrailPlacementPolicy.ROUNDROBIN.getLabel(), true), created, new LogResponse());
+			FileInfo file = created.getFile();
+			long[] dataNodes = new long[40];
+			RpcResponseMessage.GetBlockRes block = new RpcResponseMessage.GetBlockRes();
+			for (int i = 0; i < dataNodes.length; i++) {
+				assertEquals(RpcErrors.ERR_OK, service.getBlock(new RpcRequestMessage.GetBlockReq(file.getFd(), file.getToken(), i*4096L, (i + 1)*4096L), block, new LogResponse()));
+				dataNodes[i] = block.getBlockInfo().getDnInfo().key();
+			}
+
+			//a page ends before the block which would add a datanode beyond the table size
+			RpcResponseMessage.GetLocationsRes page = new RpcResponseMessage.GetLocationsRes();
+			int resolved = 0;
+			int pages = 0;
+			while (resolved < dataNodes.length) {
+				assertEquals(RpcErrors.ERR_OK, service.getLocations(new RpcRequestMessage.GetLocationsReq(new FileName("/file"), resolved*4096L, dataNodes.length - resolved), page, new LogResponse()));
+				HashSet<Long> distinct = new HashSet<>();
+				int expected = 0;
+				while (resolved + expected < dataNodes.length && (distinct.contains(dataNodes[resolved + expected]) || distinct.size() < RpcResponseMessage.GetLocationsRes.MAX_DATANODES)) {
+					distinct.add(dataNodes[resolved + expected]);
+					expected++;
+				}
+				assertEquals(expected, page.getBlockCount());
+				for (int i = 0; i < page.getBlockCount(); i++) {
+					assertEquals(dataNodes[resolved + i], page.getDataNode(i).key());
+				}
+				resolved += page.getBlockCount();
+				pages++;
+			}
+			assertTrue(pages > 1);
+			assertEquals(RpcErrors.ERR_OFFSET_TOO_LARGE, service.getLocations(new RpcRequestMessage.GetLocationsReq(new FileName("/file"), 40*4096L, 8), page, new LogResponse()));
+		}
+	}
+}
@@ -27,14 +27,21 @@ import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.metadata.FileInfo;
 import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcBatch;
 import org.apache.crail.rpc.RpcConnection;
 import org.apache.crail.rpc.RpcCreateFile;
 import org.apache.crail.rpc.RpcDeleteFile;
+import org.apache.crail.rpc.RpcEncoding;
 import org.apache.crail.rpc.RpcFuture;
 import org.apache.crail.rpc.RpcGetBlock;
+import org.apache.crail.rpc.RpcGetBlocks;
 import org.apache.crail.rpc.RpcGetDataNode;
 import org.apache.crail.rpc.RpcGetFile;
 import org.apache.crail.rpc.RpcGetLocation;
+import org.apache.crail.rpc.RpcGetLocations;
+import org.apache.crail.rpc.RpcLeaseBlocks;
+import org.apache.crail.rpc.RpcListDirectory;
+import org.apache.crail.rpc.RpcOperation;
 import org.apache.crail.rpc.RpcPing;
 import org.apache.crail.rpc.RpcRemoveDataNode;
 import org.apache.crail.rpc.RpcProtocol;
@@ -54,19 +61,21 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 	
 	private DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> rpcEndpoint;
 	private DaRPCStream<DaRPCNameNodeRequest, DaRPCNameNodeResponse> stream;
+	private RpcEncoding encoding;
 	
 	public DaRPCNameNodeConnection(DaRPCClientEndpoint<DaRPCNameNodeRequest, DaRPCNameNodeResponse> endpoint) throws IOException {
 		this.rpcEndpoint = endpoint;
 		this.stream = endpoint.createStream();
+		this.encoding = RpcEncoding.get(CrailConstants.RPC_VERSION);
 	}	
 	
 	@Override
-	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) throws IOException {
+	public RpcFuture<RpcCreateFile> createFile(FileName filename, CrailNodeType type, int storageClass, int locationClass, int placement, boolean enumerable) throws IOException {
 		if (CrailConstants.DEBUG){
-			LOG.debug("RPC: createFile, fileType " + type + ", storageClass " + storageClass + ", locationClass " + locationClass);
+			LOG.debug("RPC: createFile, fileType " + type + ", storageClass " + storageClass + ", locationClass " + locationClass + ", placement " + placement);
 		}
 		
-		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, type, storageClass, locationClass, enumerable);
+		RpcRequestMessage.CreateFileReq createFileReq = new RpcRequestMessage.CreateFileReq(filename, type, storageClass, locationClass, placement, enumerable);
 		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(createFileReq);
 		request.setCommand(RpcProtocol.CMD_CREATE_FILE);
 		
@@ -180,6 +189,46 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 		return nameNodeFuture;	
 	}
 	
+	@Override
+	public DaRPCNameNodeFuture<RpcLeaseBlocks> leaseBlocks(long fd, long token, long position, long capacity, int count) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: leaseBlocks, fd " + fd + ", token " + token + ", position " + position + ", capacity " + capacity + ", count " + count);
+		}
+		
+		RpcRequestMessage.LeaseBlocksReq leaseBlocksReq = new RpcRequestMessage.LeaseBlocksReq(fd, token, position, capacity, count);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(leaseBlocksReq);
+		request.setCommand(RpcProtocol.CMD_LEASE_BLOCKS);
+		
+		RpcResponseMessage.LeaseBlocksRes leaseBlocksRes = new RpcResponseMessage.LeaseBlocksRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(leaseBlocksRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcLeaseBlocks> nameNodeFuture = new DaRPCNameNodeFuture<RpcLeaseBlocks>(future, leaseBlocksRes);
+		
+		return nameNodeFuture;	
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcGetBlocks> getBlocks(long fd, long position, int count) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getBlocks, fd " + fd + ", position " + position + ", count " + count);
+		}
+		
+		RpcRequestMessage.GetBlocksReq getBlocksReq = new RpcRequestMessage.GetBlocksReq(fd, position, count);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getBlocksReq);
+		request.setCommand(RpcProtocol.CMD_GET_BLOCKS);
+		
+		RpcResponseMessage.LeaseBlocksRes getBlocksRes = new RpcResponseMessage.LeaseBlocksRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getBlocksRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcGetBlocks> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetBlocks>(future, getBlocksRes);
+		
+		return nameNodeFuture;	
+	}
+	
 	@Override
 	public DaRPCNameNodeFuture<RpcGetLocation> getLocation(FileName fileName, long position) throws IOException {
 		if (CrailConstants.DEBUG){
@@ -200,6 +249,66 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 		return nameNodeFuture;			
 	}	
 	
+	@Override
+	public DaRPCNameNodeFuture<RpcGetLocations> getLocations(FileName fileName, long position, int count) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: getLocations, position " + position + ", count " + count);
+		}
+		
+		RpcRequestMessage.GetLocationsReq getLocationsReq = new RpcRequestMessage.GetLocationsReq(fileName, position, count);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(getLocationsReq);
+		request.setCommand(RpcProtocol.CMD_GET_LOCATIONS);
+
+		RpcResponseMessage.GetLocationsRes getLocationsRes = new RpcResponseMessage.GetLocationsRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(getLocationsRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcGetLocations> nameNodeFuture = new DaRPCNameNodeFuture<RpcGetLocations>(future, getLocationsRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcListDirectory> listDirectory(long fd, long cursor, int count) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: listDirectory, fd " + fd + ", cursor " + cursor + ", count " + count);
+		}
+		
+		RpcRequestMessage.ListDirectoryReq listDirectoryReq = new RpcRequestMessage.ListDirectoryReq(fd, cursor, count);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(listDirectoryReq);
+		request.setCommand(RpcProtocol.CMD_LIST_DIRECTORY);
+
+		RpcResponseMessage.ListDirectoryRes listDirectoryRes = new RpcResponseMessage.ListDirectoryRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(listDirectoryRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcListDirectory> nameNodeFuture = new DaRPCNameNodeFuture<RpcListDirectory>(future, listDirectoryRes);
+		
+		return nameNodeFuture;
+	}
+	
+	@Override
+	public DaRPCNameNodeFuture<RpcBatch> batch(RpcOperation[] operations) throws IOException {
+		if (CrailConstants.DEBUG){
+			LOG.debug("RPC: batch, operations " + operations.length);
+		}
+		
+		RpcRequestMessage.BatchReq batchReq = new RpcRequestMessage.BatchReq(operations);
+		DaRPCNameNodeRequest request = new DaRPCNameNodeRequest(batchReq);
+		request.setCommand(RpcProtocol.CMD_BATCH);
+
+		RpcResponseMessage.BatchRes batchRes = new RpcResponseMessage.BatchRes();
+		DaRPCNameNodeResponse response = new DaRPCNameNodeResponse(batchRes);
+		
+		DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = issueRPC(request, response);
+		
+		DaRPCNameNodeFuture<RpcBatch> nameNodeFuture = new DaRPCNameNodeFuture<RpcBatch>(future, batchRes);
+		
+		return nameNodeFuture;
+	}
+	
 	@Override
 	public DaRPCNameNodeFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
 		if (CrailConstants.DEBUG){
@@ -297,6 +406,8 @@ public class DaRPCNameNodeConnection implements RpcConnection {
 	}
 
 	private DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> issueRPC(DaRPCNameNodeRequest request, DaRPCNameNodeResponse response) throws IOException{
+		request.setEncoding(encoding);
+		response.setEncoding(encoding);
 		try {
 			DaRPCFuture<DaRPCNameNodeRequest, DaRPCNameNodeResponse> future = stream.request(request, response, false);
 			return future;
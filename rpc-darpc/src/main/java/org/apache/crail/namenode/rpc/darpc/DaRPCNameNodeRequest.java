@@ -21,6 +21,7 @@ package org.apache.crail.namenode.rpc.darpc;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+import org.apache.crail.rpc.RpcEncoding;
 import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcRequestMessage;
 import org.apache.crail.utils.CrailUtils;
@@ -30,17 +31,23 @@ import com.ibm.darpc.DaRPCMessage;
 
 public class DaRPCNameNodeRequest implements DaRPCMessage {
 	public static final Logger LOG = CrailUtils.getLogger();
-	public static final int CSIZE = 4 + Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE);
+	public static final int CSIZE = 4 + Math.max(Math.max(RpcRequestMessage.SetFileReq.CSIZE, RpcRequestMessage.RenameFileReq.CSIZE), RpcRequestMessage.BatchReq.CSIZE);
 	
 	private short cmd;
 	private short type;
+	private RpcEncoding encoding = RpcEncoding.FIXED;
 	private RpcRequestMessage.CreateFileReq createFileReq;
 	private RpcRequestMessage.GetFileReq fileReq;
 	private RpcRequestMessage.SetFileReq setFileReq;
 	private RpcRequestMessage.RemoveFileReq removeReq;
 	private RpcRequestMessage.RenameFileReq renameFileReq;
 	private RpcRequestMessage.GetBlockReq getBlockReq;
+	private RpcRequestMessage.LeaseBlocksReq leaseBlocksReq;
+	private RpcRequestMessage.GetBlocksReq getBlocksReq;
 	private RpcRequestMessage.GetLocationReq getLocationReq;
+	private RpcRequestMessage.GetLocationsReq getLocationsReq;
+	private RpcRequestMessage.ListDirectoryReq listDirectoryReq;
+	private RpcRequestMessage.BatchReq batchReq;
 	private RpcRequestMessage.SetBlockReq setBlockReq;
 	private RpcRequestMessage.GetDataNodeReq getDataNodeReq;
 	private RpcRequestMessage.DumpNameNodeReq dumpNameNodeReq;
@@ -56,7 +63,12 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		this.removeReq = new RpcRequestMessage.RemoveFileReq();
 		this.renameFileReq = new RpcRequestMessage.RenameFileReq();
 		this.getBlockReq = new RpcRequestMessage.GetBlockReq();
+		this.leaseBlocksReq = new RpcRequestMessage.LeaseBlocksReq();
+		this.getBlocksReq = new RpcRequestMessage.GetBlocksReq();
 		this.getLocationReq = new RpcRequestMessage.GetLocationReq();
+		this.getLocationsReq = new RpcRequestMessage.GetLocationsReq();
+		this.listDirectoryReq = new RpcRequestMessage.ListDirectoryReq();
+		this.batchReq = new RpcRequestMessage.BatchReq();
 		this.setBlockReq = new RpcRequestMessage.SetBlockReq();
 		this.dumpNameNodeReq = new RpcRequestMessage.DumpNameNodeReq();
 		this.pingNameNodeReq = new RpcRequestMessage.PingNameNodeReq();
@@ -93,11 +105,36 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		this.getBlockReq = message;
 	}
 	
+	public DaRPCNameNodeRequest(RpcRequestMessage.LeaseBlocksReq message) {
+		this.type = message.getType();
+		this.leaseBlocksReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetBlocksReq message) {
+		this.type = message.getType();
+		this.getBlocksReq = message;
+	}
+	
 	public DaRPCNameNodeRequest(RpcRequestMessage.GetLocationReq message) {
 		this.type = message.getType();
 		this.getLocationReq = message;
 	}
 	
+	public DaRPCNameNodeRequest(RpcRequestMessage.GetLocationsReq message) {
+		this.type = message.getType();
+		this.getLocationsReq = message;
+	}
+
+	public DaRPCNameNodeRequest(RpcRequestMessage.ListDirectoryReq message) {
+		this.type = message.getType();
+		this.listDirectoryReq = message;
+	}
+	
+	public DaRPCNameNodeRequest(RpcRequestMessage.BatchReq message) {
+		this.type = message.getType();
+		this.batchReq = message;
+	}
+	
 	public DaRPCNameNodeRequest(RpcRequestMessage.SetBlockReq message) {
 		this.type = message.getType();
 		this.setBlockReq = message;
@@ -132,46 +169,63 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 	}
 	
 	public int write(ByteBuffer buffer) throws IOException{
-		buffer.putShort(cmd);
+		//the high byte of the command carries the encoding version, older clients always send zero
+		buffer.putShort((short) ((encoding.getVersion() << 8) | cmd));
 		buffer.putShort(type);
 		
 		int written = 4;
 		switch(type){
 		case RpcProtocol.REQ_CREATE_FILE:
-			written += createFileReq.write(buffer);
+			written += createFileReq.write(buffer, encoding);
 			break;		
 		case RpcProtocol.REQ_GET_FILE:
-			written += fileReq.write(buffer);
+			written += fileReq.write(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_SET_FILE:
-			written += setFileReq.write(buffer);
+			written += setFileReq.write(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_REMOVE_FILE:
-			written += removeReq.write(buffer);
+			written += removeReq.write(buffer, encoding);
 			break;			
 		case RpcProtocol.REQ_RENAME_FILE:
-			written += renameFileReq.write(buffer);
+			written += renameFileReq.write(buffer, encoding);
+			written += renameFileReq.writeName(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_GET_BLOCK:
-			written += getBlockReq.write(buffer);
+			written += getBlockReq.write(buffer, encoding);
+			break;
+		case RpcProtocol.REQ_LEASE_BLOCKS:
+			written += leaseBlocksReq.write(buffer, encoding);
+			break;
+		case RpcProtocol.REQ_GET_BLOCKS:
+			written += getBlocksReq.write(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_GET_LOCATION:
-			written += getLocationReq.write(buffer);
+			written += getLocationReq.write(buffer, encoding);
+			break;			
+		case RpcProtocol.REQ_GET_LOCATIONS:
+			written += getLocationsReq.write(buffer, encoding);
+			break;			
+		case RpcProtocol.REQ_LIST_DIRECTORY:
+			written += listDirectoryReq.write(buffer, encoding);
 			break;			
+		case RpcProtocol.REQ_BATCH:
+			written += batchReq.write(buffer, encoding);
+			break;
 		case RpcProtocol.REQ_SET_BLOCK:
-			written += setBlockReq.write(buffer);
+			written += setBlockReq.write(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_GET_DATANODE:
-			written += getDataNodeReq.write(buffer);
+			written += getDataNodeReq.write(buffer, encoding);
 			break;				
 		case RpcProtocol.REQ_DUMP_NAMENODE:
-			written += dumpNameNodeReq.write(buffer);
+			written += dumpNameNodeReq.write(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_PING_NAMENODE:
-			written += pingNameNodeReq.write(buffer);
+			written += pingNameNodeReq.write(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_REMOVE_DATANODE:
-			written += removeDataNodeReq.write(buffer);
+			written += removeDataNodeReq.write(buffer, encoding);
 			break;
 		}
 		
@@ -179,49 +233,75 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 	}
 	
 	public void update(ByteBuffer buffer) throws IOException {
-		this.cmd = buffer.getShort();
+		short header = buffer.getShort();
+		this.cmd = (short) (header & 0xFF);
+		this.encoding = RpcEncoding.get((header >> 8) & 0xFF);
 		this.type = buffer.getShort();
 		
 		switch(type){
 		case RpcProtocol.REQ_CREATE_FILE:
-			createFileReq.update(buffer);
+			createFileReq.update(buffer, encoding);
 			break;		
 		case RpcProtocol.REQ_GET_FILE:
-			fileReq.update(buffer);
+			fileReq.update(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_SET_FILE:
-			setFileReq.update(buffer);
+			setFileReq.update(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_REMOVE_FILE:
-			removeReq.update(buffer);
+			removeReq.update(buffer, encoding);
 			break;			
 		case RpcProtocol.REQ_RENAME_FILE:
-			renameFileReq.update(buffer);
+			renameFileReq.update(buffer, encoding);
+			renameFileReq.updateName(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_GET_BLOCK:
-			getBlockReq.update(buffer);
+			getBlockReq.update(buffer, encoding);
+			break;
+		case RpcProtocol.REQ_LEASE_BLOCKS:
+			leaseBlocksReq.update(buffer, encoding);
+			break;
+		case RpcProtocol.REQ_GET_BLOCKS:
+			getBlocksReq.update(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_GET_LOCATION:
-			getLocationReq.update(buffer);
+			getLocationReq.update(buffer, encoding);
+			break;			
+		case RpcProtocol.REQ_GET_LOCATIONS:
+			getLocationsReq.update(buffer, encoding);
+			break;			
+		case RpcProtocol.REQ_LIST_DIRECTORY:
+			listDirectoryReq.update(buffer, encoding);
 			break;			
+		case RpcProtocol.REQ_BATCH:
+			batchReq.update(buffer, encoding);
+			break;
 		case RpcProtocol.REQ_SET_BLOCK:
-			setBlockReq.update(buffer);
+			setBlockReq.update(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_GET_DATANODE:
-			getDataNodeReq.update(buffer);
+			getDataNodeReq.update(buffer, encoding);
 			break;				
 		case RpcProtocol.REQ_DUMP_NAMENODE:
-			dumpNameNodeReq.update(buffer);
+			dumpNameNodeReq.update(buffer, encoding);
 			break;		
 		case RpcProtocol.REQ_PING_NAMENODE:
-			pingNameNodeReq.update(buffer);
+			pingNameNodeReq.update(buffer, encoding);
 			break;
 		case RpcProtocol.REQ_REMOVE_DATANODE:
-			removeDataNodeReq.update(buffer);
+			removeDataNodeReq.update(buffer, encoding);
 			break;
 		}
 	}
 
+	public void setEncoding(RpcEncoding encoding) {
+		this.encoding = encoding;
+	}
+	
+	public RpcEncoding getEncoding() {
+		return encoding;
+	}
+
 	public short getCmd() {
 		return cmd;
 	}
@@ -254,9 +334,28 @@ public class DaRPCNameNodeRequest implements DaRPCMessage {
 		return getBlockReq;
 	}
 	
+	public RpcRequestMessage.LeaseBlocksReq leaseBlocks() {
+		return leaseBlocksReq;
+	}
+	
+	public RpcRequestMessage.GetBlocksReq getBlocks() {
+		return getBlocksReq;
+	}
+	
 	public RpcRequestMessage.GetLocationReq getLocation() {
 		return getLocationReq;
 	}	
+	public RpcRequestMessage.GetLocationsReq getLocations() {
+		return getLocationsReq;
+	}	
+
+	public RpcRequestMessage.ListDirectoryReq listDirectory() {
+		return listDirectoryReq;
+	}	
+
+	public RpcRequestMessage.BatchReq batch() {
+		return batchReq;
+	}
 
 	public RpcRequestMessage.SetBlockReq setBlock() {
 		return setBlockReq;
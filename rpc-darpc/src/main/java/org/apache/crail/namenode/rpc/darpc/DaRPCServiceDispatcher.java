@@ -47,6 +47,7 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 	private AtomicLong renameOps;
 	private AtomicLong getOps;
 	private AtomicLong locationOps;
+	private AtomicLong batchOps;
 	private AtomicLong errorOps;
 	
 	public DaRPCServiceDispatcher(RpcNameNodeService service){
@@ -60,6 +61,7 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 		this.renameOps = new AtomicLong(0);
 		this.getOps = new AtomicLong(0);
 		this.locationOps = new AtomicLong(0);
+		this.batchOps = new AtomicLong(0);
 		this.errorOps = new AtomicLong(0);
 	}
 	
@@ -70,6 +72,7 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 		try {
 			response.setType(RpcProtocol.responseTypes[request.getCmd()]);
 			response.setError((short) 0);
+			response.setEncoding(request.getEncoding());
 			switch(request.getCmd()) {
 			case RpcProtocol.CMD_CREATE_FILE:
 				this.totalOps.incrementAndGet();
@@ -101,11 +104,36 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 				this.getOps.incrementAndGet();
 				error = service.getBlock(request.getBlock(), response.getBlock(), response);
 				break;
+			case RpcProtocol.CMD_LEASE_BLOCKS:
+				this.totalOps.incrementAndGet();
+				this.getOps.incrementAndGet();
+				error = service.leaseBlocks(request.leaseBlocks(), response.leaseBlocks(), response);
+				break;
+			case RpcProtocol.CMD_GET_BLOCKS:
+				this.totalOps.incrementAndGet();
+				this.getOps.incrementAndGet();
+				error = service.getBlocks(request.getBlocks(), response.leaseBlocks(), response);
+				break;
 			case RpcProtocol.CMD_GET_LOCATION:
 				this.totalOps.incrementAndGet();
 				this.locationOps.incrementAndGet();
 				error = service.getLocation(request.getLocation(), response.getLocation(), response);
 				break;				
+			case RpcProtocol.CMD_GET_LOCATIONS:
+				this.totalOps.incrementAndGet();
+				this.locationOps.incrementAndGet();
+				error = service.getLocations(request.getLocations(), response.getLocations(), response);
+				break;
+			case RpcProtocol.CMD_LIST_DIRECTORY:
+				this.totalOps.incrementAndGet();
+				this.getOps.incrementAndGet();
+				error = service.listDirectory(request.listDirectory(), response.listDirectory(), response);
+				break;
+			case RpcProtocol.CMD_BATCH:
+				this.totalOps.incrementAndGet();
+				this.batchOps.incrementAndGet();
+				error = service.batch(request.batch(), response.batch(), response);
+				break;
 			case RpcProtocol.CMD_SET_BLOCK:
 				error = service.setBlock(request.setBlock(), response.getVoid(), response);
 				break;
@@ -156,6 +184,7 @@ public class DaRPCServiceDispatcher extends DaRPCNameNodeProtocol implements DaR
 		LOG.info("renameOps " + renameOps.get());
 		LOG.info("getOps " + getOps.get());
 		LOG.info("locationOps " + locationOps.get());
+		LOG.info("batchOps " + batchOps.get());
 		
 		return RpcErrors.ERR_OK;
 	}	
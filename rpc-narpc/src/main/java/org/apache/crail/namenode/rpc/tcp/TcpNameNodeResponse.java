@@ -21,6 +21,7 @@ package org.apache.crail.namenode.rpc.tcp;
 import java.nio.ByteBuffer;
 
 import org.apache.crail.rpc.RpcNameNodeState;
+import org.apache.crail.rpc.RpcEncoding;
 import org.apache.crail.rpc.RpcProtocol;
 import org.apache.crail.rpc.RpcResponseMessage;
 import org.apache.crail.utils.CrailUtils;
@@ -30,17 +31,22 @@ import com.ibm.narpc.NaRPCMessage;
 
 public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNodeState, NaRPCMessage {
 	public static final Logger LOG = CrailUtils.getLogger();
-	public static final int CSIZE = 2*Short.BYTES + Math.max(RpcResponseMessage.GetBlockRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE);
+	public static final int CSIZE = 2*Short.BYTES + Math.max(Math.max(RpcResponseMessage.LeaseBlocksRes.CSIZE, RpcResponseMessage.RenameRes.CSIZE), Math.max(RpcResponseMessage.BatchRes.CSIZE, RpcResponseMessage.ListDirectoryRes.CSIZE));
 	
 	private short type;
 	private short error;
+	private RpcEncoding encoding = RpcEncoding.FIXED;
 	private RpcResponseMessage.VoidRes voidRes;
 	private RpcResponseMessage.CreateFileRes createFileRes;
 	private RpcResponseMessage.GetFileRes getFileRes;
 	private RpcResponseMessage.DeleteFileRes delFileRes;
 	private RpcResponseMessage.RenameRes renameRes;
 	private RpcResponseMessage.GetBlockRes getBlockRes;
+	private RpcResponseMessage.LeaseBlocksRes leaseBlocksRes;
 	private RpcResponseMessage.GetLocationRes getLocationRes;	
+	private RpcResponseMessage.GetLocationsRes getLocationsRes;
+	private RpcResponseMessage.ListDirectoryRes listDirectoryRes;
+	private RpcResponseMessage.BatchRes batchRes;
 	private RpcResponseMessage.GetDataNodeRes getDataNodeRes;
 	private RpcResponseMessage.PingNameNodeRes pingNameNodeRes;
 	private RpcResponseMessage.RemoveDataNodeRes removeDataNodeRes;
@@ -54,7 +60,11 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		this.delFileRes = new RpcResponseMessage.DeleteFileRes();
 		this.renameRes = new RpcResponseMessage.RenameRes();
 		this.getBlockRes = new RpcResponseMessage.GetBlockRes();
+		this.leaseBlocksRes = new RpcResponseMessage.LeaseBlocksRes();
 		this.getLocationRes = new RpcResponseMessage.GetLocationRes();
+		this.getLocationsRes = new RpcResponseMessage.GetLocationsRes();
+		this.listDirectoryRes = new RpcResponseMessage.ListDirectoryRes();
+		this.batchRes = new RpcResponseMessage.BatchRes();
 		this.getDataNodeRes = new RpcResponseMessage.GetDataNodeRes();
 		this.pingNameNodeRes = new RpcResponseMessage.PingNameNodeRes();
 		this.removeDataNodeRes = new RpcResponseMessage.RemoveDataNodeRes();
@@ -90,11 +100,31 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		this.getBlockRes = message;
 	}
 	
+	public TcpNameNodeResponse(RpcResponseMessage.LeaseBlocksRes message) {
+		this.type = message.getType();
+		this.leaseBlocksRes = message;
+	}
+	
 	public TcpNameNodeResponse(RpcResponseMessage.GetLocationRes message) {
 		this.type = message.getType();
 		this.getLocationRes = message;
 	}
 	
+	public TcpNameNodeResponse(RpcResponseMessage.GetLocationsRes message) {
+		this.type = message.getType();
+		this.getLocationsRes = message;
+	}
+
+	public TcpNameNodeResponse(RpcResponseMessage.ListDirectoryRes message) {
+		this.type = message.getType();
+		this.listDirectoryRes = message;
+	}
+	
+	public TcpNameNodeResponse(RpcResponseMessage.BatchRes message) {
+		this.type = message.getType();
+		this.batchRes = message;
+	}
+	
 	public TcpNameNodeResponse(RpcResponseMessage.GetDataNodeRes message) {
 		this.type = message.getType();
 		this.getDataNodeRes = message;
@@ -125,34 +155,46 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		int written = 4;
 		switch(type){
 		case RpcProtocol.RES_VOID:
-			written += voidRes.write(buffer);
+			written += voidRes.write(buffer, encoding);
 			break;	
 		case RpcProtocol.RES_CREATE_FILE:
-			written += createFileRes.write(buffer);
+			written += createFileRes.write(buffer, encoding);
 			break;				
 		case RpcProtocol.RES_GET_FILE:
-			written += getFileRes.write(buffer);
+			written += getFileRes.write(buffer, encoding);
 			break;
 		case RpcProtocol.RES_DELETE_FILE:
-			written += delFileRes.write(buffer);
+			written += delFileRes.write(buffer, encoding);
 			break;				
 		case RpcProtocol.RES_RENAME_FILE:
-			written += renameRes.write(buffer);
+			written += renameRes.write(buffer, encoding);
 			break;				
 		case RpcProtocol.RES_GET_BLOCK:
-			written += getBlockRes.write(buffer);
+			written += getBlockRes.write(buffer, encoding);
+			break;
+		case RpcProtocol.RES_LEASE_BLOCKS:
+			written += leaseBlocksRes.write(buffer, encoding);
 			break;
 		case RpcProtocol.RES_GET_LOCATION:
-			written += getLocationRes.write(buffer);
+			written += getLocationRes.write(buffer, encoding);
+			break;			
+		case RpcProtocol.RES_GET_LOCATIONS:
+			written += getLocationsRes.write(buffer, encoding);
 			break;			
+		case RpcProtocol.RES_LIST_DIRECTORY:
+			written += listDirectoryRes.write(buffer, encoding);
+			break;			
+		case RpcProtocol.RES_BATCH:
+			written += batchRes.write(buffer, encoding);
+			break;
 		case RpcProtocol.RES_GET_DATANODE:
-			written += getDataNodeRes.write(buffer);
+			written += getDataNodeRes.write(buffer, encoding);
 			break;			
 		case RpcProtocol.RES_PING_NAMENODE:
-			written += pingNameNodeRes.write(buffer);
+			written += pingNameNodeRes.write(buffer, encoding);
 			break;
 		case RpcProtocol.RES_REMOVE_DATANODE:
-			written += removeDataNodeRes.write(buffer);
+			written += removeDataNodeRes.write(buffer, encoding);
 			break;
 		}
 		
@@ -165,43 +207,59 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		
 		switch(type){
 		case RpcProtocol.RES_VOID:
-			voidRes.update(buffer);
+			voidRes.update(buffer, encoding);
 			voidRes.setError(error);
 			break;			
 		case RpcProtocol.RES_CREATE_FILE:
-			createFileRes.update(buffer);
+			createFileRes.update(buffer, encoding);
 			createFileRes.setError(error);
 			break;				
 		case RpcProtocol.RES_GET_FILE:
-			getFileRes.update(buffer);
+			getFileRes.update(buffer, encoding);
 			getFileRes.setError(error);
 			break;	
 		case RpcProtocol.RES_DELETE_FILE:
-			delFileRes.update(buffer);
+			delFileRes.update(buffer, encoding);
 			delFileRes.setError(error);
 			break;				
 		case RpcProtocol.RES_RENAME_FILE:
-			renameRes.update(buffer);
+			renameRes.update(buffer, encoding);
 			renameRes.setError(error);
 			break;				
 		case RpcProtocol.RES_GET_BLOCK:
-			getBlockRes.update(buffer);
+			getBlockRes.update(buffer, encoding);
 			getBlockRes.setError(error);
 			break;
+		case RpcProtocol.RES_LEASE_BLOCKS:
+			leaseBlocksRes.update(buffer, encoding);
+			leaseBlocksRes.setError(error);
+			break;
 		case RpcProtocol.RES_GET_LOCATION:
-			getLocationRes.update(buffer);
+			getLocationRes.update(buffer, encoding);
 			getLocationRes.setError(error);
 			break;			
+		case RpcProtocol.RES_GET_LOCATIONS:
+			getLocationsRes.update(buffer, encoding);
+			getLocationsRes.setError(error);
+			break;			
+		case RpcProtocol.RES_LIST_DIRECTORY:
+			listDirectoryRes.update(buffer, encoding);
+			listDirectoryRes.setError(error);
+			break;			
+		case RpcProtocol.RES_BATCH:
+			batchRes.update(buffer, encoding);
+			batchRes.setError(error);
+			break;
 		case RpcProtocol.RES_GET_DATANODE:
-			getDataNodeRes.update(buffer);
+			getDataNodeRes.update(buffer, encoding);
 			getDataNodeRes.setError(error);
 			break;			
 		case RpcProtocol.RES_PING_NAMENODE:
-			pingNameNodeRes.update(buffer);
+			pingNameNodeRes.update(buffer, encoding);
 			pingNameNodeRes.setError(error);
 			break;
 		case RpcProtocol.RES_REMOVE_DATANODE:
-			removeDataNodeRes.update(buffer);
+			removeDataNodeRes.update(buffer, encoding);
 			removeDataNodeRes.setError(error);
 			break;
 		}
@@ -218,6 +276,14 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 	public void setError(short error) {
 		this.error = error;
 	}	
+
+	public RpcEncoding getEncoding() {
+		return encoding;
+	}
+
+	public void setEncoding(RpcEncoding encoding) {
+		this.encoding = encoding;
+	}
 	
 	public RpcResponseMessage.VoidRes getVoid() {
 		return voidRes;
@@ -243,9 +309,24 @@ public class TcpNameNodeResponse extends RpcResponseMessage implements RpcNameNo
 		return getBlockRes;
 	}	
 	
+	public RpcResponseMessage.LeaseBlocksRes leaseBlocks() {
+		return leaseBlocksRes;
+	}
+	
 	public RpcResponseMessage.GetLocationRes getLocation() {
 		return getLocationRes;
 	}	
+	public RpcResponseMessage.GetLocationsRes getLocations() {
+		return getLocationsRes;
+	}	
+
+	public RpcResponseMessage.ListDirectoryRes listDirectory() {
+		return listDirectoryRes;
+	}	
+
+	public RpcResponseMessage.BatchRes batch() {
+		return batchRes;
+	}
 	
 	public RpcResponseMessage.GetDataNodeRes getDataNode() {
 		return getDataNodeRes;
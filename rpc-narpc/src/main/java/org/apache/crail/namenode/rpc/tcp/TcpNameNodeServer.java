@@ -20,6 +20,9 @@ package org.apache.crail.namenode.rpc.tcp;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 
 import org.apache.crail.conf.CrailConfiguration;
 import org.apache.crail.rpc.RpcNameNodeService;
@@ -27,6 +30,7 @@ import org.apache.crail.rpc.RpcServer;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
+import com.ibm.narpc.NaRPCGroup;
 import com.ibm.narpc.NaRPCServerChannel;
 import com.ibm.narpc.NaRPCServerEndpoint;
 import com.ibm.narpc.NaRPCServerGroup;
@@ -37,6 +41,9 @@ public class TcpNameNodeServer extends RpcServer {
 	private TcpRpcDispatcher dispatcher;
 	private NaRPCServerGroup<TcpNameNodeRequest, TcpNameNodeResponse> serverGroup;
 	private NaRPCServerEndpoint<TcpNameNodeRequest, TcpNameNodeResponse> serverEndpoint;
+	private TcpRpcWorkerPool workerPool;
+	private TcpRpcEventLoop[] eventLoops;
+	private ServerSocketChannel serverSocket;
 
 	public TcpNameNodeServer(RpcNameNodeService service) throws IOException {
 		this.dispatcher = new TcpRpcDispatcher(service);
@@ -46,12 +53,35 @@ public class TcpNameNodeServer extends RpcServer {
 	public void init(CrailConfiguration conf, String[] arg1) throws Exception {
 		TcpRpcConstants.updateConstants(conf);
 		TcpRpcConstants.verify();
-		this.serverGroup = new NaRPCServerGroup<TcpNameNodeRequest, TcpNameNodeResponse>(
-				dispatcher, TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH,
-				TcpRpcConstants.NAMENODE_TCP_MESSAGESIZE, true, TcpRpcConstants.NAMENODE_TCP_CORES);
-		this.serverEndpoint = serverGroup.createServerEndpoint();
 		InetSocketAddress inetSocketAddress = CrailUtils.getNameNodeAddress();
-		serverEndpoint.bind(inetSocketAddress);
+		if (TcpRpcConstants.NAMENODE_TCP_WORKERS > 0){
+			//requests are executed by a worker pool, the network threads only receive them
+			NaRPCGroup group = new NaRPCGroup(TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH,
+					TcpRpcConstants.NAMENODE_TCP_MESSAGESIZE, true);
+			this.workerPool = new TcpRpcWorkerPool(dispatcher, TcpRpcConstants.NAMENODE_TCP_WORKERS,
+					TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH*TcpRpcConstants.NAMENODE_TCP_WORKERS,
+					TcpRpcConstants.NAMENODE_TCP_MESSAGESIZE);
+			workerPool.start();
+			this.eventLoops = new TcpRpcEventLoop[TcpRpcConstants.NAMENODE_TCP_CORES];
+			for (int i = 0; i < eventLoops.length; i++){
+				eventLoops[i] = new TcpRpcEventLoop(group, workerPool);
+				Thread thread = new Thread(eventLoops[i]);
+				thread.start();
+			}
+			this.serverSocket = ServerSocketChannel.open();
+			serverSocket.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+			serverSocket.bind(inetSocketAddress);
+		} else {
+			this.serverGroup = new NaRPCServerGroup<TcpNameNodeRequest, TcpNameNodeResponse>(
+					dispatcher, TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH,
+					TcpRpcConstants.NAMENODE_TCP_MESSAGESIZE, true, TcpRpcConstants.NAMENODE_TCP_CORES);
+			this.serverEndpoint = serverGroup.createServerEndpoint();
+			serverEndpoint.bind(inetSocketAddress);
+		}
+	}
+	
+	public TcpRpcWorkerPool getWorkerPool() {
+		return workerPool;
 	}
 
 	@Override
@@ -61,9 +91,17 @@ public class TcpNameNodeServer extends RpcServer {
 
 	public void run() {
 		try {
+			int next = 0;
 			while (true) {
-				NaRPCServerChannel endpoint = serverEndpoint.accept();
-				LOG.info("new connection from " + endpoint.address());
+				if (workerPool != null){
+					SocketChannel socket = serverSocket.accept();
+					LOG.info("new connection from " + socket.getRemoteAddress());
+					eventLoops[next].addChannel(socket);
+					next = (next + 1) % eventLoops.length;
+				} else {
+					NaRPCServerChannel endpoint = serverEndpoint.accept();
+					LOG.info("new connection from " + endpoint.address());
+				}
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
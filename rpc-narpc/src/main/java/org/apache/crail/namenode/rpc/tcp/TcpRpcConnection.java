@@ -22,6 +22,7 @@ import com.ibm.narpc.NaRPCEndpoint;
 import com.ibm.narpc.NaRPCFuture;
 
 import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.metadata.FileInfo;
@@ -32,14 +33,20 @@ import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.concurrent.ArrayBlockingQueue;
 
 public class TcpRpcConnection implements RpcConnection {
 	static private final Logger LOG = CrailUtils.getLogger();
 	private NaRPCEndpoint<TcpNameNodeRequest, TcpNameNodeResponse> endpoint;
+	private RpcEncoding encoding;
+	//requests of the lookup path are recycled, narpc has serialized a request by the time issueRequest returns
+	private ArrayBlockingQueue<TcpNameNodeRequest> requestPool;
 
 	public TcpRpcConnection(
-			NaRPCEndpoint<TcpNameNodeRequest, TcpNameNodeResponse> endpoint) {
+			NaRPCEndpoint<TcpNameNodeRequest, TcpNameNodeResponse> endpoint) throws IOException {
 		this.endpoint = endpoint;
+		this.encoding = RpcEncoding.get(CrailConstants.RPC_VERSION);
+		this.requestPool = new ArrayBlockingQueue<TcpNameNodeRequest>(TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH);
 	}
 
 	public String toString() {
@@ -56,27 +63,29 @@ public class TcpRpcConnection implements RpcConnection {
 	}
 
 	public RpcFuture<RpcCreateFile> createFile(FileName fileName,
-			CrailNodeType type, int storageAffinity, int locationAffinity, boolean enumerable)
+			CrailNodeType type, int storageAffinity, int locationAffinity, int placement, boolean enumerable)
 			throws IOException {
-		RpcRequestMessage.CreateFileReq req = new RpcRequestMessage.CreateFileReq(fileName, type, storageAffinity, locationAffinity, enumerable);
+		RpcRequestMessage.CreateFileReq req = new RpcRequestMessage.CreateFileReq(fileName, type, storageAffinity, locationAffinity, placement, enumerable);
 		RpcResponseMessage.CreateFileRes resp = new RpcResponseMessage.CreateFileRes();
 
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_CREATE_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcCreateFile>(future, resp);
 	}
 
 	public RpcFuture<RpcGetFile> getFile(FileName fileName, boolean b)
 			throws IOException {
-		RpcRequestMessage.GetFileReq req = new RpcRequestMessage.GetFileReq(fileName, b);
 		RpcResponseMessage.GetFileRes resp = new RpcResponseMessage.GetFileRes();
 
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
+		TcpNameNodeRequest request = acquireRequest();
+		request.getFile().set(fileName, b);
+		request.setType(RpcProtocol.REQ_GET_FILE);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_GET_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
+		releaseRequest(request);
 		return new TcpFuture<RpcGetFile>(future, resp);
 	}
 
@@ -88,7 +97,7 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_SET_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcVoid>(future, resp);
 	}
 
@@ -100,7 +109,7 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_REMOVE_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcDeleteFile>(future, resp);
 	}
 
@@ -112,22 +121,49 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_RENAME_FILE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcRenameFile>(future, resp);
 	}
 
 	public RpcFuture<RpcGetBlock> getBlock(long fd, long token, long position,
 			long capacity) throws IOException {
-		RpcRequestMessage.GetBlockReq req = new RpcRequestMessage.GetBlockReq(fd, token, position, capacity);
 		RpcResponseMessage.GetBlockRes resp = new RpcResponseMessage.GetBlockRes();
 
-		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
+		TcpNameNodeRequest request = acquireRequest();
+		request.getBlock().set(fd, token, position, capacity);
+		request.setType(RpcProtocol.REQ_GET_BLOCK);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_GET_BLOCK);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
+		releaseRequest(request);
 		return new TcpFuture<RpcGetBlock>(future, resp);
 	}
 
+	public RpcFuture<RpcLeaseBlocks> leaseBlocks(long fd, long token, long position,
+			long capacity, int count) throws IOException {
+		RpcResponseMessage.LeaseBlocksRes resp = new RpcResponseMessage.LeaseBlocksRes();
+
+		TcpNameNodeRequest request = acquireRequest();
+		request.leaseBlocks().set(fd, token, position, capacity, count);
+		request.setType(RpcProtocol.REQ_LEASE_BLOCKS);
+		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
+		request.setCommand(RpcProtocol.CMD_LEASE_BLOCKS);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
+		releaseRequest(request);
+		return new TcpFuture<RpcLeaseBlocks>(future, resp);
+	}
+
+	public RpcFuture<RpcGetBlocks> getBlocks(long fd, long position, int count) throws IOException {
+		RpcRequestMessage.GetBlocksReq req = new RpcRequestMessage.GetBlocksReq(fd, position, count);
+		RpcResponseMessage.LeaseBlocksRes resp = new RpcResponseMessage.LeaseBlocksRes();
+
+		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
+		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
+		request.setCommand(RpcProtocol.CMD_GET_BLOCKS);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
+		return new TcpFuture<RpcGetBlocks>(future, resp);
+	}
+
 	public RpcFuture<RpcGetLocation> getLocation(FileName fileName, long l)
 			throws IOException {
 		RpcRequestMessage.GetLocationReq req = new RpcRequestMessage.GetLocationReq(fileName, l);
@@ -136,10 +172,46 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_GET_LOCATION);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcGetLocation>(future, resp);
 	}
 
+	public RpcFuture<RpcGetLocations> getLocations(FileName fileName, long position, int count)
+			throws IOException {
+		RpcRequestMessage.GetLocationsReq req = new RpcRequestMessage.GetLocationsReq(fileName, position, count);
+		RpcResponseMessage.GetLocationsRes resp = new RpcResponseMessage.GetLocationsRes();
+
+		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
+		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
+		request.setCommand(RpcProtocol.CMD_GET_LOCATIONS);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
+		return new TcpFuture<RpcGetLocations>(future, resp);
+	}
+
+	public RpcFuture<RpcListDirectory> listDirectory(long fd, long cursor, int count)
+			throws IOException {
+		RpcRequestMessage.ListDirectoryReq req = new RpcRequestMessage.ListDirectoryReq(fd, cursor, count);
+		RpcResponseMessage.ListDirectoryRes resp = new RpcResponseMessage.ListDirectoryRes();
+
+		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
+		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
+		request.setCommand(RpcProtocol.CMD_LIST_DIRECTORY);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
+		return new TcpFuture<RpcListDirectory>(future, resp);
+	}
+
+	public RpcFuture<RpcBatch> batch(RpcOperation[] operations)
+			throws IOException {
+		RpcRequestMessage.BatchReq req = new RpcRequestMessage.BatchReq(operations);
+		RpcResponseMessage.BatchRes resp = new RpcResponseMessage.BatchRes();
+
+		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
+		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
+		request.setCommand(RpcProtocol.CMD_BATCH);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
+		return new TcpFuture<RpcBatch>(future, resp);
+	}
+
 	public RpcFuture<RpcVoid> setBlock(BlockInfo blockInfo) throws Exception {
 		RpcRequestMessage.SetBlockReq req = new RpcRequestMessage.SetBlockReq(blockInfo);
 		RpcResponseMessage.VoidRes resp = new RpcResponseMessage.VoidRes();
@@ -147,7 +219,7 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_SET_BLOCK);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcVoid>(future, resp);
 	}
 
@@ -159,7 +231,7 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_GET_DATANODE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcGetDataNode>(future, resp);
 	}
 
@@ -170,7 +242,7 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_DUMP_NAMENODE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcVoid>(future, resp);
 	}
 
@@ -181,7 +253,7 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_PING_NAMENODE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcPing>(future, resp);
 	}
 
@@ -192,8 +264,25 @@ public class TcpRpcConnection implements RpcConnection {
 		TcpNameNodeRequest request = new TcpNameNodeRequest(req);
 		TcpNameNodeResponse response = new TcpNameNodeResponse(resp);
 		request.setCommand(RpcProtocol.CMD_REMOVE_DATANODE);
-		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = endpoint.issueRequest(request, response);
+		NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> future = issueRequest(request, response);
 		return new TcpFuture<RpcRemoveDataNode>(future, resp);
 	}
 
-}
\ No newline at end of file
+	TcpNameNodeRequest acquireRequest() {
+		TcpNameNodeRequest request = requestPool.poll();
+		if (request == null){
+			request = new TcpNameNodeRequest();
+		}
+		return request;
+	}
+	
+	void releaseRequest(TcpNameNodeRequest request) {
+		requestPool.offer(request);
+	}
+
+	private NaRPCFuture<TcpNameNodeRequest, TcpNameNodeResponse> issueRequest(TcpNameNodeRequest request, TcpNameNodeResponse response) throws IOException {
+		request.setEncoding(encoding);
+		response.setEncoding(encoding);
+		return endpoint.issueRequest(request, response);
+	}
+}
@@ -24,6 +24,8 @@ import org.apache.crail.conf.CrailConfiguration;
 import org.apache.crail.utils.CrailUtils;
 import org.slf4j.Logger;
 
+import com.ibm.narpc.NaRPCProtocol;
+
 public class TcpRpcConstants {
 	private static final Logger LOG = CrailUtils.getLogger();
 	
@@ -31,11 +33,14 @@ public class TcpRpcConstants {
 	public static int NAMENODE_TCP_QUEUEDEPTH = 32;
 	
 	public static final String NAMENODE_TCP_MESSAGESIZE_KEY = "crail.namenode.tcp.messageSize";
-	public static int NAMENODE_TCP_MESSAGESIZE = 512;	
+	public static int NAMENODE_TCP_MESSAGESIZE = 2048;	
 	
 	public static final String NAMENODE_TCP_CORES_KEY = "crail.namenode.tcp.cores";
 	public static int NAMENODE_TCP_CORES = 1;	
 	
+	public static final String NAMENODE_TCP_WORKERS_KEY = "crail.namenode.tcp.workers";
+	public static int NAMENODE_TCP_WORKERS = 0;
+	
 	public static void updateConstants(CrailConfiguration conf){
 		if (conf.get(NAMENODE_TCP_QUEUEDEPTH_KEY) != null) {
 			NAMENODE_TCP_QUEUEDEPTH = Integer.parseInt(conf.get(NAMENODE_TCP_QUEUEDEPTH_KEY));
@@ -46,14 +51,25 @@ public class TcpRpcConstants {
 		if (conf.get(NAMENODE_TCP_CORES_KEY) != null) {
 			NAMENODE_TCP_CORES = Integer.parseInt(conf.get(NAMENODE_TCP_CORES_KEY));
 		}		
+		if (conf.get(NAMENODE_TCP_WORKERS_KEY) != null) {
+			NAMENODE_TCP_WORKERS = Integer.parseInt(conf.get(NAMENODE_TCP_WORKERS_KEY));
+		}
 	}
 	
 	public static void verify() throws IOException {
+		int messageSize = NaRPCProtocol.HEADERSIZE + Math.max(TcpNameNodeRequest.CSIZE, TcpNameNodeResponse.CSIZE);
+		if (NAMENODE_TCP_MESSAGESIZE < messageSize){
+			throw new IOException(NAMENODE_TCP_MESSAGESIZE_KEY + " must be at least " + messageSize);
+		}
+		if (NAMENODE_TCP_WORKERS < 0){
+			throw new IOException(NAMENODE_TCP_WORKERS_KEY + " must not be negative");
+		}
 	}
 
 	public static void printConf(Logger logger) {
 		LOG.info(NAMENODE_TCP_QUEUEDEPTH_KEY + " " + NAMENODE_TCP_QUEUEDEPTH);
 		LOG.info(NAMENODE_TCP_MESSAGESIZE_KEY + " " + NAMENODE_TCP_MESSAGESIZE);
 		LOG.info(NAMENODE_TCP_CORES_KEY + " " + NAMENODE_TCP_CORES);
+		LOG.info(NAMENODE_TCP_WORKERS_KEY + " " + NAMENODE_TCP_WORKERS);
 	}	
 }
@@ -30,9 +30,16 @@ import org.slf4j.Logger;
 public class TcpRpcDispatcher implements NaRPCService<TcpNameNodeRequest, TcpNameNodeResponse> {
 	public static final Logger LOG = CrailUtils.getLogger();
 	private RpcNameNodeService service;
+	private ThreadLocal<TcpNameNodeResponse> responses;
 	
 	public TcpRpcDispatcher(RpcNameNodeService service) {
 		this.service = service;
+		this.responses = new ThreadLocal<TcpNameNodeResponse>(){
+			@Override
+			protected TcpNameNodeResponse initialValue() {
+				return new TcpNameNodeResponse();
+			}
+		};
 	}
 
 	@Override
@@ -42,11 +49,19 @@ public class TcpRpcDispatcher implements NaRPCService<TcpNameNodeRequest, TcpNam
 
 	@Override
 	public TcpNameNodeResponse processRequest(TcpNameNodeRequest request) {
-		TcpNameNodeResponse response = new TcpNameNodeResponse();
+		//narpc and the worker pool transmit the response before the thread takes its next request, each thread reuses one response
+		TcpNameNodeResponse response = responses.get();
+		processRequest(request, response);
+		return response;
+	}
+
+	private void processRequest(TcpNameNodeRequest request, TcpNameNodeResponse response) {
 		short error = RpcErrors.ERR_OK;
 		try {
 			short type = RpcProtocol.responseTypes[request.getCmd()];
 			response.setType(type);
+			response.setError(RpcErrors.ERR_OK);
+			response.setEncoding(request.getEncoding());
 			switch(request.getCmd()) {
 			case RpcProtocol.CMD_CREATE_FILE:
 				error = service.createFile(request.createFile(), response.createFile(), response);
@@ -66,9 +81,24 @@ public class TcpRpcDispatcher implements NaRPCService<TcpNameNodeRequest, TcpNam
 			case RpcProtocol.CMD_GET_BLOCK:
 				error = service.getBlock(request.getBlock(), response.getBlock(), response);
 				break;
+			case RpcProtocol.CMD_LEASE_BLOCKS:
+				error = service.leaseBlocks(request.leaseBlocks(), response.leaseBlocks(), response);
+				break;
+			case RpcProtocol.CMD_GET_BLOCKS:
+				error = service.getBlocks(request.getBlocks(), response.leaseBlocks(), response);
+				break;
 			case RpcProtocol.CMD_GET_LOCATION:
 				error = service.getLocation(request.getLocation(), response.getLocation(), response);
 				break;				
+			case RpcProtocol.CMD_GET_LOCATIONS:
+				error = service.getLocations(request.getLocations(), response.getLocations(), response);
+				break;
+			case RpcProtocol.CMD_LIST_DIRECTORY:
+				error = service.listDirectory(request.listDirectory(), response.listDirectory(), response);
+				break;
+			case RpcProtocol.CMD_BATCH:
+				error = service.batch(request.batch(), response.batch(), response);
+				break;
 			case RpcProtocol.CMD_SET_BLOCK:
 				error = service.setBlock(request.setBlock(), response.getVoid(), response);
 				break;
@@ -100,8 +130,6 @@ public class TcpRpcDispatcher implements NaRPCService<TcpNameNodeRequest, TcpNam
 			LOG.info("ERROR: RPC failed, messagesSend ");
 			e.printStackTrace();
 		}
-		
-		return response;		
 	}
 
 	public void removeEndpoint(NaRPCServerChannel channel){
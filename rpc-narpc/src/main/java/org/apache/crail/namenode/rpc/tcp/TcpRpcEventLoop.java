@@ -0,0 +1,223 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+import com.ibm.narpc.NaRPCGroup;
+import com.ibm.narpc.NaRPCProtocol;
+
+/*
+ * Network thread of the worker dispatch mode. Reads the requests of its connections and hands them to
+ * the worker pool. Workers hand serialized responses back to the event loop, which writes them as the
+ * socket accepts them. Neither side ever waits for a client, a client not reading its responses only
+ * delays its own connection, which is not read while it has a queue depth of requests in flight. Uses
+ * the narpc wire format.
+ */
+public class TcpRpcEventLoop implements Runnable {
+	private static final Logger LOG = CrailUtils.getLogger();
+
+	private NaRPCGroup group;
+	private TcpRpcWorkerPool workerPool;
+	private Selector selector;
+	private LinkedBlockingQueue<SocketChannel> incomingChannels;
+	private LinkedBlockingQueue<TcpRpcWorkerPool.Connection> pendingResponses;
+
+	public TcpRpcEventLoop(NaRPCGroup group, TcpRpcWorkerPool workerPool) throws IOException {
+		this.group = group;
+		this.workerPool = workerPool;
+		this.selector = Selector.open();
+		this.incomingChannels = new LinkedBlockingQueue<SocketChannel>();
+		this.pendingResponses = new LinkedBlockingQueue<TcpRpcWorkerPool.Connection>();
+	}
+
+	public void addChannel(SocketChannel socket) {
+		incomingChannels.add(socket);
+		selector.wakeup();
+	}
+
+	//called by the workers once a response of the connection has been queued
+	void transmit(TcpRpcWorkerPool.Connection connection) {
+		pendingResponses.add(connection);
+		selector.wakeup();
+	}
+
+	public void run() {
+		try {
+			while(true){
+				int ready = selector.select(1000);
+				if (ready > 0){
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while(keys.hasNext()){
+						SelectionKey key = keys.next();
+						keys.remove();
+						TcpRpcWorkerPool.Connection connection = (TcpRpcWorkerPool.Connection) key.attachment();
+						if (key.isValid() && key.isReadable()){
+							receive(connection);
+						}
+						if (key.isValid() && key.isWritable()){
+							flush(connection);
+						}
+					}
+				}
+				processIncomingChannels();
+				processPendingResponses();
+			}
+		} catch(IOException e){
+			LOG.info("closing event loop, " + e.getMessage());
+		}
+	}
+
+	//reads what the socket has available and submits the complete requests
+	private void receive(TcpRpcWorkerPool.Connection connection) {
+		try {
+			if (connection.getSocket().read(connection.getReceiveBuffer()) < 0){
+				close(connection);
+				return;
+			}
+			submit(connection);
+			interest(connection, connection.peekResponse() != null);
+		} catch(IOException e){
+			LOG.info("failed to receive request, " + e.getMessage());
+			close(connection);
+		}
+	}
+
+	//submits buffered requests until the connection has a queue depth of requests in flight, a partial request stays in the buffer
+	private void submit(TcpRpcWorkerPool.Connection connection) throws IOException {
+		ByteBuffer buffer = connection.getReceiveBuffer();
+		buffer.flip();
+		while(buffer.remaining() >= NaRPCProtocol.HEADERSIZE && connection.getInflight() < group.getQueueDepth()){
+			int start = buffer.position();
+			int size = buffer.getInt(start);
+			if (size < 0 || size > buffer.capacity() - NaRPCProtocol.HEADERSIZE){
+				throw new IOException("invalid message size " + size);
+			}
+			if (buffer.remaining() < NaRPCProtocol.HEADERSIZE + size){
+				break;
+			}
+			long ticket = buffer.getLong(start + 4);
+			int limit = buffer.limit();
+			int end = start + NaRPCProtocol.HEADERSIZE + size;
+			buffer.position(start + NaRPCProtocol.HEADERSIZE);
+			buffer.limit(end);
+			TcpRpcWorkerPool.Task task = workerPool.acquireTask();
+			try {
+				task.getRequest().update(buffer);
+			} catch(IOException e){
+				workerPool.releaseTask(task);
+				throw e;
+			}
+			buffer.limit(limit);
+			buffer.position(end);
+			connection.setInflight(connection.getInflight() + 1);
+			workerPool.submit(task, connection, ticket);
+		}
+		buffer.compact();
+	}
+
+	//writes queued responses until the socket would block, the rest is written once it is writable again
+	private void flush(TcpRpcWorkerPool.Connection connection) {
+		if (connection.isClosed()){
+			discardResponses(connection);
+			return;
+		}
+		try {
+			TcpRpcWorkerPool.Task task = connection.peekResponse();
+			while(task != null){
+				ByteBuffer message = task.getMessage();
+				connection.getSocket().write(message);
+				if (message.hasRemaining()){
+					break;
+				}
+				connection.pollResponse();
+				connection.setInflight(connection.getInflight() - 1);
+				workerPool.releaseTask(task);
+				task = connection.peekResponse();
+			}
+			//requests held back while the connection was at its queue depth may now be submitted
+			submit(connection);
+			interest(connection, task != null);
+		} catch(IOException e){
+			LOG.info("failed to transmit response, " + e.getMessage());
+			close(connection);
+		}
+	}
+
+	//a connection is only read while below its queue depth, a client not reading its responses cannot grow the server's backlog
+	private void interest(TcpRpcWorkerPool.Connection connection, boolean writing) {
+		int ops = writing ? SelectionKey.OP_WRITE : 0;
+		if (connection.getInflight() < group.getQueueDepth()){
+			ops |= SelectionKey.OP_READ;
+		}
+		if (connection.getKey().interestOps() != ops){
+			connection.getKey().interestOps(ops);
+		}
+	}
+
+	private void close(TcpRpcWorkerPool.Connection connection) {
+		SocketChannel socket = connection.getSocket();
+		LOG.info("closing channel " + socket.socket().getRemoteSocketAddress());
+		connection.close();
+		connection.getKey().cancel();
+		try {
+			socket.close();
+		} catch(IOException e){
+			LOG.info("failed to close channel, " + e.getMessage());
+		}
+		discardResponses(connection);
+	}
+
+	private void discardResponses(TcpRpcWorkerPool.Connection connection) {
+		TcpRpcWorkerPool.Task task = connection.pollResponse();
+		while(task != null){
+			workerPool.releaseTask(task);
+			task = connection.pollResponse();
+		}
+	}
+
+	private void processIncomingChannels() throws IOException {
+		SocketChannel socket = incomingChannels.poll();
+		while(socket != null){
+			socket.configureBlocking(false);
+			socket.socket().setTcpNoDelay(group.isNodelay());
+			socket.socket().setReuseAddress(true);
+			TcpRpcWorkerPool.Connection connection = workerPool.createConnection(socket, this, group.getMessageSize());
+			connection.setKey(socket.register(selector, SelectionKey.OP_READ, connection));
+			socket = incomingChannels.poll();
+		}
+	}
+
+	private void processPendingResponses() {
+		TcpRpcWorkerPool.Connection connection = pendingResponses.poll();
+		while(connection != null){
+			flush(connection);
+			connection = pendingResponses.poll();
+		}
+	}
+}
@@ -0,0 +1,480 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.namenode.rpc.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcProtocol;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.utils.CrailUtils;
+import org.slf4j.Logger;
+
+import com.ibm.narpc.NaRPCProtocol;
+
+/*
+ * Executes namenode requests on worker threads instead of the network threads. Each request is mapped
+ * to a stripe by the parent directory or the file descriptor it operates on, a stripe is served by one
+ * worker at a time in arrival order. Requests on different stripes run in parallel. A request that
+ * modifies the namespace is additionally ordered after all requests its connection still has in flight,
+ * and any request after the modifying requests in flight, so a connection pipelining e.g. a mkdir and a
+ * create in the new directory observes them in order. Requests spanning several stripes are queued at
+ * all of them and executed once every involved stripe has reached them. A stripe waiting for the others
+ * is suspended rather than blocking its worker, the stripe reaching the request last executes it and
+ * resumes the suspended ones. Workers never wait for a client either, responses are serialized and
+ * handed to the event loop of the connection.
+ */
+public class TcpRpcWorkerPool {
+	private static final Logger LOG = CrailUtils.getLogger();
+
+	private TcpRpcDispatcher dispatcher;
+	private Worker[] workers;
+	private Stripe[] stripes;
+	private LinkedBlockingQueue<Stripe> ready;
+	private ArrayBlockingQueue<Task> taskPool;
+	private int messageSize;
+	private LongAdder[] queued;
+	private LongAdder[] executed;
+	private LongAdder[] waitTime;
+
+	public TcpRpcWorkerPool(TcpRpcDispatcher dispatcher, int workerCount, int poolSize, int messageSize) {
+		this.dispatcher = dispatcher;
+		this.workers = new Worker[workerCount];
+		this.stripes = new Stripe[workerCount];
+		for (int i = 0; i < workerCount; i++){
+			workers[i] = new Worker();
+			stripes[i] = new Stripe();
+		}
+		this.ready = new LinkedBlockingQueue<Stripe>();
+		this.taskPool = new ArrayBlockingQueue<Task>(poolSize);
+		this.messageSize = messageSize;
+		this.queued = new LongAdder[RpcProtocol.responseTypes.length];
+		this.executed = new LongAdder[RpcProtocol.responseTypes.length];
+		this.waitTime = new LongAdder[RpcProtocol.responseTypes.length];
+		for (int i = 0; i < queued.length; i++){
+			queued[i] = new LongAdder();
+			executed[i] = new LongAdder();
+			waitTime[i] = new LongAdder();
+		}
+	}
+
+	public void start() {
+		for (Worker worker : workers){
+			Thread thread = new Thread(worker);
+			thread.start();
+		}
+	}
+
+	//number of requests of the given command waiting for a worker
+	public long getQueueDepth(short cmd) {
+		return queued[typeIndex(cmd)].sum();
+	}
+
+	public long getExecuted(short cmd) {
+		return executed[typeIndex(cmd)].sum();
+	}
+
+	//total time in nanoseconds requests of the given command have been waiting for a worker
+	public long getWaitTime(short cmd) {
+		return waitTime[typeIndex(cmd)].sum();
+	}
+
+	public void printStatistics() {
+		for (int i = 1; i < queued.length; i++){
+			long count = executed[i].sum();
+			long depth = queued[i].sum();
+			if (count > 0 || depth > 0){
+				long wait = count > 0 ? waitTime[i].sum() / count / 1000 : 0;
+				LOG.info("cmd " + i + ", executed " + count + ", queued " + depth + ", avg wait (us) " + wait);
+			}
+		}
+	}
+
+	Task acquireTask() {
+		Task task = taskPool.poll();
+		if (task == null){
+			task = new Task(stripes.length, messageSize);
+		}
+		return task;
+	}
+
+	void releaseTask(Task task) {
+		task.connection = null;
+		taskPool.offer(task);
+	}
+
+	Connection createConnection(SocketChannel socket, TcpRpcEventLoop eventLoop, int bufferSize) {
+		return new Connection(socket, eventLoop, bufferSize, stripes.length);
+	}
+
+	void submit(Task task, Connection connection, long ticket) {
+		task.connection = connection;
+		task.ticket = ticket;
+		task.readOnly = isReadOnly(task.request);
+		computeStripes(task);
+		for (int i = 0; i < stripes.length; i++){
+			int pending = task.readOnly ? connection.pendingUpdates.get(i) : connection.pending.get(i);
+			if (pending > 0){
+				addStripe(task, i);
+			}
+		}
+		for (int i = 0; i < task.stripeCount; i++){
+			connection.pending.incrementAndGet(task.stripes[i]);
+			if (!task.readOnly){
+				connection.pendingUpdates.incrementAndGet(task.stripes[i]);
+			}
+		}
+		queued[typeIndex(task.request.getCmd())].increment();
+		task.submitted = System.nanoTime();
+		if (task.stripeCount == 1){
+			stripes[task.stripes[0]].add(task);
+		} else {
+			task.arrivals.set(task.stripeCount);
+			//requests spanning stripes must be queued in the same order at every stripe
+			synchronized(this){
+				for (int i = 0; i < task.stripeCount; i++){
+					stripes[task.stripes[i]].add(task);
+				}
+			}
+		}
+	}
+
+	private void execute(Task task) {
+		short cmd = task.request.getCmd();
+		int type = typeIndex(cmd);
+		queued[type].decrement();
+		executed[type].increment();
+		waitTime[type].add(System.nanoTime() - task.submitted);
+
+		//the response is the one of the worker thread, it is serialized before the worker takes its next task
+		TcpNameNodeResponse response = dispatcher.processRequest(task.request);
+		Connection connection = task.connection;
+		for (int i = 0; i < task.stripeCount; i++){
+			connection.pending.decrementAndGet(task.stripes[i]);
+			if (!task.readOnly){
+				connection.pendingUpdates.decrementAndGet(task.stripes[i]);
+			}
+		}
+		try {
+			NaRPCProtocol.makeMessage(task.ticket, response, task.message);
+		} catch(IOException e){
+			LOG.info("failed to serialize response, " + e.getMessage());
+			task.message.limit(0);
+		}
+		if (cmd == RpcProtocol.CMD_DUMP_NAMENODE){
+			printStatistics();
+		}
+	}
+
+	//the task is owned by the event loop of its connection from here on
+	private void transmit(Task task) {
+		Connection connection = task.connection;
+		connection.responses.add(task);
+		connection.eventLoop.transmit(connection);
+	}
+
+	private void computeStripes(Task task) {
+		TcpNameNodeRequest request = task.request;
+		task.stripeCount = 0;
+		switch(request.getCmd()) {
+		case RpcProtocol.CMD_CREATE_FILE:
+			addKey(task, parentKey(request.createFile().getFileName()));
+			break;
+		case RpcProtocol.CMD_GET_FILE:
+			addKey(task, parentKey(request.getFile().getFileName()));
+			break;
+		case RpcProtocol.CMD_REMOVE_FILE:
+			addKey(task, parentKey(request.removeFile().getFileName()));
+			break;
+		case RpcProtocol.CMD_RENAME_FILE:
+			addKey(task, parentKey(request.renameFile().getSrcFileName()));
+			addKey(task, parentKey(request.renameFile().getDstFileName()));
+			break;
+		case RpcProtocol.CMD_GET_LOCATION:
+			addKey(task, parentKey(request.getLocation().getFileName()));
+			break;
+		case RpcProtocol.CMD_GET_LOCATIONS:
+			addKey(task, parentKey(request.getLocations().getFileName()));
+			break;
+		case RpcProtocol.CMD_SET_FILE:
+			addKey(task, request.setFile().getFileInfo().getFd());
+			break;
+		case RpcProtocol.CMD_GET_BLOCK:
+			addKey(task, request.getBlock().getFd());
+			break;
+		case RpcProtocol.CMD_LEASE_BLOCKS:
+			addKey(task, request.leaseBlocks().getFd());
+			break;
+		case RpcProtocol.CMD_GET_BLOCKS:
+			addKey(task, request.getBlocks().getFd());
+			break;
+		case RpcProtocol.CMD_LIST_DIRECTORY:
+			addKey(task, request.listDirectory().getFd());
+			break;
+		case RpcProtocol.CMD_BATCH:
+			RpcRequestMessage.BatchReq batch = request.batch();
+			for (int i = 0; i < batch.getOpCount(); i++){
+				switch(batch.getOpType(i)){
+				case RpcProtocol.REQ_CREATE_FILE:
+					addKey(task, parentKey(batch.createFile(i).getFileName()));
+					break;
+				case RpcProtocol.REQ_GET_FILE:
+					addKey(task, parentKey(batch.getFile(i).getFileName()));
+					break;
+				case RpcProtocol.REQ_REMOVE_FILE:
+					addKey(task, parentKey(batch.removeFile(i).getFileName()));
+					break;
+				}
+			}
+			break;
+		case RpcProtocol.CMD_DUMP_NAMENODE:
+			for (int i = 0; i < stripes.length; i++){
+				addStripe(task, i);
+			}
+			break;
+		default:
+			//datanode requests and pings are not tied to the namespace
+			addKey(task, request.getCmd());
+		}
+		if (task.stripeCount == 0){
+			addStripe(task, 0);
+		}
+	}
+
+	private void addKey(Task task, long key) {
+		addStripe(task, stripe(key, stripes.length));
+	}
+
+	static int stripe(long key, int stripeCount) {
+		return (int) (((key * 0x9E3779B97F4A7C15L) >>> 33) % stripeCount);
+	}
+
+	private void addStripe(Task task, int stripe) {
+		for (int i = 0; i < task.stripeCount; i++){
+			if (task.stripes[i] == stripe){
+				return;
+			}
+		}
+		task.stripes[task.stripeCount++] = stripe;
+	}
+
+	private static boolean isReadOnly(TcpNameNodeRequest request) {
+		switch(request.getCmd()) {
+		case RpcProtocol.CMD_GET_FILE:
+			return !request.getFile().isWriteable();
+		case RpcProtocol.CMD_GET_LOCATION:
+		case RpcProtocol.CMD_GET_LOCATIONS:
+		case RpcProtocol.CMD_GET_BLOCKS:
+		case RpcProtocol.CMD_LIST_DIRECTORY:
+		case RpcProtocol.CMD_GET_DATANODE:
+		case RpcProtocol.CMD_PING_NAMENODE:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	//relative names are keyed by their base directory, their stripe differs from the absolute path of the same parent
+	static long parentKey(FileName name) {
+		long key = name.isRelative() ? name.getBaseFd() : 0;
+		for (int i = 0; i < name.getLength() - 1; i++){
+			key = key*31 + name.getComponent(i);
+		}
+		return key;
+	}
+
+	private int typeIndex(short cmd) {
+		return cmd > 0 && cmd < queued.length ? cmd : 0;
+	}
+
+	static class Task {
+		private final TcpNameNodeRequest request;
+		private final ByteBuffer message;
+		private final int[] stripes;
+		private final AtomicInteger arrivals;
+		private Connection connection;
+		private long ticket;
+		private long submitted;
+		private int stripeCount;
+		private boolean readOnly;
+
+		Task(int stripeCount, int messageSize) {
+			this.request = new TcpNameNodeRequest();
+			this.message = ByteBuffer.allocate(messageSize);
+			this.stripes = new int[stripeCount];
+			this.arrivals = new AtomicInteger(0);
+		}
+
+		TcpNameNodeRequest getRequest() {
+			return request;
+		}
+
+		//the serialized response
+		ByteBuffer getMessage() {
+			return message;
+		}
+	}
+
+	//socket state of a connection and its requests in flight per stripe, all and those modifying the namenode state
+	static class Connection {
+		private final SocketChannel socket;
+		private final TcpRpcEventLoop eventLoop;
+		private final ByteBuffer receiveBuffer;
+		private final ConcurrentLinkedQueue<Task> responses;
+		private final AtomicIntegerArray pending;
+		private final AtomicIntegerArray pendingUpdates;
+		private SelectionKey key;
+		private volatile boolean closed;
+		//requests submitted but not yet written back, only used by the event loop
+		private int inflight;
+
+		Connection(SocketChannel socket, TcpRpcEventLoop eventLoop, int bufferSize, int stripeCount) {
+			this.socket = socket;
+			this.eventLoop = eventLoop;
+			this.receiveBuffer = ByteBuffer.allocate(bufferSize);
+			this.responses = new ConcurrentLinkedQueue<Task>();
+			this.pending = new AtomicIntegerArray(stripeCount);
+			this.pendingUpdates = new AtomicIntegerArray(stripeCount);
+			this.closed = false;
+			this.inflight = 0;
+		}
+
+		SocketChannel getSocket() {
+			return socket;
+		}
+
+		ByteBuffer getReceiveBuffer() {
+			return receiveBuffer;
+		}
+
+		SelectionKey getKey() {
+			return key;
+		}
+
+		void setKey(SelectionKey key) {
+			this.key = key;
+		}
+
+		Task peekResponse() {
+			return responses.peek();
+		}
+
+		Task pollResponse() {
+			return responses.poll();
+		}
+
+		int getInflight() {
+			return inflight;
+		}
+
+		void setInflight(int inflight) {
+			this.inflight = inflight;
+		}
+
+		boolean isClosed() {
+			return closed;
+		}
+
+		void close() {
+			this.closed = true;
+		}
+	}
+
+	//requests of a stripe in arrival order, a stripe is run by at most one worker at a time
+	private class Stripe {
+		private final ArrayDeque<Task> queue;
+		private boolean scheduled;
+		private boolean suspended;
+
+		Stripe() {
+			this.queue = new ArrayDeque<Task>();
+			this.scheduled = false;
+			this.suspended = false;
+		}
+
+		synchronized void add(Task task) {
+			queue.add(task);
+			schedule();
+		}
+
+		private void schedule() {
+			if (!scheduled && !suspended && !queue.isEmpty()){
+				scheduled = true;
+				ready.add(this);
+			}
+		}
+
+		//executes the queued requests until the stripe is empty or has to wait for other stripes
+		void run() {
+			while(true){
+				Task task = null;
+				synchronized(this){
+					task = queue.peek();
+					if (task == null){
+						scheduled = false;
+						return;
+					}
+					if (task.stripeCount == 1){
+						queue.poll();
+					} else if (task.arrivals.decrementAndGet() > 0){
+						suspended = true;
+						scheduled = false;
+						return;
+					}
+				}
+				execute(task);
+				if (task.stripeCount > 1){
+					for (int i = 0; i < task.stripeCount; i++){
+						stripes[task.stripes[i]].resume(task);
+					}
+				}
+				transmit(task);
+			}
+		}
+
+		synchronized void resume(Task task) {
+			queue.poll();
+			suspended = false;
+			schedule();
+		}
+	}
+
+	private class Worker implements Runnable {
+		public void run() {
+			try {
+				while(true){
+					Stripe stripe = ready.take();
+					stripe.run();
+				}
+			} catch(InterruptedException e){
+				LOG.info("namenode worker interrupted");
+			}
+		}
+	}
+}
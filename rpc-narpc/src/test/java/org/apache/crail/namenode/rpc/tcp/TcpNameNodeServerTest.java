@@ -0,0 +1,522 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.apache.crail.namenode.rpc.tcp;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.conf.CrailConfiguration;
+import org.apache.crail.conf.CrailConstants;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileName;
+import org.apache.crail.rpc.RpcCreateFile;
+import org.apache.crail.rpc.RpcErrors;
+import org.apache.crail.rpc.RpcFuture;
+import org.apache.crail.rpc.RpcGetFile;
+import org.apache.crail.rpc.RpcNameNodeService;
+import org.apache.crail.rpc.RpcNameNodeState;
+import org.apache.crail.rpc.RpcOperation;
+import org.apache.crail.rpc.RpcProtocol;
+import org.apache.crail.rpc.RpcRequestMessage;
+import org.apache.crail.rpc.RpcResponseMessage;
+import org.junit.After;
+import org.junit.Test;
+
+import com.ibm.narpc.NaRPCProtocol;
+
+import java.io.DataInputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class TcpNameNodeServerTest {
+	private static final int STRIPES = 4;
+	private TcpNameNodeClient client;
+	private RecordingService service;
+	private int port;
+
+	@After
+	public void close() throws Exception {
+		//a failed test must not leave a worker blocked on a held request
+		if (service != null){
+			service.release();
+		}
+		if (client != null){
+			client.close();
+		}
+		TcpRpcConstants.NAMENODE_TCP_WORKERS = 0;
+	}
+
+	@Test
+	public void responsesAreReused() throws Exception {
+		RecordingService service = new RecordingService();
+		TcpRpcDispatcher dispatcher = new TcpRpcDispatcher(service);
+		TcpNameNodeRequest request = new TcpNameNodeRequest(new RpcRequestMessage.GetFileReq(new FileName("/found"), false));
+		request.setCommand(RpcProtocol.CMD_GET_FILE);
+		TcpNameNodeResponse response = dispatcher.processRequest(request);
+		BlockInfo block = response.getFile().getFileBlock();
+		assertEquals(4096, block.getLength());
+		
+		request.getFile().set(new FileName("/empty"), false);
+		assertSame(response, dispatcher.processRequest(request));
+		assertSame(block, response.getFile().getFileBlock());
+		assertEquals(0, block.getLength());
+		assertEquals(0, block.getDnInfo().getPort());
+		assertEquals(1, service.states.size());
+	}
+
+	@Test
+	public void responsesAreReusedByNetworkThreads() throws Exception {
+		checkReuse(0);
+	}
+
+	@Test
+	public void responsesAreReusedByWorkers() throws Exception {
+		checkReuse(2);
+	}
+
+	@Test
+	public void requestsArePooled() throws Exception {
+		start(new RecordingService(), 0);
+		TcpRpcConnection connection = connect();
+		TcpNameNodeRequest request = connection.acquireRequest();
+		connection.releaseRequest(request);
+		connection.getFile(new FileName("/a"), false).get();
+		assertSame(request, connection.acquireRequest());
+		connection.releaseRequest(request);
+		connection.getBlock(1, 2, 0, 4096).get();
+		assertSame(request, connection.acquireRequest());
+		connection.releaseRequest(request);
+		connection.leaseBlocks(1, 2, 0, 4096, 1).get();
+		assertSame(request, connection.acquireRequest());
+	}
+
+	@Test
+	public void stripesRunInParallel() throws Exception {
+		RecordingService service = new RecordingService();
+		start(service, STRIPES);
+		TcpRpcConnection connection = connect();
+		String slow = "/d0/slow";
+		String other = directory(slow) + "/other";
+		
+		//the lookup on another stripe is answered first, its response overtakes the held one
+		service.hold(slow);
+		RpcFuture<RpcGetFile> held = connection.getFile(new FileName(slow), false);
+		service.awaitExecuted(1);
+		assertEquals(2, await(connection.getFile(new FileName(other), false)).getFileBlock().getLength());
+		RpcFuture<RpcGetFile> queued = connection.getFile(new FileName("/d0/next"), false);
+		Thread.sleep(100);
+		assertFalse(held.isDone());
+		assertFalse(queued.isDone());
+		
+		service.release();
+		assertEquals(1, await(held).getFileBlock().getLength());
+		assertEquals(3, await(queued).getFileBlock().getLength());
+		assertEquals(names(slow, other, "/d0/next"), service.log);
+	}
+
+	@Test
+	public void dependentRequestsKeepTheirOrder() throws Exception {
+		RecordingService service = new RecordingService();
+		start(service, STRIPES);
+		TcpRpcConnection connection = connect();
+		TcpRpcConnection other = connect();
+		String independent = directory("/dir", "/dir/f") + "/g";
+		
+		//the create and the lookup in the new directory wait for the mkdir of the same connection
+		service.hold("/dir");
+		RpcFuture<RpcCreateFile> mkdir = connection.createFile(new FileName("/dir"), CrailNodeType.DIRECTORY, 0, 0, 0, true);
+		RpcFuture<RpcCreateFile> create = connection.createFile(new FileName("/dir/f"), CrailNodeType.DATAFILE, 0, 0, 0, true);
+		RpcFuture<RpcGetFile> lookup = connection.getFile(new FileName("/dir/f"), false);
+		service.awaitExecuted(1);
+		assertEquals(2, await(other.getFile(new FileName(independent), false)).getFileBlock().getLength());
+		Thread.sleep(100);
+		assertFalse(mkdir.isDone());
+		assertFalse(create.isDone());
+		assertFalse(lookup.isDone());
+		
+		service.release();
+		assertEquals(1, await(mkdir).getFileBlock().getLength());
+		assertEquals(3, await(create).getFileBlock().getLength());
+		assertEquals(4, await(lookup).getFileBlock().getLength());
+		assertEquals(names("/dir", independent, "/dir/f", "/dir/f"), service.log);
+	}
+
+	@Test
+	public void multiStripeRequests() throws Exception {
+		RecordingService service = new RecordingService();
+		start(service, STRIPES);
+		TcpRpcConnection first = connect();
+		TcpRpcConnection second = connect();
+		TcpRpcConnection third = connect();
+		String src = "/d0/x";
+		String dst = directory(src) + "/y";
+		String next = dst.substring(0, dst.lastIndexOf('/')) + "/w";
+		String unrelated = directory(src, dst) + "/z";
+		
+		service.hold("/d0/slow");
+		RpcFuture<RpcGetFile> held = first.getFile(new FileName("/d0/slow"), false);
+		service.awaitExecuted(1);
+		second.renameFile(new FileName(src), new FileName(dst));
+		while(server.getWorkerPool().getQueueDepth(RpcProtocol.CMD_RENAME_FILE) == 0){
+			Thread.sleep(1);
+		}
+		//the rename waits for the source stripe, the destination stripe is suspended behind it
+		RpcFuture<RpcGetFile> behind = third.getFile(new FileName(next), false);
+		assertTrue(await(third.getFile(new FileName(unrelated), false)).getFileBlock().getLength() > 0);
+		Thread.sleep(100);
+		assertFalse(behind.isDone());
+		
+		service.release();
+		await(held);
+		await(behind);
+		assertEquals(names("/d0/slow", unrelated, src, next), service.log);
+		assertEquals(RpcErrors.ERR_OK, await(first.dumpNameNode()).getError());
+	}
+
+	@Test
+	public void multiStripeRequestsDoNotBlockWorkers() throws Exception {
+		RecordingService service = new RecordingService();
+		start(service, 2);
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++){
+			final TcpRpcConnection connection = connect();
+			final int id = i;
+			threads[i] = new Thread(new Runnable(){
+				public void run() {
+					try {
+						List<RpcFuture<?>> futures = new ArrayList<RpcFuture<?>>();
+						for (int j = 0; j < 200; j++){
+							FileName a = new FileName("/d" + (j % 7) + "/f" + id);
+							FileName b = new FileName("/d" + (j % 5) + "/g" + id);
+							futures.add(connection.renameFile(a, b));
+							futures.add(connection.batch(new RpcOperation[]{
+									RpcOperation.createFile(a, CrailNodeType.DATAFILE, 0, 0, 0, true),
+									RpcOperation.getFile(b, false),
+									RpcOperation.removeFile(new FileName("/d" + (j % 3) + "/h" + id), false)}));
+							futures.add(connection.getFile(b, false));
+							if (futures.size() >= TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH - 3){
+								for (RpcFuture<?> future : futures){
+									await(future);
+								}
+								futures.clear();
+							}
+						}
+						for (RpcFuture<?> future : futures){
+							await(future);
+						}
+					} catch(Throwable e){
+						errors.add(e);
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads){
+			thread.join();
+		}
+		assertEquals(Collections.emptyList(), errors);
+		assertEquals(4*200*5, service.log.size());
+	}
+
+	@Test
+	public void slowClientDoesNotStallOthers() throws Exception {
+		RecordingService service = new RecordingService();
+		start(service, 2);
+		final int count = 100000;
+		final Socket socket = new Socket();
+		socket.setReceiveBufferSize(4096);
+		socket.connect(new InetSocketAddress("localhost", port));
+		
+		//the slow client pipelines lookups without reading any response, the server stops reading it at the queue depth
+		final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+		Thread writer = new Thread(new Runnable(){
+			public void run() {
+				try {
+					TcpNameNodeRequest request = new TcpNameNodeRequest(new RpcRequestMessage.GetFileReq(new FileName("/slow/f"), false));
+					request.setCommand(RpcProtocol.CMD_GET_FILE);
+					ByteBuffer buffer = ByteBuffer.allocate(TcpRpcConstants.NAMENODE_TCP_MESSAGESIZE);
+					OutputStream out = socket.getOutputStream();
+					for (int i = 1; i <= count; i++){
+						NaRPCProtocol.makeMessage(i, request, buffer);
+						out.write(buffer.array(), 0, buffer.limit());
+					}
+					out.flush();
+				} catch(Throwable e){
+					errors.add(e);
+				}
+			}
+		});
+		writer.start();
+		service.awaitExecuted(TcpRpcConstants.NAMENODE_TCP_QUEUEDEPTH);
+		
+		TcpRpcConnection connection = connect();
+		assertTrue(await(connection.getFile(new FileName("/fast/f"), false)).getFileBlock().getLength() > 0);
+		
+		DataInputStream in = new DataInputStream(socket.getInputStream());
+		for (int i = 1; i <= count; i++){
+			int size = in.readInt();
+			assertEquals(i, in.readLong());
+			in.skipBytes(size);
+		}
+		writer.join();
+		assertTrue(errors.isEmpty());
+		assertEquals(count + 1, service.log.size());
+		socket.close();
+	}
+
+	private static <T> T await(RpcFuture<T> future) throws Exception {
+		long deadline = System.currentTimeMillis() + 5000;
+		while(!future.isDone()){
+			assertTrue("request timed out", System.currentTimeMillis() < deadline);
+			Thread.sleep(1);
+		}
+		return future.get();
+	}
+
+	private void checkReuse(int workers) throws Exception {
+		RecordingService service = new RecordingService();
+		start(service, workers);
+		TcpRpcConnection connection = connect();
+		for (int i = 0; i < 50; i++){
+			RpcGetFile found = connection.getFile(new FileName("/found"), false).get();
+			assertEquals(RpcErrors.ERR_OK, found.getError());
+			assertEquals(4096, found.getFileBlock().getLength());
+			assertEquals(50020, found.getFileBlock().getDnInfo().getPort());
+			
+			//a lookup without a block must not see the block of the previous one
+			RpcGetFile empty = connection.getFile(new FileName("/empty"), false).get();
+			assertEquals(RpcErrors.ERR_OK, empty.getError());
+			assertEquals(0, empty.getFileBlock().getLength());
+			assertEquals(0, empty.getFileBlock().getDnInfo().getPort());
+		}
+		assertEquals(100, service.log.size());
+		assertTrue(service.states.size() <= Math.max(workers, TcpRpcConstants.NAMENODE_TCP_CORES));
+	}
+
+	//a directory whose entries map to a different stripe than the entries of the given paths
+	private static String directory(String... paths) throws Exception {
+		for (int i = 1; ; i++){
+			String directory = "/d" + i;
+			int stripe = stripe(directory + "/f");
+			boolean free = true;
+			for (String path : paths){
+				free &= stripe(path) != stripe;
+			}
+			if (free){
+				return directory;
+			}
+		}
+	}
+
+	private static int stripe(String path) throws Exception {
+		return TcpRpcWorkerPool.stripe(TcpRpcWorkerPool.parentKey(new FileName(path)), STRIPES);
+	}
+
+	private static List<String> names(String... paths) throws Exception {
+		List<String> names = new ArrayList<String>();
+		for (String path : paths){
+			names.add(new FileName(path).toString());
+		}
+		return names;
+	}
+
+	private TcpNameNodeServer server;
+
+	private void start(RecordingService service, int workers) throws Exception {
+		this.service = service;
+		try (ServerSocket socket = new ServerSocket(0)){
+			port = socket.getLocalPort();
+		}
+		CrailConstants.NAMENODE_ADDRESS = "crail://localhost:" + port + "?id=0&size=1";
+		TcpRpcConstants.NAMENODE_TCP_WORKERS = workers;
+		server = new TcpNameNodeServer(service);
+		server.init(CrailConfiguration.createEmptyConfiguration(), null);
+		Thread thread = new Thread(new Runnable(){
+			public void run() {
+				server.run();
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+		
+		client = new TcpNameNodeClient();
+		client.init(CrailConfiguration.createEmptyConfiguration(), null);
+	}
+
+	private TcpRpcConnection connect() throws Exception {
+		return (TcpRpcConnection) client.connect(new InetSocketAddress("localhost", port));
+	}
+
+	//answers every request, lookups of "/found" with a fixed block, of "/empty" without a block and all
+	//other lookups and creates with a block whose length is the position of the request in the log
+	static class RecordingService implements RpcNameNodeService {
+		private final BlockInfo block = new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 1, 2, 4096, 3);
+		private final String found;
+		private final String empty;
+		private Set<RpcNameNodeState> states = Collections.newSetFromMap(new IdentityHashMap<RpcNameNodeState, Boolean>());
+		private List<String> log = new ArrayList<String>();
+		private String held;
+		private CountDownLatch gate;
+
+		RecordingService() throws Exception {
+			this.found = new FileName("/found").toString();
+			this.empty = new FileName("/empty").toString();
+		}
+
+		//requests on the given path block until released
+		void hold(String path) throws Exception {
+			this.gate = new CountDownLatch(1);
+			this.held = new FileName(path).toString();
+		}
+
+		void release() {
+			if (gate != null){
+				gate.countDown();
+			}
+		}
+
+		synchronized void awaitExecuted(int count) throws Exception {
+			while(log.size() < count){
+				this.wait();
+			}
+		}
+
+		private int record(RpcNameNodeState errorState, FileName name) throws Exception {
+			String path = name != null ? name.toString() : "";
+			int index;
+			synchronized(this){
+				states.add(errorState);
+				index = log.size();
+				log.add(path);
+				this.notifyAll();
+			}
+			if (path.equals(held)){
+				gate.await();
+			}
+			return index;
+		}
+
+		private BlockInfo block(int index) {
+			return new BlockInfo(new DataNodeInfo(0, 0, 0, new byte[]{127, 0, 0, 1}, 50020), 0, 0, index + 1, 0);
+		}
+
+		public short createFile(RpcRequestMessage.CreateFileReq request, RpcResponseMessage.CreateFileRes response, RpcNameNodeState errorState) throws Exception {
+			response.setFileBlock(block(record(errorState, request.getFileName())));
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getFile(RpcRequestMessage.GetFileReq request, RpcResponseMessage.GetFileRes response, RpcNameNodeState errorState) throws Exception {
+			int index = record(errorState, request.getFileName());
+			String path = request.getFileName().toString();
+			if (path.equals(found)){
+				response.setFileBlock(block);
+			} else if (path.equals(empty)){
+				response.setFileBlock(null);
+			} else {
+				response.setFileBlock(block(index));
+			}
+			return RpcErrors.ERR_OK;
+		}
+
+		public short setFile(RpcRequestMessage.SetFileReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short removeFile(RpcRequestMessage.RemoveFileReq request, RpcResponseMessage.DeleteFileRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, request.getFileName());
+			return RpcErrors.ERR_OK;
+		}
+
+		public short renameFile(RpcRequestMessage.RenameFileReq request, RpcResponseMessage.RenameRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, request.getSrcFileName());
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getDataNode(RpcRequestMessage.GetDataNodeReq request, RpcResponseMessage.GetDataNodeRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short setBlock(RpcRequestMessage.SetBlockReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getBlock(RpcRequestMessage.GetBlockReq request, RpcResponseMessage.GetBlockRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short leaseBlocks(RpcRequestMessage.LeaseBlocksReq request, RpcResponseMessage.LeaseBlocksRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getBlocks(RpcRequestMessage.GetBlocksReq request, RpcResponseMessage.LeaseBlocksRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getLocation(RpcRequestMessage.GetLocationReq request, RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, request.getFileName());
+			return RpcErrors.ERR_OK;
+		}
+
+		public short getLocations(RpcRequestMessage.GetLocationsReq request, RpcResponseMessage.GetLocationsRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, request.getFileName());
+			return RpcErrors.ERR_OK;
+		}
+
+		public short listDirectory(RpcRequestMessage.ListDirectoryReq request, RpcResponseMessage.ListDirectoryRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short batch(RpcRequestMessage.BatchReq request, RpcResponseMessage.BatchRes response, RpcNameNodeState errorState) throws Exception {
+			return RpcNameNodeService.dispatchBatch(this, request, response, errorState);
+		}
+
+		public short dump(RpcRequestMessage.DumpNameNodeReq request, RpcResponseMessage.VoidRes response, RpcNameNodeState errorState) throws Exception {
+			return RpcErrors.ERR_OK;
+		}
+
+		public short ping(RpcRequestMessage.PingNameNodeReq request, RpcResponseMessage.PingNameNodeRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+
+		public short removeDataNode(RpcRequestMessage.RemoveDataNodeReq request, RpcResponseMessage.RemoveDataNodeRes response, RpcNameNodeState errorState) throws Exception {
+			record(errorState, null);
+			return RpcErrors.ERR_OK;
+		}
+	}
+}
@@ -54,10 +54,30 @@ public interface RpcNameNodeService {
 			RpcResponseMessage.GetBlockRes response, RpcNameNodeState errorState)
 			throws Exception;
 
+	public abstract short leaseBlocks(RpcRequestMessage.LeaseBlocksReq request,
+			RpcResponseMessage.LeaseBlocksRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short getBlocks(RpcRequestMessage.GetBlocksReq request,
+			RpcResponseMessage.LeaseBlocksRes response, RpcNameNodeState errorState)
+			throws Exception;
+
 	public abstract short getLocation(RpcRequestMessage.GetLocationReq request,
 			RpcResponseMessage.GetLocationRes response, RpcNameNodeState errorState)
 			throws Exception;
 
+	public abstract short getLocations(RpcRequestMessage.GetLocationsReq request,
+			RpcResponseMessage.GetLocationsRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short listDirectory(RpcRequestMessage.ListDirectoryReq request,
+			RpcResponseMessage.ListDirectoryRes response, RpcNameNodeState errorState)
+			throws Exception;
+
+	public abstract short batch(RpcRequestMessage.BatchReq request,
+			RpcResponseMessage.BatchRes response, RpcNameNodeState errorState)
+			throws Exception;
+
 	public abstract short dump(RpcRequestMessage.DumpNameNodeReq request,
 			RpcResponseMessage.VoidRes response, RpcNameNodeState errorState)
 			throws Exception;
@@ -69,6 +89,37 @@ public interface RpcNameNodeService {
 	public abstract short removeDataNode(RpcRequestMessage.RemoveDataNodeReq request,
 			 RpcResponseMessage.RemoveDataNodeRes response, RpcNameNodeState errorState) throws Exception;
 
+	//runs the operations of a batch one after the other on the given service, each operation gets its own error
+	public static short dispatchBatch(RpcNameNodeService service, RpcRequestMessage.BatchReq request,
+			RpcResponseMessage.BatchRes response, RpcNameNodeState errorState) throws Exception {
+		if (!RpcProtocol.verifyProtocol(RpcProtocol.CMD_BATCH, request, response)) {
+			return RpcErrors.ERR_PROTOCOL_MISMATCH;
+		}
+		
+		response.reset();
+		for (int i = 0; i < request.getOpCount(); i++){
+			errorState.setError(RpcErrors.ERR_OK);
+			switch(request.getOpType(i)){
+			case RpcProtocol.REQ_CREATE_FILE:
+				RpcResponseMessage.CreateFileRes createRes = response.addCreateFile();
+				createRes.setError(service.createFile(request.createFile(i), createRes, errorState));
+				break;
+			case RpcProtocol.REQ_GET_FILE:
+				RpcResponseMessage.GetFileRes getRes = response.addGetFile();
+				getRes.setError(service.getFile(request.getFile(i), getRes, errorState));
+				break;
+			case RpcProtocol.REQ_REMOVE_FILE:
+				RpcResponseMessage.DeleteFileRes deleteRes = response.addDeleteFile();
+				deleteRes.setError(service.removeFile(request.removeFile(i), deleteRes, errorState));
+				break;
+			default:
+				return RpcErrors.ERR_PROTOCOL_MISMATCH;
+			}
+		}
+		errorState.setError(RpcErrors.ERR_OK);
+		return RpcErrors.ERR_OK;
+	}
+
 	@SuppressWarnings("unchecked")
 	public static RpcNameNodeService createInstance(String name) throws Exception {
 		Class<?> serviceClass = Class.forName(name);
@@ -25,8 +25,8 @@ import org.slf4j.Logger;
 public class RpcProtocol extends RpcErrors {
 	private static final Logger LOG = CrailUtils.getLogger();
 	
-	public static short[] requestTypes = new short[16];
-	public static short[] responseTypes = new short[16];
+	public static short[] requestTypes = new short[32];
+	public static short[] responseTypes = new short[32];
 	
 	//rpc calls
 	public static final short CMD_CREATE_FILE = 1;	
@@ -41,6 +41,11 @@ public class RpcProtocol extends RpcErrors {
 	public static final short CMD_PING_NAMENODE = 11;
 	public static final short CMD_GET_DATANODE = 12;
 	public static final short CMD_REMOVE_DATANODE = 13;
+	public static final short CMD_LEASE_BLOCKS = 14;
+	public static final short CMD_GET_BLOCKS = 15;
+	public static final short CMD_GET_LOCATIONS = 16;
+	public static final short CMD_BATCH = 17;
+	public static final short CMD_LIST_DIRECTORY = 18;
 	
 	//request types
 	public static final short REQ_CREATE_FILE = 1;	
@@ -55,6 +60,11 @@ public class RpcProtocol extends RpcErrors {
 	public static final short REQ_PING_NAMENODE = 11;
 	public static final short REQ_GET_DATANODE = 12;
 	public static final short REQ_REMOVE_DATANODE = 13;
+	public static final short REQ_LEASE_BLOCKS = 14;
+	public static final short REQ_GET_BLOCKS = 15;
+	public static final short REQ_GET_LOCATIONS = 16;
+	public static final short REQ_BATCH = 17;
+	public static final short REQ_LIST_DIRECTORY = 18;
 
 	//response types
 	public static final short RES_VOID = 1;
@@ -67,6 +77,10 @@ public class RpcProtocol extends RpcErrors {
 	public static final short RES_PING_NAMENODE = 9;
 	public static final short RES_GET_DATANODE = 10;
 	public static final short RES_REMOVE_DATANODE = 11;
+	public static final short RES_LEASE_BLOCKS = 12;
+	public static final short RES_GET_LOCATIONS = 13;
+	public static final short RES_BATCH = 14;
+	public static final short RES_LIST_DIRECTORY = 15;
 	
 	
 	static {
@@ -83,6 +97,11 @@ public class RpcProtocol extends RpcErrors {
 		requestTypes[CMD_PING_NAMENODE] = REQ_PING_NAMENODE;	
 		requestTypes[CMD_GET_DATANODE] = REQ_GET_DATANODE;
 		requestTypes[CMD_REMOVE_DATANODE] = REQ_REMOVE_DATANODE;
+		requestTypes[CMD_LEASE_BLOCKS] = REQ_LEASE_BLOCKS;
+		requestTypes[CMD_GET_BLOCKS] = REQ_GET_BLOCKS;
+		requestTypes[CMD_GET_LOCATIONS] = REQ_GET_LOCATIONS;
+		requestTypes[CMD_BATCH] = REQ_BATCH;
+		requestTypes[CMD_LIST_DIRECTORY] = REQ_LIST_DIRECTORY;
 		
 		responseTypes[0] = 0;
 		responseTypes[CMD_CREATE_FILE] = RES_CREATE_FILE;
@@ -97,6 +116,11 @@ public class RpcProtocol extends RpcErrors {
 		responseTypes[CMD_PING_NAMENODE] = RES_PING_NAMENODE;	
 		responseTypes[CMD_GET_DATANODE] = RES_GET_DATANODE;
 		responseTypes[CMD_REMOVE_DATANODE] = RES_REMOVE_DATANODE;
+		responseTypes[CMD_LEASE_BLOCKS] = RES_LEASE_BLOCKS;
+		responseTypes[CMD_GET_BLOCKS] = RES_LEASE_BLOCKS;
+		responseTypes[CMD_GET_LOCATIONS] = RES_GET_LOCATIONS;
+		responseTypes[CMD_BATCH] = RES_BATCH;
+		responseTypes[CMD_LIST_DIRECTORY] = RES_LIST_DIRECTORY;
 	}
 	
 
@@ -22,42 +22,98 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.crail.CrailNodeType;
+import org.apache.crail.CrailPlacementPolicy;
+import org.apache.crail.conf.CrailConstants;
 import org.apache.crail.metadata.BlockInfo;
 import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.metadata.FileInfo;
 import org.apache.crail.metadata.FileName;
 
 public class RpcRequestMessage {
+	//the leaf name of a created or renamed node is only handed to the namenode if it keeps names for listing
+	static byte[] leafName(FileName filename){
+		if (CrailConstants.NAMENODE_LISTING == 0 || filename.getLeaf() == null){
+			return null;
+		}
+		return filename.getLeaf().getBytes(StandardCharsets.UTF_8);
+	}
+	
+	static void writeName(ByteBuffer buffer, byte[] name, RpcEncoding encoding){
+		if (name == null){
+			encoding.putInt(buffer, 0);
+		} else {
+			encoding.putInt(buffer, name.length);
+			buffer.put(name);
+		}
+	}
+	
+	static byte[] readName(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+		int length = encoding.getInt(buffer);
+		if (length < 0 || length > buffer.remaining()){
+			throw new IOException("invalid name length " + length);
+		}
+		if (length == 0){
+			return null;
+		}
+		byte[] name = new byte[length];
+		buffer.get(name);
+		return name;
+	}
+	
 	public static class CreateFileReq implements RpcProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileName.CSIZE + 16;
+		public static int CSIZE = FileName.CSIZE + 20 + (CrailConstants.NAMENODE_LISTING > 0 ? 4 + CrailConstants.NAMENODE_LISTING : 0);
+		//flags next to enumerable, the placement and the leaf name follow in this order
+		private static final int NAMED = 2;
+		private static final int PLACED = 4;
+		//requests without a placement, e.g., from older clients and logs, inherit the placement of the parent
+		private static final int PARENT = CrailPlacementPolicy.PARENT.getLabel();
 		
 		protected FileName filename;
 		protected CrailNodeType type;
 		protected int storageClass;
 		protected int locationClass;
+		protected int placement;
 		protected boolean enumerable;
+		protected byte[] name;
 		
 		public CreateFileReq(){
 			this.filename = new FileName();
 			this.type = CrailNodeType.DATAFILE;
 			this.storageClass = 0;
 			this.locationClass = 0;
+			this.placement = PARENT;
 			this.enumerable = true;
+			this.name = null;
 		}
 		
 		public CreateFileReq(FileName filename, CrailNodeType type, int storageClass, int locationClass, boolean enumerable) {
+			this(filename, type, storageClass, locationClass, PARENT, enumerable);
+		}
+		
+		public CreateFileReq(FileName filename, CrailNodeType type, int storageClass, int locationClass, int placement, boolean enumerable) {
 			this.filename = filename;
 			this.type = type;
 			this.storageClass = storageClass;
 			this.locationClass = locationClass;
+			this.placement = placement;
 			this.enumerable = enumerable;
+			this.name = leafName(filename);
 		}
 
 		public FileName getFileName() {
 			return filename;
 		}
+		
+		public byte[] getName() {
+			return name;
+		}
+		
+		public void setName(byte[] name) {
+			this.name = name;
+		}
 
 		public CrailNodeType getFileType(){
 			return type;
@@ -71,6 +127,10 @@ public class RpcRequestMessage {
 			return locationClass;
 		}
 		
+		public int getPlacement() {
+			return placement;
+		}
+		
 		public boolean isEnumerable() {
 			return enumerable;
 		}
@@ -83,31 +143,40 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_CREATE_FILE;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			filename.write(buffer);
-			buffer.putInt(type.getLabel());
-			buffer.putInt(storageClass);
-			buffer.putInt(locationClass);
-			buffer.putInt(enumerable ? 1 : 0);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			filename.write(buffer, encoding);
+			encoding.putInt(buffer, type.getLabel());
+			encoding.putInt(buffer, storageClass);
+			encoding.putInt(buffer, locationClass);
+			encoding.putInt(buffer, (enumerable ? 1 : 0) | (name != null ? NAMED : 0) | (placement != PARENT ? PLACED : 0));
+			if (placement != PARENT){
+				encoding.putInt(buffer, placement);
+			}
+			if (name != null){
+				writeName(buffer, name, encoding);
+			}
 			
-			return CSIZE;
+			return buffer.position() - start;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			filename.update(buffer);
-			int _type = buffer.getInt();
+		public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			filename.update(buffer, encoding);
+			int _type = encoding.getInt(buffer);
 			type = CrailNodeType.parse(_type);
-			storageClass = buffer.getInt();
-			locationClass = buffer.getInt();
-			int _enumerable = buffer.getInt();
-			enumerable = (_enumerable == 1) ? true : false;			
+			storageClass = encoding.getInt(buffer);
+			locationClass = encoding.getInt(buffer);
+			int _enumerable = encoding.getInt(buffer);
+			enumerable = (_enumerable & 1) == 1 ? true : false;
+			placement = (_enumerable & PLACED) != 0 ? encoding.getInt(buffer) : PARENT;
+			name = (_enumerable & NAMED) != 0 ? readName(buffer, encoding) : null;
 		}
 
 		@Override
 		public String toString() {
 			return "CreateFileReq [filename=" + filename + ", type=" + type
 					+ ", storageClass=" + storageClass + ", locationClass="
-					+ locationClass + ", enumerable=" + enumerable + "]";
+					+ locationClass + ", placement=" + placement + ", enumerable=" + enumerable + "]";
 		}
 	}
 	
@@ -126,6 +195,11 @@ public class RpcRequestMessage {
 			this.filename = filename;
 			this.writeable = writeable;
 		}
+		
+		public void set(FileName filename, boolean writeable) {
+			this.filename = filename;
+			this.writeable = writeable;
+		}
 
 		public FileName getFileName() {
 			return filename;
@@ -144,15 +218,16 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_GET_FILE;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			filename.write(buffer);
-			buffer.putInt(writeable ? 1 : 0);
-			return CSIZE;
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			filename.write(buffer, encoding);
+			encoding.putInt(buffer, writeable ? 1 : 0);
+			return buffer.position() - start;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			filename.update(buffer);
-			int tmp = buffer.getInt();
+		public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			filename.update(buffer, encoding);
+			int tmp = encoding.getInt(buffer);
 			writeable = (tmp == 1) ? true : false;
 		}		
 	}
@@ -189,16 +264,17 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_SET_FILE;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			fileInfo.write(buffer, true);
-			buffer.putInt(close ? 1 : 0);
-			return CSIZE;
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			fileInfo.write(buffer, true, encoding);
+			encoding.putInt(buffer, close ? 1 : 0);
+			return buffer.position() - start;
 		}		
 	
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				fileInfo.update(buffer);
-				int tmp = buffer.getInt();
+				fileInfo.update(buffer, encoding);
+				int tmp = encoding.getInt(buffer);
 				close = (tmp == 1) ? true : false;
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
@@ -245,33 +321,41 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_REMOVE_FILE;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			filename.write(buffer);
-			buffer.putInt(recursive ? 1 : 0);
-			return CSIZE;
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			filename.write(buffer, encoding);
+			encoding.putInt(buffer, recursive ? 1 : 0);
+			return buffer.position() - start;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			filename.update(buffer);
-			int tmp = buffer.getInt();
+		public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			filename.update(buffer, encoding);
+			int tmp = encoding.getInt(buffer);
 			recursive = (tmp == 1) ? true : false;
 		}		
 	}	
 	
+	/*
+	 * The leaf name of the destination is not part of the message body, it trails the message on the wire 
+	 * and in the namenode log (writeName, updateName) so that requests and log records without it still parse.
+	 */
 	public static class RenameFileReq implements RpcProtocol.NameNodeRpcMessage {
-		public static int CSIZE = FileName.CSIZE*2;
+		public static int CSIZE = FileName.CSIZE*2 + 4 + CrailConstants.NAMENODE_LISTING;
 		
 		protected FileName srcFileName;
 		protected FileName dstFileName;
+		protected byte[] name;
 
 		public RenameFileReq(){
 			this.srcFileName = new FileName();
 			this.dstFileName = new FileName();
+			this.name = null;
 		}
 		
 		public RenameFileReq(FileName srcFileName, FileName dstFileName) {
 			this.srcFileName = srcFileName;
 			this.dstFileName = dstFileName;
+			this.name = leafName(dstFileName);
 		}
 
 		public FileName getSrcFileName() {
@@ -282,6 +366,13 @@ public class RpcRequestMessage {
 			return dstFileName;
 		}
 		
+		public byte[] getName() {
+			return name;
+		}
+		
+		public void setName(byte[] name) {
+			this.name = name;
+		}
 		
 		public int size() {
 			return CSIZE;
@@ -291,15 +382,25 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_RENAME_FILE;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			int written = srcFileName.write(buffer);
-			written += dstFileName.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = srcFileName.write(buffer, encoding);
+			written += dstFileName.write(buffer, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			srcFileName.update(buffer);
-			dstFileName.update(buffer);
+		public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			srcFileName.update(buffer, encoding);
+			dstFileName.update(buffer, encoding);
+		}
+		
+		public int writeName(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			RpcRequestMessage.writeName(buffer, name, encoding);
+			return buffer.position() - start;
+		}
+		
+		public void updateName(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			name = buffer.hasRemaining() ? readName(buffer, encoding) : null;
 		}
 
 		@Override
@@ -330,6 +431,13 @@ public class RpcRequestMessage {
 			this.position = position;
 			this.capacity = capacity;
 		}
+		
+		public void set(long fd, long token, long position, long capacity) {
+			this.fd = fd;
+			this.token = token;
+			this.position = position;
+			this.capacity = capacity;
+		}
 
 		public long getFd() {
 			return fd;
@@ -356,19 +464,20 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_GET_BLOCK;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			buffer.putLong(fd);
-			buffer.putLong(token);
-			buffer.putLong(position);
-			buffer.putLong(capacity);
-			return CSIZE;
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putLong(buffer, fd);
+			encoding.putLong(buffer, token);
+			encoding.putLong(buffer, position);
+			encoding.putLong(buffer, capacity);
+			return buffer.position() - start;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			fd = buffer.getLong();
-			token = buffer.getLong();
-			position = buffer.getLong();
-			capacity = buffer.getLong();
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			fd = encoding.getLong(buffer);
+			token = encoding.getLong(buffer);
+			position = encoding.getLong(buffer);
+			capacity = encoding.getLong(buffer);
 		}
 
 		@Override
@@ -382,6 +491,100 @@ public class RpcRequestMessage {
 		}		
 	}
 	
+	//leases count blocks starting at position to the writer holding the token, a count of 0 releases
+	//all blocks past the capacity of the file
+	public static class LeaseBlocksReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 36;
+		//release without updating the capacity, sent by the namenode when a lease expires
+		public static final long KEEP_CAPACITY = -1;
+		
+		protected long fd;
+		protected long token;
+		protected long position;
+		protected long capacity;
+		protected int count;
+
+		public LeaseBlocksReq(){
+			this.fd = 0;
+			this.token = 0;
+			this.position = 0;
+			this.capacity = 0;
+			this.count = 0;
+		}
+		
+		public LeaseBlocksReq(long fd, long token, long position, long capacity, int count) {
+			this.fd = fd;
+			this.token = token;
+			this.position = position;
+			this.capacity = capacity;
+			this.count = count;
+		}
+		
+		public void set(long fd, long token, long position, long capacity, int count) {
+			this.fd = fd;
+			this.token = token;
+			this.position = position;
+			this.capacity = capacity;
+			this.count = count;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getPosition(){
+			return this.position;
+		}
+
+		public long getToken() {
+			return token;
+		}
+		
+		public long getCapacity(){
+			return capacity;
+		}
+		
+		public int getCount(){
+			return count;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_LEASE_BLOCKS;
+		}		
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putLong(buffer, fd);
+			encoding.putLong(buffer, token);
+			encoding.putLong(buffer, position);
+			encoding.putLong(buffer, capacity);
+			encoding.putInt(buffer, count);
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			fd = encoding.getLong(buffer);
+			token = encoding.getLong(buffer);
+			position = encoding.getLong(buffer);
+			capacity = encoding.getLong(buffer);
+			count = encoding.getInt(buffer);
+		}
+
+		@Override
+		public String toString() {
+			return "LeaseBlocksReq [fd=" + fd + ", token=" + token + ", position="
+					+ position + ", capacity=" + capacity + ", count=" + count + "]";
+		}
+
+		public void setToken(long value) {
+			this.token = value;
+		}		
+	}
+	
 	public static class GetLocationReq implements RpcProtocol.NameNodeRpcMessage {
 		public static int CSIZE = FileName.CSIZE + 8;
 		
@@ -414,15 +617,71 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_GET_LOCATION;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			fileName.write(buffer);
-			buffer.putLong(position);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			fileName.write(buffer, encoding);
+			encoding.putLong(buffer, position);
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			fileName.update(buffer, encoding);
+			position = encoding.getLong(buffer);
+		}		
+	}
+	
+	//resolves the datanodes of up to count blocks of a file starting at position
+	public static class GetLocationsReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = FileName.CSIZE + 12;
+		
+		protected FileName fileName;
+		protected long position;
+		protected int count;
+
+		public GetLocationsReq(){
+			this.fileName = new FileName();
+			this.position = 0;
+			this.count = 0;
+		}
+		
+		public GetLocationsReq(FileName fileName, long position, int count) {
+			this.fileName = fileName;
+			this.position = position;
+			this.count = count;
+		}
+
+		public long getPosition(){
+			return this.position;
+		}
+
+		public FileName getFileName() {
+			return fileName;
+		}
+		
+		public int getCount(){
+			return count;
+		}
+		
+		public int size() {
 			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_GET_LOCATIONS;
+		}		
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			fileName.write(buffer, encoding);
+			encoding.putLong(buffer, position);
+			encoding.putInt(buffer, count);
+			return buffer.position() - start;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			fileName.update(buffer);
-			position = buffer.getLong();
+		public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			fileName.update(buffer, encoding);
+			position = encoding.getLong(buffer);
+			count = encoding.getInt(buffer);
 		}		
 	}
 	
@@ -451,14 +710,14 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_SET_BLOCK;
 		}		
 		
-		public int write(ByteBuffer buffer){
-			int written = blockInfo.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding){
+			int written = blockInfo.write(buffer, encoding);
 			return written;
 		}
 		
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				blockInfo.update(buffer);
+				blockInfo.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -498,14 +757,14 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_GET_DATANODE;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			int written = dnInfo.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = dnInfo.write(buffer, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				dnInfo.update(buffer);
+				dnInfo.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -534,13 +793,14 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_DUMP_NAMENODE;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			buffer.putInt(op);
-			return CSIZE;
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putInt(buffer, op);
+			return buffer.position() - start;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			op = buffer.getInt();
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			op = encoding.getInt(buffer);
 		}		
 	}
 	
@@ -565,13 +825,14 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_PING_NAMENODE;
 		}		
 		
-		public int write(ByteBuffer buffer) {
-			buffer.putInt(op);
-			return CSIZE;
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putInt(buffer, op);
+			return buffer.position() - start;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			op = buffer.getInt();
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			op = encoding.getInt(buffer);
 		}		
 	}
 
@@ -598,28 +859,29 @@ public class RpcRequestMessage {
 			return RpcProtocol.REQ_REMOVE_DATANODE;
 		}
 
-		public int write(ByteBuffer buffer) throws IOException {
-			int size = size();
+		public int write(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			int start = buffer.position();
 
-			checkSize(buffer.remaining());
+			checkSize(buffer.remaining(), this.size());
 
 			buffer.put(this.getIPAddress().getAddress());
-			buffer.putInt(this.port());
-			return size;
+			encoding.putInt(buffer, this.port());
+			return buffer.position() - start;
 		}
 
-		private void checkSize(int remaining) throws IOException {
-			if(this.size() > remaining)
-				throw new IOException("Only " + remaining + " remaining bytes stored in buffer, however " + this.size() + " bytes are required");
+		private void checkSize(int remaining, int required) throws IOException {
+			if(required > remaining)
+				throw new IOException("Only " + remaining + " remaining bytes stored in buffer, however " + required + " bytes are required");
 		}
 
-		public void update(ByteBuffer buffer) throws IOException {
-			checkSize(buffer.remaining());
+		public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			//a compact port may take a single byte
+			checkSize(buffer.remaining(), encoding.isCompact() ? 4 + 1 : this.size());
 
 			byte[] b = new byte[4];
 			buffer.get(b);
 			this.ipAddr = InetAddress.getByAddress(b);
-			this.port = buffer.getInt();
+			this.port = encoding.getInt(buffer);
 		}
 
 		public InetAddress getIPAddress() {
@@ -632,4 +894,248 @@ public class RpcRequestMessage {
 	}
 	
 
+	//returns up to count blocks of a file starting at position, used by readers to fetch the block map in pages
+	public static class GetBlocksReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 20;
+		
+		protected long fd;
+		protected long position;
+		protected int count;
+
+		public GetBlocksReq(){
+			this.fd = 0;
+			this.position = 0;
+			this.count = 0;
+		}
+		
+		public GetBlocksReq(long fd, long position, int count) {
+			this.fd = fd;
+			this.position = position;
+			this.count = count;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getPosition(){
+			return this.position;
+		}
+		
+		public int getCount(){
+			return count;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_GET_BLOCKS;
+		}		
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putLong(buffer, fd);
+			encoding.putLong(buffer, position);
+			encoding.putInt(buffer, count);
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			fd = encoding.getLong(buffer);
+			position = encoding.getLong(buffer);
+			count = encoding.getInt(buffer);
+		}
+
+		@Override
+		public String toString() {
+			return "GetBlocksReq [fd=" + fd + ", position=" + position + ", count=" + count + "]";
+		}
+	}
+	
+	//carries several create, lookup and delete operations which the namenode processes in order
+	public static class BatchReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 4 + RpcBatch.MAX_OPS*(2 + Math.max(CreateFileReq.CSIZE, Math.max(GetFileReq.CSIZE, RemoveFileReq.CSIZE)));
+		
+		protected int opCount;
+		protected short[] opTypes;
+		protected CreateFileReq[] createFileReqs;
+		protected GetFileReq[] getFileReqs;
+		protected RemoveFileReq[] removeFileReqs;
+
+		public BatchReq(){
+			this.opCount = 0;
+			this.opTypes = new short[RpcBatch.MAX_OPS];
+			this.createFileReqs = new CreateFileReq[RpcBatch.MAX_OPS];
+			this.getFileReqs = new GetFileReq[RpcBatch.MAX_OPS];
+			this.removeFileReqs = new RemoveFileReq[RpcBatch.MAX_OPS];
+		}
+		
+		public BatchReq(RpcOperation[] operations) throws IOException {
+			this();
+			if (operations.length > RpcBatch.MAX_OPS){
+				throw new IOException("too many operations in batch, count " + operations.length + ", max " + RpcBatch.MAX_OPS);
+			}
+			for (RpcOperation operation : operations){
+				switch(operation.getType()){
+				case RpcOperation.CREATE_FILE:
+					opTypes[opCount] = RpcProtocol.REQ_CREATE_FILE;
+					createFileReqs[opCount] = new CreateFileReq(operation.getFileName(), operation.getNodeType(), operation.getStorageClass(), operation.getLocationClass(), operation.getPlacement(), operation.isEnumerable());
+					break;
+				case RpcOperation.GET_FILE:
+					opTypes[opCount] = RpcProtocol.REQ_GET_FILE;
+					getFileReqs[opCount] = new GetFileReq(operation.getFileName(), operation.isWriteable());
+					break;
+				case RpcOperation.REMOVE_FILE:
+					opTypes[opCount] = RpcProtocol.REQ_REMOVE_FILE;
+					removeFileReqs[opCount] = new RemoveFileReq(operation.getFileName(), operation.isRecursive());
+					break;
+				default:
+					throw new IOException("operation not supported in batch, type " + operation.getType());
+				}
+				opCount++;
+			}
+		}
+		
+		public int getOpCount(){
+			return opCount;
+		}
+		
+		public short getOpType(int index){
+			return opTypes[index];
+		}
+		
+		public CreateFileReq createFile(int index){
+			return createFileReqs[index];
+		}
+		
+		public GetFileReq getFile(int index){
+			return getFileReqs[index];
+		}
+		
+		public RemoveFileReq removeFile(int index){
+			return removeFileReqs[index];
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_BATCH;
+		}		
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putInt(buffer, opCount);
+			for (int i = 0; i < opCount; i++){
+				buffer.putShort(opTypes[i]);
+				switch(opTypes[i]){
+				case RpcProtocol.REQ_CREATE_FILE:
+					createFileReqs[i].write(buffer, encoding);
+					break;
+				case RpcProtocol.REQ_GET_FILE:
+					getFileReqs[i].write(buffer, encoding);
+					break;
+				case RpcProtocol.REQ_REMOVE_FILE:
+					removeFileReqs[i].write(buffer, encoding);
+					break;
+				}
+			}
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) throws IOException {
+			opCount = encoding.getInt(buffer);
+			for (int i = 0; i < opCount; i++){
+				opTypes[i] = buffer.getShort();
+				switch(opTypes[i]){
+				case RpcProtocol.REQ_CREATE_FILE:
+					if (createFileReqs[i] == null){
+						createFileReqs[i] = new CreateFileReq();
+					}
+					createFileReqs[i].update(buffer, encoding);
+					break;
+				case RpcProtocol.REQ_GET_FILE:
+					if (getFileReqs[i] == null){
+						getFileReqs[i] = new GetFileReq();
+					}
+					getFileReqs[i].update(buffer, encoding);
+					break;
+				case RpcProtocol.REQ_REMOVE_FILE:
+					if (removeFileReqs[i] == null){
+						removeFileReqs[i] = new RemoveFileReq();
+					}
+					removeFileReqs[i].update(buffer, encoding);
+					break;
+				}
+			}
+		}
+
+		@Override
+		public String toString() {
+			return "BatchReq [opCount=" + opCount + "]";
+		}
+	}
+	
+	//returns the children of a container following the cursor, in the order of their name hashes
+	public static class ListDirectoryReq implements RpcProtocol.NameNodeRpcMessage {
+		public static int CSIZE = 20;
+		
+		protected long fd;
+		protected long cursor;
+		protected int count;
+
+		public ListDirectoryReq(){
+			this.fd = 0;
+			this.cursor = 0;
+			this.count = 0;
+		}
+		
+		public ListDirectoryReq(long fd, long cursor, int count) {
+			this.fd = fd;
+			this.cursor = cursor;
+			this.count = count;
+		}
+
+		public long getFd() {
+			return fd;
+		}
+
+		public long getCursor(){
+			return cursor;
+		}
+		
+		public int getCount(){
+			return count;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.REQ_LIST_DIRECTORY;
+		}		
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putLong(buffer, fd);
+			encoding.putLong(buffer, cursor);
+			encoding.putInt(buffer, count);
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			fd = encoding.getLong(buffer);
+			cursor = encoding.getLong(buffer);
+			count = encoding.getInt(buffer);
+		}
+
+		@Override
+		public String toString() {
+			return "ListDirectoryReq [fd=" + fd + ", cursor=" + cursor + ", count=" + count + "]";
+		}
+	}
 }
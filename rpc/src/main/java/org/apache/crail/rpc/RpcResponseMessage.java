@@ -21,16 +21,24 @@ package org.apache.crail.rpc;
 import java.io.IOException;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
 import org.apache.crail.metadata.DataNodeStatistics;
 import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.rpc.RpcBatch;
 import org.apache.crail.rpc.RpcCreateFile;
 import org.apache.crail.rpc.RpcDeleteFile;
+import org.apache.crail.rpc.RpcEncoding;
 import org.apache.crail.rpc.RpcGetBlock;
+import org.apache.crail.rpc.RpcGetBlocks;
 import org.apache.crail.rpc.RpcGetDataNode;
 import org.apache.crail.rpc.RpcGetFile;
 import org.apache.crail.rpc.RpcGetLocation;
+import org.apache.crail.rpc.RpcGetLocations;
+import org.apache.crail.rpc.RpcLeaseBlocks;
+import org.apache.crail.rpc.RpcListDirectory;
 import org.apache.crail.rpc.RpcPing;
 import org.apache.crail.rpc.RpcRenameFile;
 import org.apache.crail.rpc.RpcVoid;
@@ -51,10 +59,10 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_VOID;
 		}
 		
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 		}
 
-		public int write(ByteBuffer buffer) {
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
 			return 0;
 		}
 		
@@ -97,20 +105,20 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_CREATE_FILE;
 		}
 		
-		public int write(ByteBuffer buffer) {
-			int written = fileInfo.write(buffer, shipToken);
-			written += parentInfo.write(buffer, false);
-			written += fileBlock.write(buffer);
-			written += dirBlock.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = fileInfo.write(buffer, shipToken, encoding);
+			written += parentInfo.write(buffer, false, encoding);
+			written += fileBlock.write(buffer, encoding);
+			written += dirBlock.write(buffer, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				fileInfo.update(buffer);
-				parentInfo.update(buffer);
-				fileBlock.update(buffer);
-				dirBlock.update(buffer);
+				fileInfo.update(buffer, encoding);
+				parentInfo.update(buffer, encoding);
+				fileBlock.update(buffer, encoding);
+				dirBlock.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -143,6 +151,8 @@ public class RpcResponseMessage {
 		public void setFileBlock(BlockInfo blockInfo){
 			if (blockInfo != null){
 				this.fileBlock.setBlockInfo(blockInfo);
+			} else {
+				this.fileBlock.reset();
 			}
 		}
 		
@@ -153,6 +163,8 @@ public class RpcResponseMessage {
 		public void setDirBlock(BlockInfo blockInfo){
 			if (blockInfo != null){
 				this.dirBlock.setBlockInfo(blockInfo);
+			} else {
+				this.dirBlock.reset();
 			}
 		}		
 		
@@ -197,16 +209,16 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_GET_FILE;
 		}
 		
-		public int write(ByteBuffer buffer) {
-			int written = fileInfo.write(buffer, shipToken);
-			written += fileBlock.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = fileInfo.write(buffer, shipToken, encoding);
+			written += fileBlock.write(buffer, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				fileInfo.update(buffer);
-				fileBlock.update(buffer);
+				fileInfo.update(buffer, encoding);
+				fileBlock.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -227,9 +239,12 @@ public class RpcResponseMessage {
 			return fileBlock;
 		}
 		
+		//responses are reused by the servers, a missing block must not leave the one of a previous lookup behind
 		public void setFileBlock(BlockInfo blockInfo){
 			if (blockInfo != null){
 				fileBlock.setBlockInfo(blockInfo);
+			} else {
+				fileBlock.reset();
 			}
 		}
 		
@@ -272,16 +287,16 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_DELETE_FILE;
 		}
 		
-		public int write(ByteBuffer buffer) {
-			int written = fileInfo.write(buffer, shipToken);
-			written += parentInfo.write(buffer, false);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = fileInfo.write(buffer, shipToken, encoding);
+			written += parentInfo.write(buffer, false, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				fileInfo.update(buffer);
-				parentInfo.update(buffer);
+				fileInfo.update(buffer, encoding);
+				parentInfo.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -350,24 +365,24 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_RENAME_FILE;
 		}
 		
-		public int write(ByteBuffer buffer) {
-			int written = srcParent.write(buffer, false);
-			written += srcFile.write(buffer, false);
-			written += srcBlock.write(buffer);
-			written += dstParent.write(buffer, false);
-			written += dstFile.write(buffer, false);
-			written += dstBlock.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = srcParent.write(buffer, false, encoding);
+			written += srcFile.write(buffer, false, encoding);
+			written += srcBlock.write(buffer, encoding);
+			written += dstParent.write(buffer, false, encoding);
+			written += dstFile.write(buffer, false, encoding);
+			written += dstBlock.write(buffer, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				srcParent.update(buffer);
-				srcFile.update(buffer);
-				srcBlock.update(buffer);
-				dstParent.update(buffer);
-				dstFile.update(buffer);
-				dstBlock.update(buffer);
+				srcParent.update(buffer, encoding);
+				srcFile.update(buffer, encoding);
+				srcBlock.update(buffer, encoding);
+				dstParent.update(buffer, encoding);
+				dstFile.update(buffer, encoding);
+				dstBlock.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -424,12 +439,16 @@ public class RpcResponseMessage {
 		public void setSrcBlock(BlockInfo srcBlock) {
 			if (srcBlock != null){
 				this.srcBlock.setBlockInfo(srcBlock);
+			} else {
+				this.srcBlock.reset();
 			}
 		}
 
 		public void setDstBlock(BlockInfo dstBlock) {
 			if (dstBlock != null){
 				this.dstBlock.setBlockInfo(dstBlock);
+			} else {
+				this.dstBlock.reset();
 			}
 		}
 
@@ -463,14 +482,14 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_GET_BLOCK;
 		}
 		
-		public int write(ByteBuffer buffer) {
-			int written = blockInfo.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = blockInfo.write(buffer, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				blockInfo.update(buffer);
+				blockInfo.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -496,6 +515,101 @@ public class RpcResponseMessage {
 
 	}	
 	
+	public static class LeaseBlocksRes implements RpcProtocol.NameNodeRpcMessage, RpcLeaseBlocks {
+		public static final int MAX_BLOCKS = RpcGetBlocks.MAX_BLOCKS;
+		public static int CSIZE = 4 + MAX_BLOCKS*BlockInfo.CSIZE;
+		
+		private BlockInfo[] blocks;
+		private int blockCount;
+		//number of blocks at the end of the lease which were newly allocated, not shipped
+		private int allocated;
+		private short error;
+		
+		public LeaseBlocksRes() {
+			this.blocks = new BlockInfo[MAX_BLOCKS];
+			for (int i = 0; i < blocks.length; i++){
+				blocks[i] = new BlockInfo();
+			}
+			this.blockCount = 0;
+			this.allocated = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_LEASE_BLOCKS;
+		}
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putInt(buffer, blockCount);
+			for (int i = 0; i < blockCount; i++){
+				blocks[i].write(buffer, encoding);
+			}
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			try {
+				blockCount = encoding.getInt(buffer);
+				for (int i = 0; i < blockCount; i++){
+					blocks[i].update(buffer, encoding);
+				}
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+
+		public BlockInfo getBlockInfo() {
+			return blocks[0];
+		}
+
+		public void setBlockInfo(BlockInfo blockInfo) {
+			reset();
+			addBlockInfo(blockInfo, false);
+		}
+		
+		//responses are reused by some transports and during log replay
+		public void reset() {
+			blockCount = 0;
+			allocated = 0;
+		}
+		
+		public BlockInfo getBlockInfo(int index) {
+			return blocks[index];
+		}
+		
+		public int getBlockCount() {
+			return blockCount;
+		}
+		
+		public boolean addBlockInfo(BlockInfo blockInfo, boolean allocated) {
+			if (blockInfo == null || blockCount == MAX_BLOCKS){
+				return false;
+			}
+			this.blocks[blockCount++].setBlockInfo(blockInfo);
+			if (allocated){
+				this.allocated++;
+			}
+			return true;
+		}
+		
+		public int getAllocated() {
+			return allocated;
+		}
+		
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
+	
 	public static class GetLocationRes implements RpcProtocol.NameNodeRpcMessage, RpcGetLocation {
 		public static int CSIZE = BlockInfo.CSIZE + 8;
 		
@@ -517,14 +631,14 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_GET_LOCATION;
 		}
 		
-		public int write(ByteBuffer buffer) {
-			int written = blockInfo.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = blockInfo.write(buffer, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				blockInfo.update(buffer);
+				blockInfo.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -557,6 +671,102 @@ public class RpcResponseMessage {
 		}		
 	}	
 	
+	//datanodes are shipped once per response, each block refers to its datanode by index
+	public static class GetLocationsRes implements RpcProtocol.NameNodeRpcMessage, RpcGetLocations {
+		public static final int MAX_DATANODES = 8;
+		public static final int MAX_BLOCKS = RpcGetLocations.MAX_BLOCKS;
+		public static int CSIZE = 8 + MAX_DATANODES*DataNodeInfo.CSIZE + MAX_BLOCKS;
+		
+		private DataNodeInfo[] dataNodes;
+		private int dataNodeCount;
+		private byte[] blocks;
+		private int blockCount;
+		private short error;
+		
+		public GetLocationsRes() {
+			this.dataNodes = new DataNodeInfo[MAX_DATANODES];
+			for (int i = 0; i < dataNodes.length; i++){
+				dataNodes[i] = new DataNodeInfo();
+			}
+			this.dataNodeCount = 0;
+			this.blocks = new byte[MAX_BLOCKS];
+			this.blockCount = 0;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_GET_LOCATIONS;
+		}
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putInt(buffer, dataNodeCount);
+			for (int i = 0; i < dataNodeCount; i++){
+				dataNodes[i].write(buffer, encoding);
+			}
+			encoding.putInt(buffer, blockCount);
+			buffer.put(blocks, 0, blockCount);
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			try {
+				dataNodeCount = encoding.getInt(buffer);
+				for (int i = 0; i < dataNodeCount; i++){
+					dataNodes[i].update(buffer, encoding);
+				}
+				blockCount = encoding.getInt(buffer);
+				buffer.get(blocks, 0, blockCount);
+			} catch (UnknownHostException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		public int getBlockCount(){
+			return blockCount;
+		}
+		
+		public DataNodeInfo getDataNode(int index){
+			return dataNodes[blocks[index]];
+		}
+		
+		public void reset() {
+			dataNodeCount = 0;
+			blockCount = 0;
+		}
+		
+		//returns false if the response is full or the block lives on a datanode which does not fit anymore
+		public boolean addBlock(DataNodeInfo dnInfo){
+			if (blockCount >= MAX_BLOCKS){
+				return false;
+			}
+			int index = 0;
+			while(index < dataNodeCount && dataNodes[index].key() != dnInfo.key()){
+				index++;
+			}
+			if (index == dataNodeCount){
+				if (dataNodeCount >= MAX_DATANODES){
+					return false;
+				}
+				dataNodes[dataNodeCount++] = dnInfo;
+			}
+			blocks[blockCount++] = (byte) index;
+			return true;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}		
+	}
+	
 	public static class GetDataNodeRes implements RpcProtocol.NameNodeRpcMessage, RpcGetDataNode {
 		public static int CSIZE = DataNodeStatistics.CSIZE;
 		
@@ -578,14 +788,14 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_GET_DATANODE;
 		}	
 		
-		public int write(ByteBuffer buffer) {
-			int written = statistics.write(buffer);
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int written = statistics.write(buffer, encoding);
 			return written;
 		}		
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			try {
-				statistics.update(buffer);
+				statistics.update(buffer, encoding);
 			} catch (UnknownHostException e) {
 				e.printStackTrace();
 			}
@@ -631,13 +841,14 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_PING_NAMENODE;
 		}
 		
-		public int write(ByteBuffer buffer) {
-			buffer.putInt(data);
-			return CSIZE;
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putInt(buffer, data);
+			return buffer.position() - start;
 		}		
 
-		public void update(ByteBuffer buffer) {
-			data = buffer.getInt();
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			data = encoding.getInt(buffer);
 		}
 
 		public int getData() {
@@ -676,12 +887,12 @@ public class RpcResponseMessage {
 			return RpcProtocol.RES_REMOVE_DATANODE;
 		}
 
-		public int write(ByteBuffer buffer) {
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
 			buffer.putShort(rpcStatus);
 			return CSIZE;
 		}
 
-		public void update(ByteBuffer buffer) {
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
 			rpcStatus = buffer.getShort();
 		}
 
@@ -701,4 +912,273 @@ public class RpcResponseMessage {
 			this.error = error;
 		}
 	}
+	
+	//one result per batched operation, the payload of an operation is only shipped if it succeeded
+	public static class BatchRes implements RpcProtocol.NameNodeRpcMessage, RpcBatch {
+		public static int CSIZE = 4 + RpcBatch.MAX_OPS*(4 + Math.max(CreateFileRes.CSIZE, Math.max(GetFileRes.CSIZE, DeleteFileRes.CSIZE)));
+		
+		private int opCount;
+		private short[] opTypes;
+		private CreateFileRes[] createFileRes;
+		private GetFileRes[] getFileRes;
+		private DeleteFileRes[] deleteFileRes;
+		private short error;
+		
+		public BatchRes() {
+			this.opCount = 0;
+			this.opTypes = new short[RpcBatch.MAX_OPS];
+			this.createFileRes = new CreateFileRes[RpcBatch.MAX_OPS];
+			this.getFileRes = new GetFileRes[RpcBatch.MAX_OPS];
+			this.deleteFileRes = new DeleteFileRes[RpcBatch.MAX_OPS];
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_BATCH;
+		}
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putInt(buffer, opCount);
+			for (int i = 0; i < opCount; i++){
+				short opError = getOpError(i);
+				buffer.putShort(opTypes[i]);
+				buffer.putShort(opError);
+				if (opError != RpcErrors.ERR_OK){
+					continue;
+				}
+				switch(opTypes[i]){
+				case RpcProtocol.RES_CREATE_FILE:
+					createFileRes[i].write(buffer, encoding);
+					break;
+				case RpcProtocol.RES_GET_FILE:
+					getFileRes[i].write(buffer, encoding);
+					break;
+				case RpcProtocol.RES_DELETE_FILE:
+					deleteFileRes[i].write(buffer, encoding);
+					break;
+				}
+			}
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			opCount = encoding.getInt(buffer);
+			for (int i = 0; i < opCount; i++){
+				opTypes[i] = buffer.getShort();
+				short opError = buffer.getShort();
+				switch(opTypes[i]){
+				case RpcProtocol.RES_CREATE_FILE:
+					CreateFileRes createRes = prepareCreateFile(i);
+					createRes.setError(opError);
+					if (opError == RpcErrors.ERR_OK){
+						createRes.update(buffer, encoding);
+					}
+					break;
+				case RpcProtocol.RES_GET_FILE:
+					GetFileRes getRes = prepareGetFile(i);
+					getRes.setError(opError);
+					if (opError == RpcErrors.ERR_OK){
+						getRes.update(buffer, encoding);
+					}
+					break;
+				case RpcProtocol.RES_DELETE_FILE:
+					DeleteFileRes deleteRes = prepareDeleteFile(i);
+					deleteRes.setError(opError);
+					if (opError == RpcErrors.ERR_OK){
+						deleteRes.update(buffer, encoding);
+					}
+					break;
+				}
+			}
+		}
+		
+		public int getOpCount(){
+			return opCount;
+		}
+		
+		public CreateFileRes getCreateFile(int index){
+			return opTypes[index] == RpcProtocol.RES_CREATE_FILE ? createFileRes[index] : null;
+		}
+		
+		public GetFileRes getFile(int index){
+			return opTypes[index] == RpcProtocol.RES_GET_FILE ? getFileRes[index] : null;
+		}
+		
+		public DeleteFileRes getDeleteFile(int index){
+			return opTypes[index] == RpcProtocol.RES_DELETE_FILE ? deleteFileRes[index] : null;
+		}
+		
+		public CreateFileRes addCreateFile(){
+			return prepareCreateFile(opCount++);
+		}
+		
+		public GetFileRes addGetFile(){
+			return prepareGetFile(opCount++);
+		}
+		
+		public DeleteFileRes addDeleteFile(){
+			return prepareDeleteFile(opCount++);
+		}
+		
+		public void reset() {
+			opCount = 0;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+		
+		private short getOpError(int index){
+			switch(opTypes[index]){
+			case RpcProtocol.RES_CREATE_FILE:
+				return createFileRes[index].getError();
+			case RpcProtocol.RES_GET_FILE:
+				return getFileRes[index].getError();
+			default:
+				return deleteFileRes[index].getError();
+			}
+		}
+		
+		private CreateFileRes prepareCreateFile(int index){
+			opTypes[index] = RpcProtocol.RES_CREATE_FILE;
+			if (createFileRes[index] == null){
+				createFileRes[index] = new CreateFileRes();
+			}
+			return createFileRes[index];
+		}
+		
+		private GetFileRes prepareGetFile(int index){
+			opTypes[index] = RpcProtocol.RES_GET_FILE;
+			if (getFileRes[index] == null){
+				getFileRes[index] = new GetFileRes();
+			}
+			return getFileRes[index];
+		}
+		
+		private DeleteFileRes prepareDeleteFile(int index){
+			opTypes[index] = RpcProtocol.RES_DELETE_FILE;
+			if (deleteFileRes[index] == null){
+				deleteFileRes[index] = new DeleteFileRes();
+			}
+			return deleteFileRes[index];
+		}
+	}
+	
+	//a page of children, it ends after MAX_ENTRIES entries or when the next entry and its name exceed MAX_BYTES
+	public static class ListDirectoryRes implements RpcProtocol.NameNodeRpcMessage, RpcListDirectory {
+		public static final int ENTRY_SIZE = FileInfo.CSIZE + 4;
+		public static int CSIZE = 12 + MAX_BYTES;
+		
+		private FileInfo[] entries;
+		private byte[][] names;
+		private int entryCount;
+		private int bytes;
+		private long cursor;
+		private short error;
+		
+		public ListDirectoryRes() {
+			this.entries = new FileInfo[MAX_ENTRIES];
+			for (int i = 0; i < entries.length; i++){
+				entries[i] = new FileInfo();
+			}
+			this.names = new byte[MAX_ENTRIES][];
+			this.entryCount = 0;
+			this.bytes = 0;
+			this.cursor = END;
+			this.error = 0;
+		}
+		
+		public int size() {
+			return CSIZE;
+		}
+		
+		public short getType(){
+			return RpcProtocol.RES_LIST_DIRECTORY;
+		}
+		
+		public int write(ByteBuffer buffer, RpcEncoding encoding) {
+			int start = buffer.position();
+			encoding.putInt(buffer, entryCount);
+			encoding.putLong(buffer, cursor);
+			for (int i = 0; i < entryCount; i++){
+				entries[i].write(buffer, false, encoding);
+				RpcRequestMessage.writeName(buffer, names[i], encoding);
+			}
+			return buffer.position() - start;
+		}		
+
+		public void update(ByteBuffer buffer, RpcEncoding encoding) {
+			try {
+				int count = encoding.getInt(buffer);
+				cursor = encoding.getLong(buffer);
+				entryCount = 0;
+				for (int i = 0; i < count; i++){
+					entries[i].update(buffer, encoding);
+					names[i] = RpcRequestMessage.readName(buffer, encoding);
+					entryCount++;
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		
+		public void reset(){
+			for (int i = 0; i < entryCount; i++){
+				names[i] = null;
+			}
+			this.entryCount = 0;
+			this.bytes = 0;
+			this.cursor = END;
+		}
+		
+		//returns false if the page is full
+		public boolean addEntry(FileInfo fileInfo, byte[] name){
+			int entryBytes = ENTRY_SIZE + (name != null ? name.length : 0);
+			if (entryCount == MAX_ENTRIES || bytes + entryBytes > MAX_BYTES){
+				return false;
+			}
+			entries[entryCount].setFileInfo(fileInfo);
+			names[entryCount] = name;
+			entryCount++;
+			bytes += entryBytes;
+			return true;
+		}
+		
+		public int getEntryCount(){
+			return entryCount;
+		}
+		
+		public FileInfo getEntry(int index){
+			return entries[index];
+		}
+		
+		public String getName(int index){
+			return names[index] != null ? new String(names[index], StandardCharsets.UTF_8) : null;
+		}
+		
+		public long getCursor(){
+			return cursor;
+		}
+		
+		public void setCursor(long cursor){
+			this.cursor = cursor;
+		}
+
+		public short getError(){
+			return error;
+		}
+
+		public void setError(short error) {
+			this.error = error;
+		}
+	}
 }
@@ -0,0 +1,295 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.crail.rpc;
+
+import org.apache.crail.CrailNodeType;
+import org.apache.crail.CrailPlacementPolicy;
+import org.apache.crail.metadata.BlockInfo;
+import org.apache.crail.metadata.DataNodeInfo;
+import org.apache.crail.metadata.FileInfo;
+import org.apache.crail.metadata.FileName;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RpcEncodingTest {
+	private static final RpcEncoding[] encodings = { RpcEncoding.FIXED, RpcEncoding.COMPACT };
+	private static final DataNodeInfo dnInfo = new DataNodeInfo(1, 2, 3, new byte[]{10, 0, 0, 7}, 50020);
+	private static final BlockInfo blockInfo = new BlockInfo(dnInfo, 1L << 40, -1, 1 << 20, 42);
+
+	private ByteBuffer buffer = ByteBuffer.allocate(16*1024);
+
+	private ByteBuffer written(int length) {
+		assertEquals(length, buffer.position());
+		buffer.flip();
+		return buffer;
+	}
+
+	private void consumed() {
+		assertFalse(buffer.hasRemaining());
+		buffer.clear();
+	}
+
+	@Test
+	public void numbers() throws Exception {
+		long values[] = { 0, 1, -1, 63, -64, 64, -65, 1L << 35, Integer.MAX_VALUE, Integer.MIN_VALUE, Long.MAX_VALUE, Long.MIN_VALUE };
+		for (RpcEncoding encoding : encodings) {
+			assertSame(encoding, RpcEncoding.get(encoding.getVersion()));
+			for (long value : values) {
+				encoding.putInt(buffer, (int) value);
+				encoding.putLong(buffer, value);
+			}
+			buffer.flip();
+			for (long value : values) {
+				assertEquals((int) value, encoding.getInt(buffer));
+				assertEquals(value, encoding.getLong(buffer));
+			}
+			consumed();
+		}
+		//zigzag keeps small negative values in a single byte
+		RpcEncoding.COMPACT.putInt(buffer, -64);
+		RpcEncoding.COMPACT.putLong(buffer, 63);
+		assertEquals(2, buffer.position());
+		RpcEncoding.COMPACT.putLong(buffer, Long.MIN_VALUE);
+		assertEquals(12, buffer.position());
+	}
+
+	@Test
+	public void requests() throws Exception {
+		FileName name = new FileName("/a/b/c");
+		FileInfo fileInfo = new FileInfo();
+		fileInfo.setCapacity(1L << 33);
+		for (RpcEncoding encoding : encodings) {
+			RpcRequestMessage.CreateFileReq create = new RpcRequestMessage.CreateFileReq();
+			create.update(written(new RpcRequestMessage.CreateFileReq(name, CrailNodeType.MULTIFILE, 2, -1, 3, false).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(name.toString(), create.getFileName().toString());
+			assertEquals(CrailNodeType.MULTIFILE, create.getFileType());
+			assertEquals(-1, create.getLocationClass());
+			assertEquals(3, create.getPlacement());
+			assertFalse(create.isEnumerable());
+
+			RpcRequestMessage.RenameFileReq rename = new RpcRequestMessage.RenameFileReq();
+			rename.update(written(new RpcRequestMessage.RenameFileReq(name, new FileName("/d")).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(name.toString(), rename.getSrcFileName().toString());
+			assertEquals(new FileName("/d").toString(), rename.getDstFileName().toString());
+
+			RpcRequestMessage.SetFileReq setFile = new RpcRequestMessage.SetFileReq();
+			setFile.update(written(new RpcRequestMessage.SetFileReq(fileInfo, true).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(-1, setFile.getFileInfo().getFd());
+			assertEquals(1L << 33, setFile.getFileInfo().getCapacity());
+			assertTrue(setFile.isClose());
+
+			RpcRequestMessage.LeaseBlocksReq lease = new RpcRequestMessage.LeaseBlocksReq();
+			lease.update(written(new RpcRequestMessage.LeaseBlocksReq(9, Long.MAX_VALUE, 4096, 1L << 40, 8).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(Long.MAX_VALUE, lease.getToken());
+			assertEquals(1L << 40, lease.getCapacity());
+			assertEquals(8, lease.getCount());
+
+			RpcRequestMessage.GetLocationsReq locations = new RpcRequestMessage.GetLocationsReq();
+			locations.update(written(new RpcRequestMessage.GetLocationsReq(name, 1L << 33, 128).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(1L << 33, locations.getPosition());
+			assertEquals(128, locations.getCount());
+
+			RpcRequestMessage.SetBlockReq setBlock = new RpcRequestMessage.SetBlockReq();
+			setBlock.update(written(new RpcRequestMessage.SetBlockReq(blockInfo).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(blockInfo.getAddr(), setBlock.getBlockInfo().getAddr());
+			assertArrayEquals(dnInfo.getIpAddress(), setBlock.getBlockInfo().getDnInfo().getIpAddress());
+
+			RpcRequestMessage.RemoveDataNodeReq removeDataNode = new RpcRequestMessage.RemoveDataNodeReq();
+			removeDataNode.update(written(new RpcRequestMessage.RemoveDataNodeReq(InetAddress.getByAddress(dnInfo.getIpAddress()), 1).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(1, removeDataNode.port());
+
+			RpcRequestMessage.BatchReq batch = new RpcRequestMessage.BatchReq();
+			RpcOperation operations[] = { RpcOperation.getFile(name, true), RpcOperation.removeFile(new FileName("/x"), true) };
+			batch.update(written(new RpcRequestMessage.BatchReq(operations).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(2, batch.getOpCount());
+			assertTrue(batch.getFile(0).isWriteable());
+			assertTrue(batch.removeFile(1).isRecursive());
+		}
+	}
+
+	@Test
+	public void relativeNames() throws Exception {
+		FileName relative = new FileName(1L << 40, "/a/b");
+		FileName absolute = new FileName("/a/b");
+		for (RpcEncoding encoding : encodings) {
+			FileName name = new FileName();
+			relative.write(buffer, encoding);
+			name.update(written(buffer.position()), encoding);
+			consumed();
+			assertTrue(name.isRelative());
+			assertEquals(1L << 40, name.getBaseFd());
+			assertEquals(relative.toString(), name.toString());
+
+			//an absolute name decoded into the same instance drops the base
+			int length = absolute.write(buffer, encoding);
+			name.update(written(length), encoding);
+			consumed();
+			assertFalse(name.isRelative());
+			assertEquals(absolute.toString(), name.toString());
+		}
+		//absolute names keep the layout of existing logs, the base fd is appended only to relative ones
+		assertEquals(FileName.CSIZE - 8, absolute.write(buffer));
+		assertEquals(FileName.CSIZE, relative.write(buffer));
+	}
+
+	@Test
+	public void listDirectory() throws Exception {
+		FileInfo fileInfo = new FileInfo(7, CrailNodeType.DIRECTORY, 1L << 33, 1234567890123L);
+		byte[] name = "名前".getBytes("UTF-8");
+		byte[] longName = new byte[RpcListDirectory.MAX_NAME];
+		Arrays.fill(longName, (byte) 'x');
+		for (RpcEncoding encoding : encodings) {
+			RpcRequestMessage.ListDirectoryReq request = new RpcRequestMessage.ListDirectoryReq();
+			request.update(written(new RpcRequestMessage.ListDirectoryReq(1L << 40, RpcListDirectory.FIRST, RpcListDirectory.MAX_ENTRIES).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(1L << 40, request.getFd());
+			assertEquals(RpcListDirectory.FIRST, request.getCursor());
+			assertEquals(RpcListDirectory.MAX_ENTRIES, request.getCount());
+
+			RpcResponseMessage.ListDirectoryRes page = new RpcResponseMessage.ListDirectoryRes();
+			assertTrue(page.addEntry(fileInfo, name));
+			assertTrue(page.addEntry(new FileInfo(8, CrailNodeType.DATAFILE, 0, 0), null));
+			page.setCursor(-5);
+			RpcResponseMessage.ListDirectoryRes copy = new RpcResponseMessage.ListDirectoryRes();
+			copy.update(written(page.write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(2, copy.getEntryCount());
+			assertEquals(-5, copy.getCursor());
+			assertEquals(7, copy.getEntry(0).getFd());
+			assertEquals(CrailNodeType.DIRECTORY, copy.getEntry(0).getType());
+			assertEquals(1L << 33, copy.getEntry(0).getCapacity());
+			assertEquals(1234567890123L, copy.getEntry(0).getModificationTime());
+			assertEquals("名前", copy.getName(0));
+			assertNull(copy.getName(1));
+
+			//a page ends by bytes before MAX_ENTRIES, the longest name fills a page on its own
+			page.reset();
+			assertEquals(RpcListDirectory.END, page.getCursor());
+			assertTrue(page.addEntry(fileInfo, longName));
+			assertFalse(page.addEntry(fileInfo, null));
+			copy.update(written(page.write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(1, copy.getEntryCount());
+			assertEquals(RpcListDirectory.END, copy.getCursor());
+			assertEquals(longName.length, copy.getName(0).length());
+
+			page.reset();
+			while (page.addEntry(fileInfo, name)) {
+			}
+			assertTrue(page.getEntryCount() <= RpcListDirectory.MAX_ENTRIES);
+			assertTrue(page.write(buffer, encoding) <= RpcResponseMessage.ListDirectoryRes.CSIZE);
+			copy.update(written(buffer.position()), encoding);
+			consumed();
+			assertEquals(page.getEntryCount(), copy.getEntryCount());
+		}
+	}
+
+	@Test
+	public void createWithoutPlacement() throws Exception {
+		FileName name = new FileName("/a/b");
+		for (RpcEncoding encoding : encodings) {
+			//layout written by clients and logs that predate placement and leaf names
+			name.write(buffer, encoding);
+			encoding.putInt(buffer, CrailNodeType.DATAFILE.getLabel());
+			encoding.putInt(buffer, 1);
+			encoding.putInt(buffer, 2);
+			encoding.putInt(buffer, 1);
+			int length = buffer.position();
+			RpcRequestMessage.CreateFileReq create = new RpcRequestMessage.CreateFileReq();
+			create.update(written(length), encoding);
+			consumed();
+			assertEquals(CrailPlacementPolicy.PARENT.getLabel(), create.getPlacement());
+			assertEquals(2, create.getLocationClass());
+			assertTrue(create.isEnumerable());
+			assertNull(create.getName());
+
+			create.update(written(new RpcRequestMessage.CreateFileReq(name, CrailNodeType.DATAFILE, 1, 2, true).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(CrailPlacementPolicy.PARENT.getLabel(), create.getPlacement());
+			create.update(written(new RpcRequestMessage.CreateFileReq(name, CrailNodeType.DATAFILE, 1, 2, CrailPlacementPolicy.DEFAULT.getLabel(), true).write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(CrailPlacementPolicy.DEFAULT.getLabel(), create.getPlacement());
+		}
+	}
+
+	@Test
+	public void responses() throws Exception {
+		FileInfo fileInfo = new FileInfo();
+		fileInfo.setCapacity(1 << 20);
+		fileInfo.setToken(System.nanoTime());
+		for (RpcEncoding encoding : encodings) {
+			RpcResponseMessage.CreateFileRes create = new RpcResponseMessage.CreateFileRes();
+			create.setFileInfo(fileInfo);
+			create.setFileBlock(blockInfo);
+			create.shipToken(true);
+			RpcResponseMessage.CreateFileRes createCopy = new RpcResponseMessage.CreateFileRes();
+			createCopy.update(written(create.write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(fileInfo.getToken(), createCopy.getFile().getToken());
+			assertEquals(fileInfo.getModificationTime(), createCopy.getFile().getModificationTime());
+			assertEquals(blockInfo.getLba(), createCopy.getFileBlock().getLba());
+			assertEquals(blockInfo.getLkey(), createCopy.getFileBlock().getLkey());
+
+			RpcResponseMessage.LeaseBlocksRes lease = new RpcResponseMessage.LeaseBlocksRes();
+			while (lease.addBlockInfo(blockInfo, true)) {
+			}
+			RpcResponseMessage.LeaseBlocksRes leaseCopy = new RpcResponseMessage.LeaseBlocksRes();
+			leaseCopy.update(written(lease.write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(lease.getBlockCount(), leaseCopy.getBlockCount());
+			assertEquals(blockInfo.getLength(), leaseCopy.getBlockInfo(lease.getBlockCount() - 1).getLength());
+
+			RpcResponseMessage.GetLocationsRes locations = new RpcResponseMessage.GetLocationsRes();
+			DataNodeInfo other = new DataNodeInfo(0, 0, 0, new byte[]{10, 0, 0, 8}, 50020);
+			for (int i = 0; i < 100; i++) {
+				locations.addBlock(i % 3 == 0 ? other : dnInfo);
+			}
+			RpcResponseMessage.GetLocationsRes locationsCopy = new RpcResponseMessage.GetLocationsRes();
+			locationsCopy.update(written(locations.write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(100, locationsCopy.getBlockCount());
+			assertEquals(other.key(), locationsCopy.getDataNode(99).key());
+			assertEquals(dnInfo.key(), locationsCopy.getDataNode(98).key());
+
+			//the payload of a failed operation is not shipped
+			RpcResponseMessage.BatchRes batch = new RpcResponseMessage.BatchRes();
+			batch.addGetFile().setError(RpcErrors.ERR_GET_FILE_FAILED);
+			batch.addDeleteFile().setFileInfo(fileInfo);
+			RpcResponseMessage.BatchRes batchCopy = new RpcResponseMessage.BatchRes();
+			batchCopy.update(written(batch.write(buffer, encoding)), encoding);
+			consumed();
+			assertEquals(RpcErrors.ERR_GET_FILE_FAILED, batchCopy.getFile(0).getError());
+			assertEquals(1 << 20, batchCopy.getDeleteFile(1).getFile().getCapacity());
+			assertEquals(0, batchCopy.getDeleteFile(1).getFile().getToken());
+		}
+	}
+}